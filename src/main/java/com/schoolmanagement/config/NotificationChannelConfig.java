@@ -0,0 +1,47 @@
+package com.schoolmanagement.config;
+
+import com.schoolmanagement.entity.NotificationDelivery;
+import com.schoolmanagement.service.NotificationChannelProvider;
+import com.schoolmanagement.service.StubChannelProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Local stub providers for every outbound channel, for the dev profile and load tests only: they report
+// messages as sent without sending them. Without stubs, a channel with no real provider fails its deliveries.
+@Configuration
+@ConditionalOnProperty(name = "notifications.channels.stub.enabled", havingValue = "true")
+public class NotificationChannelConfig {
+
+    @Value("${notifications.channels.stub.latency-ms:50}")
+    private long latencyMs;
+
+    @Value("${notifications.channels.stub.failure-rate:0.0}")
+    private double failureRate;
+
+    @Bean
+    public NotificationChannelProvider stubSmsProvider(@Value("${notifications.channels.stub.sms-batch-size:500}") int batchSize,
+                                                       @Value("${notifications.channels.stub.sms-requests-per-second:10}") double rate) {
+        return new StubChannelProvider("stub-sms", NotificationDelivery.DeliveryChannel.SMS, batchSize, rate, latencyMs, failureRate);
+    }
+
+    @Bean
+    public NotificationChannelProvider stubEmailProvider(@Value("${notifications.channels.stub.email-batch-size:100}") int batchSize,
+                                                         @Value("${notifications.channels.stub.email-requests-per-second:10}") double rate) {
+        return new StubChannelProvider("stub-email", NotificationDelivery.DeliveryChannel.EMAIL, batchSize, rate, latencyMs, failureRate);
+    }
+
+    @Bean
+    public NotificationChannelProvider stubWhatsAppProvider(@Value("${notifications.channels.stub.whatsapp-batch-size:1}") int batchSize,
+                                                            @Value("${notifications.channels.stub.whatsapp-requests-per-second:20}") double rate) {
+        return new StubChannelProvider("stub-whatsapp", NotificationDelivery.DeliveryChannel.WHATSAPP, batchSize, rate, latencyMs,
+                failureRate);
+    }
+
+    @Bean
+    public NotificationChannelProvider stubPushProvider(@Value("${notifications.channels.stub.push-batch-size:500}") int batchSize,
+                                                        @Value("${notifications.channels.stub.push-requests-per-second:20}") double rate) {
+        return new StubChannelProvider("stub-push", NotificationDelivery.DeliveryChannel.PUSH, batchSize, rate, latencyMs, failureRate);
+    }
+}
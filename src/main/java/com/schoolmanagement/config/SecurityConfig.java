@@ -3,6 +3,7 @@ package com.schoolmanagement.config;
 import com.schoolmanagement.security.AuthEntryPointJwt;
 import com.schoolmanagement.security.AuthTokenFilter;
 import com.schoolmanagement.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -65,9 +66,12 @@ public class SecurityConfig {
             .exceptionHandling(exception -> exception.authenticationEntryPoint(unauthorizedHandler))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> 
-                auth.requestMatchers("/api/auth/**").permitAll()
+                // Async re-dispatches of SSE streams and error dispatches were authorized on the original request
+                auth.dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                    .requestMatchers("/api/auth/**").permitAll()
                     .requestMatchers("/actuator/**").permitAll()
                     .requestMatchers("/api/payments/webhooks/**").permitAll()
+                    .requestMatchers("/api/finance/payments/webhooks/**").permitAll()
                     .requestMatchers("/api/payments/test/**").permitAll()
                     .requestMatchers("/api/email/test/**").permitAll()
                     .requestMatchers("/api/email/simulation/**").permitAll()
@@ -0,0 +1,39 @@
+package com.schoolmanagement.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Opens the local Daraja and Stripe stand-ins to unauthenticated callers, but only under the profile that
+ * registers each stub. Without those profiles the paths fall through to {@link SecurityConfig} and need a token.
+ */
+@Configuration
+public class StubSecurityConfig {
+
+    @Bean
+    @Profile("mpesa-stub")
+    @Order(1)
+    public SecurityFilterChain mpesaStubFilterChain(HttpSecurity http) throws Exception {
+        return stubFilterChain(http, "/mpesa-stub/**");
+    }
+
+    @Bean
+    @Profile("stripe-stub")
+    @Order(2)
+    public SecurityFilterChain stripeStubFilterChain(HttpSecurity http) throws Exception {
+        return stubFilterChain(http, "/stripe-stub/**");
+    }
+
+    private SecurityFilterChain stubFilterChain(HttpSecurity http, String path) throws Exception {
+        http.securityMatcher(path)
+            .csrf(csrf -> csrf.disable()) // Stubs are called by the app itself and load-test clients, never browsers
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .authorizeHttpRequests(auth -> auth.anyRequest().permitAll());
+        return http.build();
+    }
+}
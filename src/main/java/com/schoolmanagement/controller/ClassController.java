@@ -10,6 +10,7 @@ import com.schoolmanagement.repository.AcademicYearRepository;
 import com.schoolmanagement.repository.ClassRepository;
 import com.schoolmanagement.repository.SchoolRepository;
 import com.schoolmanagement.repository.TeacherRepository;
+import com.schoolmanagement.service.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -33,6 +34,7 @@ public class ClassController {
     private final SchoolRepository schoolRepository;
     private final AcademicYearRepository academicYearRepository;
     private final TeacherRepository teacherRepository;
+    private final ReferenceDataCache referenceDataCache;
     
     // Create class
     @PostMapping
@@ -164,6 +166,7 @@ public class ClassController {
             }
             
             ClassEntity updatedClass = classRepository.save(classEntity);
+            referenceDataCache.evictClass(id);
             ClassDto responseDto = convertToDto(updatedClass);
             
             log.info("Successfully updated class with ID: {}", id);
@@ -198,6 +201,7 @@ public class ClassController {
             classEntity.setClassTeacher(teacher);
             
             ClassEntity updatedClass = classRepository.save(classEntity);
+            referenceDataCache.evictClass(id);
             ClassDto responseDto = convertToDto(updatedClass);
             
             log.info("Successfully assigned teacher {} as class teacher for class {}", teacherId, id);
@@ -0,0 +1,155 @@
+package com.schoolmanagement.controller;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal local stand-in for the Safaricom Daraja API, used for load and integration testing.
+ * Enable with the "mpesa-stub" profile and point mpesa.base-url at http://localhost:8081/mpesa-stub.
+ * Accepted STK pushes receive a successful callback on their CallBackURL after a short delay, and B2C payments
+ * a successful result on their ResultURL.
+ */
+@RestController
+@RequestMapping("/mpesa-stub")
+@Profile("mpesa-stub")
+@Slf4j
+public class DarajaStubController {
+
+    private final RestTemplate callbackClient = new RestTemplate();
+    private final ScheduledExecutorService callbackScheduler = Executors.newScheduledThreadPool(2);
+
+    @Value("${mpesa.stub.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${mpesa.stub.callback-delay-ms:2000}")
+    private long callbackDelayMs;
+
+    @Value("${mpesa.stub.send-callbacks:true}")
+    private boolean sendCallbacks;
+
+    @GetMapping("/oauth/v1/generate")
+    public ResponseEntity<Map<String, String>> generateToken() {
+        simulateLatency();
+        return ResponseEntity.ok(Map.of(
+            "access_token", "stub-" + UUID.randomUUID(),
+            "expires_in", "3599"
+        ));
+    }
+
+    @PostMapping("/mpesa/stkpush/v1/processrequest")
+    public ResponseEntity<Map<String, String>> stkPush(@RequestBody Map<String, Object> request) {
+        simulateLatency();
+        String checkoutRequestId = "ws_CO_" + UUID.randomUUID().toString().replace("-", "");
+        String merchantRequestId = "stub-" + ThreadLocalRandom.current().nextInt(1_000_000);
+
+        Object callbackUrl = request.get("CallBackURL");
+        if (sendCallbacks && callbackUrl != null) {
+            callbackScheduler.schedule(() -> sendCallback(callbackUrl.toString(), merchantRequestId, checkoutRequestId, request),
+                    callbackDelayMs, TimeUnit.MILLISECONDS);
+        }
+
+        return ResponseEntity.ok(Map.of(
+            "MerchantRequestID", merchantRequestId,
+            "CheckoutRequestID", checkoutRequestId,
+            "ResponseCode", "0",
+            "ResponseDescription", "Success. Request accepted for processing",
+            "CustomerMessage", "Success. Request accepted for processing"
+        ));
+    }
+
+    @PostMapping("/mpesa/stkpushquery/v1/query")
+    public ResponseEntity<Map<String, String>> stkPushQuery(@RequestBody Map<String, Object> request) {
+        simulateLatency();
+        return ResponseEntity.ok(Map.of(
+            "ResponseCode", "0",
+            "ResponseDescription", "The service request has been accepted successsfully",
+            "CheckoutRequestID", String.valueOf(request.get("CheckoutRequestID")),
+            "ResultCode", "0",
+            "ResultDesc", "The service request is processed successfully."
+        ));
+    }
+
+    @PostMapping("/mpesa/b2c/v1/paymentrequest")
+    public ResponseEntity<Map<String, String>> b2cPayment(@RequestBody Map<String, Object> request) {
+        simulateLatency();
+        String conversationId = "AG_" + UUID.randomUUID().toString().replace("-", "");
+        String originatorConversationId = String.valueOf(request.getOrDefault("OriginatorConversationID", UUID.randomUUID()));
+
+        Object resultUrl = request.get("ResultURL");
+        if (sendCallbacks && resultUrl != null) {
+            callbackScheduler.schedule(() -> sendB2cResult(resultUrl.toString(), conversationId, originatorConversationId),
+                    callbackDelayMs, TimeUnit.MILLISECONDS);
+        }
+
+        return ResponseEntity.ok(Map.of(
+            "ConversationID", conversationId,
+            "OriginatorConversationID", originatorConversationId,
+            "ResponseCode", "0",
+            "ResponseDescription", "Accept the service request successfully."
+        ));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callbackScheduler.shutdownNow();
+    }
+
+    private void sendCallback(String callbackUrl, String merchantRequestId, String checkoutRequestId, Map<String, Object> request) {
+        try {
+            Map<String, Object> callback = Map.of("Body", Map.of("stkCallback", Map.of(
+                "MerchantRequestID", merchantRequestId,
+                "CheckoutRequestID", checkoutRequestId,
+                "ResultCode", 0,
+                "ResultDesc", "The service request is processed successfully.",
+                "CallbackMetadata", Map.of("Item", List.of(
+                    Map.of("Name", "Amount", "Value", request.getOrDefault("Amount", "1")),
+                    Map.of("Name", "MpesaReceiptNumber", "Value", "STUB" + ThreadLocalRandom.current().nextInt(100_000_000)),
+                    Map.of("Name", "PhoneNumber", "Value", request.getOrDefault("PhoneNumber", ""))
+                ))
+            )));
+            callbackClient.postForEntity(callbackUrl, callback, String.class);
+        } catch (Exception e) {
+            log.warn("Stub callback to {} failed: {}", callbackUrl, e.getMessage());
+        }
+    }
+
+    private void sendB2cResult(String resultUrl, String conversationId, String originatorConversationId) {
+        try {
+            Map<String, Object> result = Map.of("Result", Map.of(
+                "ResultType", 0,
+                "ResultCode", 0,
+                "ResultDesc", "The service request is processed successfully.",
+                "OriginatorConversationID", originatorConversationId,
+                "ConversationID", conversationId,
+                "TransactionID", "STUB" + ThreadLocalRandom.current().nextInt(100_000_000)
+            ));
+            callbackClient.postForEntity(resultUrl, result, String.class);
+        } catch (Exception e) {
+            log.warn("Stub B2C result to {} failed: {}", resultUrl, e.getMessage());
+        }
+    }
+
+    private void simulateLatency() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
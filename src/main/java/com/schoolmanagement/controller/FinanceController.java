@@ -1,21 +1,47 @@
 package com.schoolmanagement.controller;
 
 import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.BulkInvoiceRequestDto;
+import com.schoolmanagement.dto.BulkStkPushRequestDto;
+import com.schoolmanagement.dto.EnrollmentBalanceDto;
+import com.schoolmanagement.dto.EnrollmentStatementDto;
 import com.schoolmanagement.dto.FeeStructureDto;
 import com.schoolmanagement.dto.FeeInvoiceDto;
+import com.schoolmanagement.dto.InvoicePageDto;
+import com.schoolmanagement.dto.InvoicingRunDto;
 import com.schoolmanagement.dto.PaymentDto;
 import com.schoolmanagement.dto.PaymentRequestDto;
+import com.schoolmanagement.dto.RefundBatchDto;
+import com.schoolmanagement.dto.RefundBatchRequestDto;
+import com.schoolmanagement.dto.RefundDto;
+import com.schoolmanagement.dto.StatementImportResultDto;
+import com.schoolmanagement.dto.StkPushCampaignDto;
+import com.schoolmanagement.service.BulkInvoicingService;
+import com.schoolmanagement.service.EnrollmentLedgerService;
 import com.schoolmanagement.service.FinanceService;
+import com.schoolmanagement.service.MpesaBulkStkPushService;
+import com.schoolmanagement.service.MpesaCallbackInboxService;
+import com.schoolmanagement.service.OverdueInvoiceSweeper;
+import com.schoolmanagement.service.RefundService;
+import com.schoolmanagement.service.StatementImportService;
+import com.schoolmanagement.service.StripeEventInboxService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/finance")
@@ -24,6 +50,14 @@ import java.util.List;
 public class FinanceController {
     
     private final FinanceService financeService;
+    private final BulkInvoicingService bulkInvoicingService;
+    private final MpesaCallbackInboxService mpesaCallbackInboxService;
+    private final StripeEventInboxService stripeEventInboxService;
+    private final MpesaBulkStkPushService mpesaBulkStkPushService;
+    private final StatementImportService statementImportService;
+    private final OverdueInvoiceSweeper overdueInvoiceSweeper;
+    private final EnrollmentLedgerService enrollmentLedgerService;
+    private final RefundService refundService;
     
     // Fee Structure Management
     @PostMapping("/fee-structures")
@@ -70,6 +104,51 @@ public class FinanceController {
         return ResponseEntity.ok(financeService.getAllInvoices(schoolId, status));
     }
     
+    @GetMapping("/invoices/page")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER')")
+    public ResponseEntity<ApiResponse<InvoicePageDto>> getInvoicePage(
+            @RequestParam(required = false) Long schoolId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        log.info("Get invoice page request - school: {}, status: {}, size: {}", schoolId, status, size);
+        return ResponseEntity.ok(financeService.getInvoicePage(schoolId, status, cursor, size));
+    }
+    
+    @GetMapping("/invoices/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @RequestParam(required = false) Long schoolId,
+            @RequestParam(required = false) String status,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        log.info("Export invoices request - school: {}, status: {}, format: {}", schoolId, status, format);
+        
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        StreamingResponseBody body = outputStream -> financeService.exportInvoices(schoolId, status, format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=invoices." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+    
+    @PostMapping("/invoices/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<InvoicingRunDto>> startBulkInvoicing(@Valid @RequestBody BulkInvoiceRequestDto request) {
+        log.info("Bulk invoicing request for school: {}, term: {}", request.getSchoolId(), request.getTermId());
+        return ResponseEntity.ok(bulkInvoicingService.startRun(request));
+    }
+    
+    @GetMapping("/invoices/bulk/{runId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<InvoicingRunDto>> getBulkInvoicingRun(@PathVariable Long runId) {
+        log.info("Get bulk invoicing run request: {}", runId);
+        return ResponseEntity.ok(bulkInvoicingService.getRun(runId));
+    }
+    
     @GetMapping("/invoices/student/{studentId}")
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
     public ResponseEntity<ApiResponse<List<FeeInvoiceDto>>> getStudentInvoicesByStudentId(@PathVariable Long studentId) {
@@ -84,6 +163,31 @@ public class FinanceController {
         return ResponseEntity.ok(financeService.getStudentInvoices(enrollmentId));
     }
     
+    // Enrollment Ledger
+    @GetMapping("/ledger/enrollments/{enrollmentId}/balance")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public ResponseEntity<ApiResponse<EnrollmentBalanceDto>> getEnrollmentBalance(@PathVariable Long enrollmentId) {
+        log.info("Get ledger balance for enrollment: {}", enrollmentId);
+        return ResponseEntity.ok(enrollmentLedgerService.getBalance(enrollmentId));
+    }
+    
+    @GetMapping("/ledger/enrollments/{enrollmentId}/statement")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public ResponseEntity<ApiResponse<EnrollmentStatementDto>> getEnrollmentStatement(
+            @PathVariable Long enrollmentId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "50") int size) {
+        log.info("Get ledger statement for enrollment: {} before entry: {}", enrollmentId, beforeId);
+        return ResponseEntity.ok(enrollmentLedgerService.getStatement(enrollmentId, beforeId, size));
+    }
+    
+    @GetMapping("/ledger/students/{studentId}/balances")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public ResponseEntity<ApiResponse<List<EnrollmentBalanceDto>>> getStudentBalances(@PathVariable Long studentId) {
+        log.info("Get ledger balances for student: {}", studentId);
+        return ResponseEntity.ok(enrollmentLedgerService.getStudentBalances(studentId));
+    }
+    
     // Payment Processing
     @PostMapping("/payments")
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
@@ -163,12 +267,40 @@ public class FinanceController {
     
     @PostMapping("/payments/{id}/refund")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<ApiResponse<PaymentDto>> processRefund(
+    public ResponseEntity<ApiResponse<RefundDto>> processRefund(
             @PathVariable Long id, 
             @RequestParam BigDecimal refundAmount,
-            @RequestParam String refundReason) {
+            @RequestParam String refundReason,
+            @RequestParam(required = false) String refundMethod,
+            Authentication authentication) {
         log.info("Process refund for payment ID: {} with amount: {}", id, refundAmount);
-        return ResponseEntity.ok(financeService.processRefund(id, refundAmount, refundReason));
+        com.schoolmanagement.entity.User currentUser = (com.schoolmanagement.entity.User) authentication.getPrincipal();
+        return ResponseEntity.ok(refundService.requestRefund(id, refundAmount, refundReason, refundMethod, currentUser));
+    }
+    
+    @GetMapping("/payments/{id}/refunds")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER')")
+    public ResponseEntity<ApiResponse<List<RefundDto>>> getPaymentRefunds(@PathVariable Long id) {
+        log.info("Get refunds for payment ID: {}", id);
+        return ResponseEntity.ok(refundService.getPaymentRefunds(id));
+    }
+    
+    // Refunds every paid invoice of a fee structure, e.g. after a cancelled trip; runs in the background
+    @PostMapping("/refunds/batches")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<RefundBatchDto>> startRefundBatch(
+            @Valid @RequestBody RefundBatchRequestDto request,
+            Authentication authentication) {
+        log.info("Refund batch request for fee structure: {}", request.getFeeStructureId());
+        com.schoolmanagement.entity.User currentUser = (com.schoolmanagement.entity.User) authentication.getPrincipal();
+        return ResponseEntity.ok(refundService.startBatch(request, currentUser));
+    }
+    
+    @GetMapping("/refunds/batches/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<RefundBatchDto>> getRefundBatch(@PathVariable Long id) {
+        log.info("Get refund batch: {}", id);
+        return ResponseEntity.ok(refundService.getBatch(id));
     }
     
     // Finance Dashboard and Reports
@@ -195,11 +327,12 @@ public class FinanceController {
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER')")
     public ResponseEntity<ApiResponse<Object>> getPaymentSummaryReport(
             @RequestParam Long schoolId,
-            @RequestParam Long academicYearId,
+            @RequestParam(required = false) Long academicYearId,
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
+            @RequestParam(required = false) String endDate,
+            @RequestParam(defaultValue = "DAY") String granularity) {
         log.info("Get payment summary report for school: {}, academic year: {}", schoolId, academicYearId);
-        return ResponseEntity.ok(financeService.getPaymentSummaryReport(schoolId, academicYearId, startDate, endDate));
+        return ResponseEntity.ok(financeService.getPaymentSummaryReport(schoolId, academicYearId, startDate, endDate, granularity));
     }
     
     @GetMapping("/reports/overdue-fees")
@@ -211,6 +344,13 @@ public class FinanceController {
         return ResponseEntity.ok(financeService.getOverdueFees(schoolId, academicYearId));
     }
     
+    @PostMapping("/invoices/overdue/sweep")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<Map<Long, Integer>>> sweepOverdueInvoices() {
+        log.info("Manual overdue invoice sweep request");
+        return ResponseEntity.ok(overdueInvoiceSweeper.runSweep());
+    }
+    
     // Kenya-specific Fee Management
     @PostMapping("/kenya-fee-structures")
     @PreAuthorize("hasRole('ADMIN')")
@@ -239,6 +379,23 @@ public class FinanceController {
         return ResponseEntity.ok(financeService.initiateMpesaStkPush(paymentRequest, currentUser));
     }
     
+    @PostMapping("/payments/mpesa/stk-push/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<StkPushCampaignDto>> startBulkStkPush(
+            @Valid @RequestBody BulkStkPushRequestDto request,
+            Authentication authentication) {
+        log.info("Bulk M-Pesa STK Push request with {} items", request.getItems().size());
+        com.schoolmanagement.entity.User currentUser = (com.schoolmanagement.entity.User) authentication.getPrincipal();
+        return ResponseEntity.ok(mpesaBulkStkPushService.startCampaign(request, currentUser));
+    }
+    
+    @GetMapping("/payments/mpesa/campaigns/{campaignId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<StkPushCampaignDto>> getStkPushCampaign(@PathVariable String campaignId) {
+        log.info("Get STK push campaign request: {}", campaignId);
+        return ResponseEntity.ok(mpesaBulkStkPushService.getCampaign(campaignId));
+    }
+    
     @PostMapping("/payments/stripe/create-payment-intent")
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
     public ResponseEntity<ApiResponse<Object>> createStripePaymentIntent(
@@ -249,16 +406,53 @@ public class FinanceController {
         return ResponseEntity.ok(financeService.createStripePaymentIntent(paymentRequest, currentUser));
     }
     
+    // Statement reconciliation: the CSV is sent as the raw request body so it is streamed, not buffered
+    @PostMapping(value = "/statements/import", consumes = {"text/csv", "text/plain", "application/octet-stream"})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<StatementImportResultDto>> importStatement(
+            @RequestParam Long schoolId,
+            @RequestParam(defaultValue = "MPESA") String source,
+            InputStream statement) {
+        log.info("Statement import request for school: {}, source: {}", schoolId, source);
+        return ResponseEntity.ok(statementImportService.importStatement(schoolId, source, statement));
+    }
+    
+    @GetMapping("/statements/imports/{importId}/unmatched")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Resource> getUnmatchedStatementRows(@PathVariable String importId) {
+        log.info("Unmatched statement rows request for import: {}", importId);
+        return statementImportService.getUnmatchedReport(importId)
+                .<ResponseEntity<Resource>>map(path -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType("text/csv"))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + path.getFileName())
+                        .body(new FileSystemResource(path)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
     @PostMapping("/payments/webhooks/mpesa")
-    public ResponseEntity<String> handleMpesaWebhook(@RequestBody String webhookPayload) {
+    public ResponseEntity<Map<String, Object>> handleMpesaWebhook(@RequestBody String webhookPayload) {
         log.info("Received M-Pesa webhook");
-        return ResponseEntity.ok(financeService.handleMpesaWebhook(webhookPayload));
+        try {
+            return ResponseEntity.ok(mpesaCallbackInboxService.receive(webhookPayload));
+        } catch (Exception e) {
+            log.error("Error storing M-Pesa webhook: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of("ResultCode", 1, "ResultDesc", "Temporarily unavailable"));
+        }
     }
     
     @PostMapping("/payments/webhooks/stripe")
-    public ResponseEntity<String> handleStripeWebhook(@RequestBody String webhookPayload) {
-        log.info("Received Stripe webhook");
-        return ResponseEntity.ok(financeService.handleStripeWebhook(webhookPayload));
+    public ResponseEntity<String> handleStripeWebhook(
+            @RequestBody String webhookPayload,
+            @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        try {
+            return ResponseEntity.ok(stripeEventInboxService.receive(webhookPayload, signature));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected Stripe webhook: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Error storing Stripe webhook: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body("Temporarily unavailable");
+        }
     }
 }
 
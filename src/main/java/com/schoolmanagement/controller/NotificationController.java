@@ -3,16 +3,19 @@ package com.schoolmanagement.controller;
 import com.schoolmanagement.dto.ApiResponse;
 import com.schoolmanagement.dto.NotificationDto;
 import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.dto.NotificationSearchResultDto;
 import com.schoolmanagement.entity.Notification;
 import com.schoolmanagement.service.NotificationService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -69,6 +72,36 @@ public class NotificationController {
         return ResponseEntity.ok(notificationService.getUserNotifications(userId, page, size, search, type));
     }
     
+    // Ranked full-text search of the current user's notifications, paged with the returned cursor
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public ResponseEntity<ApiResponse<NotificationSearchResultDto>> searchNotifications(
+            @RequestParam String q,
+            @RequestParam(required = false) Notification.NotificationType type,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        log.info("Search notifications request - query: {}, type: {}", q, type);
+        
+        Long userId = getCurrentUserId(authentication);
+        return ResponseEntity.ok(notificationService.searchNotifications(userId, q, type, cursor, Math.max(1, Math.min(size, 100))));
+    }
+    
+    // Stream new notifications and unread count changes; EventSource sends Last-Event-ID when it reconnects
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public SseEmitter streamNotifications(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                          Authentication authentication) {
+        log.info("Notification stream request, last event: {}", lastEventId);
+        
+        Long userId = getCurrentUserId(authentication);
+        Long resumeAfter = null;
+        if (lastEventId != null && lastEventId.matches("\\d{1,18}")) {
+            resumeAfter = Long.valueOf(lastEventId);
+        }
+        return notificationService.openStream(userId, resumeAfter);
+    }
+    
     // Get unread notifications count
     @GetMapping("/unread-count")
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
@@ -92,7 +125,7 @@ public class NotificationController {
     // Mark all notifications as read
     @PutMapping("/mark-all-read")
     @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
-    public ResponseEntity<ApiResponse<String>> markAllAsRead(Authentication authentication) {
+    public ResponseEntity<ApiResponse<Integer>> markAllAsRead(Authentication authentication) {
         log.info("Mark all notifications as read request");
         
         Long userId = getCurrentUserId(authentication);
@@ -109,6 +142,24 @@ public class NotificationController {
         return ResponseEntity.ok(notificationService.deleteNotification(notificationId, userId));
     }
     
+    // Delete all of the current user's notifications
+    @DeleteMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'TEACHER', 'STUDENT', 'PARENT')")
+    public ResponseEntity<ApiResponse<Integer>> deleteAllNotifications(Authentication authentication) {
+        log.info("Delete all notifications request");
+        
+        Long userId = getCurrentUserId(authentication);
+        return ResponseEntity.ok(notificationService.deleteAllNotifications(userId));
+    }
+    
+    // Archive notifications older than the given number of days
+    @PostMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<Integer>> archiveNotifications(@RequestParam(defaultValue = "365") int olderThanDays) {
+        log.info("Archive notifications request: older than {} days", olderThanDays);
+        return ResponseEntity.ok(notificationService.archiveNotificationsOlderThan(olderThanDays));
+    }
+    
     // Helper method to get current user ID
     private Long getCurrentUserId(Authentication authentication) {
         if (authentication == null || authentication.getPrincipal() == null) {
@@ -1,7 +1,9 @@
 package com.schoolmanagement.controller;
 
+import com.schoolmanagement.service.MpesaCallbackInboxService;
 import com.schoolmanagement.service.MpesaService;
-import com.schoolmanagement.service.StripeService;
+import com.schoolmanagement.service.RefundService;
+import com.schoolmanagement.service.StripeEventInboxService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -16,27 +18,53 @@ import java.util.Map;
 public class PaymentWebhookController {
 
     private final MpesaService mpesaService;
-    private final StripeService stripeService;
+    private final MpesaCallbackInboxService mpesaCallbackInboxService;
+    private final StripeEventInboxService stripeEventInboxService;
+    private final RefundService refundService;
 
     @PostMapping("/mpesa")
-    public ResponseEntity<Map<String, String>> mpesaWebhook(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<Map<String, Object>> mpesaWebhook(@RequestBody String payload) {
         try {
-            log.info("Received M-Pesa webhook: {}", payload);
+            log.info("Received M-Pesa webhook");
 
-            // Process M-Pesa callback
-            mpesaService.processCallback(payload);
+            // Store the callback; settlement happens asynchronously in the inbox worker
+            return ResponseEntity.ok(mpesaCallbackInboxService.receive(payload));
 
-            // Return success response
-            return ResponseEntity.ok(Map.of(
-                "ResultCode", "0",
-                "ResultDesc", "Success"
+        } catch (Exception e) {
+            log.error("Error storing M-Pesa webhook: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of(
+                "ResultCode", 1,
+                "ResultDesc", "Temporarily unavailable"
             ));
+        }
+    }
+
+    @PostMapping("/mpesa/b2c/result")
+    public ResponseEntity<Map<String, Object>> mpesaB2cResult(@RequestBody String payload) {
+        try {
+            log.info("Received M-Pesa B2C result");
+            return ResponseEntity.ok(refundService.handleB2cResult(payload));
 
         } catch (Exception e) {
-            log.error("Error processing M-Pesa webhook: {}", e.getMessage());
-            return ResponseEntity.ok(Map.of(
-                "ResultCode", "1",
-                "ResultDesc", "Error processing webhook"
+            log.error("Error handling M-Pesa B2C result: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of(
+                "ResultCode", 1,
+                "ResultDesc", "Temporarily unavailable"
+            ));
+        }
+    }
+
+    @PostMapping("/mpesa/b2c/timeout")
+    public ResponseEntity<Map<String, Object>> mpesaB2cTimeout(@RequestBody String payload) {
+        try {
+            log.info("Received M-Pesa B2C timeout");
+            return ResponseEntity.ok(refundService.handleB2cTimeout(payload));
+
+        } catch (Exception e) {
+            log.error("Error handling M-Pesa B2C timeout: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of(
+                "ResultCode", 1,
+                "ResultDesc", "Temporarily unavailable"
             ));
         }
     }
@@ -44,18 +72,17 @@ public class PaymentWebhookController {
     @PostMapping("/stripe")
     public ResponseEntity<String> stripeWebhook(
             @RequestBody String payload,
-            @RequestHeader("Stripe-Signature") String signature) {
+            @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
         try {
-            log.info("Received Stripe webhook with signature: {}", signature);
-
-            // Process Stripe webhook
-            stripeService.processWebhook(payload, signature);
-
-            return ResponseEntity.ok("Webhook processed successfully");
+            // Verify and store the event; settlement happens asynchronously in the inbox worker
+            return ResponseEntity.ok(stripeEventInboxService.receive(payload, signature));
 
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected Stripe webhook: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
-            log.error("Error processing Stripe webhook: {}", e.getMessage());
-            return ResponseEntity.badRequest().body("Webhook processing failed");
+            log.error("Error storing Stripe webhook: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body("Temporarily unavailable");
         }
     }
 
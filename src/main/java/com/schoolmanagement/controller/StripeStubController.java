@@ -0,0 +1,256 @@
+package com.schoolmanagement.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schoolmanagement.util.StripeSignatureVerifier;
+import com.schoolmanagement.util.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local stand-in for the Stripe API and its webhooks, used for load and integration testing.
+ * Enable with the "stripe-stub" profile and point stripe.base-url at http://localhost:8081/stripe-stub.
+ * Created payment intents receive a signed payment_intent.succeeded webhook after a short delay, and
+ * POST /stripe-stub/load replays signed events at a fixed rate, with a share of redeliveries, to exercise
+ * signature checks, deduplication and the settlement worker.
+ */
+@RestController
+@RequestMapping("/stripe-stub")
+@Profile("stripe-stub")
+@Slf4j
+public class StripeStubController {
+
+    private final RestTemplate webhookClient = new RestTemplate();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService eventScheduler = Executors.newScheduledThreadPool(2);
+    private final ExecutorService loadExecutor = Executors.newCachedThreadPool();
+    // Intents created through the stub, so load runs can settle real pending payments
+    private final Map<String, Map<String, Object>> intents = new ConcurrentHashMap<>();
+    private final Map<String, LoadRun> runs = new ConcurrentHashMap<>();
+
+    private StripeSignatureVerifier signer;
+
+    // Must match the secret the webhook verifies against
+    @Value("${stripe.webhook-secret:}")
+    private String webhookSecret;
+
+    @Value("${stripe.stub.webhook-url:http://localhost:8081/api/payments/webhooks/stripe}")
+    private String webhookUrl;
+
+    @Value("${stripe.stub.event-delay-ms:2000}")
+    private long eventDelayMs;
+
+    @Value("${stripe.stub.send-events:true}")
+    private boolean sendEvents;
+
+    @PostConstruct
+    public void init() {
+        if (webhookSecret == null || webhookSecret.isBlank()) {
+            throw new IllegalStateException("Set stripe.webhook-secret to use the stripe-stub profile");
+        }
+        signer = new StripeSignatureVerifier(webhookSecret, 0);
+    }
+
+    @PostMapping(value = "/v1/payment_intents", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Map<String, Object>> createPaymentIntent(@RequestParam MultiValueMap<String, String> form) {
+        String id = "pi_stub_" + UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> intent = new LinkedHashMap<>();
+        intent.put("id", id);
+        intent.put("object", "payment_intent");
+        intent.put("amount", Long.parseLong(form.getFirst("amount")));
+        intent.put("currency", form.getFirst("currency"));
+        intent.put("status", "requires_payment_method");
+        intent.put("client_secret", id + "_secret_" + ThreadLocalRandom.current().nextInt(1_000_000));
+        intents.put(id, intent);
+
+        if (sendEvents) {
+            eventScheduler.schedule(() -> send(buildEvent(id, intent)), eventDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return ResponseEntity.ok(intent);
+    }
+
+    @PostMapping(value = "/v1/refunds", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Map<String, Object>> createRefund(@RequestParam MultiValueMap<String, String> form) {
+        Map<String, Object> refund = new LinkedHashMap<>();
+        refund.put("id", "re_stub_" + UUID.randomUUID().toString().replace("-", ""));
+        refund.put("object", "refund");
+        refund.put("amount", Long.parseLong(form.getFirst("amount")));
+        refund.put("payment_intent", form.getFirst("payment_intent"));
+        refund.put("status", "succeeded");
+        return ResponseEntity.ok(refund);
+    }
+
+    /**
+     * Starts a load run in the background. Events go to intents created through the stub first and then to
+     * synthetic intents, which exercise ingestion only since no payment matches them.
+     */
+    @PostMapping("/load")
+    public ResponseEntity<Map<String, Object>> startLoad(
+            @RequestParam(defaultValue = "5000") int events,
+            @RequestParam(defaultValue = "6000") int ratePerMinute,
+            @RequestParam(defaultValue = "10") int duplicatePercent,
+            @RequestParam(defaultValue = "16") int concurrency) {
+        if (events <= 0 || ratePerMinute <= 0 || concurrency <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "events, ratePerMinute and concurrency must be positive"));
+        }
+        LoadRun run = new LoadRun(UUID.randomUUID().toString(), events);
+        runs.put(run.id, run);
+        loadExecutor.submit(() -> runLoad(run, ratePerMinute, Math.max(0, Math.min(duplicatePercent, 100)), concurrency));
+        return ResponseEntity.accepted().body(run.snapshot());
+    }
+
+    @GetMapping("/load/{runId}")
+    public ResponseEntity<Map<String, Object>> getLoad(@PathVariable String runId) {
+        LoadRun run = runs.get(runId);
+        return run != null ? ResponseEntity.ok(run.snapshot()) : ResponseEntity.notFound().build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        eventScheduler.shutdownNow();
+        loadExecutor.shutdownNow();
+    }
+
+    private void runLoad(LoadRun run, int ratePerMinute, int duplicatePercent, int concurrency) {
+        TokenBucket rateLimiter = new TokenBucket(ratePerMinute / 60.0, Math.max(1, ratePerMinute / 600));
+        Semaphore inFlight = new Semaphore(concurrency);
+        List<String> knownIntents = new ArrayList<>(intents.keySet());
+        List<String> sentEvents = new ArrayList<>();
+        try {
+            for (int i = 0; i < run.total; i++) {
+                String event;
+                if (!sentEvents.isEmpty() && ThreadLocalRandom.current().nextInt(100) < duplicatePercent) {
+                    // Redelivery: same event body, fresh signature timestamp
+                    event = sentEvents.get(ThreadLocalRandom.current().nextInt(sentEvents.size()));
+                } else {
+                    String intentId = i < knownIntents.size() ? knownIntents.get(i)
+                            : "pi_synthetic_" + UUID.randomUUID().toString().replace("-", "");
+                    Map<String, Object> intent = intents.getOrDefault(intentId, Map.of("amount", 100000L, "currency", "kes"));
+                    event = buildEvent(intentId, intent);
+                    sentEvents.add(event);
+                }
+                rateLimiter.acquire();
+                inFlight.acquire();
+                String body = event;
+                loadExecutor.execute(() -> {
+                    try {
+                        run.record(send(body));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            run.finishedAt = System.currentTimeMillis();
+            log.info("Stripe stub load run {} finished: {}", run.id, run.snapshot());
+        }
+    }
+
+    private String buildEvent(String intentId, Map<String, Object> intent) {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("id", intentId);
+        object.put("object", "payment_intent");
+        object.put("amount", intent.get("amount"));
+        object.put("amount_received", intent.get("amount"));
+        object.put("currency", intent.get("currency"));
+        object.put("status", "succeeded");
+        object.put("latest_charge", "ch_stub_" + UUID.randomUUID().toString().replace("-", ""));
+
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("id", "evt_stub_" + UUID.randomUUID().toString().replace("-", ""));
+        event.put("object", "event");
+        event.put("type", "payment_intent.succeeded");
+        event.put("created", Instant.now().getEpochSecond());
+        event.put("data", Map.of("object", object));
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not serialise stub event", e);
+        }
+    }
+
+    // Returns the HTTP status, or -1 when the webhook could not be reached
+    private int send(String event) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set("Stripe-Signature", signer.sign(event, Instant.now().getEpochSecond()));
+            return webhookClient.postForEntity(webhookUrl, new HttpEntity<>(event, headers), String.class).getStatusCode().value();
+        } catch (HttpStatusCodeException e) {
+            return e.getStatusCode().value();
+        } catch (Exception e) {
+            log.warn("Stub webhook to {} failed: {}", webhookUrl, e.getMessage());
+            return -1;
+        }
+    }
+
+    private static final class LoadRun {
+
+        private final String id;
+        private final int total;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private volatile long finishedAt;
+
+        private LoadRun(String id, int total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        private void record(int status) {
+            if (status >= 200 && status < 300) {
+                accepted.incrementAndGet();
+            } else if (status >= 400 && status < 500) {
+                rejected.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        private Map<String, Object> snapshot() {
+            long sent = accepted.get() + rejected.get() + errors.get();
+            long elapsedMs = (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("runId", id);
+            snapshot.put("status", finishedAt > 0 ? "FINISHED" : "RUNNING");
+            snapshot.put("total", total);
+            snapshot.put("sent", sent);
+            snapshot.put("accepted", accepted.get());
+            snapshot.put("rejected", rejected.get());
+            snapshot.put("errors", errors.get());
+            snapshot.put("elapsedMs", elapsedMs);
+            snapshot.put("eventsPerMinute", elapsedMs > 0 ? sent * 60_000 / elapsedMs : 0);
+            return snapshot;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.schoolmanagement.controller;
 import com.schoolmanagement.dto.ApiResponse;
 import com.schoolmanagement.entity.Subject;
 import com.schoolmanagement.repository.SubjectRepository;
+import com.schoolmanagement.service.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +19,7 @@ import java.util.List;
 public class SubjectController {
     
     private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
     
     // Get all subjects
     @GetMapping
@@ -53,7 +55,7 @@ public class SubjectController {
                 math.setDescription("Core Mathematics subject");
                 math.setFormLevel("Form 1-4");
                 math.setIsActive(true);
-                subjectRepository.save(math);
+                referenceDataCache.evictSubject(subjectRepository.save(math).getId());
             }
             
             // Create Chemistry
@@ -66,7 +68,7 @@ public class SubjectController {
                 chem.setDescription("Chemistry subject");
                 chem.setFormLevel("Form 1-4");
                 chem.setIsActive(true);
-                subjectRepository.save(chem);
+                referenceDataCache.evictSubject(subjectRepository.save(chem).getId());
             }
             
             // Create Business Studies
@@ -79,7 +81,7 @@ public class SubjectController {
                 bus.setDescription("Business Studies subject");
                 bus.setFormLevel("Form 1-4");
                 bus.setIsActive(true);
-                subjectRepository.save(bus);
+                referenceDataCache.evictSubject(subjectRepository.save(bus).getId());
             }
             
             // Create Physical Health Education
@@ -92,7 +94,7 @@ public class SubjectController {
                 phe.setDescription("Physical Health Education subject");
                 phe.setFormLevel("Form 1-4");
                 phe.setIsActive(true);
-                subjectRepository.save(phe);
+                referenceDataCache.evictSubject(subjectRepository.save(phe).getId());
             }
             
             return ResponseEntity.ok(ApiResponse.success("Subjects initialized successfully"));
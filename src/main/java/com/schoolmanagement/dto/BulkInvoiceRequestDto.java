@@ -0,0 +1,31 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkInvoiceRequestDto {
+    
+    @NotNull(message = "School ID is required")
+    private Long schoolId;
+    
+    @NotNull(message = "Term ID is required")
+    private Long termId;
+    
+    private List<Long> feeStructureIds; // Optional: defaults to every fee structure that applies in the term
+    
+    private Long classId; // Optional: invoice a single class instead of the whole school
+    
+    private LocalDate dueDate; // Defaults to 30 days from today
+    
+    @Size(max = 200, message = "Run key must not exceed 200 characters")
+    private String runKey; // Optional: defaults to a key derived from school, term, class and fee structures
+}
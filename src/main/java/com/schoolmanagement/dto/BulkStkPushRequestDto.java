@@ -0,0 +1,45 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStkPushRequestDto {
+    
+    @Size(max = 100, message = "Campaign name must not exceed 100 characters")
+    private String campaignName;
+    
+    @NotEmpty(message = "At least one item is required")
+    @Size(max = 10000, message = "A campaign must not exceed 10000 items")
+    @Valid
+    private List<Item> items;
+    
+    @Size(max = 100, message = "Transaction description must not exceed 100 characters")
+    private String transactionDescription;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        
+        @NotNull(message = "Invoice ID is required")
+        private Long invoiceId;
+        
+        @Size(max = 100, message = "Phone number must not exceed 100 characters")
+        private String phoneNumber; // Defaults to the student's phone number
+        
+        @DecimalMin(value = "0.0", inclusive = false, message = "Amount must be greater than 0")
+        private BigDecimal amount; // Defaults to the invoice balance
+    }
+}
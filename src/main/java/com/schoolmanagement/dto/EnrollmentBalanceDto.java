@@ -0,0 +1,23 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentBalanceDto {
+
+    private Long enrollmentId;
+    private BigDecimal balance; // Amount owed; negative when the student is in credit
+    private BigDecimal totalDebits;
+    private BigDecimal totalCredits;
+    private Long entryCount;
+    private LocalDateTime lastEntryAt;
+}
@@ -0,0 +1,44 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentStatementDto {
+
+    private EnrollmentBalanceDto balance;
+
+    // Newest first
+    private List<Entry> entries;
+
+    // Id to pass as beforeId for the next page; null when there are no more entries
+    private Long nextCursor;
+
+    private boolean hasMore;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private Long id;
+        private String entryType;
+        private BigDecimal debitAmount;
+        private BigDecimal creditAmount;
+        private BigDecimal balanceAfter;
+        private Long invoiceId;
+        private Long paymentId;
+        private String reference;
+        private String description;
+        private LocalDateTime entryDate;
+    }
+}
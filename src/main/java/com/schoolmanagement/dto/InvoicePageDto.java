@@ -0,0 +1,24 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicePageDto {
+
+    private List<FeeInvoiceDto> items;
+
+    // Opaque cursor for the next page; null when there are no more rows
+    private String nextCursor;
+
+    private boolean hasMore;
+
+    private int size;
+}
@@ -0,0 +1,33 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicingRunDto {
+
+    private Long id;
+    private String runKey;
+    private Long schoolId;
+    private Long termId;
+    private Long classId;
+    private String feeStructureIds;
+    private LocalDate dueDate;
+    private String status;
+    private Long lastEnrollmentId;
+    private Long enrollmentsProcessed;
+    private Long invoicesCreated;
+    private Long invoicesSkipped;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,18 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationSearchResultDto {
+    
+    private List<NotificationDto> notifications;
+    private String nextCursor; // Null on the last page
+}
@@ -0,0 +1,65 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSummaryReportDto {
+
+    private Long schoolId;
+    private LocalDate startDate;
+    private LocalDate endDate; // Inclusive
+    private String granularity; // DAY, WEEK, MONTH
+
+    private Long paymentCount;
+    private BigDecimal totalCollected;
+    private Long refundCount;
+    private BigDecimal totalRefunded;
+    private BigDecimal netCollected;
+
+    private List<MethodTotal> byMethod;
+    private List<PeriodTotal> byPeriod;
+    private List<SchoolTotal> bySchool;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MethodTotal {
+        private String paymentMethod;
+        private Long paymentCount;
+        private BigDecimal totalCollected;
+        private BigDecimal totalRefunded;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PeriodTotal {
+        private LocalDate periodStart;
+        private Long paymentCount;
+        private BigDecimal totalCollected;
+        private BigDecimal totalRefunded;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SchoolTotal {
+        private Long schoolId;
+        private Long paymentCount;
+        private BigDecimal totalCollected;
+        private BigDecimal totalRefunded;
+    }
+}
@@ -0,0 +1,39 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundBatchDto {
+
+    private Long id;
+    private String batchKey;
+    private Long schoolId;
+    private Long feeStructureId;
+    private Long classId;
+    private BigDecimal amountPerInvoice;
+    private String refundMethod;
+    private String refundReason;
+    private String status;
+    private Long lastInvoiceId;
+    private Long invoicesScanned;
+    private Long refundsCreated;
+    private Long refundsProcessed;
+    private Long refundsFailed;
+    private Long refundsInFlight;
+    private Integer percentComplete;
+    private BigDecimal amountRequested;
+    private BigDecimal amountRefunded;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+}
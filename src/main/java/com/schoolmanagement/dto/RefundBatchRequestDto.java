@@ -0,0 +1,38 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundBatchRequestDto {
+    
+    @NotNull(message = "School ID is required")
+    private Long schoolId;
+    
+    @NotNull(message = "Fee structure ID is required")
+    private Long feeStructureId; // e.g. the cancelled trip's fee
+    
+    private Long classId; // Optional: refund a single class instead of the whole school
+    
+    @DecimalMin(value = "0.01", message = "Refund amount must be positive")
+    private BigDecimal amountPerInvoice; // Optional: defaults to everything paid on each invoice
+    
+    @Size(max = 30, message = "Refund method must not exceed 30 characters")
+    private String refundMethod; // ORIGINAL_PAYMENT_METHOD (default), BANK_TRANSFER, CASH
+    
+    @NotBlank(message = "Refund reason is required")
+    @Size(max = 500, message = "Refund reason must not exceed 500 characters")
+    private String refundReason;
+    
+    @Size(max = 200, message = "Batch key must not exceed 200 characters")
+    private String batchKey; // Optional: defaults to a key derived from school, fee structure and class
+}
@@ -0,0 +1,31 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundDto {
+
+    private Long id;
+    private String refundReference;
+    private BigDecimal refundAmount;
+    private String refundStatus;
+    private String refundMethod;
+    private String transactionId;
+    private String providerReference;
+    private String refundReason;
+    private String failureReason;
+    private Long paymentId;
+    private Long refundPaymentId;
+    private Long refundBatchId;
+    private LocalDateTime refundDate;
+    private LocalDateTime processedAt;
+}
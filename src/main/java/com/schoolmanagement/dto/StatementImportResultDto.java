@@ -0,0 +1,42 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementImportResultDto {
+
+    private String importId;
+    private Long schoolId;
+    private String source;
+    private Long totalRows;
+    private Long skippedRows; // Debits, reversals and rows that are not completed
+    private Long settledPendingPayments;
+    private Long recordedPayments;
+    private Long alreadyRecorded;
+    private Long unmatched;
+    private Long failed;
+    private BigDecimal settledAmount;
+    private List<UnmatchedRow> unmatchedSample;
+    private String unmatchedReportUrl;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UnmatchedRow {
+        private Long lineNumber;
+        private String receipt;
+        private String account;
+        private BigDecimal amount;
+        private String reason;
+    }
+}
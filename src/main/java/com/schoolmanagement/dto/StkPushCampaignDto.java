@@ -0,0 +1,39 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StkPushCampaignDto {
+
+    private String campaignId;
+    private String name;
+    private String status;
+    private Integer total;
+    private Integer submitted;
+    private Integer succeeded;
+    private Integer failed;
+    private Map<String, Integer> failureReasons;
+    private List<ItemFailure> failures;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemFailure {
+        private Long invoiceId;
+        private String phoneNumber;
+        private String reason;
+    }
+}
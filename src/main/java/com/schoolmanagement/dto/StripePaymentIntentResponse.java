@@ -0,0 +1,19 @@
+package com.schoolmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StripePaymentIntentResponse {
+    private String paymentIntentId;
+    private String clientSecret;
+    private String status;
+    private String paymentReference;
+    private Long invoiceId;
+    private String invoiceNumber;
+    private String amount;
+    private String currency;
+}
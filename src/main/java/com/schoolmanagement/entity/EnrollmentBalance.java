@@ -0,0 +1,41 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Running totals of an enrollment's ledger, updated in the same transaction as every entry
+@Entity
+@Table(name = "enrollment_balances")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentBalance {
+    
+    @Id
+    @Column(name = "student_enrollment_id")
+    private Long enrollmentId;
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal balance;
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalDebits;
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalCredits;
+    
+    @Column(nullable = false)
+    private Long entryCount;
+    
+    private LocalDateTime lastEntryAt;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
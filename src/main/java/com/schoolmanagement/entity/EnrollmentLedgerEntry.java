@@ -0,0 +1,59 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Append-only: entries are never updated or deleted, corrections are posted as new entries
+@Entity
+@Table(name = "enrollment_ledger_entries", indexes = {
+        @Index(name = "idx_enrollment_ledger_entries_enrollment_id", columnList = "student_enrollment_id, id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentLedgerEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "student_enrollment_id", nullable = false)
+    private Long enrollmentId;
+    
+    @Column(nullable = false, length = 20)
+    private String entryType; // INVOICE, PAYMENT, REFUND, ADJUSTMENT
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal debitAmount; // Increases what the student owes
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal creditAmount; // Decreases what the student owes
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal balanceAfter;
+    
+    private Long invoiceId;
+    
+    private Long paymentId;
+    
+    @Column(length = 100)
+    private String reference;
+    
+    @Column(length = 255)
+    private String description;
+    
+    @Column(nullable = false)
+    private LocalDateTime entryDate;
+    
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
@@ -13,10 +14,21 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "fee_invoices")
+@Table(name = "fee_invoices", indexes = {
+        @Index(name = "idx_fee_invoices_issue_date_id", columnList = "issue_date, id"),
+        @Index(name = "idx_fee_invoices_status_due_date", columnList = "status, due_date"),
+        // Overdue reminders page through the invoices of one sweep by id
+        @Index(name = "idx_fee_invoices_overdue_at_id", columnList = "overdue_at, id")
+}, uniqueConstraints = {
+        // One invoice per enrollment, fee structure and term; ad-hoc invoices have no term
+        @UniqueConstraint(name = "uk_fee_invoices_enrollment_structure_term",
+                columnNames = {"student_enrollment_id", "fee_structure_id", "term_id"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+// Only changed columns are written, so editing an invoice cannot overwrite amounts settled concurrently
+@DynamicUpdate
 public class FeeInvoice {
     
     @Id
@@ -47,6 +59,9 @@ public class FeeInvoice {
     @Column(length = 500)
     private String notes;
     
+    // Set by the overdue sweeper run that moved the invoice to OVERDUE
+    private LocalDateTime overdueAt;
+    
     @Column(nullable = false)
     private Boolean isActive = true;
     
@@ -66,6 +81,10 @@ public class FeeInvoice {
     @JoinColumn(name = "fee_structure_id", nullable = false)
     private FeeStructure feeStructure;
     
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "term_id")
+    private Term term;
+    
     @OneToMany(mappedBy = "invoice", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Payment> payments;
 }
@@ -0,0 +1,78 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "invoicing_runs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicingRun {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 200, unique = true)
+    private String runKey; // Same key resumes the same run instead of starting a new one
+    
+    @Column(nullable = false, length = 500)
+    private String feeStructureIds; // Comma separated, sorted
+    
+    private Long classId; // Optional restriction to a single class
+    
+    @Column(nullable = false)
+    private LocalDate dueDate;
+    
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private String status = "RUNNING"; // RUNNING, COMPLETED, FAILED
+    
+    // Checkpoint: every enrollment with id <= lastEnrollmentId has been invoiced
+    @Column(nullable = false)
+    @Builder.Default
+    private Long lastEnrollmentId = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long enrollmentsProcessed = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long invoicesCreated = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long invoicesSkipped = 0L;
+    
+    @Column(length = 500)
+    private String errorMessage;
+    
+    private LocalDateTime completedAt;
+    
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    // Touched after every chunk; a RUNNING run that stops heartbeating can be resumed
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    // Relationships
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "school_id", nullable = false)
+    private School school;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "term_id", nullable = false)
+    private Term term;
+}
@@ -0,0 +1,74 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "mpesa_callback_inbox", indexes = {
+        @Index(name = "idx_mpesa_callback_inbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MpesaCallbackInbox {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Safaricom retries callbacks; the unique key turns a retry into a no-op
+    @Column(length = 100, unique = true)
+    private String checkoutRequestId;
+    
+    @Column(length = 100)
+    private String merchantRequestId;
+    
+    private Integer resultCode;
+    
+    @Column(length = 500)
+    private String resultDesc;
+    
+    @Column(length = 50)
+    private String mpesaReceiptNumber;
+    
+    @Column(precision = 10, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(length = 20)
+    private String phoneNumber;
+    
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+    
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private String status = "RECEIVED"; // RECEIVED, PROCESSING, PROCESSED, REVIEW, FAILED, INVALID
+    
+    @Column(length = 20)
+    private String outcome; // COMPLETED, PAYMENT_FAILED, DUPLICATE, REVIEW, UNKNOWN_PAYMENT
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+    
+    // Earliest time a worker may pick the row up; also acts as the lease while PROCESSING
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(length = 500)
+    private String lastError;
+    
+    private LocalDateTime processedAt;
+    
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime receivedAt;
+}
@@ -52,8 +52,9 @@ public class NamingSeries {
     @Column(nullable = false)
     private Boolean isDefault = false; // Default series for this type
     
-    @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    // Stored as plain text: an enum column gets a CHECK constraint that ddl-auto update never widens for new types
+    @Convert(converter = SeriesTypeConverter.class)
+    @Column(nullable = false, length = 30)
     private SeriesType seriesType; // EMPLOYEE, STUDENT, TEACHER, SUPPORT_STAFF
     
     @Column(length = 500)
@@ -73,13 +74,29 @@ public class NamingSeries {
         TEACHER,
         SUPPORT_STAFF,
         PARENT,
-        ADMIN
+        ADMIN,
+        INVOICE,
+        PAYMENT,
+        ENROLLMENT
+    }
+    
+    @Converter
+    public static class SeriesTypeConverter implements AttributeConverter<SeriesType, String> {
+        
+        @Override
+        public String convertToDatabaseColumn(SeriesType seriesType) {
+            return seriesType != null ? seriesType.name() : null;
+        }
+        
+        @Override
+        public SeriesType convertToEntityAttribute(String value) {
+            return value != null ? SeriesType.valueOf(value) : null;
+        }
     }
     
     // Method to generate the next ID in the series
     public String generateNextId() {
-        String paddedNumber = String.format("%0" + padding + "d", currentNumber);
-        String generatedId = prefix + separator + paddedNumber;
+        String generatedId = formatId(prefix, separator, padding, currentNumber);
         
         // Update current number for next generation
         currentNumber++;
@@ -89,7 +106,12 @@ public class NamingSeries {
     
     // Method to get the next ID without updating the counter
     public String getNextId() {
-        String paddedNumber = String.format("%0" + padding + "d", currentNumber);
+        return formatId(prefix, separator, padding, currentNumber);
+    }
+    
+    // Shared formatting so block allocators produce the same IDs as the series itself
+    public static String formatId(String prefix, String separator, int padding, long number) {
+        String paddedNumber = String.format("%0" + padding + "d", number);
         return prefix + separator + paddedNumber;
     }
     
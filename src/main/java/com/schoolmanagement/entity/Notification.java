@@ -12,7 +12,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        @Index(name = "idx_notifications_broadcast", columnList = "broadcast_id"),
+        @Index(name = "idx_notifications_recipient_unread", columnList = "recipient_id, is_active, read_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -50,6 +53,9 @@ public class Notification {
     @Column(name = "sent_at")
     private LocalDateTime sentAt;
     
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt; // Set when retention archives the notification; archived rows are inactive
+    
     @Column(nullable = false)
     private Boolean isActive = true;
     
@@ -68,6 +74,9 @@ public class Notification {
     @Column(length = 1000)
     private String metadata; // JSON string for additional data
     
+    @Column(name = "broadcast_id", length = 36)
+    private String broadcastId; // Shared by every notification created by one bulk send
+    
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
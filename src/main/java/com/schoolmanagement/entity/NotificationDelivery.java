@@ -10,7 +10,10 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notification_deliveries")
+@Table(name = "notification_deliveries", indexes = {
+        @Index(name = "idx_notification_deliveries_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_notification_deliveries_notification", columnList = "notification_id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -47,6 +50,14 @@ public class NotificationDelivery {
     @Column
     private LocalDateTime failedAt;
     
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+    
+    // Earliest time a dispatcher may pick the row up; also acts as the lease while a worker sends it
+    @Column
+    private LocalDateTime nextAttemptAt;
+    
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
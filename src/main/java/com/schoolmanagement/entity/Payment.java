@@ -11,7 +11,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_status_method_date", columnList = "payment_status, payment_method, payment_date"),
+        @Index(name = "idx_payments_external_reference", columnList = "external_reference"),
+        @Index(name = "idx_payments_payment_date", columnList = "payment_date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,7 +11,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "refunds")
+@Table(name = "refunds", indexes = {
+        @Index(name = "idx_refunds_payment", columnList = "payment_id"),
+        @Index(name = "idx_refunds_batch", columnList = "refund_batch_id, id"),
+        @Index(name = "idx_refunds_status_created", columnList = "refund_status, created_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,21 +25,37 @@ public class Refund {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(nullable = false, length = 50)
+    // Also sent to the provider as the idempotency key / OriginatorConversationID
+    @Column(nullable = false, length = 50, unique = true)
     private String refundReference;
     
     @Column(nullable = false, precision = 10, scale = 2)
     private BigDecimal refundAmount;
     
     @Column(nullable = false, length = 20)
-    private String refundStatus; // PENDING, PROCESSED, FAILED, CANCELLED
+    private String refundStatus; // PENDING, SUBMITTED, PROCESSED, FAILED, CANCELLED
     
-    @Column(length = 20)
+    @Column(length = 30)
     private String refundMethod; // ORIGINAL_PAYMENT_METHOD, BANK_TRANSFER, CASH
     
     @Column(length = 100)
     private String transactionId;
     
+    // Provider's handle while the payout is in flight, e.g. the B2C ConversationID
+    @Column(length = 100)
+    private String providerReference;
+    
+    @Column(length = 20)
+    private String phoneNumber; // B2C recipient
+    
+    @Column(length = 500)
+    private String failureReason;
+    
+    // The negative REFUNDED payment posted when the refund was processed
+    private Long refundPaymentId;
+    
+    private LocalDateTime processedAt;
+    
     @Column(length = 500)
     private String refundReason;
     
@@ -63,6 +83,10 @@ public class Refund {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "processed_by_id", nullable = false)
     private User processedBy;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "refund_batch_id")
+    private RefundBatch refundBatch;
 }
 
 
@@ -0,0 +1,95 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "refund_batches")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundBatch {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 200, unique = true)
+    private String batchKey; // Same key resumes the same batch instead of starting a new one
+    
+    @Column(nullable = false)
+    private Long schoolId;
+    
+    @Column(nullable = false)
+    private Long feeStructureId; // Invoices of this fee structure are refunded
+    
+    private Long classId; // Optional restriction to a single class
+    
+    // Per invoice; null refunds everything paid on it
+    @Column(precision = 10, scale = 2)
+    private BigDecimal amountPerInvoice;
+    
+    @Column(nullable = false, length = 30)
+    private String refundMethod;
+    
+    @Column(nullable = false, length = 500)
+    private String refundReason;
+    
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private String status = "RUNNING"; // RUNNING, DISPATCHED, COMPLETED, FAILED
+    
+    // Checkpoint: every invoice with id <= lastInvoiceId has its refunds created
+    @Column(nullable = false)
+    @Builder.Default
+    private Long lastInvoiceId = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long invoicesScanned = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long refundsCreated = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long refundsProcessed = 0L;
+    
+    @Column(nullable = false)
+    @Builder.Default
+    private Long refundsFailed = 0L;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal amountRequested = BigDecimal.ZERO;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal amountRefunded = BigDecimal.ZERO;
+    
+    @Column(length = 500)
+    private String errorMessage;
+    
+    private LocalDateTime completedAt;
+    
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    // Touched after every chunk; a RUNNING batch that stops heartbeating can be resumed
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "created_by_id", nullable = false)
+    private User createdBy;
+}
@@ -0,0 +1,73 @@
+package com.schoolmanagement.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "stripe_event_inbox", indexes = {
+        @Index(name = "idx_stripe_event_inbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StripeEventInbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Stripe delivers events at least once; the unique key turns a redelivery into a no-op
+    @Column(nullable = false, length = 100, unique = true)
+    private String eventId;
+
+    @Column(nullable = false, length = 60)
+    private String eventType; // payment_intent.succeeded, payment_intent.payment_failed
+
+    // Only the fields settlement needs are kept, not the event body
+    @Column(length = 100)
+    private String paymentIntentId;
+
+    @Column(length = 100)
+    private String chargeId;
+
+    @Column(precision = 10, scale = 2)
+    private BigDecimal amount;
+
+    @Column(length = 3)
+    private String currency;
+
+    @Column(length = 500)
+    private String failureMessage;
+
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private String status = "RECEIVED"; // RECEIVED, PROCESSING, PROCESSED, REVIEW, FAILED, INVALID
+
+    @Column(length = 20)
+    private String outcome; // COMPLETED, PAYMENT_FAILED, DUPLICATE, REVIEW
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    // Earliest time a worker may pick the row up; also acts as the lease while PROCESSING
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+    private LocalDateTime processedAt;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime receivedAt;
+}
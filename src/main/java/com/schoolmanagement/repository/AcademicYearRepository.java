@@ -15,6 +15,9 @@ public interface AcademicYearRepository extends JpaRepository<AcademicYear, Long
     
     Optional<AcademicYear> findBySchoolIdAndIsActiveTrueAndId(Long schoolId, Long id);
     
+    @Query("SELECT ay FROM AcademicYear ay JOIN FETCH ay.school WHERE ay.id = :id")
+    Optional<AcademicYear> findByIdWithSchool(Long id);
+    
     @Query("SELECT ay FROM AcademicYear ay WHERE ay.school.id = :schoolId ORDER BY ay.startDate DESC")
     List<AcademicYear> findBySchoolIdOrderByStartDateDesc(Long schoolId);
 }
@@ -15,6 +15,9 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
     
     Optional<ClassEntity> findBySchoolIdAndAcademicYearIdAndNameAndIsActiveTrue(Long schoolId, Long academicYearId, String name);
     
+    @Query("SELECT c FROM ClassEntity c JOIN FETCH c.school JOIN FETCH c.academicYear WHERE c.id = :id")
+    Optional<ClassEntity> findByIdWithParents(Long id);
+    
     @Query("SELECT c FROM ClassEntity c WHERE c.school.id = :schoolId AND c.academicYear.id = :academicYearId AND c.isActive = true ORDER BY c.name")
     List<ClassEntity> findActiveClassesBySchoolAndAcademicYear(Long schoolId, Long academicYearId);
 }
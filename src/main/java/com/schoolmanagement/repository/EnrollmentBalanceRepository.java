@@ -0,0 +1,36 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.EnrollmentBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EnrollmentBalanceRepository extends JpaRepository<EnrollmentBalance, Long> {
+    
+    // Atomic increment; the row lock it takes serializes entries of one enrollment until commit
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE EnrollmentBalance b SET b.balance = b.balance + :debit - :credit, b.totalDebits = b.totalDebits + :debit, " +
+           "b.totalCredits = b.totalCredits + :credit, b.entryCount = b.entryCount + 1, b.lastEntryAt = :now, b.updatedAt = :now " +
+           "WHERE b.enrollmentId = :enrollmentId")
+    int applyEntry(Long enrollmentId, BigDecimal debit, BigDecimal credit, LocalDateTime now);
+    
+    @Query("SELECT b.balance FROM EnrollmentBalance b WHERE b.enrollmentId = :enrollmentId")
+    BigDecimal findBalance(Long enrollmentId);
+    
+    // [enrollmentId, balance]
+    @Query("SELECT b.enrollmentId, b.balance FROM EnrollmentBalance b WHERE b.enrollmentId IN :enrollmentIds")
+    List<Object[]> findBalances(Collection<Long> enrollmentIds);
+    
+    @Query("SELECT b.enrollmentId FROM EnrollmentBalance b WHERE b.enrollmentId IN :enrollmentIds")
+    List<Long> findExistingEnrollmentIds(Collection<Long> enrollmentIds);
+    
+    @Query("SELECT b FROM EnrollmentBalance b WHERE b.enrollmentId IN :enrollmentIds ORDER BY b.enrollmentId")
+    List<EnrollmentBalance> findByEnrollmentIds(Collection<Long> enrollmentIds);
+}
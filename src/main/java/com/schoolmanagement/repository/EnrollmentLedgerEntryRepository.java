@@ -0,0 +1,20 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.EnrollmentLedgerEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EnrollmentLedgerEntryRepository extends JpaRepository<EnrollmentLedgerEntry, Long> {
+    
+    // Statement pages, newest first, keyset-paged by id
+    @Query("SELECT e FROM EnrollmentLedgerEntry e WHERE e.enrollmentId = :enrollmentId ORDER BY e.id DESC")
+    List<EnrollmentLedgerEntry> findLatestEntries(Long enrollmentId, Pageable pageable);
+    
+    @Query("SELECT e FROM EnrollmentLedgerEntry e WHERE e.enrollmentId = :enrollmentId AND e.id < :beforeId ORDER BY e.id DESC")
+    List<EnrollmentLedgerEntry> findEntriesBefore(Long enrollmentId, Long beforeId, Pageable pageable);
+}
@@ -1,19 +1,65 @@
 package com.schoolmanagement.repository;
 
 import com.schoolmanagement.entity.FeeInvoice;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface FeeInvoiceRepository extends JpaRepository<FeeInvoice, Long> {
     
     Optional<FeeInvoice> findByInvoiceNumber(String invoiceNumber);
     
+    // Settlement: adds to the stored amounts in one statement, so concurrent payments never overwrite each other.
+    // A negative amount reverses a payment; an OVERDUE invoice stays OVERDUE until it is paid in full.
+    // The CASE reads the pre-update balance and paid amount, so it applies :amount itself.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE FeeInvoice fi SET " +
+           "fi.status = CASE WHEN fi.balanceAmount - :amount <= 0 THEN 'PAID' WHEN fi.status = 'OVERDUE' THEN 'OVERDUE' WHEN fi.paidAmount + :amount <= 0 THEN 'PENDING' ELSE 'PARTIAL' END, " +
+           "fi.paidAmount = fi.paidAmount + :amount, fi.balanceAmount = fi.balanceAmount - :amount, fi.updatedAt = :now " +
+           "WHERE fi.id = :invoiceId")
+    int addToPaidAmount(Long invoiceId, BigDecimal amount, LocalDateTime now);
+    
+    // Same as addToPaidAmount, but only while the amount still fits in the balance; returns 0 otherwise
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE FeeInvoice fi SET " +
+           "fi.status = CASE WHEN fi.balanceAmount - :amount <= 0 THEN 'PAID' WHEN fi.status = 'OVERDUE' THEN 'OVERDUE' WHEN fi.paidAmount + :amount <= 0 THEN 'PENDING' ELSE 'PARTIAL' END, " +
+           "fi.paidAmount = fi.paidAmount + :amount, fi.balanceAmount = fi.balanceAmount - :amount, fi.updatedAt = :now " +
+           "WHERE fi.id = :invoiceId AND fi.balanceAmount >= :amount")
+    int addToPaidAmountWithinBalance(Long invoiceId, BigDecimal amount, LocalDateTime now);
+    
+    // Refund that also cancels the charge it paid for, e.g. a cancelled trip: paid and total drop together, so the
+    // balance still owed is unchanged and the invoice is not reopened. The CASE reads the pre-update amounts.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE FeeInvoice fi SET " +
+           "fi.status = CASE WHEN fi.totalAmount - :amount <= 0 THEN 'CANCELLED' WHEN fi.balanceAmount <= 0 THEN 'PAID' ELSE fi.status END, " +
+           "fi.paidAmount = fi.paidAmount - :amount, fi.totalAmount = fi.totalAmount - :amount, fi.updatedAt = :now " +
+           "WHERE fi.id = :invoiceId")
+    int writeOffRefundedCharge(Long invoiceId, BigDecimal amount, LocalDateTime now);
+    
+    // Once nothing is left paid on a cancelled charge, what is still owed is written off as well
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE FeeInvoice fi SET fi.status = 'CANCELLED', fi.totalAmount = fi.totalAmount - fi.balanceAmount, " +
+           "fi.balanceAmount = 0, fi.updatedAt = :now WHERE fi.id = :invoiceId AND fi.paidAmount <= 0 AND fi.balanceAmount > 0")
+    int cancelUnpaidBalance(Long invoiceId, LocalDateTime now);
+    
+    // As stored, bypassing the persistence context
+    @Query("SELECT fi.balanceAmount FROM FeeInvoice fi WHERE fi.id = :invoiceId")
+    Optional<BigDecimal> findBalanceAmount(Long invoiceId);
+    
     List<FeeInvoice> findByEnrollmentIdAndIsActiveTrue(Long enrollmentId);
     
     List<FeeInvoice> findByEnrollmentIdAndStatusAndIsActiveTrue(Long enrollmentId, String status);
@@ -27,20 +73,95 @@ public interface FeeInvoiceRepository extends JpaRepository<FeeInvoice, Long> {
     @Query("SELECT fi FROM FeeInvoice fi WHERE fi.dueDate < :currentDate AND fi.status IN ('PENDING', 'PARTIAL') AND fi.isActive = true ORDER BY fi.dueDate")
     List<FeeInvoice> findOverdueInvoices(LocalDate currentDate);
     
+    // Overdue sweeper: schools that still have PENDING/PARTIAL invoices past their due date
+    @Query("SELECT DISTINCT c.school.id FROM FeeInvoice fi JOIN fi.enrollment e JOIN e.classEntity c " +
+           "WHERE fi.status IN ('PENDING', 'PARTIAL') AND fi.dueDate < :today AND fi.isActive = true")
+    List<Long> findSchoolIdsWithOverdueCandidates(LocalDate today);
+    
+    @Modifying
+    @Query("UPDATE FeeInvoice fi SET fi.status = 'OVERDUE', fi.overdueAt = :sweptAt, fi.updatedAt = :sweptAt " +
+           "WHERE fi.status IN ('PENDING', 'PARTIAL') AND fi.dueDate < :today AND fi.isActive = true " +
+           "AND fi.enrollment.id IN (SELECT e.id FROM StudentEnrollment e WHERE e.classEntity.school.id = :schoolId)")
+    int markOverdueForSchool(Long schoolId, LocalDate today, LocalDateTime sweptAt);
+    
+    // [invoiceId, studentId, invoiceNumber, balanceAmount, dueDate] of the invoices one sweep moved to OVERDUE, keyset-paged by id
+    @Query("SELECT fi.id, s.id, fi.invoiceNumber, fi.balanceAmount, fi.dueDate FROM FeeInvoice fi JOIN fi.enrollment e JOIN e.student s " +
+           "WHERE fi.overdueAt = :sweptAt AND e.classEntity.school.id = :schoolId AND fi.id > :afterId ORDER BY fi.id")
+    List<Object[]> findSweptOverdueInvoices(Long schoolId, LocalDateTime sweptAt, Long afterId, Pageable pageable);
+    
     @Query("SELECT fi FROM FeeInvoice fi WHERE fi.enrollment.student.id = :studentId AND fi.isActive = true ORDER BY fi.issueDate DESC")
     List<FeeInvoice> findActiveInvoicesByStudentId(Long studentId);
     
-    @Query("SELECT fi FROM FeeInvoice fi WHERE fi.isActive = true ORDER BY fi.issueDate DESC")
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE fi.isActive = true ORDER BY fi.issueDate DESC")
     List<FeeInvoice> findAllActiveInvoices();
     
-    @Query("SELECT fi FROM FeeInvoice fi WHERE fi.enrollment.classEntity.school.id = :schoolId AND fi.isActive = true ORDER BY fi.issueDate DESC")
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE c.school.id = :schoolId AND fi.isActive = true ORDER BY fi.issueDate DESC")
     List<FeeInvoice> findActiveInvoicesBySchoolId(Long schoolId);
     
-    @Query("SELECT fi FROM FeeInvoice fi WHERE fi.status = :status AND fi.isActive = true ORDER BY fi.issueDate DESC")
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE fi.status = :status AND fi.isActive = true ORDER BY fi.issueDate DESC")
     List<FeeInvoice> findActiveInvoicesByStatus(String status);
     
-    @Query("SELECT fi FROM FeeInvoice fi WHERE fi.enrollment.classEntity.school.id = :schoolId AND fi.status = :status AND fi.isActive = true ORDER BY fi.issueDate DESC")
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE c.school.id = :schoolId AND fi.status = :status AND fi.isActive = true ORDER BY fi.issueDate DESC")
     List<FeeInvoice> findActiveInvoicesBySchoolIdAndStatus(Long schoolId, String status);
+    
+    // Keyset pagination on (issueDate, id): first page
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE fi.isActive = true AND (:schoolId IS NULL OR c.school.id = :schoolId) AND (:status IS NULL OR fi.status = :status) " +
+           "ORDER BY fi.issueDate DESC, fi.id DESC")
+    List<FeeInvoice> findInvoicePage(Long schoolId, String status, Pageable pageable);
+    
+    // Keyset pagination on (issueDate, id): rows strictly after the cursor
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE fi.isActive = true AND (:schoolId IS NULL OR c.school.id = :schoolId) AND (:status IS NULL OR fi.status = :status) " +
+           "AND (fi.issueDate < :cursorIssueDate OR (fi.issueDate = :cursorIssueDate AND fi.id < :cursorId)) " +
+           "ORDER BY fi.issueDate DESC, fi.id DESC")
+    List<FeeInvoice> findInvoicePageAfter(Long schoolId, String status, LocalDate cursorIssueDate, Long cursorId, Pageable pageable);
+    
+    // Must be consumed inside a transaction and closed by the caller
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student JOIN FETCH e.classEntity c JOIN FETCH c.academicYear JOIN FETCH fi.feeStructure " +
+           "WHERE fi.isActive = true AND (:schoolId IS NULL OR c.school.id = :schoolId) AND (:status IS NULL OR fi.status = :status) " +
+           "ORDER BY fi.issueDate DESC, fi.id DESC")
+    Stream<FeeInvoice> streamActiveInvoices(Long schoolId, String status);
+    
+    // Bulk STK push: loads the invoices of a campaign with the student needed for the default phone number
+    @Query("SELECT fi FROM FeeInvoice fi JOIN FETCH fi.enrollment e JOIN FETCH e.student WHERE fi.id IN :ids AND fi.isActive = true")
+    List<FeeInvoice> findActiveInvoicesWithStudentByIdIn(Collection<Long> ids);
+    
+    // Statement import index: [invoiceNumber, id] of a school's active invoices
+    @Query("SELECT fi.invoiceNumber, fi.id FROM FeeInvoice fi WHERE fi.isActive = true AND fi.enrollment.classEntity.school.id = :schoolId")
+    List<Object[]> findInvoiceNumberKeysBySchool(Long schoolId);
+    
+    // (enrollmentId, feeStructureId) pairs already billed for a term
+    @Query("SELECT fi.enrollment.id, fi.feeStructure.id FROM FeeInvoice fi WHERE fi.term.id = :termId AND fi.enrollment.id IN :enrollmentIds")
+    List<Object[]> findInvoicedPairsForTerm(Long termId, Collection<Long> enrollmentIds);
+    
+    // [invoiceId, enrollmentId, feeStructureId, invoiceNumber, totalAmount] of a term's invoices, served by the unique key index
+    @Query("SELECT fi.id, fi.enrollment.id, fi.feeStructure.id, fi.invoiceNumber, fi.totalAmount FROM FeeInvoice fi " +
+           "WHERE fi.term.id = :termId AND fi.enrollment.id IN :enrollmentIds")
+    List<Object[]> findInvoiceKeysForTerm(Long termId, Collection<Long> enrollmentIds);
+    
+    // Ledger opening entries: [enrollmentId, invoiceId, invoiceNumber, issueDate, totalAmount, paidAmount]
+    @Query("SELECT fi.enrollment.id, fi.id, fi.invoiceNumber, fi.issueDate, fi.totalAmount, fi.paidAmount FROM FeeInvoice fi " +
+           "WHERE fi.enrollment.id IN :enrollmentIds AND fi.isActive = true ORDER BY fi.enrollment.id, fi.issueDate, fi.id")
+    List<Object[]> findLedgerSeedRows(Collection<Long> enrollmentIds);
+    
+    // One row per status: [status, count, totalAmount, paidAmount, balanceAmount]
+    @Query("SELECT fi.status, COUNT(fi), SUM(fi.totalAmount), SUM(fi.paidAmount), SUM(fi.balanceAmount) FROM FeeInvoice fi " +
+           "WHERE fi.enrollment.classEntity.school.id = :schoolId AND fi.feeStructure.academicYear.id = :academicYearId AND fi.isActive = true " +
+           "GROUP BY fi.status")
+    List<Object[]> getInvoiceTotalsByStatus(Long schoolId, Long academicYearId);
+    
+    // Keyset scan of paid invoices of one fee structure for refund batches: [invoiceId, paidAmount]
+    @Query("SELECT fi.id, fi.paidAmount FROM FeeInvoice fi WHERE fi.feeStructure.id = :feeStructureId " +
+           "AND fi.enrollment.classEntity.school.id = :schoolId AND (:classId IS NULL OR fi.enrollment.classEntity.id = :classId) " +
+           "AND fi.id > :afterId AND fi.paidAmount > 0 AND fi.isActive = true ORDER BY fi.id")
+    List<Object[]> findPaidInvoicesForRefundAfter(Long feeStructureId, Long schoolId, Long classId, Long afterId, Pageable pageable);
 }
-
-
@@ -18,6 +18,20 @@ public interface FeeStructureRepository extends JpaRepository<FeeStructure, Long
     
     Optional<FeeStructure> findBySchoolIdAndNameAndIsActiveTrue(Long schoolId, String name);
     
+    // Loaded with its parents so a cached, detached copy can still be converted to a DTO
+    @Query("SELECT fs FROM FeeStructure fs JOIN FETCH fs.school JOIN FETCH fs.academicYear LEFT JOIN FETCH fs.classEntity WHERE fs.id = :id")
+    Optional<FeeStructure> findByIdWithParents(Long id);
+    
     @Query("SELECT fs FROM FeeStructure fs WHERE fs.school.id = :schoolId AND fs.academicYear.id = :academicYearId AND fs.isActive = true AND fs.effectiveFrom <= :currentDate AND fs.effectiveTo >= :currentDate ORDER BY fs.name")
     List<FeeStructure> findActiveFeeStructuresBySchoolAndAcademicYear(Long schoolId, Long academicYearId, LocalDateTime currentDate);
+    
+    // Flat rows for FeeStructureResolutionIndex:
+    // [id, schoolId, academicYearId, classId, name, feeType, amount, isMandatory, paymentFrequency, effectiveFrom, effectiveTo]
+    @Query("SELECT fs.id, fs.school.id, fs.academicYear.id, c.id, fs.name, fs.feeType, fs.amount, fs.isMandatory, fs.paymentFrequency, " +
+           "fs.effectiveFrom, fs.effectiveTo FROM FeeStructure fs LEFT JOIN fs.classEntity c WHERE fs.isActive = true")
+    List<Object[]> findActiveResolutionRows();
+    
+    // Single row: [count, totalAmount]
+    @Query("SELECT COUNT(fs), SUM(fs.amount) FROM FeeStructure fs WHERE fs.school.id = :schoolId AND fs.academicYear.id = :academicYearId AND fs.isActive = true")
+    List<Object[]> getFeeStructureTotals(Long schoolId, Long academicYearId);
 }
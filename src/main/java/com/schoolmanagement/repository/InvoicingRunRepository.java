@@ -0,0 +1,34 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.InvoicingRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface InvoicingRunRepository extends JpaRepository<InvoicingRun, Long> {
+    
+    Optional<InvoicingRun> findByRunKey(String runKey);
+    
+    // Claims a run for execution unless another worker is actively heartbeating it
+    @Modifying
+    @Query("UPDATE InvoicingRun r SET r.status = 'RUNNING', r.errorMessage = null, r.updatedAt = :now " +
+           "WHERE r.id = :runId AND r.status <> 'COMPLETED' AND (r.status <> 'RUNNING' OR r.updatedAt < :staleBefore)")
+    int claimRun(Long runId, LocalDateTime now, LocalDateTime staleBefore);
+    
+    @Modifying
+    @Query("UPDATE InvoicingRun r SET r.lastEnrollmentId = :lastEnrollmentId, " +
+           "r.enrollmentsProcessed = r.enrollmentsProcessed + :enrollments, " +
+           "r.invoicesCreated = r.invoicesCreated + :created, " +
+           "r.invoicesSkipped = r.invoicesSkipped + :skipped, r.updatedAt = :now WHERE r.id = :runId")
+    int recordCheckpoint(Long runId, Long lastEnrollmentId, long enrollments, long created, long skipped, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE InvoicingRun r SET r.status = :status, r.errorMessage = :errorMessage, r.completedAt = :completedAt, " +
+           "r.updatedAt = :now WHERE r.id = :runId")
+    int finishRun(Long runId, String status, String errorMessage, LocalDateTime completedAt, LocalDateTime now);
+}
@@ -36,6 +36,12 @@ public interface KenyaFeeStructureRepository extends JpaRepository<KenyaFeeStruc
     @Query("SELECT kfs FROM KenyaFeeStructure kfs WHERE kfs.school.id = :schoolId AND kfs.isBursaryEligible = true AND kfs.isActive = true ORDER BY kfs.createdAt DESC")
     List<KenyaFeeStructure> findBursaryEligibleBySchool(Long schoolId);
 
+    // Flat rows for FeeStructureResolutionIndex:
+    // [id, schoolId, academicYearId, classId, feeName, feeCode, feeType, amount, isMandatory, frequency]
+    @Query("SELECT kfs.id, kfs.school.id, kfs.academicYear.id, kfs.classEntity.id, kfs.feeName, kfs.feeCode, kfs.feeType, kfs.amount, " +
+           "kfs.isMandatory, kfs.frequency FROM KenyaFeeStructure kfs WHERE kfs.isActive = true")
+    List<Object[]> findActiveResolutionRows();
+
     @Query("SELECT SUM(kfs.amount) FROM KenyaFeeStructure kfs WHERE kfs.school.id = :schoolId AND kfs.isActive = true")
     Double getTotalFeeAmountBySchool(Long schoolId);
 
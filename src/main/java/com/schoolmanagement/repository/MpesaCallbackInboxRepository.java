@@ -0,0 +1,26 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.MpesaCallbackInbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MpesaCallbackInboxRepository extends JpaRepository<MpesaCallbackInbox, Long> {
+    
+    boolean existsByCheckoutRequestId(String checkoutRequestId);
+    
+    // Lock timeout -2 makes Hibernate emit SKIP LOCKED, so several workers can claim disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM MpesaCallbackInbox m WHERE m.status IN ('RECEIVED', 'PROCESSING') AND m.nextAttemptAt <= :now ORDER BY m.id")
+    List<MpesaCallbackInbox> findClaimable(LocalDateTime now, Pageable pageable);
+}
@@ -1,7 +1,9 @@
 package com.schoolmanagement.repository;
 
 import com.schoolmanagement.entity.NamingSeries;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -18,6 +20,10 @@ public interface NamingSeriesRepository extends JpaRepository<NamingSeries, Long
     
     Optional<NamingSeries> findByNameAndIsActiveTrue(String name);
     
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM NamingSeries n WHERE n.name = :name AND n.isActive = true")
+    Optional<NamingSeries> findByNameForUpdate(@Param("name") String name);
+    
     Optional<NamingSeries> findBySeriesTypeAndIsDefaultTrueAndIsActiveTrue(NamingSeries.SeriesType seriesType);
     
     @Query("SELECT n FROM NamingSeries n WHERE n.seriesType = :seriesType AND n.isActive = true ORDER BY n.isDefault DESC, n.name ASC")
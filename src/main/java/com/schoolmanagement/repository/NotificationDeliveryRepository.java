@@ -0,0 +1,64 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.NotificationDelivery;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NotificationDeliveryRepository extends JpaRepository<NotificationDelivery, Long> {
+
+    // Each dispatcher worker owns one shard; lock timeout -2 makes Hibernate emit SKIP LOCKED so other nodes take other rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT d FROM NotificationDelivery d WHERE d.status = :status AND d.nextAttemptAt <= :now " +
+           "AND MOD(d.id, :shards) = :shard ORDER BY d.id")
+    List<NotificationDelivery> findClaimable(NotificationDelivery.DeliveryStatus status, LocalDateTime now, int shards, int shard,
+                                             Pageable pageable);
+
+    // Loads claimed deliveries with what the channels need to send them
+    @Query("SELECT d FROM NotificationDelivery d JOIN FETCH d.notification n JOIN FETCH n.recipient WHERE d.id IN :ids ORDER BY d.id")
+    List<NotificationDelivery> findByIdInWithRecipient(Collection<Long> ids);
+
+    long countByStatus(NotificationDelivery.DeliveryStatus status);
+
+    @Modifying
+    @Query("UPDATE NotificationDelivery d SET d.status = :sent, d.externalId = :externalId, d.sentAt = :now, d.errorMessage = null " +
+           "WHERE d.id = :id AND d.status = :pending")
+    int markSent(Long id, NotificationDelivery.DeliveryStatus sent, NotificationDelivery.DeliveryStatus pending, String externalId,
+                 LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE NotificationDelivery d SET d.errorMessage = :error, d.nextAttemptAt = :nextAttemptAt WHERE d.id = :id AND d.status = :pending")
+    int scheduleRetry(Long id, NotificationDelivery.DeliveryStatus pending, String error, LocalDateTime nextAttemptAt);
+
+    @Modifying
+    @Query("UPDATE NotificationDelivery d SET d.status = :failed, d.failedAt = :now, d.errorMessage = :error " +
+           "WHERE d.id = :id AND d.status = :pending")
+    int markFailed(Long id, NotificationDelivery.DeliveryStatus failed, NotificationDelivery.DeliveryStatus pending, String error,
+                   LocalDateTime now);
+
+    // A notification counts as sent once any of its channels delivered it
+    @Modifying
+    @Query("UPDATE Notification n SET n.status = :sent, n.sentAt = :now WHERE n.id = :notificationId AND n.status = :pending")
+    int markNotificationSent(Long notificationId, Notification.NotificationStatus sent, Notification.NotificationStatus pending,
+                             LocalDateTime now);
+
+    // ...and as failed only when every channel has given up
+    @Modifying
+    @Query("UPDATE Notification n SET n.status = :failed WHERE n.id = :notificationId AND n.status = :pending " +
+           "AND NOT EXISTS (SELECT d FROM NotificationDelivery d WHERE d.notification.id = :notificationId AND d.status <> :deliveryFailed)")
+    int markNotificationFailedIfAllFailed(Long notificationId, Notification.NotificationStatus failed,
+                                          Notification.NotificationStatus pending, NotificationDelivery.DeliveryStatus deliveryFailed);
+}
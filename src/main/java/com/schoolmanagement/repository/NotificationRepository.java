@@ -5,11 +5,13 @@ import com.schoolmanagement.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -33,21 +35,58 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     
     List<Notification> findByCreatedAtBeforeAndStatusAndIsActiveTrue(LocalDateTime before, Notification.NotificationStatus status);
     
-    @Query("SELECT n FROM Notification n WHERE n.recipient = :recipient AND n.isActive = true AND " +
-           "(LOWER(n.title) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(n.message) LIKE LOWER(CONCAT('%', :search, '%'))) " +
-           "ORDER BY n.createdAt DESC")
-    Page<Notification> findByRecipientAndSearchTerm(@Param("recipient") User recipient, 
-                                                   @Param("search") String search, 
+    // Bulk sends insert through JDBC batches, which return no keys; ids are read back per recipient
+    @Query("SELECT n.id, n.recipient.id FROM Notification n WHERE n.broadcastId = :broadcastId")
+    List<Object[]> findIdsByBroadcastId(@Param("broadcastId") String broadcastId);
+    
+    @Query("SELECT COUNT(n) FROM Notification n WHERE n.recipient.id = :recipientId AND n.readAt IS NULL AND n.isActive = true")
+    long countUnreadByRecipientId(@Param("recipientId") Long recipientId);
+    
+    // Unread counts for many users at once; users with none are absent from the result
+    @Query("SELECT n.recipient.id, COUNT(n) FROM Notification n WHERE n.recipient.id IN :recipientIds " +
+           "AND n.readAt IS NULL AND n.isActive = true GROUP BY n.recipient.id")
+    List<Object[]> countUnreadByRecipientIds(@Param("recipientIds") Collection<Long> recipientIds);
+    
+    // Bulk state changes run in chunks: a keyset page of ids is selected, then updated with one statement
+    @Query("SELECT n.id FROM Notification n WHERE n.recipient.id = :recipientId AND n.readAt IS NULL AND n.isActive = true " +
+           "AND n.id > :afterId ORDER BY n.id")
+    List<Long> findUnreadIdsAfter(@Param("recipientId") Long recipientId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE Notification n SET n.readAt = :readAt, n.updatedAt = :readAt WHERE n.id IN :ids AND n.readAt IS NULL")
+    int markReadByIds(@Param("ids") Collection<Long> ids, @Param("readAt") LocalDateTime readAt);
+    
+    // Rows are (id, recipient id, read at) so callers can tell which unread counts a deactivation changes
+    @Query("SELECT n.id, n.recipient.id, n.readAt FROM Notification n WHERE n.recipient.id = :recipientId AND n.isActive = true " +
+           "AND n.id > :afterId ORDER BY n.id")
+    List<Object[]> findActiveRowsAfter(@Param("recipientId") Long recipientId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT n.id, n.recipient.id, n.readAt FROM Notification n WHERE n.createdAt < :before AND n.isActive = true " +
+           "AND n.id > :afterId ORDER BY n.id")
+    List<Object[]> findActiveRowsCreatedBeforeAfter(@Param("before") LocalDateTime before, @Param("afterId") Long afterId,
+                                                    Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE Notification n SET n.isActive = false, n.updatedAt = :now WHERE n.id IN :ids AND n.isActive = true")
+    int deactivateByIds(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Notification n SET n.isActive = false, n.archivedAt = :now, n.updatedAt = :now WHERE n.id IN :ids AND n.isActive = true")
+    int archiveByIds(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
+    // Notifications a reconnecting event stream missed, oldest first
+    @Query("SELECT n FROM Notification n JOIN FETCH n.recipient LEFT JOIN FETCH n.sender " +
+           "WHERE n.recipient.id = :recipientId AND n.isActive = true AND n.id > :afterId ORDER BY n.id")
+    List<Notification> findActiveForRecipientAfter(@Param("recipientId") Long recipientId, @Param("afterId") Long afterId,
                                                    Pageable pageable);
     
-    @Query("SELECT n FROM Notification n WHERE n.recipient = :recipient AND n.isActive = true AND " +
-           "n.type = :type AND " +
-           "(LOWER(n.title) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(n.message) LIKE LOWER(CONCAT('%', :search, '%'))) " +
-           "ORDER BY n.createdAt DESC")
-    Page<Notification> findByRecipientAndTypeAndSearchTerm(@Param("recipient") User recipient,
-                                                           @Param("type") Notification.NotificationType type,
-                                                           @Param("search") String search,
-                                                           Pageable pageable);
-}
\ No newline at end of file
+    @Query("SELECT n FROM Notification n JOIN FETCH n.recipient LEFT JOIN FETCH n.sender WHERE n.id IN :ids")
+    List<Notification> findWithUsersByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Changes whenever one of the user's notifications is added, edited or deactivated; tells the in-memory search index to rebuild
+    @Query("SELECT COUNT(n), MAX(n.updatedAt) FROM Notification n WHERE n.recipient.id = :recipientId")
+    List<Object[]> findSearchSignature(@Param("recipientId") Long recipientId);
+    
+    @Query("SELECT n.id, n.title, n.message, n.type FROM Notification n WHERE n.recipient.id = :recipientId AND n.isActive = true")
+    List<Object[]> findSearchRowsByRecipientId(@Param("recipientId") Long recipientId);
+}
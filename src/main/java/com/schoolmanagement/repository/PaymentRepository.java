@@ -1,11 +1,16 @@
 package com.schoolmanagement.repository;
 
 import com.schoolmanagement.entity.Payment;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +35,59 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     java.math.BigDecimal getTotalPaidAmountByEnrollment(Long enrollmentId);
     
     Optional<Payment> findByExternalReference(String externalReference);
+    
+    boolean existsByTransactionIdAndIdNot(String transactionId, Long id);
+    
+    // Conditional transitions: only the first caller moves a PENDING payment, so replays cannot credit twice
+    @Modifying
+    @Query("UPDATE Payment p SET p.paymentStatus = 'COMPLETED', p.transactionId = :transactionId, p.paymentDate = :now, " +
+           "p.paymentNotes = COALESCE(p.paymentNotes, :notes), p.updatedAt = :now WHERE p.id = :paymentId AND p.paymentStatus = 'PENDING'")
+    int markCompletedIfPending(Long paymentId, String transactionId, String notes, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Payment p SET p.paymentStatus = 'FAILED', p.paymentNotes = :notes, p.updatedAt = :now " +
+           "WHERE p.id = :paymentId AND p.paymentStatus = 'PENDING'")
+    int markFailedIfPending(Long paymentId, String notes, LocalDateTime now);
+    
+    // Reconciliation: [id, externalReference] of M-Pesa payments still PENDING since before the cutoff,
+    // skipping those whose callback is still waiting in the inbox or parked for review; keyset-paged by id
+    @Query("SELECT p.id, p.externalReference FROM Payment p WHERE p.paymentStatus = 'PENDING' AND p.paymentMethod = 'M_PESA' " +
+           "AND p.paymentDate < :cutoff AND p.id > :afterId AND p.externalReference IS NOT NULL AND NOT EXISTS " +
+           "(SELECT 1 FROM MpesaCallbackInbox cb WHERE cb.checkoutRequestId = p.externalReference AND cb.status IN ('RECEIVED', 'PROCESSING', 'REVIEW')) " +
+           "ORDER BY p.id")
+    List<Object[]> findStalePendingMpesaPayments(LocalDateTime cutoff, Long afterId, Pageable pageable);
+    
+    // Single row: [count, oldest paymentDate] of M-Pesa payments still PENDING since before the cutoff
+    @Query("SELECT COUNT(p), MIN(p.paymentDate) FROM Payment p WHERE p.paymentStatus = 'PENDING' AND p.paymentMethod = 'M_PESA' " +
+           "AND p.paymentDate < :cutoff")
+    List<Object[]> getStalePendingMpesaStats(LocalDateTime cutoff);
+    
+    // Statement import indexes: [transactionId, externalReference, paymentStatus] of a school's payments carrying either key,
+    // and [id, invoiceId, amount, externalReference] of its pending payments
+    @Query("SELECT p.transactionId, p.externalReference, p.paymentStatus FROM Payment p " +
+           "WHERE p.enrollment.classEntity.school.id = :schoolId AND (p.transactionId IS NOT NULL OR p.externalReference IS NOT NULL)")
+    List<Object[]> findReceiptKeysBySchool(Long schoolId);
+    
+    @Query("SELECT p.id, p.invoice.id, p.amount, p.externalReference FROM Payment p " +
+           "WHERE p.paymentStatus = 'PENDING' AND p.enrollment.classEntity.school.id = :schoolId ORDER BY p.id")
+    List<Object[]> findPendingPaymentKeysBySchool(Long schoolId);
+    
+    // Report engine: one row per [schoolId, day, paymentMethod, paymentStatus, count, amount] for COMPLETED and REFUNDED payments
+    @Query("SELECT c.school.id, CAST(p.paymentDate AS LocalDate), p.paymentMethod, p.paymentStatus, COUNT(p), SUM(p.amount) " +
+           "FROM Payment p JOIN p.enrollment e JOIN e.classEntity c " +
+           "WHERE p.paymentDate >= :start AND p.paymentDate < :end AND p.paymentStatus IN ('COMPLETED', 'REFUNDED') AND p.isActive = true " +
+           "AND (:schoolId IS NULL OR c.school.id = :schoolId) " +
+           "GROUP BY c.school.id, CAST(p.paymentDate AS LocalDate), p.paymentMethod, p.paymentStatus")
+    List<Object[]> getDailyPaymentTotals(Long schoolId, LocalDateTime start, LocalDateTime end);
+    
+    // Serialises refunds against the same payments; rows are locked in id order so concurrent batches cannot deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id IN :ids ORDER BY p.id")
+    List<Payment> findAllByIdForUpdate(Collection<Long> ids);
+    
+    // Refund batches: [paymentId, invoiceId, amount, paymentMethod, studentPhone] for completed payments, newest first per invoice
+    @Query("SELECT p.id, p.invoice.id, p.amount, p.paymentMethod, s.phoneNumber FROM Payment p JOIN p.enrollment e JOIN e.student s " +
+           "WHERE p.invoice.id IN :invoiceIds AND p.paymentStatus = 'COMPLETED' AND p.amount > 0 AND p.isActive = true " +
+           "ORDER BY p.invoice.id, p.id DESC")
+    List<Object[]> findRefundablePaymentRows(Collection<Long> invoiceIds);
 }
-
-
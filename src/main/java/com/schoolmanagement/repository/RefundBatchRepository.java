@@ -0,0 +1,44 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.RefundBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefundBatchRepository extends JpaRepository<RefundBatch, Long> {
+    
+    Optional<RefundBatch> findByBatchKey(String batchKey);
+    
+    // Claims a batch for execution unless it already created all its refunds or another worker is heartbeating it
+    @Modifying
+    @Query("UPDATE RefundBatch b SET b.status = 'RUNNING', b.errorMessage = null, b.updatedAt = :now " +
+           "WHERE b.id = :batchId AND b.status NOT IN ('DISPATCHED', 'COMPLETED') AND (b.status <> 'RUNNING' OR b.updatedAt < :staleBefore)")
+    int claimBatch(Long batchId, LocalDateTime now, LocalDateTime staleBefore);
+    
+    @Modifying
+    @Query("UPDATE RefundBatch b SET b.lastInvoiceId = :lastInvoiceId, b.invoicesScanned = b.invoicesScanned + :invoices, " +
+           "b.refundsCreated = b.refundsCreated + :refunds, b.amountRequested = b.amountRequested + :amount, " +
+           "b.updatedAt = :now WHERE b.id = :batchId")
+    int recordCheckpoint(Long batchId, Long lastInvoiceId, long invoices, long refunds, BigDecimal amount, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE RefundBatch b SET b.status = :status, b.errorMessage = :errorMessage, b.updatedAt = :now WHERE b.id = :batchId")
+    int updateStatus(Long batchId, String status, String errorMessage, LocalDateTime now);
+    
+    // Counted as each refund reaches a final state, so progress is visible while payouts are still in flight
+    @Modifying
+    @Query("UPDATE RefundBatch b SET b.refundsProcessed = b.refundsProcessed + :processed, b.refundsFailed = b.refundsFailed + :failed, " +
+           "b.amountRefunded = b.amountRefunded + :amount, b.updatedAt = :now WHERE b.id = :batchId")
+    int recordOutcome(Long batchId, int processed, int failed, BigDecimal amount, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE RefundBatch b SET b.status = 'COMPLETED', b.completedAt = :now, b.updatedAt = :now " +
+           "WHERE b.id = :batchId AND b.status = 'DISPATCHED' AND b.refundsProcessed + b.refundsFailed >= b.refundsCreated")
+    int completeIfSettled(Long batchId, LocalDateTime now);
+}
@@ -0,0 +1,59 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.Refund;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RefundRepository extends JpaRepository<Refund, Long> {
+    
+    Optional<Refund> findByRefundReference(String refundReference);
+    
+    Optional<Refund> findByProviderReference(String providerReference);
+    
+    @Query("SELECT r FROM Refund r JOIN FETCH r.payment p JOIN FETCH p.invoice JOIN FETCH p.enrollment WHERE r.id = :id")
+    Optional<Refund> findByIdWithPayment(Long id);
+    
+    @Query("SELECT r FROM Refund r WHERE r.payment.id = :paymentId AND r.isActive = true ORDER BY r.id")
+    List<Refund> findActiveRefundsByPayment(Long paymentId);
+    
+    // Amount already committed per payment: refunds that are queued, in flight or paid out
+    @Query("SELECT r.payment.id, SUM(r.refundAmount) FROM Refund r WHERE r.payment.id IN :paymentIds " +
+           "AND r.refundStatus IN ('PENDING', 'SUBMITTED', 'PROCESSED') AND r.isActive = true GROUP BY r.payment.id")
+    List<Object[]> sumCommittedAmountsByPayment(Collection<Long> paymentIds);
+    
+    // Refunds created but never handed to a provider, e.g. because the node stopped
+    @Query("SELECT r.id FROM Refund r WHERE r.refundStatus = 'PENDING' AND r.createdAt < :before ORDER BY r.id")
+    List<Long> findStalePendingIds(LocalDateTime before, Pageable pageable);
+    
+    // Claims a refund for its single provider call
+    @Modifying
+    @Query("UPDATE Refund r SET r.refundStatus = 'SUBMITTED', r.updatedAt = :now WHERE r.id = :id AND r.refundStatus = 'PENDING'")
+    int markSubmittedIfPending(Long id, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Refund r SET r.providerReference = :providerReference, r.updatedAt = :now WHERE r.id = :id")
+    int setProviderReference(Long id, String providerReference, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Refund r SET r.failureReason = :reason, r.updatedAt = :now WHERE r.id = :id")
+    int setFailureReason(Long id, String reason, LocalDateTime now);
+    
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Refund r SET r.refundStatus = 'PROCESSED', r.transactionId = :transactionId, r.processedAt = :now, " +
+           "r.updatedAt = :now WHERE r.id = :id AND r.refundStatus IN ('PENDING', 'SUBMITTED')")
+    int markProcessedIfOpen(Long id, String transactionId, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Refund r SET r.refundStatus = 'FAILED', r.failureReason = :reason, r.updatedAt = :now " +
+           "WHERE r.id = :id AND r.refundStatus IN ('PENDING', 'SUBMITTED')")
+    int markFailedIfOpen(Long id, String reason, LocalDateTime now);
+}
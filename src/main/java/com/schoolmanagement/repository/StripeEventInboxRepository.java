@@ -0,0 +1,32 @@
+package com.schoolmanagement.repository;
+
+import com.schoolmanagement.entity.StripeEventInbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StripeEventInboxRepository extends JpaRepository<StripeEventInbox, Long> {
+
+    boolean existsByEventId(String eventId);
+
+    // Lock timeout -2 makes Hibernate emit SKIP LOCKED, so several workers can claim disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM StripeEventInbox e WHERE e.status IN ('RECEIVED', 'PROCESSING') AND e.nextAttemptAt <= :now ORDER BY e.id")
+    List<StripeEventInbox> findClaimable(LocalDateTime now, Pageable pageable);
+
+    // Stripe stops redelivering after three days, so settled rows past retention no longer guard anything
+    @Modifying
+    @Query("DELETE FROM StripeEventInbox e WHERE e.status = 'PROCESSED' AND e.processedAt < :cutoff")
+    int deleteProcessedBefore(LocalDateTime cutoff);
+}
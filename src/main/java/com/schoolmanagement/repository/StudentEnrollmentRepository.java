@@ -1,6 +1,7 @@
 package com.schoolmanagement.repository;
 
 import com.schoolmanagement.entity.StudentEnrollment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -15,6 +16,9 @@ public interface StudentEnrollmentRepository extends JpaRepository<StudentEnroll
     
     List<StudentEnrollment> findByStudentIdAndIsActiveTrue(Long studentId);
     
+    @Query("SELECT se.id FROM StudentEnrollment se WHERE se.student.id = :studentId ORDER BY se.enrollmentDate DESC, se.id DESC")
+    List<Long> findEnrollmentIdsByStudentId(Long studentId);
+    
     Optional<StudentEnrollment> findByEnrollmentNumber(String enrollmentNumber);
     
     @Query("SELECT se FROM StudentEnrollment se WHERE se.classEntity.id = :classId AND se.isActive = true ORDER BY se.student.firstName, se.student.lastName")
@@ -22,6 +26,11 @@ public interface StudentEnrollmentRepository extends JpaRepository<StudentEnroll
     
     @Query("SELECT se FROM StudentEnrollment se WHERE se.student.id = :studentId AND se.isActive = true ORDER BY se.enrollmentDate DESC")
     List<StudentEnrollment> findActiveEnrollmentsByStudent(Long studentId);
+    
+    // Keyset scan of (enrollmentId, classId) for bulk jobs, ordered by id
+    @Query("SELECT se.id, se.classEntity.id FROM StudentEnrollment se WHERE se.classEntity.school.id = :schoolId AND se.isActive = true " +
+           "AND se.id > :afterId AND (:classId IS NULL OR se.classEntity.id = :classId) ORDER BY se.id")
+    List<Object[]> findActiveEnrollmentKeysAfter(Long schoolId, Long classId, Long afterId, Pageable pageable);
 }
 
 
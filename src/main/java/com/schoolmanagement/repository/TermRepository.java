@@ -19,6 +19,9 @@ public interface TermRepository extends JpaRepository<Term, Long> {
     
     Optional<Term> findByIdAndIsActiveTrue(Long id);
     
+    @Query("SELECT t FROM Term t JOIN FETCH t.academicYear ay JOIN FETCH ay.school WHERE t.id = :id")
+    Optional<Term> findByIdWithParents(@Param("id") Long id);
+    
     @Query("SELECT t FROM Term t WHERE t.academicYear.id = :academicYearId AND t.isActive = true AND t.startDate <= :date AND t.endDate >= :date")
     Optional<Term> findCurrentTermByAcademicYearAndDate(@Param("academicYearId") Long academicYearId, @Param("date") LocalDate date);
     
@@ -27,4 +30,8 @@ public interface TermRepository extends JpaRepository<Term, Long> {
     
     @Query("SELECT COUNT(t) FROM Term t WHERE t.academicYear.id = :academicYearId AND t.isActive = true")
     Long countByAcademicYearIdAndIsActiveTrue(@Param("academicYearId") Long academicYearId);
-}
\ No newline at end of file
+    
+    // [id, academicYearId, startDate, endDate, sequence]
+    @Query("SELECT t.id, t.academicYear.id, t.startDate, t.endDate, t.sequence FROM Term t")
+    List<Object[]> findTermWindows();
+}
@@ -11,7 +11,6 @@ import com.schoolmanagement.entity.Notification;
 import com.schoolmanagement.exception.BadRequestException;
 import com.schoolmanagement.exception.ResourceNotFoundException;
 import com.schoolmanagement.repository.RefreshTokenRepository;
-import com.schoolmanagement.repository.RoleRepository;
 import com.schoolmanagement.repository.UserRepository;
 import com.schoolmanagement.security.JwtUtils;
 import lombok.RequiredArgsConstructor;
@@ -36,7 +35,7 @@ public class AuthService {
     
     private final AuthenticationManager authenticationManager;
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final RefreshTokenRepository refreshTokenRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
@@ -80,7 +79,7 @@ public class AuthService {
         
         try {
             Role.RoleName roleEnum = Role.RoleName.valueOf(roleName);
-            Role role = roleRepository.findByName(roleEnum)
+            Role role = referenceDataCache.findRole(roleEnum)
                     .orElseThrow(() -> new ResourceNotFoundException("Role not found: " + roleName));
             roles.add(role);
         } catch (IllegalArgumentException e) {
@@ -0,0 +1,353 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.BulkInvoiceRequestDto;
+import com.schoolmanagement.dto.InvoicingRunDto;
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.InvoicingRun;
+import com.schoolmanagement.entity.School;
+import com.schoolmanagement.entity.Term;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.InvoicingRunRepository;
+import com.schoolmanagement.repository.StudentEnrollmentRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Generates term invoices for every active enrollment of a school (or a single class) in one job.
+ * Enrollments are read in id order in chunks; each chunk inserts its invoices with a JDBC batch and
+ * advances the run checkpoint in the same transaction, so a crashed run resumes where it stopped.
+ * The (enrollment, fee structure, term) unique constraint guarantees nobody is billed twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkInvoicingService {
+
+    private static final String STATUS_PENDING = "PENDING";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+    private static final String STATUS_FAILED = "FAILED";
+    private static final int JDBC_BATCH_SIZE = 500;
+
+    private static final String INSERT_INVOICE_SQL = "INSERT INTO fee_invoices (invoice_number, issue_date, due_date, total_amount, " +
+            "paid_amount, balance_amount, status, is_active, created_at, updated_at, student_enrollment_id, fee_structure_id, term_id) " +
+            "VALUES (?, ?, ?, ?, 0, ?, 'PENDING', TRUE, ?, ?, ?, ?, ?)";
+
+    private final InvoicingRunRepository invoicingRunRepository;
+    private final StudentEnrollmentRepository studentEnrollmentRepository;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final NamingSeriesAllocator namingSeriesAllocator;
+    private final EnrollmentLedgerService enrollmentLedgerService;
+    private final ReferenceDataCache referenceDataCache;
+    private final FeeStructureResolutionIndex feeStructureResolutionIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Runs execute one at a time so a large school cannot starve the connection pool
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-invoicing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${finance.invoicing.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${finance.invoicing.stale-after-seconds:300}")
+    private long staleAfterSeconds;
+
+    public ApiResponse<InvoicingRunDto> startRun(BulkInvoiceRequestDto request) {
+        try {
+            log.info("Starting bulk invoicing for school: {}, term: {}, class: {}, fee structures: {}",
+                    request.getSchoolId(), request.getTermId(), request.getClassId(), request.getFeeStructureIds());
+
+            Optional<School> school = referenceDataCache.findSchool(request.getSchoolId());
+            if (school.isEmpty()) {
+                return ApiResponse.error("School not found");
+            }
+
+            Optional<Term> term = referenceDataCache.findTerm(request.getTermId());
+            if (term.isEmpty()) {
+                return ApiResponse.error("Term not found");
+            }
+
+            Long termYearId = term.get().getAcademicYear().getId();
+            FeeStructureResolutionIndex.ResolvedFees termFees = feeStructureResolutionIndex.resolve(
+                    request.getSchoolId(), termYearId, request.getClassId(), request.getTermId());
+            List<Long> feeStructureIds = request.getFeeStructureIds() != null && !request.getFeeStructureIds().isEmpty()
+                    ? request.getFeeStructureIds().stream().distinct().sorted().toList()
+                    : termFees.feeStructureIds().stream().sorted().toList();
+            if (feeStructureIds.isEmpty()) {
+                return ApiResponse.error("No fee structures apply to this term");
+            }
+            Map<Long, FeeStructure> feeStructures = new HashMap<>();
+            for (Long feeStructureId : feeStructureIds) {
+                referenceDataCache.findFeeStructure(feeStructureId).ifPresent(fs -> feeStructures.put(fs.getId(), fs));
+            }
+            for (Long feeStructureId : feeStructureIds) {
+                FeeStructure feeStructure = feeStructures.get(feeStructureId);
+                if (feeStructure == null || !Boolean.TRUE.equals(feeStructure.getIsActive())) {
+                    return ApiResponse.error("Fee structure not found: " + feeStructureId);
+                }
+                if (!request.getSchoolId().equals(feeStructure.getSchool().getId())) {
+                    return ApiResponse.error("Fee structure " + feeStructureId + " does not belong to this school");
+                }
+                if (!termYearId.equals(feeStructure.getAcademicYear().getId())) {
+                    return ApiResponse.error("Fee structure " + feeStructureId + " does not belong to the term's academic year");
+                }
+                if (!termFees.feeStructureIds().contains(feeStructureId)) {
+                    return ApiResponse.error("Fee structure " + feeStructureId + " does not apply in this term");
+                }
+            }
+
+            String feeStructureKey = feeStructureIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+            String runKey = request.getRunKey() != null && !request.getRunKey().isBlank()
+                    ? request.getRunKey().trim()
+                    : "school-" + request.getSchoolId() + "-term-" + request.getTermId()
+                        + "-class-" + (request.getClassId() != null ? request.getClassId() : "all") + "-fs-" + feeStructureKey;
+
+            InvoicingRun run = invoicingRunRepository.findByRunKey(runKey).orElse(null);
+            if (run == null) {
+                run = createRun(runKey, school.get(), term.get(), request, feeStructureKey);
+            } else if (!run.getFeeStructureIds().equals(feeStructureKey) || !request.getTermId().equals(run.getTerm().getId())
+                    || !request.getSchoolId().equals(run.getSchool().getId())) {
+                return ApiResponse.error("Run key '" + runKey + "' was already used for a different invoicing request");
+            }
+
+            if (STATUS_COMPLETED.equals(run.getStatus())) {
+                return ApiResponse.success("Bulk invoicing run already completed", convertToDto(run));
+            }
+
+            Long runId = run.getId();
+            LocalDateTime now = LocalDateTime.now();
+            Integer claimed = transactionTemplate.execute(status ->
+                    invoicingRunRepository.claimRun(runId, now, now.minusSeconds(staleAfterSeconds)));
+            if (claimed == null || claimed == 0) {
+                return ApiResponse.success("Bulk invoicing run already in progress", convertToDto(run));
+            }
+
+            List<StructureSpec> structures = feeStructureIds.stream()
+                    .map(feeStructures::get)
+                    .map(fs -> new StructureSpec(fs.getId(), fs.getAmount()))
+                    .toList();
+            InvoicingPlan plan = new InvoicingPlan(runId, request.getSchoolId(), termYearId, request.getTermId(), run.getClassId(),
+                    run.getDueDate(), structures);
+            long resumeAfter = run.getLastEnrollmentId();
+            executor.execute(() -> execute(plan, resumeAfter));
+
+            return ApiResponse.success(resumeAfter > 0 ? "Bulk invoicing run resumed" : "Bulk invoicing run started",
+                    convertToDto(invoicingRunRepository.findById(runId).orElse(run)));
+
+        } catch (Exception e) {
+            log.error("Error starting bulk invoicing: {}", e.getMessage());
+            return ApiResponse.error("Failed to start bulk invoicing: " + e.getMessage());
+        }
+    }
+
+    public ApiResponse<InvoicingRunDto> getRun(Long runId) {
+        try {
+            Optional<InvoicingRun> run = invoicingRunRepository.findById(runId);
+            if (run.isEmpty()) {
+                return ApiResponse.error("Invoicing run not found");
+            }
+            return ApiResponse.success("Invoicing run retrieved successfully", convertToDto(run.get()));
+        } catch (Exception e) {
+            log.error("Error fetching invoicing run {}: {}", runId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve invoicing run: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private InvoicingRun createRun(String runKey, School school, Term term, BulkInvoiceRequestDto request, String feeStructureKey) {
+        InvoicingRun run = InvoicingRun.builder()
+                .runKey(runKey)
+                .school(school)
+                .term(term)
+                .classId(request.getClassId())
+                .feeStructureIds(feeStructureKey)
+                .dueDate(request.getDueDate() != null ? request.getDueDate() : LocalDate.now().plusDays(30))
+                .status(STATUS_PENDING)
+                .updatedAt(LocalDateTime.now())
+                .build();
+        try {
+            return invoicingRunRepository.saveAndFlush(run);
+        } catch (DataIntegrityViolationException e) {
+            // Another request created the same run concurrently
+            return invoicingRunRepository.findByRunKey(runKey).orElseThrow(() -> e);
+        }
+    }
+
+    void execute(InvoicingPlan plan, long resumeAfter) {
+        long started = System.currentTimeMillis();
+        long lastEnrollmentId = resumeAfter;
+        long created = 0;
+        long skipped = 0;
+        try {
+            while (true) {
+                long after = lastEnrollmentId;
+                ChunkResult chunk = transactionTemplate.execute(status -> processChunk(plan, after));
+                if (chunk == null || chunk.enrollments() == 0) {
+                    break;
+                }
+                lastEnrollmentId = chunk.lastEnrollmentId();
+                created += chunk.created();
+                skipped += chunk.skipped();
+            }
+
+            transactionTemplate.executeWithoutResult(status -> invoicingRunRepository.finishRun(
+                    plan.runId(), STATUS_COMPLETED, null, LocalDateTime.now(), LocalDateTime.now()));
+            log.info("Bulk invoicing run {} completed: {} invoices created, {} skipped in {} ms",
+                    plan.runId(), created, skipped, System.currentTimeMillis() - started);
+
+        } catch (Exception e) {
+            log.error("Bulk invoicing run {} failed after enrollment {}: {}", plan.runId(), lastEnrollmentId, e.getMessage());
+            String message = e.getMessage() != null && e.getMessage().length() > 500 ? e.getMessage().substring(0, 500) : e.getMessage();
+            try {
+                transactionTemplate.executeWithoutResult(status -> invoicingRunRepository.finishRun(
+                        plan.runId(), STATUS_FAILED, message, null, LocalDateTime.now()));
+            } catch (Exception statusError) {
+                log.error("Could not mark invoicing run {} as failed: {}", plan.runId(), statusError.getMessage());
+            }
+        } finally {
+            if (created > 0) {
+                financeDashboardCache.evictSchool(plan.schoolId());
+            }
+        }
+    }
+
+    private ChunkResult processChunk(InvoicingPlan plan, long afterEnrollmentId) {
+        List<Object[]> enrollments = studentEnrollmentRepository.findActiveEnrollmentKeysAfter(
+                plan.schoolId(), plan.classId(), afterEnrollmentId, PageRequest.of(0, chunkSize));
+        if (enrollments.isEmpty()) {
+            return new ChunkResult(0, afterEnrollmentId, 0, 0);
+        }
+
+        List<Long> enrollmentIds = enrollments.stream().map(row -> (Long) row[0]).toList();
+        Set<String> alreadyInvoiced = new HashSet<>();
+        for (Object[] pair : feeInvoiceRepository.findInvoicedPairsForTerm(plan.termId(), enrollmentIds)) {
+            alreadyInvoiced.add(pair[0] + ":" + pair[1]);
+        }
+
+        List<PendingInvoice> pending = new ArrayList<>();
+        long skipped = 0;
+        for (Object[] enrollment : enrollments) {
+            Long enrollmentId = (Long) enrollment[0];
+            Long classId = (Long) enrollment[1];
+            // Class-specific fee structures only apply to their own class; resolved keys are memoised by the index
+            Set<Long> applicable = feeStructureResolutionIndex.resolve(plan.schoolId(), plan.academicYearId(), classId, plan.termId())
+                    .feeStructureIds();
+            for (StructureSpec structure : plan.structures()) {
+                if (!applicable.contains(structure.id())) {
+                    continue;
+                }
+                if (alreadyInvoiced.contains(enrollmentId + ":" + structure.id())) {
+                    skipped++;
+                    continue;
+                }
+                pending.add(new PendingInvoice(enrollmentId, structure));
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            LocalDate issueDate = LocalDate.now();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            // One series reservation per chunk rather than one per invoice
+            Iterator<String> invoiceNumbers = namingSeriesAllocator.nextBatch(NamingSeriesAllocator.INVOICE_SERIES, pending.size()).iterator();
+            jdbcTemplate.batchUpdate(INSERT_INVOICE_SQL, pending, JDBC_BATCH_SIZE, (ps, invoice) -> {
+                ps.setString(1, invoiceNumbers.next());
+                ps.setObject(2, issueDate);
+                ps.setObject(3, plan.dueDate());
+                ps.setBigDecimal(4, invoice.structure().amount());
+                ps.setBigDecimal(5, invoice.structure().amount());
+                ps.setTimestamp(6, now);
+                ps.setTimestamp(7, now);
+                ps.setLong(8, invoice.enrollmentId());
+                ps.setLong(9, invoice.structure().id());
+                ps.setLong(10, plan.termId());
+            });
+            postLedgerDebits(plan.termId(), enrollmentIds, pending);
+        }
+
+        long lastEnrollmentId = enrollmentIds.get(enrollmentIds.size() - 1);
+        invoicingRunRepository.recordCheckpoint(plan.runId(), lastEnrollmentId, enrollments.size(),
+                pending.size(), skipped, LocalDateTime.now());
+        return new ChunkResult(enrollments.size(), lastEnrollmentId, pending.size(), skipped);
+    }
+
+    // Batch inserts return no keys; the new invoices are read back through the (enrollment, structure, term) unique index
+    private void postLedgerDebits(Long termId, List<Long> enrollmentIds, List<PendingInvoice> pending) {
+        Set<String> created = new HashSet<>();
+        for (PendingInvoice invoice : pending) {
+            created.add(invoice.enrollmentId() + ":" + invoice.structure().id());
+        }
+        List<EnrollmentLedgerService.InvoicePosting> postings = new ArrayList<>(pending.size());
+        for (Object[] row : feeInvoiceRepository.findInvoiceKeysForTerm(termId, enrollmentIds)) {
+            if (created.contains(row[1] + ":" + row[2])) {
+                postings.add(new EnrollmentLedgerService.InvoicePosting((Long) row[1], (Long) row[0], (String) row[3], (BigDecimal) row[4]));
+            }
+        }
+        enrollmentLedgerService.recordInvoices(postings);
+    }
+
+    private InvoicingRunDto convertToDto(InvoicingRun run) {
+        return InvoicingRunDto.builder()
+                .id(run.getId())
+                .runKey(run.getRunKey())
+                .schoolId(run.getSchool().getId())
+                .termId(run.getTerm().getId())
+                .classId(run.getClassId())
+                .feeStructureIds(run.getFeeStructureIds())
+                .dueDate(run.getDueDate())
+                .status(run.getStatus())
+                .lastEnrollmentId(run.getLastEnrollmentId())
+                .enrollmentsProcessed(run.getEnrollmentsProcessed())
+                .invoicesCreated(run.getInvoicesCreated())
+                .invoicesSkipped(run.getInvoicesSkipped())
+                .errorMessage(run.getErrorMessage())
+                .createdAt(run.getCreatedAt())
+                .updatedAt(run.getUpdatedAt())
+                .completedAt(run.getCompletedAt())
+                .build();
+    }
+
+    record StructureSpec(Long id, BigDecimal amount) {
+    }
+
+    record InvoicingPlan(Long runId, Long schoolId, Long academicYearId, Long termId, Long classId, LocalDate dueDate,
+                         List<StructureSpec> structures) {
+    }
+
+    private record PendingInvoice(Long enrollmentId, StructureSpec structure) {
+    }
+
+    private record ChunkResult(int enrollments, long lastEnrollmentId, long created, long skipped) {
+    }
+}
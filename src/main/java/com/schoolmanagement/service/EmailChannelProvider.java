@@ -0,0 +1,65 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationDelivery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delivers EMAIL notifications over SMTP through {@link SimpleEmailService}. SMTP takes one message per
+ * request, so batches hold a single message. Stands aside when the stub providers are enabled, since only
+ * one provider may serve a channel.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.channels.stub.enabled", havingValue = "false", matchIfMissing = true)
+public class EmailChannelProvider implements NotificationChannelProvider {
+
+    private final SimpleEmailService simpleEmailService;
+    private final double requestsPerSecond;
+
+    public EmailChannelProvider(SimpleEmailService simpleEmailService,
+                                @Value("${notifications.channels.email.requests-per-second:5}") double requestsPerSecond) {
+        this.simpleEmailService = simpleEmailService;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    @Override
+    public String name() {
+        return "smtp-email";
+    }
+
+    @Override
+    public NotificationDelivery.DeliveryChannel channel() {
+        return NotificationDelivery.DeliveryChannel.EMAIL;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return 1;
+    }
+
+    @Override
+    public double requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    @Override
+    public List<SendResult> send(List<ChannelMessage> messages) {
+        List<SendResult> results = new ArrayList<>(messages.size());
+        for (ChannelMessage message : messages) {
+            if (message.address() == null || message.address().isBlank()) {
+                results.add(SendResult.rejected(null, "Recipient has no email address"));
+            } else if (simpleEmailService.sendSimpleEmail(message.address(), message.subject(), message.body())) {
+                // SMTP hands back no message id; the delivery id keeps the log row traceable
+                results.add(SendResult.accepted("smtp-" + message.deliveryId(), null));
+            } else {
+                // SimpleEmailService logs the cause; the dispatcher retries with backoff
+                results.add(SendResult.rejected(null, "SMTP send failed"));
+            }
+        }
+        return results;
+    }
+}
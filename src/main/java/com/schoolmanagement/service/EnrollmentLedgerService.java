@@ -0,0 +1,405 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.EnrollmentBalanceDto;
+import com.schoolmanagement.dto.EnrollmentStatementDto;
+import com.schoolmanagement.entity.EnrollmentBalance;
+import com.schoolmanagement.entity.EnrollmentLedgerEntry;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.repository.EnrollmentBalanceRepository;
+import com.schoolmanagement.repository.EnrollmentLedgerEntryRepository;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.StudentEnrollmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Append-only ledger per student enrollment: invoices are debits, payments are credits and refunds are debits.
+ * Every entry updates the enrollment's EnrollmentBalance row in the caller's transaction, so a balance check
+ * is a single-row read and statements page through the ledger instead of re-summing invoices and payments.
+ * Anything that changes what an enrollment owes must post an entry here in the same transaction.
+ */
+@Service
+@Slf4j
+@Transactional
+public class EnrollmentLedgerService {
+
+    public static final String ENTRY_INVOICE = "INVOICE";
+    public static final String ENTRY_PAYMENT = "PAYMENT";
+    public static final String ENTRY_REFUND = "REFUND";
+    public static final String ENTRY_ADJUSTMENT = "ADJUSTMENT";
+
+    private static final int MAX_STATEMENT_PAGE_SIZE = 200;
+    private static final int JDBC_BATCH_SIZE = 500;
+
+    private static final String INSERT_BALANCE_SQL = "INSERT INTO enrollment_balances (student_enrollment_id, balance, total_debits, " +
+            "total_credits, entry_count, last_entry_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String APPLY_DEBITS_SQL = "UPDATE enrollment_balances SET balance = balance + ?, total_debits = total_debits + ?, " +
+            "entry_count = entry_count + ?, last_entry_at = ?, updated_at = ? WHERE student_enrollment_id = ?";
+    private static final String INSERT_ENTRY_SQL = "INSERT INTO enrollment_ledger_entries (student_enrollment_id, entry_type, debit_amount, " +
+            "credit_amount, balance_after, invoice_id, payment_id, reference, description, entry_date, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final EnrollmentBalanceRepository enrollmentBalanceRepository;
+    private final EnrollmentLedgerEntryRepository enrollmentLedgerEntryRepository;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final StudentEnrollmentRepository studentEnrollmentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate openingTransaction;
+
+    public EnrollmentLedgerService(EnrollmentBalanceRepository enrollmentBalanceRepository,
+                                   EnrollmentLedgerEntryRepository enrollmentLedgerEntryRepository,
+                                   FeeInvoiceRepository feeInvoiceRepository,
+                                   StudentEnrollmentRepository studentEnrollmentRepository,
+                                   JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager) {
+        this.enrollmentBalanceRepository = enrollmentBalanceRepository;
+        this.enrollmentLedgerEntryRepository = enrollmentLedgerEntryRepository;
+        this.feeInvoiceRepository = feeInvoiceRepository;
+        this.studentEnrollmentRepository = studentEnrollmentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.openingTransaction = new TransactionTemplate(transactionManager);
+        this.openingTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void recordInvoice(FeeInvoice invoice) {
+        append(invoice.getEnrollment().getId(), ENTRY_INVOICE, invoice.getTotalAmount(), BigDecimal.ZERO,
+                invoice.getId(), null, invoice.getInvoiceNumber(), "Invoice " + invoice.getInvoiceNumber());
+    }
+
+    public void recordPayment(Payment payment) {
+        append(payment.getEnrollment().getId(), ENTRY_PAYMENT, BigDecimal.ZERO, payment.getAmount(),
+                payment.getInvoice().getId(), payment.getId(), payment.getPaymentReference(), "Payment via " + payment.getPaymentMethod());
+    }
+
+    // Refund payments carry negative amounts
+    public void recordRefund(Payment refund) {
+        append(refund.getEnrollment().getId(), ENTRY_REFUND, refund.getAmount().abs(), BigDecimal.ZERO,
+                refund.getInvoice().getId(), refund.getId(), refund.getPaymentReference(), refund.getPaymentNotes());
+    }
+
+    // A positive amount is posted as a debit, a negative amount as a credit
+    public void recordAdjustment(Long enrollmentId, Long invoiceId, BigDecimal amount, String reference, String description) {
+        if (amount.signum() == 0) {
+            return;
+        }
+        append(enrollmentId, ENTRY_ADJUSTMENT, amount.signum() > 0 ? amount : BigDecimal.ZERO,
+                amount.signum() < 0 ? amount.negate() : BigDecimal.ZERO, invoiceId, null, reference, description);
+    }
+
+    /**
+     * Posts invoice debits for many enrollments with one batched UPDATE, one balance read and one batched INSERT,
+     * for bulk invoicing. Balance rows are updated in enrollment order so concurrent runs lock them in the same order.
+     */
+    public void recordInvoices(List<InvoicePosting> postings) {
+        if (postings.isEmpty()) {
+            return;
+        }
+        Map<Long, List<InvoicePosting>> byEnrollment = new TreeMap<>();
+        for (InvoicePosting posting : postings) {
+            byEnrollment.computeIfAbsent(posting.enrollmentId(), key -> new ArrayList<>()).add(posting);
+        }
+        ensureBalances(byEnrollment.keySet());
+
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp timestamp = Timestamp.valueOf(now);
+        List<Map.Entry<Long, List<InvoicePosting>>> groups = new ArrayList<>(byEnrollment.entrySet());
+        jdbcTemplate.batchUpdate(APPLY_DEBITS_SQL, groups, JDBC_BATCH_SIZE, (ps, group) -> {
+            BigDecimal total = sum(group.getValue());
+            ps.setBigDecimal(1, total);
+            ps.setBigDecimal(2, total);
+            ps.setInt(3, group.getValue().size());
+            ps.setTimestamp(4, timestamp);
+            ps.setTimestamp(5, timestamp);
+            ps.setLong(6, group.getKey());
+        });
+
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Object[] row : enrollmentBalanceRepository.findBalances(byEnrollment.keySet())) {
+            balances.put((Long) row[0], (BigDecimal) row[1]);
+        }
+        List<EntryRow> entries = new ArrayList<>(postings.size());
+        for (Map.Entry<Long, List<InvoicePosting>> group : groups) {
+            // Walk forward from the balance before this batch so every entry carries its own running balance
+            BigDecimal running = balances.get(group.getKey()).subtract(sum(group.getValue()));
+            for (InvoicePosting posting : group.getValue()) {
+                running = running.add(posting.amount());
+                entries.add(new EntryRow(posting.enrollmentId(), ENTRY_INVOICE, posting.amount(), BigDecimal.ZERO, running,
+                        posting.invoiceId(), null, posting.invoiceNumber(), "Invoice " + posting.invoiceNumber(), now));
+            }
+        }
+        insertEntries(entries);
+    }
+
+    @Transactional(readOnly = true)
+    public ApiResponse<EnrollmentBalanceDto> getBalance(Long enrollmentId) {
+        try {
+            Optional<EnrollmentBalance> balance = loadBalance(enrollmentId);
+            if (balance.isEmpty()) {
+                return ApiResponse.error("Student enrollment not found");
+            }
+            return ApiResponse.success("Balance retrieved successfully", convertToDto(balance.get()));
+        } catch (Exception e) {
+            log.error("Error fetching balance for enrollment {}: {}", enrollmentId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve balance: " + e.getMessage());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ApiResponse<List<EnrollmentBalanceDto>> getStudentBalances(Long studentId) {
+        try {
+            List<Long> enrollmentIds = studentEnrollmentRepository.findEnrollmentIdsByStudentId(studentId);
+            if (enrollmentIds.isEmpty()) {
+                return ApiResponse.error("No enrollments found for student");
+            }
+            ensureBalances(enrollmentIds);
+            Map<Long, EnrollmentBalance> balances = new HashMap<>();
+            for (EnrollmentBalance balance : enrollmentBalanceRepository.findByEnrollmentIds(enrollmentIds)) {
+                balances.put(balance.getEnrollmentId(), balance);
+            }
+            // Latest enrollment first
+            List<EnrollmentBalanceDto> balanceDtos = enrollmentIds.stream()
+                    .map(balances::get)
+                    .map(this::convertToDto)
+                    .toList();
+            return ApiResponse.success("Student balances retrieved successfully", balanceDtos);
+        } catch (Exception e) {
+            log.error("Error fetching balances for student {}: {}", studentId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve student balances: " + e.getMessage());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ApiResponse<EnrollmentStatementDto> getStatement(Long enrollmentId, Long beforeId, int size) {
+        try {
+            Optional<EnrollmentBalance> balance = loadBalance(enrollmentId);
+            if (balance.isEmpty()) {
+                return ApiResponse.error("Student enrollment not found");
+            }
+            int pageSize = Math.max(1, Math.min(size, MAX_STATEMENT_PAGE_SIZE));
+            // One extra row tells whether another page exists
+            PageRequest page = PageRequest.of(0, pageSize + 1);
+            List<EnrollmentLedgerEntry> entries = beforeId == null
+                    ? enrollmentLedgerEntryRepository.findLatestEntries(enrollmentId, page)
+                    : enrollmentLedgerEntryRepository.findEntriesBefore(enrollmentId, beforeId, page);
+
+            boolean hasMore = entries.size() > pageSize;
+            List<EnrollmentLedgerEntry> pageEntries = hasMore ? entries.subList(0, pageSize) : entries;
+            EnrollmentStatementDto statement = EnrollmentStatementDto.builder()
+                    .balance(convertToDto(balance.get()))
+                    .entries(pageEntries.stream().map(this::convertToDto).toList())
+                    .nextCursor(hasMore ? pageEntries.get(pageEntries.size() - 1).getId() : null)
+                    .hasMore(hasMore)
+                    .build();
+            return ApiResponse.success("Statement retrieved successfully", statement);
+        } catch (Exception e) {
+            log.error("Error fetching statement for enrollment {}: {}", enrollmentId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve statement: " + e.getMessage());
+        }
+    }
+
+    private Optional<EnrollmentBalance> loadBalance(Long enrollmentId) {
+        Optional<EnrollmentBalance> balance = enrollmentBalanceRepository.findById(enrollmentId);
+        if (balance.isPresent() || !studentEnrollmentRepository.existsById(enrollmentId)) {
+            return balance;
+        }
+        ensureBalances(List.of(enrollmentId));
+        return enrollmentBalanceRepository.findById(enrollmentId);
+    }
+
+    private void append(Long enrollmentId, String entryType, BigDecimal debit, BigDecimal credit, Long invoiceId, Long paymentId,
+                        String reference, String description) {
+        LocalDateTime now = LocalDateTime.now();
+        if (enrollmentBalanceRepository.applyEntry(enrollmentId, debit, credit, now) == 0) {
+            ensureBalances(List.of(enrollmentId));
+            if (enrollmentBalanceRepository.applyEntry(enrollmentId, debit, credit, now) == 0) {
+                throw new IllegalStateException("Ledger balance missing for enrollment: " + enrollmentId);
+            }
+        }
+        // The row lock taken by the UPDATE keeps this read consistent with the entry written below
+        BigDecimal balanceAfter = enrollmentBalanceRepository.findBalance(enrollmentId);
+        enrollmentLedgerEntryRepository.save(EnrollmentLedgerEntry.builder()
+                .enrollmentId(enrollmentId)
+                .entryType(entryType)
+                .debitAmount(debit)
+                .creditAmount(credit)
+                .balanceAfter(balanceAfter)
+                .invoiceId(invoiceId)
+                .paymentId(paymentId)
+                .reference(reference)
+                .description(truncate(description, 255))
+                .entryDate(now)
+                .build());
+    }
+
+    /**
+     * Creates missing balance rows in their own transaction, opened from the invoices committed so far.
+     * Changes the caller has not committed yet are excluded here and posted by the caller as normal entries.
+     */
+    void ensureBalances(Collection<Long> enrollmentIds) {
+        if (enrollmentBalanceRepository.findExistingEnrollmentIds(enrollmentIds).size() == enrollmentIds.size()) {
+            return;
+        }
+        try {
+            openingTransaction.executeWithoutResult(status -> openBalances(enrollmentIds));
+        } catch (DataIntegrityViolationException e) {
+            // Another transaction opened some of these first; open the rest one at a time
+            log.debug("Concurrent ledger opening for enrollments {}: {}", enrollmentIds, e.getMessage());
+            for (Long enrollmentId : enrollmentIds) {
+                try {
+                    openingTransaction.executeWithoutResult(status -> openBalances(List.of(enrollmentId)));
+                } catch (DataIntegrityViolationException ignored) {
+                    // Opened concurrently
+                }
+            }
+        }
+    }
+
+    private void openBalances(Collection<Long> enrollmentIds) {
+        TreeSet<Long> missing = new TreeSet<>(enrollmentIds);
+        missing.removeAll(enrollmentBalanceRepository.findExistingEnrollmentIds(enrollmentIds));
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, RunningTotals> totals = new LinkedHashMap<>();
+        missing.forEach(enrollmentId -> totals.put(enrollmentId, new RunningTotals()));
+        List<EntryRow> entries = new ArrayList<>();
+        for (Object[] row : feeInvoiceRepository.findLedgerSeedRows(missing)) {
+            Long enrollmentId = (Long) row[0];
+            Long invoiceId = (Long) row[1];
+            String invoiceNumber = (String) row[2];
+            LocalDateTime issuedAt = ((LocalDate) row[3]).atStartOfDay();
+            BigDecimal totalAmount = (BigDecimal) row[4];
+            BigDecimal paidAmount = (BigDecimal) row[5];
+
+            RunningTotals running = totals.get(enrollmentId);
+            running.debit(totalAmount);
+            entries.add(new EntryRow(enrollmentId, ENTRY_INVOICE, totalAmount, BigDecimal.ZERO, running.balance,
+                    invoiceId, null, invoiceNumber, "Invoice " + invoiceNumber, issuedAt));
+            if (paidAmount != null && paidAmount.signum() != 0) {
+                running.credit(paidAmount);
+                entries.add(new EntryRow(enrollmentId, ENTRY_PAYMENT, BigDecimal.ZERO, paidAmount, running.balance,
+                        invoiceId, null, invoiceNumber, "Payments received before the ledger was opened", issuedAt));
+            }
+        }
+
+        Timestamp timestamp = Timestamp.valueOf(now);
+        List<Map.Entry<Long, RunningTotals>> balances = new ArrayList<>(totals.entrySet());
+        jdbcTemplate.batchUpdate(INSERT_BALANCE_SQL, balances, JDBC_BATCH_SIZE, (ps, balance) -> {
+            ps.setLong(1, balance.getKey());
+            ps.setBigDecimal(2, balance.getValue().balance);
+            ps.setBigDecimal(3, balance.getValue().debits);
+            ps.setBigDecimal(4, balance.getValue().credits);
+            ps.setLong(5, balance.getValue().count);
+            ps.setTimestamp(6, balance.getValue().count > 0 ? timestamp : null);
+            ps.setTimestamp(7, timestamp);
+        });
+        insertEntries(entries);
+        log.info("Opened ledger for {} enrollments with {} opening entries", missing.size(), entries.size());
+    }
+
+    private void insertEntries(List<EntryRow> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_ENTRY_SQL, entries, JDBC_BATCH_SIZE, (ps, entry) -> {
+            ps.setLong(1, entry.enrollmentId());
+            ps.setString(2, entry.entryType());
+            ps.setBigDecimal(3, entry.debit());
+            ps.setBigDecimal(4, entry.credit());
+            ps.setBigDecimal(5, entry.balanceAfter());
+            ps.setObject(6, entry.invoiceId(), Types.BIGINT);
+            ps.setObject(7, entry.paymentId(), Types.BIGINT);
+            ps.setString(8, entry.reference());
+            ps.setString(9, truncate(entry.description(), 255));
+            ps.setTimestamp(10, Timestamp.valueOf(entry.entryDate()));
+            ps.setTimestamp(11, createdAt);
+        });
+    }
+
+    private static BigDecimal sum(List<InvoicePosting> postings) {
+        return postings.stream().map(InvoicePosting::amount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private EnrollmentBalanceDto convertToDto(EnrollmentBalance balance) {
+        return EnrollmentBalanceDto.builder()
+                .enrollmentId(balance.getEnrollmentId())
+                .balance(balance.getBalance())
+                .totalDebits(balance.getTotalDebits())
+                .totalCredits(balance.getTotalCredits())
+                .entryCount(balance.getEntryCount())
+                .lastEntryAt(balance.getLastEntryAt())
+                .build();
+    }
+
+    private EnrollmentStatementDto.Entry convertToDto(EnrollmentLedgerEntry entry) {
+        return EnrollmentStatementDto.Entry.builder()
+                .id(entry.getId())
+                .entryType(entry.getEntryType())
+                .debitAmount(entry.getDebitAmount())
+                .creditAmount(entry.getCreditAmount())
+                .balanceAfter(entry.getBalanceAfter())
+                .invoiceId(entry.getInvoiceId())
+                .paymentId(entry.getPaymentId())
+                .reference(entry.getReference())
+                .description(entry.getDescription())
+                .entryDate(entry.getEntryDate())
+                .build();
+    }
+
+    public record InvoicePosting(Long enrollmentId, Long invoiceId, String invoiceNumber, BigDecimal amount) {
+    }
+
+    private record EntryRow(Long enrollmentId, String entryType, BigDecimal debit, BigDecimal credit, BigDecimal balanceAfter,
+                            Long invoiceId, Long paymentId, String reference, String description, LocalDateTime entryDate) {
+    }
+
+    private static class RunningTotals {
+        private BigDecimal balance = BigDecimal.ZERO;
+        private BigDecimal debits = BigDecimal.ZERO;
+        private BigDecimal credits = BigDecimal.ZERO;
+        private long count;
+
+        private void debit(BigDecimal amount) {
+            balance = balance.add(amount);
+            debits = debits.add(amount);
+            count++;
+        }
+
+        private void credit(BigDecimal amount) {
+            balance = balance.subtract(amount);
+            credits = credits.add(amount);
+            count++;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.KenyaFeeStructure;
+import com.schoolmanagement.repository.FeeStructureRepository;
+import com.schoolmanagement.repository.KenyaFeeStructureRepository;
+import com.schoolmanagement.repository.TermRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the fee components that apply to a (school, academic year, class, term), built from
+ * both fee structures and Kenya fee structures. It is built once from three flat projection queries and
+ * rebuilt after a fee structure changes, so invoicing and reports resolve fees with map lookups instead of
+ * repeating the repository queries per decision. Resolved keys are memoised until the next rebuild.
+ */
+@Component
+@Slf4j
+public class FeeStructureResolutionIndex {
+
+    public enum Source {
+        FEE_STRUCTURE,
+        KENYA_FEE_STRUCTURE
+    }
+
+    /**
+     * One applicable fee. For fee structures, classId is null when the fee applies to every class and the
+     * effective dates bound the terms it applies to; Kenya fee structures carry their frequency instead.
+     */
+    public record FeeComponent(Source source, Long id, Long classId, String name, String code, String feeType,
+                               BigDecimal amount, boolean mandatory, String frequency,
+                               LocalDate effectiveFrom, LocalDate effectiveTo) {
+    }
+
+    public record ResolvedFees(List<FeeComponent> components, Set<Long> feeStructureIds, BigDecimal totalAmount) {
+
+        public List<FeeComponent> components(Source source) {
+            return components.stream().filter(component -> component.source() == source).toList();
+        }
+    }
+
+    private static final ResolvedFees NONE = new ResolvedFees(List.of(), Set.of(), BigDecimal.ZERO);
+    private static final Comparator<FeeComponent> COMPONENT_ORDER =
+            Comparator.comparing(FeeComponent::source).thenComparing(FeeComponent::id);
+    private static final Set<String> ONCE_A_YEAR = Set.of(KenyaFeeStructure.PaymentFrequency.ANNUAL.name(),
+            KenyaFeeStructure.PaymentFrequency.ONE_TIME.name());
+
+    private final FeeStructureRepository feeStructureRepository;
+    private final KenyaFeeStructureRepository kenyaFeeStructureRepository;
+    private final TermRepository termRepository;
+    private final TransactionTemplate readTransaction;
+    // Bumped on every invalidation; a snapshot built at an older generation is rebuilt before use
+    private final AtomicLong generation = new AtomicLong();
+    private final Object rebuildLock = new Object();
+
+    private volatile Snapshot snapshot;
+
+    public FeeStructureResolutionIndex(FeeStructureRepository feeStructureRepository,
+                                       KenyaFeeStructureRepository kenyaFeeStructureRepository,
+                                       TermRepository termRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       MeterRegistry meterRegistry) {
+        this.feeStructureRepository = feeStructureRepository;
+        this.kenyaFeeStructureRepository = kenyaFeeStructureRepository;
+        this.termRepository = termRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        Gauge.builder("fee.resolution.index.components", this, index -> {
+                    Snapshot current = index.snapshot;
+                    return current != null ? current.componentCount() : 0;
+                })
+                .description("Fee components held by the fee resolution index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fee components that apply to a student of the class in the term. A null class resolves every class of
+     * the school; a null term resolves the whole academic year regardless of effective dates. A term outside
+     * the academic year resolves to nothing.
+     */
+    public ResolvedFees resolve(Long schoolId, Long academicYearId, Long classId, Long termId) {
+        if (schoolId == null || academicYearId == null) {
+            return NONE;
+        }
+        Snapshot current = current();
+        return current.resolved().computeIfAbsent(new ResolutionKey(schoolId, academicYearId, classId, termId),
+                key -> compute(current, key));
+    }
+
+    // Runs now and again after the caller's transaction commits, so a rebuild cannot pick up the old rows in between
+    public void invalidate() {
+        generation.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    // Picks up changes made outside the application, e.g. terms edited directly in the database
+    @Scheduled(fixedDelayString = "${reference-data.fee-index.refresh-interval-ms:600000}")
+    public void refresh() {
+        try {
+            invalidate();
+            current();
+        } catch (Exception e) {
+            log.error("Error refreshing fee resolution index: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && current.generation() == generation.get()) {
+            return current;
+        }
+        synchronized (rebuildLock) {
+            current = snapshot;
+            long target = generation.get();
+            if (current == null || current.generation() != target) {
+                current = build(target);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Snapshot build(long buildGeneration) {
+        long started = System.currentTimeMillis();
+        Snapshot built = readTransaction.execute(status -> {
+            Map<YearKey, YearFeesBuilder> years = new HashMap<>();
+            int count = 0;
+
+            for (Object[] row : feeStructureRepository.findActiveResolutionRows()) {
+                FeeComponent component = new FeeComponent(Source.FEE_STRUCTURE, (Long) row[0], (Long) row[3], (String) row[4],
+                        null, (String) row[5], (BigDecimal) row[6], Boolean.TRUE.equals(row[7]), (String) row[8],
+                        toDate(row[9]), toDate(row[10]));
+                years.computeIfAbsent(new YearKey((Long) row[1], (Long) row[2]), key -> new YearFeesBuilder()).add(component);
+                count++;
+            }
+
+            for (Object[] row : kenyaFeeStructureRepository.findActiveResolutionRows()) {
+                FeeComponent component = new FeeComponent(Source.KENYA_FEE_STRUCTURE, (Long) row[0], (Long) row[3], (String) row[4],
+                        (String) row[5], String.valueOf(row[6]), (BigDecimal) row[7], Boolean.TRUE.equals(row[8]),
+                        String.valueOf(row[9]), null, null);
+                years.computeIfAbsent(new YearKey((Long) row[1], (Long) row[2]), key -> new YearFeesBuilder()).add(component);
+                count++;
+            }
+
+            Map<Long, Integer> firstTermSequence = new HashMap<>();
+            List<Object[]> termRows = termRepository.findTermWindows();
+            for (Object[] row : termRows) {
+                if (row[4] != null) {
+                    firstTermSequence.merge((Long) row[1], (Integer) row[4], Math::min);
+                }
+            }
+            Map<Long, TermWindow> terms = new HashMap<>();
+            for (Object[] row : termRows) {
+                Integer sequence = (Integer) row[4];
+                Integer first = firstTermSequence.get((Long) row[1]);
+                boolean firstOfYear = sequence == null || first == null || sequence.equals(first);
+                terms.put((Long) row[0], new TermWindow((Long) row[1], (LocalDate) row[2], (LocalDate) row[3], firstOfYear));
+            }
+
+            Map<YearKey, YearFees> frozen = years.entrySet().stream()
+                    .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> entry.getValue().build()));
+            return new Snapshot(buildGeneration, frozen, Map.copyOf(terms), new ConcurrentHashMap<>(), count);
+        });
+        log.info("Fee resolution index built: {} fee components across {} school years in {} ms",
+                built.componentCount(), built.years().size(), System.currentTimeMillis() - started);
+        return built;
+    }
+
+    private ResolvedFees compute(Snapshot snapshot, ResolutionKey key) {
+        YearFees yearFees = snapshot.years().get(new YearKey(key.schoolId(), key.academicYearId()));
+        if (yearFees == null) {
+            return NONE;
+        }
+        TermWindow term = null;
+        if (key.termId() != null) {
+            term = snapshot.terms().get(key.termId());
+            if (term == null || !key.academicYearId().equals(term.academicYearId())) {
+                return NONE;
+            }
+        }
+
+        List<FeeComponent> candidates = new ArrayList<>(yearFees.schoolWide());
+        if (key.classId() != null) {
+            candidates.addAll(yearFees.byClass().getOrDefault(key.classId(), List.of()));
+        } else {
+            yearFees.byClass().values().forEach(candidates::addAll);
+        }
+
+        List<FeeComponent> applicable = new ArrayList<>(candidates.size());
+        for (FeeComponent component : candidates) {
+            if (term == null || appliesInTerm(component, term)) {
+                applicable.add(component);
+            }
+        }
+        applicable.sort(COMPONENT_ORDER);
+
+        Set<Long> feeStructureIds = applicable.stream()
+                .filter(component -> component.source() == Source.FEE_STRUCTURE)
+                .map(FeeComponent::id)
+                .collect(Collectors.toUnmodifiableSet());
+        BigDecimal total = applicable.stream().map(FeeComponent::amount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new ResolvedFees(List.copyOf(applicable), feeStructureIds, total);
+    }
+
+    private boolean appliesInTerm(FeeComponent component, TermWindow term) {
+        if (component.source() == Source.KENYA_FEE_STRUCTURE) {
+            // Annual and one-off Kenya fees are charged in the first term of the year only
+            return !ONCE_A_YEAR.contains(component.frequency()) || term.firstOfYear();
+        }
+        boolean startsBeforeTermEnds = component.effectiveFrom() == null || term.endDate() == null
+                || !component.effectiveFrom().isAfter(term.endDate());
+        boolean endsAfterTermStarts = component.effectiveTo() == null || term.startDate() == null
+                || !component.effectiveTo().isBefore(term.startDate());
+        return startsBeforeTermEnds && endsAfterTermStarts;
+    }
+
+    private static LocalDate toDate(Object value) {
+        return value instanceof LocalDateTime dateTime ? dateTime.toLocalDate() : (LocalDate) value;
+    }
+
+    private record Snapshot(long generation, Map<YearKey, YearFees> years, Map<Long, TermWindow> terms,
+                            ConcurrentHashMap<ResolutionKey, ResolvedFees> resolved, int componentCount) {
+    }
+
+    private record YearKey(Long schoolId, Long academicYearId) {
+    }
+
+    private record ResolutionKey(Long schoolId, Long academicYearId, Long classId, Long termId) {
+    }
+
+    private record TermWindow(Long academicYearId, LocalDate startDate, LocalDate endDate, boolean firstOfYear) {
+    }
+
+    private record YearFees(List<FeeComponent> schoolWide, Map<Long, List<FeeComponent>> byClass) {
+    }
+
+    private static final class YearFeesBuilder {
+
+        private final List<FeeComponent> schoolWide = new ArrayList<>();
+        private final Map<Long, List<FeeComponent>> byClass = new HashMap<>();
+
+        private void add(FeeComponent component) {
+            if (component.classId() == null) {
+                schoolWide.add(component);
+            } else {
+                byClass.computeIfAbsent(component.classId(), key -> new ArrayList<>()).add(component);
+            }
+        }
+
+        private YearFees build() {
+            return new YearFees(List.copyOf(schoolWide), byClass.entrySet().stream()
+                    .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> List.copyOf(entry.getValue()))));
+        }
+    }
+}
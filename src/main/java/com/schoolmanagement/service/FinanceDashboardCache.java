@@ -0,0 +1,114 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.FinanceDashboardDto;
+import com.schoolmanagement.util.TtlCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches of finance rollups keyed by school: short-lived dashboards, and daily payment totals
+ * of closed periods used by the payment summary report.
+ * Anything that changes invoice totals for a school must call {@link #evictSchool(Long)}; anything that
+ * records a payment or refund must call {@link #evictPayment(Long, LocalDate)} with the day it is dated.
+ */
+@Component
+@Slf4j
+public class FinanceDashboardCache {
+
+    private final TtlCache<DashboardKey, FinanceDashboardDto> cache;
+    private final TtlCache<RollupKey, List<PaymentSummaryReportService.DailyTotal>> paymentRollups;
+    // Bumped on every eviction so a rollup loaded while payments changed is not stored
+    private final AtomicLong rollupGeneration = new AtomicLong();
+
+    public FinanceDashboardCache(@Value("${finance.dashboard.cache-ttl-seconds:30}") long ttlSeconds,
+                                 @Value("${finance.dashboard.cache-max-entries:1000}") int maxEntries,
+                                 @Value("${finance.reports.closed-period-ttl-seconds:86400}") long rollupTtlSeconds,
+                                 @Value("${finance.reports.closed-period-max-entries:5000}") int rollupMaxEntries) {
+        this.cache = new TtlCache<>(Duration.ofSeconds(ttlSeconds), maxEntries);
+        this.paymentRollups = new TtlCache<>(Duration.ofSeconds(rollupTtlSeconds), rollupMaxEntries);
+    }
+
+    public FinanceDashboardDto get(Long schoolId, Long academicYearId, Supplier<FinanceDashboardDto> loader) {
+        return cache.get(new DashboardKey(schoolId, academicYearId), key -> loader.get());
+    }
+
+    // Daily totals for [from, to); only call this for periods that are already closed
+    public List<PaymentSummaryReportService.DailyTotal> getPaymentRollup(Long schoolId, LocalDate from, LocalDate to,
+                                                                        Supplier<List<PaymentSummaryReportService.DailyTotal>> loader) {
+        RollupKey key = new RollupKey(schoolId, from, to);
+        List<PaymentSummaryReportService.DailyTotal> cached = paymentRollups.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = rollupGeneration.get();
+        List<PaymentSummaryReportService.DailyTotal> loaded = loader.get();
+        if (rollupGeneration.get() == generation) {
+            paymentRollups.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    // Payment rollups only hold payment totals, so invoice-only changes keep them
+    public void evictSchool(Long schoolId) {
+        if (schoolId == null) {
+            return;
+        }
+        afterCommit(() -> cache.invalidateIf(key -> schoolId.equals(key.schoolId())));
+        log.debug("Evicted finance dashboard cache for school: {}", schoolId);
+    }
+
+    // Evicts the school's dashboards and only the rollups whose range contains the payment day; a null day evicts all of the school's rollups
+    public void evictPayment(Long schoolId, LocalDate paymentDay) {
+        if (schoolId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            cache.invalidateIf(key -> schoolId.equals(key.schoolId()));
+            rollupGeneration.incrementAndGet();
+            // All-school rollups include this school's payments too
+            paymentRollups.invalidateIf(key -> (key.schoolId() == null || schoolId.equals(key.schoolId()))
+                    && (paymentDay == null || key.contains(paymentDay)));
+        });
+        log.debug("Evicted finance caches for school {} and payment day {}", schoolId, paymentDay);
+    }
+
+    public void evictAll() {
+        afterCommit(() -> {
+            cache.invalidateAll();
+            rollupGeneration.incrementAndGet();
+            paymentRollups.invalidateAll();
+        });
+    }
+
+    // Runs now and again after the caller's transaction commits, so a reader cannot re-cache pre-commit totals in between
+    private void afterCommit(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    private record DashboardKey(Long schoolId, Long academicYearId) {
+    }
+
+    private record RollupKey(Long schoolId, LocalDate from, LocalDate to) {
+
+        private boolean contains(LocalDate day) {
+            return !day.isBefore(from) && day.isBefore(to);
+        }
+    }
+}
@@ -3,25 +3,46 @@ package com.schoolmanagement.service;
 import com.schoolmanagement.dto.ApiResponse;
 import com.schoolmanagement.dto.FeeStructureDto;
 import com.schoolmanagement.dto.FeeInvoiceDto;
+import com.schoolmanagement.dto.FinanceDashboardDto;
+import com.schoolmanagement.dto.InvoicePageDto;
 import com.schoolmanagement.dto.PaymentDto;
 import com.schoolmanagement.dto.PaymentRequestDto;
+import com.schoolmanagement.dto.PaymentSummaryReportDto;
 import com.schoolmanagement.dto.MpesaStkPushResponse;
+import com.schoolmanagement.dto.StripePaymentIntentResponse;
 import com.schoolmanagement.entity.*;
 import com.schoolmanagement.repository.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -41,7 +62,27 @@ public class FinanceService {
     private final StudentFeeRepository studentFeeRepository;
     private final UserRepository userRepository;
     private final MpesaService mpesaService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StripeService stripeService;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final NamingSeriesAllocator namingSeriesAllocator;
+    private final PaymentSettlementService paymentSettlementService;
+    private final PaymentSummaryReportService paymentSummaryReportService;
+    private final EnrollmentLedgerService enrollmentLedgerService;
+    private final ReferenceDataCache referenceDataCache;
+    private final FeeStructureResolutionIndex feeStructureResolutionIndex;
+    private final EntityManager entityManager;
+    private final ObjectMapper exportMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    
+    @Value("${stripe.currency:kes}")
+    private String stripeCurrency;
+    
+    private static final int MAX_INVOICE_PAGE_SIZE = 500;
+    private static final int EXPORT_FLUSH_INTERVAL = 500;
+    private static final String INVOICE_CSV_HEADER = "id,invoiceNumber,issueDate,dueDate,totalAmount,paidAmount,balanceAmount,status,"
+            + "enrollmentId,studentName,className,academicYearName,feeStructureName";
     
     // Fee Structure Management
     public ApiResponse<FeeStructureDto> createFeeStructure(FeeStructureDto feeStructureDto) {
@@ -49,13 +90,13 @@ public class FinanceService {
             log.info("Creating fee structure: {}", feeStructureDto.getName());
             
             // Validate school exists
-            Optional<School> school = schoolRepository.findById(feeStructureDto.getSchoolId());
+            Optional<School> school = referenceDataCache.findSchool(feeStructureDto.getSchoolId());
             if (school.isEmpty()) {
                 return ApiResponse.error("School not found");
             }
             
             // Validate academic year exists
-            Optional<AcademicYear> academicYear = academicYearRepository.findById(feeStructureDto.getAcademicYearId());
+            Optional<AcademicYear> academicYear = referenceDataCache.findAcademicYear(feeStructureDto.getAcademicYearId());
             if (academicYear.isEmpty()) {
                 return ApiResponse.error("Academic year not found");
             }
@@ -82,13 +123,14 @@ public class FinanceService {
             
             // Set class if provided
             if (feeStructureDto.getClassId() != null) {
-                Optional<ClassEntity> classEntity = classRepository.findById(feeStructureDto.getClassId());
+                Optional<ClassEntity> classEntity = referenceDataCache.findClass(feeStructureDto.getClassId());
                 if (classEntity.isPresent()) {
                     feeStructure.setClassEntity(classEntity.get());
                 }
             }
             
             FeeStructure savedFeeStructure = feeStructureRepository.save(feeStructure);
+            feeStructureResolutionIndex.invalidate();
             log.info("Fee structure created successfully: {}", savedFeeStructure.getId());
             
             return ApiResponse.success("Fee structure created successfully", convertToDto(savedFeeStructure));
@@ -128,13 +170,13 @@ public class FinanceService {
             }
             
             // Validate fee structure exists
-            Optional<FeeStructure> feeStructure = feeStructureRepository.findById(feeStructureId);
+            Optional<FeeStructure> feeStructure = referenceDataCache.findFeeStructure(feeStructureId);
             if (feeStructure.isEmpty()) {
                 return ApiResponse.error("Fee structure not found");
             }
             
             // Generate invoice number
-            String invoiceNumber = "INV-" + System.currentTimeMillis();
+            String invoiceNumber = namingSeriesAllocator.next(NamingSeriesAllocator.INVOICE_SERIES);
             
             FeeInvoice invoice = new FeeInvoice();
             invoice.setInvoiceNumber(invoiceNumber);
@@ -148,6 +190,8 @@ public class FinanceService {
             invoice.setFeeStructure(feeStructure.get());
             
             FeeInvoice savedInvoice = feeInvoiceRepository.save(invoice);
+            enrollmentLedgerService.recordInvoice(savedInvoice);
+            evictDashboardCache(savedInvoice);
             log.info("Fee invoice created successfully: {}", savedInvoice.getId());
             
             return ApiResponse.success("Fee invoice created successfully", convertToDto(savedInvoice));
@@ -196,7 +240,7 @@ public class FinanceService {
                 enrollment = new StudentEnrollment();
                 enrollment.setStudent(student);
                 enrollment.setClassEntity(classEntity);
-                enrollment.setEnrollmentNumber("ENR-" + System.currentTimeMillis());
+                enrollment.setEnrollmentNumber(namingSeriesAllocator.next(NamingSeriesAllocator.ENROLLMENT_SERIES));
                 enrollment.setEnrollmentDate(LocalDate.now());
                 enrollment.setIsActive(true);
                 enrollment.setNotes("Auto-created for invoice generation");
@@ -210,13 +254,13 @@ public class FinanceService {
             }
             
             // Validate fee structure exists
-            Optional<FeeStructure> feeStructure = feeStructureRepository.findById(feeStructureId);
+            Optional<FeeStructure> feeStructure = referenceDataCache.findFeeStructure(feeStructureId);
             if (feeStructure.isEmpty()) {
                 return ApiResponse.error("Fee structure not found");
             }
             
             // Generate invoice number
-            String invoiceNumber = "INV-" + System.currentTimeMillis();
+            String invoiceNumber = namingSeriesAllocator.next(NamingSeriesAllocator.INVOICE_SERIES);
             
             FeeInvoice invoice = new FeeInvoice();
             invoice.setInvoiceNumber(invoiceNumber);
@@ -230,6 +274,8 @@ public class FinanceService {
             invoice.setFeeStructure(feeStructure.get());
             
             FeeInvoice savedInvoice = feeInvoiceRepository.save(invoice);
+            enrollmentLedgerService.recordInvoice(savedInvoice);
+            evictDashboardCache(savedInvoice);
             log.info("Fee invoice created successfully for student {}: {}", studentId, savedInvoice.getId());
             
             return ApiResponse.success("Fee invoice created successfully", convertToDto(savedInvoice));
@@ -302,6 +348,142 @@ public class FinanceService {
         }
     }
     
+    // Cursor pagination ordered by (issueDate DESC, id DESC)
+    @Transactional(readOnly = true)
+    public ApiResponse<InvoicePageDto> getInvoicePage(Long schoolId, String status, String cursor, int size) {
+        try {
+            log.info("Fetching invoice page - school: {}, status: {}, size: {}", schoolId, status, size);
+            
+            int pageSize = Math.max(1, Math.min(size, MAX_INVOICE_PAGE_SIZE));
+            String statusFilter = status != null && !status.trim().isEmpty() ? status.trim() : null;
+            // Fetch one extra row to know whether another page exists
+            Pageable limit = PageRequest.of(0, pageSize + 1);
+            
+            List<FeeInvoice> invoices;
+            if (cursor == null || cursor.isBlank()) {
+                invoices = feeInvoiceRepository.findInvoicePage(schoolId, statusFilter, limit);
+            } else {
+                InvoiceCursor position;
+                try {
+                    position = InvoiceCursor.decode(cursor);
+                } catch (IllegalArgumentException e) {
+                    return ApiResponse.error("Invalid cursor");
+                }
+                invoices = feeInvoiceRepository.findInvoicePageAfter(schoolId, statusFilter,
+                        position.issueDate(), position.id(), limit);
+            }
+            
+            boolean hasMore = invoices.size() > pageSize;
+            List<FeeInvoice> page = hasMore ? invoices.subList(0, pageSize) : invoices;
+            String nextCursor = null;
+            if (hasMore) {
+                FeeInvoice last = page.get(page.size() - 1);
+                nextCursor = new InvoiceCursor(last.getIssueDate(), last.getId()).encode();
+            }
+            
+            InvoicePageDto pageDto = InvoicePageDto.builder()
+                    .items(page.stream().map(this::convertToDto).toList())
+                    .nextCursor(nextCursor)
+                    .hasMore(hasMore)
+                    .size(page.size())
+                    .build();
+            
+            return ApiResponse.success("Invoices retrieved successfully", pageDto);
+            
+        } catch (Exception e) {
+            log.error("Error fetching invoice page: {}", e.getMessage());
+            return ApiResponse.error("Failed to retrieve invoices: " + e.getMessage());
+        }
+    }
+    
+    // Streams every matching invoice to the output without materialising the full result set
+    @Transactional(readOnly = true)
+    public long exportInvoices(Long schoolId, String status, String format, OutputStream outputStream) throws IOException {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        String statusFilter = status != null && !status.trim().isEmpty() ? status.trim() : null;
+        log.info("Exporting invoices as {} - school: {}, status: {}", csv ? "CSV" : "NDJSON", schoolId, statusFilter);
+        
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (csv) {
+            writer.write(INVOICE_CSV_HEADER);
+            writer.write('\n');
+        }
+        
+        long rows = 0;
+        try (Stream<FeeInvoice> invoices = feeInvoiceRepository.streamActiveInvoices(schoolId, statusFilter)) {
+            Iterator<FeeInvoice> iterator = invoices.iterator();
+            while (iterator.hasNext()) {
+                FeeInvoiceDto dto = convertToDto(iterator.next());
+                if (csv) {
+                    writeCsvRow(writer, dto);
+                } else {
+                    writer.write(exportMapper.writeValueAsString(dto));
+                    writer.write('\n');
+                }
+                
+                // Detach processed rows so the persistence context stays small, and push data to the client
+                if (++rows % EXPORT_FLUSH_INTERVAL == 0) {
+                    entityManager.clear();
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+        
+        log.info("Exported {} invoices", rows);
+        return rows;
+    }
+    
+    private void writeCsvRow(Writer writer, FeeInvoiceDto dto) throws IOException {
+        Object[] values = {
+                dto.getId(), dto.getInvoiceNumber(), dto.getIssueDate(), dto.getDueDate(),
+                dto.getTotalAmount(), dto.getPaidAmount(), dto.getBalanceAmount(), dto.getStatus(),
+                dto.getEnrollmentId(), dto.getStudentName(), dto.getClassName(), dto.getAcademicYearName(),
+                dto.getFeeStructureName()
+        };
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvField(values[i]));
+        }
+        writer.write('\n');
+    }
+    
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+    
+    // Position of the last row on a page, encoded as url-safe base64 of "issueDate|id"
+    record InvoiceCursor(LocalDate issueDate, Long id) {
+        
+        String encode() {
+            String raw = issueDate + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        static InvoiceCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Malformed cursor");
+                }
+                return new InvoiceCursor(LocalDate.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Malformed cursor", e);
+            }
+        }
+    }
+    
     // Payment Processing
     public ApiResponse<PaymentDto> processPayment(PaymentRequestDto paymentRequest, User processedBy) {
         try {
@@ -319,13 +501,14 @@ public class FinanceService {
             }
             
             // Generate payment reference
-            String paymentReference = "PAY-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            String paymentReference = namingSeriesAllocator.next(NamingSeriesAllocator.PAYMENT_SERIES);
             
             Payment payment = new Payment();
             payment.setPaymentReference(paymentReference);
             payment.setAmount(paymentRequest.getAmount());
             payment.setPaymentMethod(paymentRequest.getPaymentMethod());
-            payment.setPaymentStatus("PENDING");
+            // Credited below, so already settled; PENDING is reserved for STK and Stripe payments awaiting their provider
+            payment.setPaymentStatus("COMPLETED");
             payment.setTransactionId(paymentRequest.getTransactionId());
             payment.setExternalReference(paymentRequest.getExternalReference());
             payment.setPaymentNotes(paymentRequest.getPaymentNotes());
@@ -334,15 +517,19 @@ public class FinanceService {
             payment.setEnrollment(invoice.get().getEnrollment());
             payment.setProcessedBy(processedBy);
             
+            // Credit the invoice first: the conditional UPDATE re-checks the balance atomically,
+            // so a concurrent payment cannot push the invoice past its total
+            if (!creditInvoice(invoice.get(), paymentRequest.getAmount(), payment.getPaymentDate().toLocalDate())) {
+                return ApiResponse.error("Payment amount cannot exceed balance amount");
+            }
+            
             Payment savedPayment = paymentRepository.save(payment);
+            enrollmentLedgerService.recordPayment(savedPayment);
             log.info("Payment created successfully: {}", savedPayment.getId());
             
-            // Update invoice status
-            updateInvoiceStatus(invoice.get(), paymentRequest.getAmount());
-            
             // Send payment notification
             try {
-                sendPaymentNotification(savedPayment, invoice.get());
+                paymentSettlementService.sendPaymentNotification(savedPayment, invoice.get());
             } catch (Exception e) {
                 log.error("Error sending payment notification: {}", e.getMessage());
                 // Don't fail payment if notification fails
@@ -356,18 +543,14 @@ public class FinanceService {
         }
     }
     
-    private void updateInvoiceStatus(FeeInvoice invoice, BigDecimal paymentAmount) {
-        BigDecimal newPaidAmount = invoice.getPaidAmount().add(paymentAmount);
-        invoice.setPaidAmount(newPaidAmount);
-        invoice.setBalanceAmount(invoice.getTotalAmount().subtract(newPaidAmount));
-        
-        if (invoice.getBalanceAmount().compareTo(BigDecimal.ZERO) <= 0) {
-            invoice.setStatus("PAID");
-        } else {
-            invoice.setStatus("PARTIAL");
+    private boolean creditInvoice(FeeInvoice invoice, BigDecimal paymentAmount, LocalDate paymentDay) {
+        int updated = feeInvoiceRepository.addToPaidAmountWithinBalance(invoice.getId(), paymentAmount, LocalDateTime.now());
+        if (updated == 0) {
+            return false;
         }
-        
-        feeInvoiceRepository.save(invoice);
+        entityManager.refresh(invoice);
+        evictPaymentCaches(invoice, paymentDay);
+        return true;
     }
     
     // DTO Conversion Methods
@@ -449,7 +632,7 @@ public class FinanceService {
     public ApiResponse<FeeStructureDto> getFeeStructureById(Long id) {
         try {
             log.info("Fetching fee structure by ID: {}", id);
-            FeeStructure feeStructure = feeStructureRepository.findById(id)
+            FeeStructure feeStructure = referenceDataCache.findFeeStructure(id)
                     .orElseThrow(() -> new RuntimeException("Fee structure not found with ID: " + id));
             return ApiResponse.success("Fee structure retrieved successfully", convertToDto(feeStructure));
         } catch (Exception e) {
@@ -476,6 +659,8 @@ public class FinanceService {
             existingFeeStructure.setEffectiveTo(feeStructureDto.getEffectiveTo());
             
             FeeStructure updatedFeeStructure = feeStructureRepository.save(existingFeeStructure);
+            referenceDataCache.evictFeeStructure(id);
+            feeStructureResolutionIndex.invalidate();
             return ApiResponse.success("Fee structure updated successfully", convertToDto(updatedFeeStructure));
         } catch (Exception e) {
             log.error("Error updating fee structure with ID {}: {}", id, e.getMessage());
@@ -489,6 +674,8 @@ public class FinanceService {
             FeeStructure feeStructure = feeStructureRepository.findById(id)
                     .orElseThrow(() -> new RuntimeException("Fee structure not found with ID: " + id));
             feeStructureRepository.delete(feeStructure);
+            referenceDataCache.evictFeeStructure(id);
+            feeStructureResolutionIndex.invalidate();
             return ApiResponse.success("Fee structure deleted successfully");
         } catch (Exception e) {
             log.error("Error deleting fee structure with ID {}: {}", id, e.getMessage());
@@ -516,12 +703,22 @@ public class FinanceService {
             FeeInvoice existingInvoice = feeInvoiceRepository.findById(id)
                     .orElseThrow(() -> new RuntimeException("Invoice not found with ID: " + id));
             
+            boolean wasActive = Boolean.TRUE.equals(existingInvoice.getIsActive());
+            boolean active = Boolean.TRUE.equals(invoiceDto.getIsActive());
+            
             // Update fields
             existingInvoice.setDueDate(invoiceDto.getDueDate());
             existingInvoice.setNotes(invoiceDto.getNotes());
             existingInvoice.setIsActive(invoiceDto.getIsActive());
             
             FeeInvoice updatedInvoice = feeInvoiceRepository.save(existingInvoice);
+            // Deactivating an invoice writes off its outstanding balance; reactivating it charges it again
+            if (wasActive != active) {
+                enrollmentLedgerService.recordAdjustment(existingInvoice.getEnrollment().getId(), existingInvoice.getId(),
+                        active ? existingInvoice.getBalanceAmount() : existingInvoice.getBalanceAmount().negate(),
+                        existingInvoice.getInvoiceNumber(), active ? "Invoice reactivated" : "Invoice deactivated");
+                evictDashboardCache(existingInvoice);
+            }
             return ApiResponse.success("Invoice updated successfully", convertToDto(updatedInvoice));
         } catch (Exception e) {
             log.error("Error updating invoice with ID {}: {}", id, e.getMessage());
@@ -576,89 +773,15 @@ public class FinanceService {
         }
     }
     
-    public ApiResponse<PaymentDto> processRefund(Long paymentId, BigDecimal refundAmount, String refundReason) {
-        try {
-            log.info("Processing refund for payment ID: {} with amount: {}", paymentId, refundAmount);
-            Payment payment = paymentRepository.findById(paymentId)
-                    .orElseThrow(() -> new RuntimeException("Payment not found with ID: " + paymentId));
-            
-            // Create refund payment
-            Payment refundPayment = new Payment();
-            refundPayment.setPaymentReference("REF-" + payment.getPaymentReference());
-            refundPayment.setAmount(refundAmount.negate()); // Negative amount for refund
-            refundPayment.setPaymentMethod(payment.getPaymentMethod());
-            refundPayment.setPaymentStatus("REFUNDED");
-            refundPayment.setPaymentNotes("Refund: " + refundReason);
-            refundPayment.setPaymentDate(LocalDateTime.now());
-            refundPayment.setInvoice(payment.getInvoice());
-            refundPayment.setEnrollment(payment.getEnrollment());
-            refundPayment.setProcessedBy(payment.getProcessedBy());
-            
-            Payment savedRefund = paymentRepository.save(refundPayment);
-            
-            // Update original invoice
-            FeeInvoice invoice = payment.getInvoice();
-            BigDecimal newPaidAmount = invoice.getPaidAmount().subtract(refundAmount);
-            invoice.setPaidAmount(newPaidAmount);
-            invoice.setBalanceAmount(invoice.getTotalAmount().subtract(newPaidAmount));
-            invoice.setStatus(newPaidAmount.compareTo(BigDecimal.ZERO) <= 0 ? "PENDING" : "PARTIAL");
-            feeInvoiceRepository.save(invoice);
-            
-            return ApiResponse.success("Refund processed successfully", convertToDto(savedRefund));
-        } catch (Exception e) {
-            log.error("Error processing refund for payment ID {}: {}", paymentId, e.getMessage());
-            return ApiResponse.error("Failed to process refund: " + e.getMessage());
-        }
-    }
-    
     // Finance Dashboard and Reports
-    @Transactional(readOnly = true)
+    // SUPPORTS so that a cache hit never has to open a transaction
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public ApiResponse<Object> getFinanceDashboard(Long schoolId, Long academicYearId) {
         try {
             log.info("Generating finance dashboard for school: {} and academic year: {}", schoolId, academicYearId);
             
-            // Get fee structures
-            List<FeeStructure> feeStructures = feeStructureRepository.findBySchoolIdAndAcademicYearIdAndIsActiveTrue(schoolId, academicYearId);
-            
-            // Get total invoices
-            List<FeeInvoice> allInvoices = feeInvoiceRepository.findByEnrollmentIdAndIsActiveTrue(0L); // This needs to be fixed
-            
-            // Calculate totals
-            BigDecimal totalFeeAmount = feeStructures.stream()
-                    .map(FeeStructure::getAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            BigDecimal totalPaidAmount = allInvoices.stream()
-                    .map(FeeInvoice::getPaidAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            BigDecimal totalBalanceAmount = allInvoices.stream()
-                    .map(FeeInvoice::getBalanceAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            // Create dashboard object
-            Object dashboard = new Object() {
-                public final Long totalFeeStructures = (long) feeStructures.size();
-                public final BigDecimal totalFeeAmount = feeStructures.stream()
-                        .map(FeeStructure::getAmount)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                public final BigDecimal totalPaidAmount = allInvoices.stream()
-                        .map(FeeInvoice::getPaidAmount)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                public final BigDecimal totalBalanceAmount = allInvoices.stream()
-                        .map(FeeInvoice::getBalanceAmount)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                public final Long totalInvoices = (long) allInvoices.size();
-                public final Long pendingInvoices = allInvoices.stream()
-                        .filter(inv -> "PENDING".equals(inv.getStatus()))
-                        .count();
-                public final Long paidInvoices = allInvoices.stream()
-                        .filter(inv -> "PAID".equals(inv.getStatus()))
-                        .count();
-                public final Long overdueInvoices = allInvoices.stream()
-                        .filter(inv -> "OVERDUE".equals(inv.getStatus()))
-                        .count();
-            };
+            FinanceDashboardDto dashboard = financeDashboardCache.get(schoolId, academicYearId,
+                    () -> buildFinanceDashboard(schoolId, academicYearId));
             
             return ApiResponse.success("Finance dashboard retrieved successfully", dashboard);
         } catch (Exception e) {
@@ -667,34 +790,85 @@ public class FinanceService {
         }
     }
     
+    // Dashboard totals come from two GROUP BY queries; no invoice rows are loaded
+    private FinanceDashboardDto buildFinanceDashboard(Long schoolId, Long academicYearId) {
+        List<Object[]> feeStructureTotals = feeStructureRepository.getFeeStructureTotals(schoolId, academicYearId);
+        Object[] feeStructureRow = feeStructureTotals.isEmpty() ? new Object[]{0L, null} : feeStructureTotals.get(0);
+        
+        long totalInvoices = 0;
+        BigDecimal totalPaidAmount = BigDecimal.ZERO;
+        BigDecimal totalBalanceAmount = BigDecimal.ZERO;
+        Map<String, Long> invoiceCountsByStatus = new HashMap<>();
+        
+        for (Object[] row : feeInvoiceRepository.getInvoiceTotalsByStatus(schoolId, academicYearId)) {
+            long count = toLong(row[1]);
+            invoiceCountsByStatus.put((String) row[0], count);
+            totalInvoices += count;
+            totalPaidAmount = totalPaidAmount.add(toBigDecimal(row[3]));
+            totalBalanceAmount = totalBalanceAmount.add(toBigDecimal(row[4]));
+        }
+        
+        return FinanceDashboardDto.builder()
+                .totalFeeStructures(toLong(feeStructureRow[0]))
+                .totalFeeAmount(toBigDecimal(feeStructureRow[1]))
+                .totalPaidAmount(totalPaidAmount)
+                .totalBalanceAmount(totalBalanceAmount)
+                .totalInvoices(totalInvoices)
+                .pendingInvoices(invoiceCountsByStatus.getOrDefault("PENDING", 0L))
+                .paidInvoices(invoiceCountsByStatus.getOrDefault("PAID", 0L))
+                .overdueInvoices(invoiceCountsByStatus.getOrDefault("OVERDUE", 0L))
+                .build();
+    }
+    
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+    
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+    
+    private void evictDashboardCache(FeeInvoice invoice) {
+        try {
+            financeDashboardCache.evictSchool(invoice.getEnrollment().getClassEntity().getSchool().getId());
+        } catch (Exception e) {
+            // Fall back to clearing everything rather than serving stale totals
+            log.warn("Could not resolve school for invoice {}, clearing dashboard cache: {}", invoice.getId(), e.getMessage());
+            financeDashboardCache.evictAll();
+        }
+    }
+    
+    private void evictPaymentCaches(FeeInvoice invoice, LocalDate paymentDay) {
+        try {
+            financeDashboardCache.evictPayment(invoice.getEnrollment().getClassEntity().getSchool().getId(), paymentDay);
+        } catch (Exception e) {
+            log.warn("Could not resolve school for invoice {}, clearing dashboard cache: {}", invoice.getId(), e.getMessage());
+            financeDashboardCache.evictAll();
+        }
+    }
+    
     @Transactional(readOnly = true)
     public ApiResponse<Object> getFeeSummaryReport(Long schoolId, Long academicYearId, Long classId) {
         try {
             log.info("Generating fee summary report for school: {}, academic year: {}, class: {}", schoolId, academicYearId, classId);
             
-            List<FeeStructure> feeStructures;
-            if (classId != null) {
-                feeStructures = feeStructureRepository.findBySchoolIdAndClassEntityIdAndAcademicYearIdAndIsActiveTrue(schoolId, classId, academicYearId);
-            } else {
-                feeStructures = feeStructureRepository.findBySchoolIdAndAcademicYearIdAndIsActiveTrue(schoolId, academicYearId);
-            }
-            
-            // Group by fee type
-            Map<String, BigDecimal> feeTypeTotals = feeStructures.stream()
-                    .collect(Collectors.groupingBy(
-                            FeeStructure::getFeeType,
-                            Collectors.reducing(BigDecimal.ZERO, FeeStructure::getAmount, BigDecimal::add)
-                    ));
+            // With a class, school-wide fee structures are included since they apply to that class too
+            FeeStructureResolutionIndex.ResolvedFees fees = feeStructureResolutionIndex.resolve(schoolId, academicYearId, classId, null);
+            List<FeeStructureResolutionIndex.FeeComponent> feeStructures = fees.components(FeeStructureResolutionIndex.Source.FEE_STRUCTURE);
+            List<FeeStructureResolutionIndex.FeeComponent> kenyaFees = fees.components(FeeStructureResolutionIndex.Source.KENYA_FEE_STRUCTURE);
             
             Object report = new Object() {
                 public final Long totalFeeStructures = (long) feeStructures.size();
-                public final Map<String, BigDecimal> feeTypeTotals = feeStructures.stream()
-                        .collect(Collectors.groupingBy(
-                                FeeStructure::getFeeType,
-                                Collectors.reducing(BigDecimal.ZERO, FeeStructure::getAmount, BigDecimal::add)
-                        ));
+                public final Map<String, BigDecimal> feeTypeTotals = totalsByFeeType(feeStructures);
                 public final BigDecimal totalAmount = feeStructures.stream()
-                        .map(FeeStructure::getAmount)
+                        .map(FeeStructureResolutionIndex.FeeComponent::amount)
+                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+                public final Map<String, BigDecimal> kenyaFeeTypeTotals = totalsByFeeType(kenyaFees);
+                public final BigDecimal kenyaTotalAmount = kenyaFees.stream()
+                        .map(FeeStructureResolutionIndex.FeeComponent::amount)
                         .reduce(BigDecimal.ZERO, BigDecimal::add);
             };
             
@@ -705,26 +879,34 @@ public class FinanceService {
         }
     }
     
-    @Transactional(readOnly = true)
-    public ApiResponse<Object> getPaymentSummaryReport(Long schoolId, Long academicYearId, String startDate, String endDate) {
+    private static Map<String, BigDecimal> totalsByFeeType(List<FeeStructureResolutionIndex.FeeComponent> components) {
+        return components.stream()
+                .collect(Collectors.groupingBy(
+                        FeeStructureResolutionIndex.FeeComponent::feeType,
+                        Collectors.reducing(BigDecimal.ZERO, FeeStructureResolutionIndex.FeeComponent::amount, BigDecimal::add)
+                ));
+    }
+    
+    // SUPPORTS: the month chunks are aggregated on report threads, no transaction is needed here
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ApiResponse<Object> getPaymentSummaryReport(Long schoolId, Long academicYearId, String startDate, String endDate,
+                                                       String granularity) {
         try {
             log.info("Generating payment summary report for school: {} and academic year: {}", schoolId, academicYearId);
             
-            // This would need to be implemented with proper date filtering
-            // For now, return a basic structure
-            final Long finalSchoolId = schoolId;
-            final Long finalAcademicYearId = academicYearId;
-            final String finalStartDate = startDate;
-            final String finalEndDate = endDate;
-            
-            Object report = new Object() {
-                public final String message = "Payment summary report - implementation needed";
-                public final Long schoolId = finalSchoolId;
-                public final Long academicYearId = finalAcademicYearId;
-                public final String startDate = finalStartDate;
-                public final String endDate = finalEndDate;
-            };
+            // Missing dates default to the academic year, or to the year to date without one
+            LocalDate from = startDate != null ? LocalDate.parse(startDate) : null;
+            LocalDate to = endDate != null ? LocalDate.parse(endDate) : null;
+            if ((from == null || to == null) && academicYearId != null) {
+                AcademicYear academicYear = referenceDataCache.findAcademicYear(academicYearId)
+                        .orElseThrow(() -> new RuntimeException("Academic year not found with ID: " + academicYearId));
+                from = from != null ? from : academicYear.getStartDate();
+                to = to != null ? to : academicYear.getEndDate();
+            }
+            to = to != null ? to : LocalDate.now();
+            from = from != null ? from : to.withDayOfYear(1);
             
+            PaymentSummaryReportDto report = paymentSummaryReportService.summarize(schoolId, from, to, granularity);
             return ApiResponse.success("Payment summary report generated successfully", report);
         } catch (Exception e) {
             log.error("Error generating payment summary report: {}", e.getMessage());
@@ -736,7 +918,8 @@ public class FinanceService {
     public ApiResponse<List<FeeInvoiceDto>> getOverdueFees(Long schoolId, Long academicYearId) {
         try {
             log.info("Fetching overdue fees for school: {} and academic year: {}", schoolId, academicYearId);
-            List<FeeInvoice> overdueInvoices = feeInvoiceRepository.findOverdueInvoices(LocalDate.now());
+            // Invoices past due are moved to OVERDUE by OverdueInvoiceSweeper, so this is a status lookup
+            List<FeeInvoice> overdueInvoices = feeInvoiceRepository.findActiveInvoicesBySchoolIdAndStatus(schoolId, "OVERDUE");
             List<FeeInvoiceDto> invoiceDtos = overdueInvoices.stream()
                     .map(this::convertToDto)
                     .toList();
@@ -753,15 +936,15 @@ public class FinanceService {
             log.info("Creating Kenya fee structure: {}", kenyaFeeStructureDto.getFeeName());
             
             // Validate school exists
-            School school = schoolRepository.findById(kenyaFeeStructureDto.getSchoolId())
+            School school = referenceDataCache.findSchool(kenyaFeeStructureDto.getSchoolId())
                     .orElseThrow(() -> new RuntimeException("School not found with ID: " + kenyaFeeStructureDto.getSchoolId()));
             
             // Validate class exists
-            ClassEntity classEntity = classRepository.findById(kenyaFeeStructureDto.getClassId())
+            ClassEntity classEntity = referenceDataCache.findClass(kenyaFeeStructureDto.getClassId())
                     .orElseThrow(() -> new RuntimeException("Class not found with ID: " + kenyaFeeStructureDto.getClassId()));
             
             // Validate academic year exists
-            AcademicYear academicYear = academicYearRepository.findById(kenyaFeeStructureDto.getAcademicYearId())
+            AcademicYear academicYear = referenceDataCache.findAcademicYear(kenyaFeeStructureDto.getAcademicYearId())
                     .orElseThrow(() -> new RuntimeException("Academic year not found with ID: " + kenyaFeeStructureDto.getAcademicYearId()));
             
             KenyaFeeStructure kenyaFeeStructure = new KenyaFeeStructure();
@@ -781,6 +964,7 @@ public class FinanceService {
             kenyaFeeStructure.setIsActive(kenyaFeeStructureDto.getIsActive());
             
             KenyaFeeStructure savedKenyaFeeStructure = kenyaFeeStructureRepository.save(kenyaFeeStructure);
+            feeStructureResolutionIndex.invalidate();
             log.info("Kenya fee structure created successfully: {}", savedKenyaFeeStructure.getId());
             
             return ApiResponse.success("Kenya fee structure created successfully", savedKenyaFeeStructure);
@@ -845,6 +1029,7 @@ public class FinanceService {
                 invoice.setFeeStructure(testFeeStructure);
                 invoice.setIsActive(true);
                 invoice = feeInvoiceRepository.save(invoice);
+                enrollmentLedgerService.recordInvoice(invoice);
                 log.info("Created test invoice: {}", invoice.getId());
             } else {
                 invoice = invoiceOpt.get();
@@ -883,7 +1068,7 @@ public class FinanceService {
             
             // Create pending payment record
             Payment pendingPayment = new Payment();
-            pendingPayment.setPaymentReference("MPESA-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+            pendingPayment.setPaymentReference(namingSeriesAllocator.next(NamingSeriesAllocator.MPESA_PAYMENT_SERIES));
             pendingPayment.setAmount(paymentRequest.getAmount());
             pendingPayment.setPaymentMethod("M_PESA");
             pendingPayment.setPaymentStatus("PENDING");
@@ -926,137 +1111,49 @@ public class FinanceService {
         try {
             log.info("Creating Stripe payment intent for invoice: {}", paymentRequest.getInvoiceId());
             
-            // TODO: Implement actual Stripe payment intent creation
-            // For now, return a mock response
-            Object response = new Object() {
-                public final String message = "Stripe payment intent created successfully";
-                public final String invoiceId = paymentRequest.getInvoiceId().toString();
-                public final String amount = paymentRequest.getAmount().toString();
-                public final String clientSecret = "pi_" + System.currentTimeMillis() + "_secret_" + UUID.randomUUID().toString().substring(0, 8);
-                public final String paymentIntentId = "pi_" + System.currentTimeMillis();
-            };
-            
-            return ApiResponse.success("Stripe payment intent created successfully", response);
-        } catch (Exception e) {
-            log.error("Error creating Stripe payment intent: {}", e.getMessage());
-            return ApiResponse.error("Failed to create Stripe payment intent: " + e.getMessage());
-        }
-    }
-    
-    @Transactional
-    public String handleMpesaWebhook(String webhookPayload) {
-        try {
-            log.info("Processing M-Pesa webhook: {}", webhookPayload);
-            
-            // Parse webhook payload
-            Map<String, Object> payloadMap = objectMapper.readValue(webhookPayload, Map.class);
-            
-            // Extract STK callback data
-            Map<String, Object> body = (Map<String, Object>) payloadMap.get("Body");
-            if (body == null) {
-                log.warn("Webhook payload missing Body: {}", webhookPayload);
-                return "ERROR: Invalid webhook payload";
-            }
-            
-            Map<String, Object> stkCallback = (Map<String, Object>) body.get("stkCallback");
-            if (stkCallback == null) {
-                log.warn("Webhook payload missing stkCallback: {}", webhookPayload);
-                return "ERROR: Invalid webhook payload";
-            }
-            
-            String checkoutRequestId = (String) stkCallback.get("CheckoutRequestID");
-            Integer resultCode = (Integer) stkCallback.get("ResultCode");
-            String resultDesc = (String) stkCallback.get("ResultDesc");
-            
-            log.info("Processing callback - CheckoutRequestID: {}, ResultCode: {}, ResultDesc: {}", 
-                checkoutRequestId, resultCode, resultDesc);
-            
-            // Find payment by checkout request ID (stored in externalReference)
-            Optional<Payment> paymentOpt = paymentRepository.findByExternalReference(checkoutRequestId);
-            
-            if (paymentOpt.isEmpty()) {
-                log.warn("Payment not found for checkout request ID: {}", checkoutRequestId);
-                return "ERROR: Payment not found";
+            FeeInvoice invoice = feeInvoiceRepository.findById(paymentRequest.getInvoiceId())
+                    .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + paymentRequest.getInvoiceId()));
+            if (paymentRequest.getAmount().compareTo(invoice.getBalanceAmount()) > 0) {
+                return ApiResponse.error("Payment amount exceeds invoice balance");
             }
             
-            Payment payment = paymentOpt.get();
-            
-            // Process based on result code
-            if (resultCode == 0) {
-                // Payment successful
-                Map<String, Object> callbackMetadata = (Map<String, Object>) stkCallback.get("CallbackMetadata");
-                if (callbackMetadata != null) {
-                    List<Map<String, Object>> items = (List<Map<String, Object>>) callbackMetadata.get("Item");
-                    
-                    String mpesaReceiptNumber = null;
-                    
-                    if (items != null) {
-                        for (Map<String, Object> item : items) {
-                            String name = (String) item.get("Name");
-                            Object value = item.get("Value");
-                            
-                            if ("MpesaReceiptNumber".equals(name)) {
-                                mpesaReceiptNumber = value.toString();
-                                break; // We only need the receipt number
-                            }
-                        }
-                    }
-                    
-                    // Update payment
-                    payment.setTransactionId(mpesaReceiptNumber);
-                    payment.setPaymentStatus("COMPLETED");
-                    payment.setPaymentDate(LocalDateTime.now());
-                    if (payment.getPaymentNotes() == null || payment.getPaymentNotes().isEmpty()) {
-                        payment.setPaymentNotes("M-Pesa Receipt: " + mpesaReceiptNumber);
-                    }
-                    
-                    paymentRepository.save(payment);
-                    
-                    // Update invoice
-                    FeeInvoice invoice = payment.getInvoice();
-                    BigDecimal newPaidAmount = invoice.getPaidAmount().add(payment.getAmount());
-                    invoice.setPaidAmount(newPaidAmount);
-                    invoice.setBalanceAmount(invoice.getTotalAmount().subtract(newPaidAmount));
-                    
-                    // Update invoice status
-                    if (invoice.getBalanceAmount().compareTo(BigDecimal.ZERO) <= 0) {
-                        invoice.setStatus("PAID");
-                    } else if (newPaidAmount.compareTo(BigDecimal.ZERO) > 0) {
-                        invoice.setStatus("PARTIAL");
-                    }
-                    
-                    feeInvoiceRepository.save(invoice);
-                    
-                    log.info("Payment completed successfully - Receipt: {}, Amount: {}", mpesaReceiptNumber, payment.getAmount());
-                    
-                    // Send notification
-                    sendPaymentNotification(payment, invoice);
-                }
-            } else {
-                // Payment failed
-                payment.setPaymentStatus("FAILED");
-                payment.setPaymentNotes("M-Pesa payment failed: " + resultDesc);
-                paymentRepository.save(payment);
-                
-                log.warn("Payment failed - CheckoutRequestID: {}, Reason: {}", checkoutRequestId, resultDesc);
-            }
+            // The payment reference doubles as the Stripe idempotency key and travels back in the intent metadata
+            String paymentReference = namingSeriesAllocator.next(NamingSeriesAllocator.PAYMENT_SERIES);
+            StripeService.PaymentIntent intent = stripeService.createPaymentIntent(
+                    StripeService.toMinorUnits(paymentRequest.getAmount(), stripeCurrency),
+                    stripeCurrency,
+                    "Payment for " + invoice.getInvoiceNumber(),
+                    paymentRequest.getEmail(),
+                    Map.of("invoice_id", invoice.getId().toString(), "payment_reference", paymentReference),
+                    paymentReference);
+            
+            // Settled by the Stripe event inbox when payment_intent.succeeded arrives
+            Payment pendingPayment = new Payment();
+            pendingPayment.setPaymentReference(paymentReference);
+            pendingPayment.setAmount(paymentRequest.getAmount());
+            pendingPayment.setPaymentMethod("STRIPE");
+            pendingPayment.setPaymentStatus("PENDING");
+            pendingPayment.setExternalReference(intent.id());
+            pendingPayment.setPaymentNotes(paymentRequest.getPaymentNotes());
+            pendingPayment.setPaymentDate(LocalDateTime.now());
+            pendingPayment.setInvoice(invoice);
+            pendingPayment.setEnrollment(invoice.getEnrollment());
+            pendingPayment.setProcessedBy(currentUser);
+            pendingPayment.setIsActive(true);
             
-            return "SUCCESS";
+            paymentRepository.save(pendingPayment);
+            log.info("Created pending payment {} for payment intent {}", paymentReference, intent.id());
             
+            StripePaymentIntentResponse response = new StripePaymentIntentResponse(intent.id(), intent.clientSecret(),
+                    intent.status(), paymentReference, invoice.getId(), invoice.getInvoiceNumber(),
+                    paymentRequest.getAmount().toString(), stripeCurrency);
+            return ApiResponse.success("Stripe payment intent created successfully", response);
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error creating Stripe payment intent: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage());
         } catch (Exception e) {
-            log.error("Error processing M-Pesa webhook: {}", e.getMessage(), e);
-            return "ERROR: " + e.getMessage();
-        }
-    }
-    
-    public String handleStripeWebhook(String webhookPayload) {
-        try {
-            log.info("Processing Stripe webhook: {}", webhookPayload);
-            // TODO: Implement Stripe webhook processing
-            return "Stripe webhook processed successfully";
-        } catch (Exception e) {
-            log.error("Error processing Stripe webhook: {}", e.getMessage());
-            return "Error processing Stripe webhook: " + e.getMessage();
+            log.error("Error creating Stripe payment intent: {}", e.getMessage());
+            return ApiResponse.error("Failed to create Stripe payment intent: " + e.getMessage());
         }
     }
     
@@ -1085,41 +1182,4 @@ public class FinanceService {
         dto.setUpdatedAt(kenyaFeeStructure.getUpdatedAt());
         return dto;
     }
-    
-    // Send payment notification
-    private void sendPaymentNotification(Payment payment, FeeInvoice invoice) {
-        try {
-            // Get the student from the enrollment
-            User student = invoice.getEnrollment().getStudent();
-            
-            String paymentMessage = String.format(
-                "Payment of KES %s has been successfully processed for %s. " +
-                "Payment Method: %s, Transaction ID: %s. " +
-                "Your fee balance has been updated accordingly.",
-                payment.getAmount(),
-                invoice.getFeeStructure().getName(),
-                payment.getPaymentMethod(),
-                payment.getTransactionId() != null ? payment.getTransactionId() : "N/A"
-            );
-            
-            com.schoolmanagement.dto.NotificationRequestDto notificationRequest = 
-                com.schoolmanagement.dto.NotificationRequestDto.builder()
-                    .title("Payment Processed Successfully")
-                    .message(paymentMessage)
-                    .type(Notification.NotificationType.PAYMENT)
-                    .priority(Notification.NotificationPriority.MEDIUM)
-                    .recipientId(student.getId())
-                    .actionUrl("/finance/payments")
-                    .actionText("View Payment Details")
-                    .build();
-            
-            notificationService.createNotification(notificationRequest);
-            log.info("Payment notification sent to student: {}", student.getUsername());
-            
-        } catch (Exception e) {
-            log.error("Error sending payment notification: {}", e.getMessage());
-        }
-    }
 }
-
-
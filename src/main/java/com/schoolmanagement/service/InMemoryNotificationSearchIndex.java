@@ -0,0 +1,129 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.repository.NotificationRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted-index notification search for databases without full-text support, such as the H2 database used
+ * in development and tests. Each user's active notifications are indexed on first search and re-indexed when
+ * their row count or latest update time changes. Weights follow ts_rank's defaults: 1.0 per title word, 0.4
+ * per message word.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.search.engine", havingValue = "memory", matchIfMissing = true)
+public class InMemoryNotificationSearchIndex implements NotificationSearchIndex {
+
+    private static final float TITLE_WEIGHT = 1.0f;
+    private static final float MESSAGE_WEIGHT = 0.4f;
+    private static final int MAX_INDEXED_RECIPIENTS = 1000;
+
+    private static final Comparator<Hit> RANK_ORDER = Comparator.comparing(Hit::rank).reversed()
+            .thenComparing(Hit::notificationId, Comparator.reverseOrder());
+
+    private final NotificationRepository notificationRepository;
+    private final Map<Long, RecipientIndex> indexes = new ConcurrentHashMap<>();
+
+    public InMemoryNotificationSearchIndex(NotificationRepository notificationRepository) {
+        this.notificationRepository = notificationRepository;
+    }
+
+    @Override
+    public List<Hit> search(Long recipientId, String query, Notification.NotificationType type, Cursor after, int limit) {
+        List<String> terms = NotificationSearchIndex.terms(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        RecipientIndex index = current(recipientId);
+
+        Map<Long, Float> scores = null;
+        for (String term : terms) {
+            // Prefix match: every indexed word from term up to term + the highest char
+            Map<Long, Float> termScores = new HashMap<>();
+            for (Map<Long, Float> postings : index.postings().subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                postings.forEach((id, weight) -> termScores.merge(id, weight, Float::sum));
+            }
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<Long, Float> previous = scores;
+                scores = new HashMap<>();
+                for (Map.Entry<Long, Float> entry : termScores.entrySet()) {
+                    Float score = previous.get(entry.getKey());
+                    if (score != null) {
+                        scores.put(entry.getKey(), score + entry.getValue());
+                    }
+                }
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (Map.Entry<Long, Float> entry : scores.entrySet()) {
+            Hit hit = new Hit(entry.getKey(), entry.getValue());
+            if ((type == null || type == index.types().get(hit.notificationId())) && (after == null || after.precedes(hit))) {
+                hits.add(hit);
+            }
+        }
+        hits.sort(RANK_ORDER);
+        return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+    }
+
+    private RecipientIndex current(Long recipientId) {
+        Object[] signature = notificationRepository.findSearchSignature(recipientId).get(0);
+        long rowCount = signature[0] != null ? (Long) signature[0] : 0L;
+        LocalDateTime lastUpdated = (LocalDateTime) signature[1];
+
+        RecipientIndex index = indexes.get(recipientId);
+        if (index == null || index.rowCount() != rowCount || !Objects.equals(index.lastUpdated(), lastUpdated)) {
+            index = build(recipientId, rowCount, lastUpdated);
+            if (indexes.size() >= MAX_INDEXED_RECIPIENTS) {
+                indexes.clear();
+            }
+            indexes.put(recipientId, index);
+        }
+        return index;
+    }
+
+    private RecipientIndex build(Long recipientId, long rowCount, LocalDateTime lastUpdated) {
+        NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+        Map<Long, Notification.NotificationType> types = new HashMap<>();
+        for (Object[] row : notificationRepository.findSearchRowsByRecipientId(recipientId)) {
+            Long id = (Long) row[0];
+            types.put(id, (Notification.NotificationType) row[3]);
+            addWords(postings, id, (String) row[1], TITLE_WEIGHT);
+            addWords(postings, id, (String) row[2], MESSAGE_WEIGHT);
+        }
+        return new RecipientIndex(rowCount, lastUpdated, postings, types);
+    }
+
+    private static void addWords(NavigableMap<String, Map<Long, Float>> postings, Long id, String text, float weight) {
+        if (text == null) {
+            return;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                postings.computeIfAbsent(word, key -> new HashMap<>()).merge(id, weight, Float::sum);
+            }
+        }
+    }
+
+    private record RecipientIndex(long rowCount, LocalDateTime lastUpdated, NavigableMap<String, Map<Long, Float>> postings,
+                                  Map<Long, Notification.NotificationType> types) {
+    }
+}
@@ -27,6 +27,7 @@ public class KenyaComplianceService {
     private final CbcCompetencyRepository cbcCompetencyRepository;
     private final StudentCompetencyRepository studentCompetencyRepository;
     private final KenyaFeeStructureRepository kenyaFeeStructureRepository;
+    private final FeeStructureResolutionIndex feeStructureResolutionIndex;
     private final CapitationGrantRepository capitationGrantRepository;
     private final UserRepository userRepository;
     private final SchoolRepository schoolRepository;
@@ -148,6 +149,7 @@ public class KenyaComplianceService {
                     .build();
 
             KenyaFeeStructure savedFeeStructure = kenyaFeeStructureRepository.save(feeStructure);
+            feeStructureResolutionIndex.invalidate();
             return ApiResponse.success("Kenya fee structure created successfully", convertToDto(savedFeeStructure));
 
         } catch (Exception e) {
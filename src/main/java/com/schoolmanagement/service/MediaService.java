@@ -24,7 +24,7 @@ public class MediaService {
 
     private final DocumentRepository documentRepository;
     private final UserRepository userRepository;
-    private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final ClassRepository classRepository;
     private final AcademicYearRepository academicYearRepository;
     private final StudentGradeRepository studentGradeRepository;
@@ -207,7 +207,7 @@ public class MediaService {
             Files.copy(file.getInputStream(), filePath);
 
             // Get related entities
-            Subject subject = subjectRepository.findById(subjectId).orElse(null);
+            Subject subject = referenceDataCache.findSubject(subjectId).orElse(null);
             ClassEntity classEntity = classRepository.findById(classId).orElse(null);
             AcademicYear academicYear = academicYearRepository.findById(academicYearId).orElse(null);
 
@@ -0,0 +1,117 @@
+package com.schoolmanagement.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Caches the Daraja OAuth token until it expires.
+ * Inside the refresh-ahead window the cached token is still served while one background refresh runs;
+ * once expired, callers wait on that same refresh. At most one token request is in flight at any time.
+ */
+@Slf4j
+public class MpesaAccessTokenHolder {
+
+    private final Supplier<AccessToken> tokenFetcher;
+    private final Executor executor;
+    private final Clock clock;
+    private final Duration refreshAhead;
+    private final AtomicReference<CompletableFuture<AccessToken>> inFlight = new AtomicReference<>();
+    private final Counter hits;
+    private final Counter refreshes;
+    private final Counter failures;
+
+    private volatile AccessToken current;
+
+    public MpesaAccessTokenHolder(Supplier<AccessToken> tokenFetcher, Executor executor, Clock clock,
+                                  Duration refreshAhead, MeterRegistry meterRegistry) {
+        this.tokenFetcher = tokenFetcher;
+        this.executor = executor;
+        this.clock = clock;
+        this.refreshAhead = refreshAhead;
+        this.hits = Counter.builder("mpesa.access_token.hits")
+                .description("M-Pesa API calls served with a cached access token")
+                .register(meterRegistry);
+        this.refreshes = Counter.builder("mpesa.access_token.refreshes")
+                .description("Successful M-Pesa OAuth token requests")
+                .register(meterRegistry);
+        this.failures = Counter.builder("mpesa.access_token.failures")
+                .description("Failed M-Pesa OAuth token requests")
+                .register(meterRegistry);
+    }
+
+    public String getToken() {
+        AccessToken token = current;
+        Instant now = clock.instant();
+        if (token != null && now.isBefore(token.expiresAt())) {
+            hits.increment();
+            if (!now.isBefore(token.expiresAt().minus(refreshAhead))) {
+                refresh();
+            }
+            return token.value();
+        }
+
+        try {
+            return refresh().join().value();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    // Called periodically so a token in use is renewed even when no request lands in the refresh window
+    public void refreshIfExpiring() {
+        AccessToken token = current;
+        if (token != null && !clock.instant().isBefore(token.expiresAt().minus(refreshAhead))) {
+            refresh();
+        }
+    }
+
+    // Drops the cached token, e.g. after the API rejected it with 401
+    public void invalidate() {
+        current = null;
+    }
+
+    // Starts a refresh unless one is already running, and returns the shared result
+    public CompletableFuture<AccessToken> refresh() {
+        while (true) {
+            CompletableFuture<AccessToken> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<AccessToken> started = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, started)) {
+                executor.execute(() -> fetch(started));
+                return started;
+            }
+        }
+    }
+
+    private void fetch(CompletableFuture<AccessToken> result) {
+        try {
+            AccessToken token = tokenFetcher.get();
+            current = token;
+            refreshes.increment();
+            log.info("M-Pesa access token refreshed, valid until {}", token.expiresAt());
+            result.complete(token);
+        } catch (Throwable e) {
+            failures.increment();
+            log.error("Failed to refresh M-Pesa access token: {}", e.getMessage());
+            result.completeExceptionally(e);
+        } finally {
+            inFlight.compareAndSet(result, null);
+        }
+    }
+
+    public record AccessToken(String value, Instant expiresAt) {
+    }
+}
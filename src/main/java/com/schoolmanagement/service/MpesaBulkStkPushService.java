@@ -0,0 +1,289 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.BulkStkPushRequestDto;
+import com.schoolmanagement.dto.MpesaStkPushResponse;
+import com.schoolmanagement.dto.PaymentRequestDto;
+import com.schoolmanagement.dto.StkPushCampaignDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sends STK pushes for many invoices at once, e.g. a fee reminder campaign for a whole class.
+ * A single dispatcher paces requests through a shared token bucket and hands them to a bounded
+ * worker pool, so Daraja never sees more than the configured rate or number of in-flight calls.
+ * Each push goes through {@link FinanceService#initiateMpesaStkPush}; campaign results are kept in memory.
+ */
+@Service
+@Slf4j
+public class MpesaBulkStkPushService {
+
+    private static final String STATUS_QUEUED = "QUEUED";
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+    private static final int MAX_RECORDED_FAILURES = 200;
+    private static final int MAX_REASON_LENGTH = 120;
+
+    private final FinanceService financeService;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final TokenBucket rateLimiter;
+    private final Semaphore inFlight;
+    private final ExecutorService workers;
+    private final ExecutorService dispatcher;
+    private final Map<String, Campaign> campaigns = new ConcurrentHashMap<>();
+    private final Counter succeededCounter;
+    private final Counter failedCounter;
+
+    @Value("${mpesa.bulk.retention-minutes:1440}")
+    private long retentionMinutes;
+
+    public MpesaBulkStkPushService(FinanceService financeService,
+                                   FeeInvoiceRepository feeInvoiceRepository,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${mpesa.bulk.rate-per-second:20}") double ratePerSecond,
+                                   @Value("${mpesa.bulk.concurrency:16}") int concurrency) {
+        this.financeService = financeService;
+        this.feeInvoiceRepository = feeInvoiceRepository;
+        this.rateLimiter = new TokenBucket(ratePerSecond, Math.max(1, (int) ratePerSecond));
+        this.inFlight = new Semaphore(concurrency);
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "mpesa-bulk-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Campaigns are dispatched one after another and share the same rate budget
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mpesa-bulk-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.succeededCounter = Counter.builder("mpesa.bulk_stk_push.requests")
+                .tag("outcome", "succeeded")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("mpesa.bulk_stk_push.requests")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+    }
+
+    public ApiResponse<StkPushCampaignDto> startCampaign(BulkStkPushRequestDto request, User currentUser) {
+        try {
+            Set<Long> invoiceIds = request.getItems().stream()
+                    .map(BulkStkPushRequestDto.Item::getInvoiceId)
+                    .collect(Collectors.toSet());
+            Map<Long, FeeInvoice> invoices = feeInvoiceRepository.findActiveInvoicesWithStudentByIdIn(invoiceIds).stream()
+                    .collect(Collectors.toMap(FeeInvoice::getId, Function.identity()));
+
+            String campaignId = UUID.randomUUID().toString();
+            String name = request.getCampaignName() != null ? request.getCampaignName() : "STK push campaign " + LocalDateTime.now();
+            Campaign campaign = new Campaign(campaignId, name, request.getItems().size());
+
+            // Items that cannot be pushed fail up front and never use rate budget
+            List<PushTask> tasks = new ArrayList<>();
+            Set<Long> seen = new HashSet<>();
+            for (BulkStkPushRequestDto.Item item : request.getItems()) {
+                FeeInvoice invoice = invoices.get(item.getInvoiceId());
+                String phoneNumber = item.getPhoneNumber();
+                if (invoice == null) {
+                    campaign.recordFailure(item.getInvoiceId(), phoneNumber, "Invoice not found");
+                    continue;
+                }
+                if (!seen.add(invoice.getId())) {
+                    campaign.recordFailure(item.getInvoiceId(), phoneNumber, "Duplicate invoice in campaign");
+                    continue;
+                }
+                if (phoneNumber == null || phoneNumber.isBlank()) {
+                    phoneNumber = invoice.getEnrollment().getStudent().getPhoneNumber();
+                }
+                if (phoneNumber == null || phoneNumber.isBlank()) {
+                    campaign.recordFailure(item.getInvoiceId(), null, "No phone number");
+                    continue;
+                }
+                BigDecimal amount = item.getAmount() != null ? item.getAmount() : invoice.getBalanceAmount();
+                if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                    campaign.recordFailure(item.getInvoiceId(), phoneNumber, "Nothing to pay");
+                    continue;
+                }
+                tasks.add(new PushTask(invoice.getId(), phoneNumber, amount, invoice.getInvoiceNumber()));
+            }
+
+            campaigns.put(campaignId, campaign);
+            dispatcher.execute(() -> dispatch(campaign, tasks, request.getTransactionDescription(), currentUser));
+
+            log.info("STK push campaign {} '{}' queued with {} pushes ({} rejected up front)", campaignId, name,
+                    tasks.size(), campaign.failed.get());
+            return ApiResponse.success("STK push campaign started", campaign.toDto());
+        } catch (Exception e) {
+            log.error("Error starting STK push campaign: {}", e.getMessage());
+            return ApiResponse.error("Failed to start STK push campaign: " + e.getMessage());
+        }
+    }
+
+    public ApiResponse<StkPushCampaignDto> getCampaign(String campaignId) {
+        Campaign campaign = campaigns.get(campaignId);
+        if (campaign == null) {
+            return ApiResponse.error("Campaign not found");
+        }
+        return ApiResponse.success(campaign.toDto());
+    }
+
+    @Scheduled(fixedDelayString = "${mpesa.bulk.purge-interval-ms:600000}")
+    public void purgeFinishedCampaigns() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        campaigns.values().removeIf(campaign -> campaign.completedAt != null && campaign.completedAt.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void dispatch(Campaign campaign, List<PushTask> tasks, String transactionDescription, User currentUser) {
+        campaign.status = STATUS_RUNNING;
+        int index = 0;
+        try {
+            for (; index < tasks.size(); index++) {
+                PushTask task = tasks.get(index);
+                rateLimiter.acquire();
+                inFlight.acquire();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            push(campaign, task, transactionDescription, currentUser);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                    campaign.submitted.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            Thread.currentThread().interrupt();
+            for (; index < tasks.size(); index++) {
+                PushTask task = tasks.get(index);
+                campaign.recordFailure(task.invoiceId(), task.phoneNumber(), "Campaign cancelled");
+            }
+            log.warn("STK push campaign {} interrupted", campaign.id);
+        }
+        campaign.completeIfDone();
+    }
+
+    private void push(Campaign campaign, PushTask task, String transactionDescription, User currentUser) {
+        try {
+            PaymentRequestDto paymentRequest = new PaymentRequestDto();
+            paymentRequest.setInvoiceId(task.invoiceId());
+            paymentRequest.setAmount(task.amount());
+            paymentRequest.setPaymentMethod("M_PESA");
+            paymentRequest.setPhoneNumber(task.phoneNumber());
+            paymentRequest.setAccountReference(task.invoiceNumber());
+            paymentRequest.setTransactionDescription(transactionDescription);
+            paymentRequest.setPaymentNotes("STK push campaign: " + campaign.name);
+
+            ApiResponse<MpesaStkPushResponse> response = financeService.initiateMpesaStkPush(paymentRequest, currentUser);
+            if (response.isSuccess()) {
+                campaign.succeeded.incrementAndGet();
+                succeededCounter.increment();
+            } else {
+                campaign.recordFailure(task.invoiceId(), task.phoneNumber(), response.getMessage());
+                failedCounter.increment();
+            }
+        } catch (Exception e) {
+            campaign.recordFailure(task.invoiceId(), task.phoneNumber(), e.getMessage());
+            failedCounter.increment();
+        } finally {
+            campaign.completeIfDone();
+        }
+    }
+
+    private record PushTask(Long invoiceId, String phoneNumber, BigDecimal amount, String invoiceNumber) {
+    }
+
+    private static final class Campaign {
+        private final String id;
+        private final String name;
+        private final int total;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Map<String, Integer> failureReasons = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<StkPushCampaignDto.ItemFailure> failures = new ConcurrentLinkedQueue<>();
+        private volatile String status = STATUS_QUEUED;
+        private volatile LocalDateTime completedAt;
+
+        private Campaign(String id, String name, int total) {
+            this.id = id;
+            this.name = name;
+            this.total = total;
+        }
+
+        private void recordFailure(Long invoiceId, String phoneNumber, String reason) {
+            String key = reason == null ? "Unknown error"
+                    : reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+            failureReasons.merge(key, 1, Integer::sum);
+            if (failed.incrementAndGet() <= MAX_RECORDED_FAILURES) {
+                failures.add(StkPushCampaignDto.ItemFailure.builder()
+                        .invoiceId(invoiceId)
+                        .phoneNumber(phoneNumber)
+                        .reason(key)
+                        .build());
+            }
+        }
+
+        private synchronized void completeIfDone() {
+            if (completedAt == null && succeeded.get() + failed.get() >= total) {
+                completedAt = LocalDateTime.now();
+                status = STATUS_COMPLETED;
+                log.info("STK push campaign {} completed: {} succeeded, {} failed", id, succeeded.get(), failed.get());
+            }
+        }
+
+        private StkPushCampaignDto toDto() {
+            return StkPushCampaignDto.builder()
+                    .campaignId(id)
+                    .name(name)
+                    .status(status)
+                    .total(total)
+                    .submitted(submitted.get())
+                    .succeeded(succeeded.get())
+                    .failed(failed.get())
+                    .failureReasons(new LinkedHashMap<>(failureReasons))
+                    .failures(new ArrayList<>(failures))
+                    .startedAt(startedAt)
+                    .completedAt(completedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.schoolmanagement.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schoolmanagement.entity.MpesaCallbackInbox;
+import com.schoolmanagement.repository.MpesaCallbackInboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable inbox for M-Pesa STK callbacks. The webhook only stores the callback and acknowledges it;
+ * a scheduled worker claims stored callbacks in batches and settles them through {@link PaymentSettlementService}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MpesaCallbackInboxService {
+
+    private static final Map<String, Object> ACCEPTED = Map.of("ResultCode", 0, "ResultDesc", "Accepted");
+
+    private final MpesaCallbackInboxRepository mpesaCallbackInboxRepository;
+    private final PaymentSettlementService paymentSettlementService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${finance.mpesa-callbacks.batch-size:100}")
+    private int batchSize;
+
+    @Value("${finance.mpesa-callbacks.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${finance.mpesa-callbacks.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // Stores the callback and returns the Daraja acknowledgement; no payment logic runs on the request thread
+    public Map<String, Object> receive(String payload) {
+        MpesaCallbackInbox callback = parse(payload);
+
+        if (callback.getCheckoutRequestId() != null
+                && mpesaCallbackInboxRepository.existsByCheckoutRequestId(callback.getCheckoutRequestId())) {
+            log.info("Duplicate M-Pesa callback ignored: {}", callback.getCheckoutRequestId());
+            return ACCEPTED;
+        }
+
+        try {
+            mpesaCallbackInboxRepository.save(callback);
+        } catch (DataIntegrityViolationException e) {
+            log.info("Duplicate M-Pesa callback ignored: {}", callback.getCheckoutRequestId());
+            return ACCEPTED;
+        }
+
+        log.info("M-Pesa callback stored - CheckoutRequestID: {}, ResultCode: {}", callback.getCheckoutRequestId(),
+                callback.getResultCode());
+        return ACCEPTED;
+    }
+
+    @Scheduled(fixedDelayString = "${finance.mpesa-callbacks.poll-interval-ms:1000}")
+    public void processPendingCallbacks() {
+        try {
+            List<Long> claimed;
+            do {
+                claimed = claimBatch();
+                for (Long callbackId : claimed) {
+                    processCallback(callbackId);
+                }
+            } while (claimed.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Error processing M-Pesa callback inbox: {}", e.getMessage());
+        }
+    }
+
+    // Marks a batch as PROCESSING with a lease; rows locked by another worker are skipped
+    private List<Long> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<MpesaCallbackInbox> batch = mpesaCallbackInboxRepository.findClaimable(now, PageRequest.of(0, batchSize));
+            for (MpesaCallbackInbox callback : batch) {
+                callback.setStatus("PROCESSING");
+                callback.setAttempts(callback.getAttempts() + 1);
+                callback.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+            }
+            return batch.stream().map(MpesaCallbackInbox::getId).toList();
+        });
+    }
+
+    private void processCallback(Long callbackId) {
+        try {
+            paymentSettlementService.settleMpesaCallback(callbackId);
+        } catch (Exception e) {
+            log.warn("M-Pesa callback {} could not be settled: {}", callbackId, e.getMessage());
+            recordFailure(callbackId, e.getMessage());
+        }
+    }
+
+    private void recordFailure(Long callbackId, String error) {
+        transactionTemplate.executeWithoutResult(status -> mpesaCallbackInboxRepository.findById(callbackId).ifPresent(callback -> {
+            String message = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+            callback.setLastError(message);
+            if (callback.getAttempts() >= maxAttempts) {
+                callback.setStatus("FAILED");
+                log.error("M-Pesa callback {} failed permanently after {} attempts: {}", callback.getCheckoutRequestId(),
+                        callback.getAttempts(), message);
+            } else {
+                // Exponential backoff capped at ten minutes
+                long delaySeconds = Math.min(600, 1L << Math.min(callback.getAttempts(), 10));
+                callback.setStatus("RECEIVED");
+                callback.setNextAttemptAt(LocalDateTime.now().plusSeconds(delaySeconds));
+            }
+        }));
+    }
+
+    private MpesaCallbackInbox parse(String payload) {
+        MpesaCallbackInbox callback = MpesaCallbackInbox.builder()
+                .payload(payload)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+        try {
+            JsonNode stkCallback = objectMapper.readTree(payload).path("Body").path("stkCallback");
+            if (stkCallback.isMissingNode() || !stkCallback.hasNonNull("CheckoutRequestID")) {
+                log.warn("M-Pesa callback missing stkCallback/CheckoutRequestID, storing as invalid");
+                callback.setStatus("INVALID");
+                return callback;
+            }
+
+            callback.setCheckoutRequestId(stkCallback.path("CheckoutRequestID").asText());
+            callback.setMerchantRequestId(stkCallback.path("MerchantRequestID").asText(null));
+            callback.setResultCode(stkCallback.path("ResultCode").asInt(-1));
+            callback.setResultDesc(stkCallback.path("ResultDesc").asText(null));
+
+            for (JsonNode item : stkCallback.path("CallbackMetadata").path("Item")) {
+                JsonNode value = item.path("Value");
+                if (value.isMissingNode() || value.isNull()) {
+                    continue;
+                }
+                switch (item.path("Name").asText()) {
+                    case "MpesaReceiptNumber" -> callback.setMpesaReceiptNumber(value.asText());
+                    case "Amount" -> callback.setAmount(new BigDecimal(value.asText()));
+                    case "PhoneNumber" -> callback.setPhoneNumber(value.asText());
+                    default -> {
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unparseable M-Pesa callback stored as invalid: {}", e.getMessage());
+            callback.setStatus("INVALID");
+        }
+        return callback;
+    }
+}
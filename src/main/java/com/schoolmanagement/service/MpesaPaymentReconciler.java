@@ -0,0 +1,162 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.util.TokenBucket;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settles M-Pesa payments whose callback never arrived. Payments still PENDING after a grace period
+ * are paged by id, their STK push status is queried concurrently within a rate budget, and final
+ * results go through {@link PaymentSettlementService}, the same conditional path the callback inbox uses.
+ */
+@Service
+@Slf4j
+public class MpesaPaymentReconciler {
+
+    private static final String OUTCOME_STILL_PENDING = "STILL_PENDING";
+    private static final String OUTCOME_QUERY_ERROR = "QUERY_ERROR";
+
+    private final PaymentRepository paymentRepository;
+    private final MpesaService mpesaService;
+    private final PaymentSettlementService paymentSettlementService;
+    private final MeterRegistry meterRegistry;
+    private final TokenBucket rateLimiter;
+    private final ExecutorService workers;
+    // Runs the sweep on its own thread so a long sweep never holds a scheduler thread
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mpesa-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    @Value("${mpesa.reconciler.pending-after-minutes:5}")
+    private long pendingAfterMinutes;
+
+    @Value("${mpesa.reconciler.page-size:200}")
+    private int pageSize;
+
+    public MpesaPaymentReconciler(PaymentRepository paymentRepository,
+                                  MpesaService mpesaService,
+                                  PaymentSettlementService paymentSettlementService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${mpesa.reconciler.queries-per-second:5}") double queriesPerSecond,
+                                  @Value("${mpesa.reconciler.concurrency:4}") int concurrency) {
+        this.paymentRepository = paymentRepository;
+        this.mpesaService = mpesaService;
+        this.paymentSettlementService = paymentSettlementService;
+        this.meterRegistry = meterRegistry;
+        this.rateLimiter = new TokenBucket(queriesPerSecond, Math.max(1, (int) queriesPerSecond));
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "mpesa-reconciler-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("mpesa.reconciler.backlog", backlog, AtomicLong::get)
+                .description("M-Pesa payments PENDING past the reconciliation grace period")
+                .register(meterRegistry);
+        Gauge.builder("mpesa.reconciler.lag_seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest M-Pesa payment PENDING past the grace period")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${mpesa.reconciler.interval-ms:120000}", initialDelayString = "${mpesa.reconciler.initial-delay-ms:60000}")
+    public void scheduleReconciliation() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            runner.execute(() -> {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    log.error("Error reconciling pending M-Pesa payments: {}", e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (Exception e) {
+            running.set(false);
+            log.error("Could not schedule M-Pesa reconciliation: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // One sweep over every stale pending payment; returns the number of payments queried
+    public int reconcile() throws InterruptedException {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(pendingAfterMinutes);
+        refreshBacklog(cutoff);
+        if (backlog.get() == 0) {
+            return 0;
+        }
+
+        long afterId = 0;
+        int queried = 0;
+        List<Object[]> page;
+        do {
+            page = paymentRepository.findStalePendingMpesaPayments(cutoff, afterId, PageRequest.of(0, pageSize));
+            List<CompletableFuture<Void>> queries = new ArrayList<>(page.size());
+            for (Object[] row : page) {
+                Long paymentId = (Long) row[0];
+                String checkoutRequestId = (String) row[1];
+                rateLimiter.acquire();
+                queries.add(CompletableFuture.runAsync(() -> reconcilePayment(paymentId, checkoutRequestId), workers));
+                afterId = paymentId;
+            }
+            CompletableFuture.allOf(queries.toArray(new CompletableFuture<?>[0])).join();
+            queried += page.size();
+        } while (page.size() == pageSize);
+
+        refreshBacklog(cutoff);
+        log.info("M-Pesa reconciliation queried {} pending payments, {} still pending", queried, backlog.get());
+        return queried;
+    }
+
+    private void reconcilePayment(Long paymentId, String checkoutRequestId) {
+        String outcome;
+        try {
+            MpesaService.StkPushQueryResult result = mpesaService.queryStkPushResult(checkoutRequestId);
+            outcome = result.pending()
+                    ? OUTCOME_STILL_PENDING
+                    : paymentSettlementService.settleMpesaQueryResult(paymentId, result.resultCode(), result.resultDesc());
+        } catch (Exception e) {
+            log.warn("STK Push status query for payment {} failed: {}", paymentId, e.getMessage());
+            outcome = OUTCOME_QUERY_ERROR;
+        }
+        meterRegistry.counter("mpesa.reconciler.payments", "outcome", outcome).increment();
+    }
+
+    private void refreshBacklog(LocalDateTime cutoff) {
+        List<Object[]> stats = paymentRepository.getStalePendingMpesaStats(cutoff);
+        Object[] row = stats.isEmpty() ? new Object[] {0L, null} : stats.get(0);
+        backlog.set(row[0] != null ? ((Number) row[0]).longValue() : 0L);
+        lagSeconds.set(row[1] != null ? Duration.between((LocalDateTime) row[1], LocalDateTime.now()).getSeconds() : 0L);
+    }
+}
@@ -4,46 +4,73 @@ import com.schoolmanagement.entity.Payment;
 import com.schoolmanagement.entity.PaymentGatewayConfig;
 import com.schoolmanagement.repository.PaymentGatewayConfigRepository;
 import com.schoolmanagement.repository.PaymentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
 
+import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
 public class MpesaService {
 
+    private static final String STK_QUERY_PROCESSING_ERROR_CODE = "500.001.1001";
+
     private final RestTemplate restTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService tokenRefreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mpesa-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private MpesaAccessTokenHolder accessTokenHolder;
     
-    public MpesaService() {
-        // Configure RestTemplate with browser-like headers to bypass Incapsula protection
-        ClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+    public MpesaService(MeterRegistry meterRegistry,
+                        @Value("${mpesa.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                        @Value("${mpesa.http.read-timeout-ms:30000}") long readTimeoutMs) {
+        this.meterRegistry = meterRegistry;
+
+        // JDK HttpClient keeps TLS connections alive and pools them across STK pushes and status queries
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
         restTemplate = new RestTemplate(factory);
         
         // Add interceptor to add browser-like headers to all requests
+        // Connection and Accept-Encoding are left to the client: Connection is a restricted header
+        // and an explicit gzip Accept-Encoding would disable transparent decoding
         restTemplate.getInterceptors().add((request, body, execution) -> {
             HttpHeaders headers = request.getHeaders();
             // Add browser-like headers to bypass bot protection
             headers.add("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
             headers.add("Accept", "application/json, text/plain, */*");
             headers.add("Accept-Language", "en-US,en;q=0.9");
-            headers.add("Accept-Encoding", "gzip, deflate, br");
-            headers.add("Connection", "keep-alive");
             headers.add("Cache-Control", "no-cache");
             return execution.execute(request, body);
         });
@@ -67,6 +94,29 @@ public class MpesaService {
     @Value("${mpesa.environment:sandbox}")
     private String environment;
 
+    // Overrides the Safaricom host, e.g. to point at a local Daraja stub
+    @Value("${mpesa.base-url:}")
+    private String baseUrl;
+
+    @Value("${mpesa.token.refresh-ahead-seconds:300}")
+    private long tokenRefreshAheadSeconds;
+
+    // B2C (business to customer) payouts, used for refunds
+    @Value("${mpesa.b2c.short-code:${mpesa.short-code:174379}}")
+    private String b2cShortCode;
+
+    @Value("${mpesa.b2c.initiator-name:testapi}")
+    private String b2cInitiatorName;
+
+    @Value("${mpesa.b2c.security-credential:}")
+    private String b2cSecurityCredential;
+
+    @Value("${mpesa.b2c.result-url:http://localhost:8081/api/payments/webhooks/mpesa/b2c/result}")
+    private String b2cResultUrl;
+
+    @Value("${mpesa.b2c.timeout-url:http://localhost:8081/api/payments/webhooks/mpesa/b2c/timeout}")
+    private String b2cTimeoutUrl;
+
     @jakarta.annotation.PostConstruct
     public void init() {
         log.info("M-Pesa Configuration loaded - Environment: {}, ShortCode: {}, ConsumerKey: {}...{}, PassKey: {}...{}, CallbackURL: {}", 
@@ -81,6 +131,19 @@ public class MpesaService {
         if (!"sandbox".equalsIgnoreCase(environment) && !"production".equalsIgnoreCase(environment)) {
             log.warn("Invalid M-Pesa environment '{}'. Expected 'sandbox' or 'production'. Defaulting to sandbox.", environment);
         }
+        
+        accessTokenHolder = new MpesaAccessTokenHolder(this::fetchAccessToken, tokenRefreshExecutor, Clock.systemUTC(),
+                Duration.ofSeconds(tokenRefreshAheadSeconds), meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tokenRefreshExecutor.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${mpesa.token.refresh-check-ms:60000}")
+    public void refreshAccessTokenIfExpiring() {
+        accessTokenHolder.refreshIfExpiring();
     }
 
     public String initiateSTKPush(String phoneNumber, String amount, String accountReference, String transactionDescription) {
@@ -158,6 +221,7 @@ public class MpesaService {
             }
 
         } catch (Exception e) {
+            invalidateTokenIfRejected(e);
             log.error("Error initiating STK Push: {}", e.getMessage());
             throw new RuntimeException("Failed to initiate STK Push: " + e.getMessage());
         }
@@ -167,27 +231,7 @@ public class MpesaService {
         try {
             log.info("Querying STK Push status for: {}", checkoutRequestId);
 
-            String accessToken = getAccessToken();
-            if (accessToken == null) {
-                throw new RuntimeException("Failed to get access token");
-            }
-
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-            String password = generatePassword(timestamp);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("BusinessShortCode", shortCode);
-            requestBody.put("Password", password);
-            requestBody.put("Timestamp", timestamp);
-            requestBody.put("CheckoutRequestID", checkoutRequestId);
-
-            String url = getApiUrl() + "/mpesa/stkpushquery/v1/query";
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(accessToken);
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            ResponseEntity<Map> response = postStkPushQuery(checkoutRequestId);
 
             if (response.getStatusCode() == HttpStatus.OK) {
                 Map<String, Object> responseBody = response.getBody();
@@ -203,11 +247,114 @@ public class MpesaService {
             }
 
         } catch (Exception e) {
+            invalidateTokenIfRejected(e);
             log.error("Error querying STK Push status: {}", e.getMessage());
             return "ERROR";
         }
     }
 
+    /**
+     * Queries the final result of an STK push for reconciliation.
+     * Returns a pending result while Daraja still reports the transaction as being processed;
+     * throws when the query itself fails so the caller can retry later.
+     */
+    public StkPushQueryResult queryStkPushResult(String checkoutRequestId) {
+        try {
+            ResponseEntity<Map> response = postStkPushQuery(checkoutRequestId);
+            Map<String, Object> responseBody = response.getBody();
+            if (responseBody == null || !"0".equals(String.valueOf(responseBody.get("ResponseCode")))
+                    || responseBody.get("ResultCode") == null) {
+                throw new IllegalStateException("Unexpected STK Push query response: " + responseBody);
+            }
+            return new StkPushQueryResult(false, Integer.parseInt(String.valueOf(responseBody.get("ResultCode"))),
+                    (String) responseBody.get("ResultDesc"));
+        } catch (HttpStatusCodeException e) {
+            // Daraja answers 500 with this error code until the customer has acted on the prompt
+            if (e.getResponseBodyAsString().contains(STK_QUERY_PROCESSING_ERROR_CODE)) {
+                return new StkPushQueryResult(true, null, "The transaction is being processed");
+            }
+            invalidateTokenIfRejected(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a B2C payment request and returns Daraja's ConversationID. The outcome arrives later on the result URL,
+     * carrying originatorConversationId back so the caller can match it to its own record.
+     */
+    public String initiateB2CPayment(String phoneNumber, long amount, String remarks, String originatorConversationId) {
+        try {
+            String formattedPhone = formatPhoneNumber(phoneNumber);
+            if (formattedPhone == null || formattedPhone.length() != 12) {
+                throw new IllegalArgumentException("Invalid phone number format. Expected: 254XXXXXXXXX");
+            }
+            if (b2cSecurityCredential == null || b2cSecurityCredential.isBlank()) {
+                throw new IllegalArgumentException("M-Pesa B2C security credential not configured");
+            }
+            log.info("Initiating M-Pesa B2C payment {} of {} to {}", originatorConversationId, amount, formattedPhone);
+
+            String accessToken = getAccessToken();
+            if (accessToken == null) {
+                throw new RuntimeException("Failed to get access token");
+            }
+
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("OriginatorConversationID", originatorConversationId);
+            requestBody.put("InitiatorName", b2cInitiatorName);
+            requestBody.put("SecurityCredential", b2cSecurityCredential);
+            requestBody.put("CommandID", "BusinessPayment");
+            requestBody.put("Amount", amount);
+            requestBody.put("PartyA", b2cShortCode);
+            requestBody.put("PartyB", formattedPhone);
+            requestBody.put("Remarks", remarks != null ? remarks : "Refund");
+            requestBody.put("QueueTimeOutURL", b2cTimeoutUrl);
+            requestBody.put("ResultURL", b2cResultUrl);
+            requestBody.put("Occasion", originatorConversationId);
+
+            String url = getApiUrl() + "/mpesa/b2c/v1/paymentrequest";
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setBearerAuth(accessToken);
+
+            ResponseEntity<Map> response = restTemplate.postForEntity(url, new HttpEntity<>(requestBody, headers), Map.class);
+            Map<String, Object> responseBody = response.getBody();
+            if (responseBody != null && "0".equals(String.valueOf(responseBody.get("ResponseCode")))) {
+                return (String) responseBody.get("ConversationID");
+            }
+            throw new RuntimeException("B2C request rejected: " + (responseBody != null ? responseBody.get("ResponseDescription") : "empty response"));
+
+        } catch (Exception e) {
+            invalidateTokenIfRejected(e);
+            log.error("Error initiating M-Pesa B2C payment: {}", e.getMessage());
+            // The cause tells callers whether the request may have reached Daraja
+            throw new RuntimeException("Failed to initiate M-Pesa B2C payment: " + e.getMessage(), e);
+        }
+    }
+
+    private ResponseEntity<Map> postStkPushQuery(String checkoutRequestId) {
+        String accessToken = getAccessToken();
+        if (accessToken == null) {
+            throw new RuntimeException("Failed to get access token");
+        }
+
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        String password = generatePassword(timestamp);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("BusinessShortCode", shortCode);
+        requestBody.put("Password", password);
+        requestBody.put("Timestamp", timestamp);
+        requestBody.put("CheckoutRequestID", checkoutRequestId);
+
+        String url = getApiUrl() + "/mpesa/stkpushquery/v1/query";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(accessToken);
+
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+        return restTemplate.postForEntity(url, request, Map.class);
+    }
+
     public void processCallback(Map<String, Object> callbackData) {
         try {
             log.info("Processing M-Pesa callback: {}", callbackData);
@@ -234,39 +381,52 @@ public class MpesaService {
 
     private String getAccessToken() {
         try {
-            String credentials = consumerKey + ":" + consumerSecret;
-            String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+            return accessTokenHolder.getToken();
+        } catch (Exception e) {
+            log.error("Error getting access token: {}", e.getMessage());
+            return null;
+        }
+    }
 
-            String url = getApiUrl() + "/oauth/v1/generate?grant_type=client_credentials";
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Basic " + encodedCredentials);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            // Additional headers to help bypass Incapsula
-            headers.set("Origin", getApiUrl());
-            headers.set("Referer", getApiUrl() + "/");
+    private void invalidateTokenIfRejected(Exception e) {
+        if (e instanceof HttpClientErrorException.Unauthorized) {
+            log.warn("M-Pesa rejected the access token, forcing a refresh on next call");
+            accessTokenHolder.invalidate();
+        }
+    }
 
-            HttpEntity<String> request = new HttpEntity<>(headers);
-            log.info("Requesting access token from: {}", url);
+    // Performs the OAuth round trip; only called by the token holder
+    private MpesaAccessTokenHolder.AccessToken fetchAccessToken() {
+        String credentials = consumerKey + ":" + consumerSecret;
+        String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+
+        String url = getApiUrl() + "/oauth/v1/generate?grant_type=client_credentials";
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Basic " + encodedCredentials);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // Additional headers to help bypass Incapsula
+        headers.set("Origin", getApiUrl());
+        headers.set("Referer", getApiUrl() + "/");
+
+        HttpEntity<String> request = new HttpEntity<>(headers);
+        log.info("Requesting access token from: {}", url);
+        try {
             ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, request, Map.class);
-
-            if (response.getStatusCode() == HttpStatus.OK) {
-                Map<String, Object> responseBody = response.getBody();
-                if (responseBody != null && responseBody.containsKey("access_token")) {
-                    String token = (String) responseBody.get("access_token");
-                    log.info("Successfully obtained M-Pesa access token");
-                    return token;
-                }
+            Map<String, Object> responseBody = response.getBody();
+            if (response.getStatusCode() == HttpStatus.OK && responseBody != null && responseBody.containsKey("access_token")) {
+                // Daraja returns expires_in as a string of seconds, normally 3599
+                Object expiresIn = responseBody.get("expires_in");
+                long expiresInSeconds = expiresIn != null ? Long.parseLong(expiresIn.toString().trim()) : 3599L;
+                return new MpesaAccessTokenHolder.AccessToken((String) responseBody.get("access_token"),
+                        Instant.now().plusSeconds(expiresInSeconds));
             }
 
-            log.error("Failed to get access token - Status: {}, Body: {}", response.getStatusCode(), response.getBody());
-            return null;
+            log.error("Failed to get access token - Status: {}, Body: {}", response.getStatusCode(), responseBody);
+            throw new IllegalStateException("Failed to get access token: HTTP " + response.getStatusCode());
 
         } catch (HttpClientErrorException e) {
             log.error("HTTP error getting access token - Status: {}, Body: {}", e.getStatusCode(), e.getResponseBodyAsString());
-            return null;
-        } catch (Exception e) {
-            log.error("Error getting access token: {}", e.getMessage(), e);
-            return null;
+            throw e;
         }
     }
 
@@ -283,6 +443,9 @@ public class MpesaService {
     }
 
     private String getApiUrl() {
+        if (baseUrl != null && !baseUrl.isBlank()) {
+            return baseUrl;
+        }
         return "sandbox".equals(environment) 
             ? "https://sandbox.safaricom.co.ke"
             : "https://api.safaricom.co.ke";
@@ -316,5 +479,7 @@ public class MpesaService {
         log.warn("Unable to format phone number: {}", phoneNumber);
         return cleaned; // Return as-is and let API validate
     }
-}
 
+    public record StkPushQueryResult(boolean pending, Integer resultCode, String resultDesc) {
+    }
+}
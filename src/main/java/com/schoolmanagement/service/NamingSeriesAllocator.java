@@ -0,0 +1,153 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NamingSeries;
+import com.schoolmanagement.repository.NamingSeriesRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hands out naming series numbers from blocks reserved in the database (hi/lo).
+ * A block is reserved with a single row lock in its own transaction, so concurrent callers
+ * and other nodes never see the same number. Numbers left in a block when the node stops are skipped.
+ * <p>
+ * The reservation needs a second pooled connection while the caller's transaction holds its own, so
+ * {@link #next} reserves the following block on a background thread once the current one runs low and
+ * callers normally never reserve inline. Only the first call per series on a node, a refill that failed,
+ * and {@link #nextBatch} still reserve on the caller's thread; the pool must leave one connection spare
+ * for each of those that can run at once.
+ */
+@Service
+@Slf4j
+public class NamingSeriesAllocator {
+
+    public static final String INVOICE_SERIES = "INV";
+    public static final String PAYMENT_SERIES = "PAY";
+    public static final String MPESA_PAYMENT_SERIES = "MPESA";
+    public static final String ENROLLMENT_SERIES = "ENR";
+    public static final String REFUND_SERIES = "RFD";
+
+    private final NamingSeriesRepository namingSeriesRepository;
+    private final TransactionTemplate reservationTransaction;
+    private final int blockSize;
+    // Numbers left in a block when the next one is reserved in the background; 0 reserves inline only
+    private final int refillThreshold;
+    private final Map<String, SeriesBlock> blocks = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "naming-series-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NamingSeriesAllocator(NamingSeriesRepository namingSeriesRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 int blockSize) {
+        this(namingSeriesRepository, transactionManager, blockSize, 0);
+    }
+
+    @Autowired
+    public NamingSeriesAllocator(NamingSeriesRepository namingSeriesRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${naming-series.allocation-block-size:50}") int blockSize,
+                                 @Value("${naming-series.refill-threshold:10}") int refillThreshold) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Allocation block size must be positive");
+        }
+        if (refillThreshold < 0 || refillThreshold >= blockSize) {
+            throw new IllegalArgumentException("Refill threshold must be between 0 and the block size");
+        }
+        this.namingSeriesRepository = namingSeriesRepository;
+        this.reservationTransaction = new TransactionTemplate(transactionManager);
+        this.reservationTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+        this.refillThreshold = refillThreshold;
+    }
+
+    public String next(String seriesName) {
+        SeriesBlock block = blocks.computeIfAbsent(seriesName, name -> new SeriesBlock());
+        synchronized (block) {
+            if (block.range == null || block.next >= block.range.end()) {
+                block.range = nextRange(seriesName, block);
+                block.next = block.range.start();
+            }
+            String id = block.range.format(block.next++);
+            if (refillThreshold > 0 && block.refill == null && block.range.end() - block.next <= refillThreshold) {
+                block.refill = CompletableFuture.supplyAsync(() -> reserve(seriesName, blockSize), refillExecutor);
+            }
+            return id;
+        }
+    }
+
+    // Reserves exactly count numbers in one round trip, for bulk jobs
+    public List<String> nextBatch(String seriesName, int count) {
+        List<String> ids = new ArrayList<>(count);
+        if (count <= 0) {
+            return ids;
+        }
+        Range range = reserve(seriesName, count);
+        for (long number = range.start(); number < range.end(); number++) {
+            ids.add(range.format(number));
+        }
+        return ids;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    // Takes the block reserved in the background, falling back to reserving inline if there is none or it failed
+    private Range nextRange(String seriesName, SeriesBlock block) {
+        CompletableFuture<Range> refill = block.refill;
+        block.refill = null;
+        if (refill != null) {
+            try {
+                return refill.join();
+            } catch (CompletionException | CancellationException e) {
+                log.warn("Background reservation for series {} failed, reserving inline: {}", seriesName, e.getMessage());
+            }
+        }
+        return reserve(seriesName, blockSize);
+    }
+
+    private Range reserve(String seriesName, int size) {
+        Range range = reservationTransaction.execute(status -> {
+            NamingSeries series = namingSeriesRepository.findByNameForUpdate(seriesName)
+                    .orElseThrow(() -> new IllegalStateException("Naming series not found: " + seriesName));
+            int start = series.getCurrentNumber();
+            series.setCurrentNumber(Math.addExact(start, size));
+            namingSeriesRepository.save(series);
+            return new Range(start, (long) start + size, series.getPrefix(), series.getSeparator(), series.getPadding());
+        });
+        log.debug("Reserved {} numbers for series {} starting at {}", size, seriesName, range.start());
+        return range;
+    }
+
+    private static final class SeriesBlock {
+        private Range range;
+        private long next;
+        private CompletableFuture<Range> refill;
+    }
+
+    private record Range(long start, long end, String prefix, String separator, int padding) {
+
+        String format(long number) {
+            return NamingSeries.formatId(prefix, separator, padding, number);
+        }
+    }
+}
@@ -17,6 +17,7 @@ public class NamingSeriesInitializer implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         initializeDefaultNamingSeries();
+        initializeFinanceNamingSeries();
     }
     
     private void initializeDefaultNamingSeries() {
@@ -156,6 +157,98 @@ public class NamingSeriesInitializer implements CommandLineRunner {
         }
     }
     
+    // Finance series are added to existing databases too, since invoice and payment numbers depend on them.
+    // Without them every invoice, payment and refund fails, so a failure here stops startup.
+    private void initializeFinanceNamingSeries() {
+        try {
+            createNamingSeriesIfMissing(
+                NamingSeriesAllocator.INVOICE_SERIES, 
+                "Fee Invoice Number Series", 
+                "INV", 
+                "", 
+                1, 
+                1, 
+                6, 
+                "-", 
+                NamingSeries.SeriesType.INVOICE, 
+                "Fee invoice numbers (INV-000001, INV-000002, etc.)",
+                true
+            );
+            
+            createNamingSeriesIfMissing(
+                NamingSeriesAllocator.PAYMENT_SERIES, 
+                "Payment Reference Series", 
+                "PAY", 
+                "", 
+                1, 
+                1, 
+                6, 
+                "-", 
+                NamingSeries.SeriesType.PAYMENT, 
+                "Payment references (PAY-000001, PAY-000002, etc.)",
+                true
+            );
+            
+            createNamingSeriesIfMissing(
+                NamingSeriesAllocator.MPESA_PAYMENT_SERIES, 
+                "M-Pesa Payment Reference Series", 
+                "MPESA", 
+                "", 
+                1, 
+                1, 
+                6, 
+                "-", 
+                NamingSeries.SeriesType.PAYMENT, 
+                "M-Pesa STK push payment references (MPESA-000001, MPESA-000002, etc.)",
+                false
+            );
+            
+            createNamingSeriesIfMissing(
+                NamingSeriesAllocator.REFUND_SERIES, 
+                "Refund Reference Series", 
+                "RFD", 
+                "", 
+                1, 
+                1, 
+                6, 
+                "-", 
+                NamingSeries.SeriesType.PAYMENT, 
+                "Refund references (RFD-000001, RFD-000002, etc.)",
+                false
+            );
+            
+            createNamingSeriesIfMissing(
+                NamingSeriesAllocator.ENROLLMENT_SERIES, 
+                "Enrollment Number Series", 
+                "ENR", 
+                "", 
+                1, 
+                1, 
+                6, 
+                "-", 
+                NamingSeries.SeriesType.ENROLLMENT, 
+                "Student enrollment numbers (ENR-000001, ENR-000002, etc.)",
+                true
+            );
+            
+        } catch (Exception e) {
+            log.error("Error initializing finance naming series: {}", e.getMessage());
+            throw new IllegalStateException("Finance naming series could not be created; on an existing Postgres database " +
+                    "apply db/postgres/V004__naming_series_type_as_text.sql first", e);
+        }
+    }
+    
+    private void createNamingSeriesIfMissing(String name, String description, String prefix, String suffix, 
+                                            Integer startNumber, Integer currentNumber, Integer padding, 
+                                            String separator, NamingSeries.SeriesType seriesType, 
+                                            String notes, Boolean isDefault) {
+        if (namingSeriesRepository.findByNameAndIsActiveTrue(name).isPresent()) {
+            return;
+        }
+        createNamingSeries(name, description, prefix, suffix, startNumber, currentNumber, padding, 
+                separator, seriesType, notes, isDefault);
+    }
+    
     private void createNamingSeries(String name, String description, String prefix, String suffix, 
                                    Integer startNumber, Integer currentNumber, Integer padding, 
                                    String separator, NamingSeries.SeriesType seriesType, 
@@ -0,0 +1,45 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationDelivery;
+
+import java.util.List;
+
+/**
+ * A provider that delivers notifications over one channel, e.g. an SMS gateway or an email API. Providers
+ * are Spring beans; NotificationChannelWorkers gives each channel its own worker pool and calls the provider
+ * with up to {@link #maxBatchSize()} messages per request, at most {@link #requestsPerSecond()} requests a
+ * second. Exactly one provider may be registered per channel.
+ */
+public interface NotificationChannelProvider {
+
+    // Written to the logs and used as the rate limiter's name
+    String name();
+
+    NotificationDelivery.DeliveryChannel channel();
+
+    // Messages per provider request, e.g. 500 for a bulk SMS API; 1 for providers without batching
+    int maxBatchSize();
+
+    double requestsPerSecond();
+
+    /**
+     * Sends the messages in one provider request and returns one result per message, in the same order.
+     * Throwing fails the whole batch; every message is then retried by the dispatcher.
+     */
+    List<SendResult> send(List<ChannelMessage> messages) throws Exception;
+
+    // Address is the phone number for SMS and WhatsApp, the email for EMAIL and the user id for PUSH
+    record ChannelMessage(Long deliveryId, Long userId, Long schoolId, String address, String subject, String body) {
+    }
+
+    record SendResult(boolean accepted, String providerMessageId, String providerResponse, String error) {
+
+        public static SendResult accepted(String providerMessageId, String providerResponse) {
+            return new SendResult(true, providerMessageId, providerResponse, null);
+        }
+
+        public static SendResult rejected(String providerResponse, String error) {
+            return new SendResult(false, null, providerResponse, error);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.EmailLog;
+import com.schoolmanagement.entity.NotificationDelivery;
+import com.schoolmanagement.entity.SmsLog;
+import com.schoolmanagement.util.TokenBucket;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Sends outbound notification deliveries through the registered channel providers. Each channel has its own
+ * queue, worker pool and token bucket, so a slow or throttled SMS gateway never holds up email. A worker takes
+ * the next message, waits up to linger-ms for more to fill the provider's batch, then makes one provider
+ * request. Every attempt is written to sms_logs or email_logs in a JDBC batch and the outcomes handed to the
+ * listener, which records them on the deliveries.
+ */
+@Component
+@Slf4j
+public class NotificationChannelWorkers {
+
+    public record Outcome(NotificationDelivery delivery, NotificationChannelProvider.SendResult result) {
+    }
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    // error_message, provider_response and message_id in sms_logs and email_logs are varchar(255)
+    private static final int LOG_COLUMN_LENGTH = 255;
+
+    private static final String INSERT_SMS_LOG_SQL = "INSERT INTO sms_logs (recipient_phone, message, status, user_id, school_id, " +
+            "error_message, provider_response, message_id, sent_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EMAIL_LOG_SQL = "INSERT INTO email_logs (recipient_email, subject, body, status, user_id, " +
+            "school_id, error_message, provider_response, sent_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<NotificationDelivery.DeliveryChannel, Lane> lanes = new EnumMap<>(NotificationDelivery.DeliveryChannel.class);
+    // Deliveries waiting or in flight here; a re-claim after an expired lease must not send them twice
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final long lingerNanos;
+    private volatile Consumer<List<Outcome>> outcomeListener = outcomes -> { };
+
+    public NotificationChannelWorkers(ObjectProvider<NotificationChannelProvider> providers,
+                                      JdbcTemplate jdbcTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${notifications.channels.linger-ms:50}") long lingerMs,
+                                      @Value("${notifications.channels.sms.workers:2}") int smsWorkers,
+                                      @Value("${notifications.channels.email.workers:4}") int emailWorkers,
+                                      @Value("${notifications.channels.whatsapp.workers:2}") int whatsAppWorkers,
+                                      @Value("${notifications.channels.push.workers:2}") int pushWorkers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        Map<NotificationDelivery.DeliveryChannel, Integer> workers = Map.of(
+                NotificationDelivery.DeliveryChannel.SMS, smsWorkers,
+                NotificationDelivery.DeliveryChannel.EMAIL, emailWorkers,
+                NotificationDelivery.DeliveryChannel.WHATSAPP, whatsAppWorkers,
+                NotificationDelivery.DeliveryChannel.PUSH, pushWorkers);
+        providers.orderedStream().forEach(provider -> {
+            if (lanes.containsKey(provider.channel())) {
+                throw new IllegalStateException("More than one notification provider for channel " + provider.channel() + ": "
+                        + lanes.get(provider.channel()).provider.name() + ", " + provider.name());
+            }
+            lanes.put(provider.channel(), new Lane(provider, workers.getOrDefault(provider.channel(), 1), meterRegistry));
+        });
+        Gauge.builder("notifications.channels.backlog", this, NotificationChannelWorkers::backlog)
+                .description("Notification deliveries queued for a channel provider")
+                .register(meterRegistry);
+        lanes.values().forEach(lane -> log.info("Notification channel {} uses provider {} ({} workers, batches of {}, {} requests/s)",
+                lane.provider.channel(), lane.provider.name(), lane.workerCount, lane.provider.maxBatchSize(),
+                lane.provider.requestsPerSecond()));
+    }
+
+    public void onOutcomes(Consumer<List<Outcome>> listener) {
+        this.outcomeListener = listener;
+    }
+
+    public boolean supports(NotificationDelivery.DeliveryChannel channel) {
+        return lanes.containsKey(channel);
+    }
+
+    // False if the delivery is already queued or no provider serves its channel
+    public boolean submit(NotificationDelivery delivery, NotificationChannelProvider.ChannelMessage message) {
+        Lane lane = lanes.get(delivery.getChannel());
+        if (lane == null || !queued.add(delivery.getId())) {
+            return false;
+        }
+        lane.queue.add(new Pending(delivery, message));
+        return true;
+    }
+
+    public int backlog() {
+        return queued.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(lane -> lane.workers.shutdownNow());
+    }
+
+    private void run(Lane lane) {
+        int maxBatchSize = Math.max(1, lane.provider.maxBatchSize());
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.clear();
+                batch.add(lane.queue.take());
+                fill(lane.queue, batch, maxBatchSize);
+                lane.limiter.acquire();
+                send(lane, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error sending {} notifications: {}", lane.provider.channel(), e.getMessage());
+            }
+        }
+    }
+
+    // Tops the batch up with whatever is queued, lingering briefly so bursts go out as one provider request
+    private void fill(BlockingQueue<Pending> queue, List<Pending> batch, int maxBatchSize) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long waitNanos = deadline - System.nanoTime();
+            Pending next = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void send(Lane lane, List<Pending> batch) throws InterruptedException {
+        List<NotificationChannelProvider.ChannelMessage> messages = batch.stream().map(Pending::message).toList();
+        List<NotificationChannelProvider.SendResult> results = List.of();
+        String batchError = null;
+        long started = System.nanoTime();
+        try {
+            results = lane.provider.send(messages);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            batchError = truncate("Provider " + lane.provider.name() + " failed: " + e.getMessage());
+        } finally {
+            lane.requestTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            NotificationChannelProvider.SendResult result = results != null && i < results.size() ? results.get(i) : null;
+            if (result == null) {
+                result = NotificationChannelProvider.SendResult.rejected(null,
+                        batchError != null ? batchError : "Provider " + lane.provider.name() + " returned no result");
+            }
+            outcomes.add(new Outcome(batch.get(i).delivery(), result));
+        }
+        try {
+            logAttempts(lane.provider.channel(), batch, outcomes);
+        } catch (Exception e) {
+            log.error("Error logging {} notification attempts: {}", lane.provider.channel(), e.getMessage());
+        }
+        try {
+            outcomeListener.accept(outcomes);
+        } finally {
+            batch.forEach(pending -> queued.remove(pending.delivery().getId()));
+        }
+    }
+
+    // One row per attempt; rows need a school, so deliveries without one are only recorded on the delivery
+    private void logAttempts(NotificationDelivery.DeliveryChannel channel, List<Pending> batch, List<Outcome> outcomes) {
+        List<Integer> logged = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).message().schoolId() != null) {
+                logged.add(i);
+            }
+        }
+        if (logged.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        switch (channel) {
+            case SMS, WHATSAPP -> jdbcTemplate.batchUpdate(INSERT_SMS_LOG_SQL, logged, logged.size(), (ps, i) -> {
+                NotificationChannelProvider.ChannelMessage message = batch.get(i).message();
+                NotificationChannelProvider.SendResult result = outcomes.get(i).result();
+                ps.setString(1, message.address());
+                ps.setString(2, message.body());
+                ps.setString(3, (result.accepted() ? SmsLog.SmsStatus.SENT : SmsLog.SmsStatus.FAILED).name());
+                ps.setObject(4, message.userId());
+                ps.setLong(5, message.schoolId());
+                ps.setString(6, truncate(result.error(), LOG_COLUMN_LENGTH));
+                ps.setString(7, truncate(result.providerResponse(), LOG_COLUMN_LENGTH));
+                ps.setString(8, truncate(result.providerMessageId(), LOG_COLUMN_LENGTH));
+                ps.setTimestamp(9, result.accepted() ? now : null);
+                ps.setTimestamp(10, now);
+            });
+            case EMAIL -> jdbcTemplate.batchUpdate(INSERT_EMAIL_LOG_SQL, logged, logged.size(), (ps, i) -> {
+                NotificationChannelProvider.ChannelMessage message = batch.get(i).message();
+                NotificationChannelProvider.SendResult result = outcomes.get(i).result();
+                ps.setString(1, message.address());
+                ps.setString(2, message.subject() != null ? message.subject() : "");
+                ps.setString(3, message.body());
+                ps.setString(4, (result.accepted() ? EmailLog.EmailStatus.SENT : EmailLog.EmailStatus.FAILED).name());
+                ps.setObject(5, message.userId());
+                ps.setLong(6, message.schoolId());
+                ps.setString(7, truncate(result.error(), LOG_COLUMN_LENGTH));
+                ps.setString(8, truncate(result.providerResponse(), LOG_COLUMN_LENGTH));
+                ps.setTimestamp(9, result.accepted() ? now : null);
+                ps.setTimestamp(10, now);
+            });
+            default -> {
+                // Push has no attempt log table
+            }
+        }
+    }
+
+    private static String truncate(String error) {
+        return truncate(error, MAX_ERROR_LENGTH);
+    }
+
+    private static String truncate(String text, int maxLength) {
+        return text != null && text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+
+    private record Pending(NotificationDelivery delivery, NotificationChannelProvider.ChannelMessage message) {
+    }
+
+    private final class Lane {
+
+        private final NotificationChannelProvider provider;
+        private final int workerCount;
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final TokenBucket limiter;
+        private final ExecutorService workers;
+        private final Timer requestTimer;
+
+        private Lane(NotificationChannelProvider provider, int workerCount, MeterRegistry meterRegistry) {
+            this.provider = provider;
+            this.workerCount = Math.max(1, workerCount);
+            // Provider limits count requests, so a batch of 500 SMS takes one permit
+            this.limiter = new TokenBucket(provider.requestsPerSecond(), Math.max(1, (int) Math.ceil(provider.requestsPerSecond())));
+            this.requestTimer = Timer.builder("notifications.provider.requests")
+                    .tag("channel", provider.channel().name())
+                    .tag("provider", provider.name())
+                    .description("Time taken by channel provider requests")
+                    .register(meterRegistry);
+            AtomicInteger workerNumber = new AtomicInteger();
+            String prefix = "notification-" + provider.channel().name().toLowerCase() + "-";
+            this.workers = Executors.newFixedThreadPool(this.workerCount, runnable -> {
+                Thread thread = new Thread(runnable, prefix + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < this.workerCount; i++) {
+                workers.execute(() -> run(this));
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.NotificationDelivery;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.NotificationDeliveryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches notification deliveries from the outbox. NotificationService stores each notification with one
+ * PENDING delivery per channel in the caller's transaction; here a fixed pool of workers, one per shard of
+ * delivery IDs, claims due deliveries in batches with SKIP LOCKED and hands them to NotificationChannelWorkers,
+ * which send them through the channel providers outside any transaction; in-app deliveries are marked sent
+ * directly. Outcomes are recorded as the providers answer, and failed sends are retried with exponential
+ * backoff until max-attempts. The claim lease must outlast a delivery's wait in the channel queues.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    private static final NotificationDelivery.DeliveryStatus PENDING = NotificationDelivery.DeliveryStatus.PENDING;
+
+    private final NotificationDeliveryRepository notificationDeliveryRepository;
+    private final NotificationChannelWorkers channelWorkers;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService workers;
+    private final int shards;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final Map<NotificationDelivery.DeliveryChannel, Timer> latencyTimers = new EnumMap<>(NotificationDelivery.DeliveryChannel.class);
+
+    @Value("${notifications.dispatch.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notifications.dispatch.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${notifications.dispatch.lease-seconds:300}")
+    private long leaseSeconds;
+
+    // Claiming pauses while this many deliveries wait for a channel provider
+    @Value("${notifications.dispatch.max-queued:5000}")
+    private int maxQueued;
+
+    @Value("${notifications.dispatch.backoff-base-seconds:5}")
+    private long backoffBaseSeconds;
+
+    @Value("${notifications.dispatch.backoff-max-seconds:1800}")
+    private long backoffMaxSeconds;
+
+    public NotificationDispatcher(NotificationDeliveryRepository notificationDeliveryRepository,
+                                  NotificationChannelWorkers channelWorkers,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${notifications.dispatch.workers:4}") int workers) {
+        this.notificationDeliveryRepository = notificationDeliveryRepository;
+        this.channelWorkers = channelWorkers;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.shards = Math.max(1, workers);
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.shards, runnable -> {
+            Thread thread = new Thread(runnable, "notification-dispatch-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (NotificationDelivery.DeliveryChannel channel : NotificationDelivery.DeliveryChannel.values()) {
+            latencyTimers.put(channel, Timer.builder("notifications.delivery.latency")
+                    .tag("channel", channel.name())
+                    .description("Time from a delivery being queued to it being sent")
+                    .register(meterRegistry));
+        }
+        Gauge.builder("notifications.outbox.depth", queueDepth, AtomicLong::get)
+                .description("Notification deliveries waiting to be sent")
+                .register(meterRegistry);
+        channelWorkers.onOutcomes(this::recordOutcomes);
+    }
+
+    // One tick drains every shard in parallel; ticks never overlap, so a shard is only ever worked by one thread per node
+    @Scheduled(fixedDelayString = "${notifications.dispatch.poll-interval-ms:1000}")
+    public void dispatchPending() {
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                int owned = shard;
+                tasks.add(() -> drainShard(owned));
+            }
+            int sent = 0;
+            for (Future<Integer> result : workers.invokeAll(tasks)) {
+                sent += result.get();
+            }
+            if (sent > 0) {
+                log.debug("Dispatched {} notification deliveries", sent);
+            }
+            queueDepth.set(notificationDeliveryRepository.countByStatus(PENDING));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error dispatching notifications: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private int drainShard(int shard) {
+        int processed = 0;
+        List<Long> claimed;
+        do {
+            if (channelWorkers.backlog() >= maxQueued) {
+                // Providers are behind; unclaimed rows stay PENDING for the next tick or another node
+                break;
+            }
+            claimed = claimBatch(shard);
+            if (claimed.isEmpty()) {
+                break;
+            }
+            for (NotificationDelivery delivery : notificationDeliveryRepository.findByIdInWithRecipient(claimed)) {
+                deliver(delivery);
+                processed++;
+            }
+        } while (claimed.size() == batchSize);
+        return processed;
+    }
+
+    // Takes a lease on due deliveries of one shard; rows locked by another node are skipped
+    private List<Long> claimBatch(int shard) {
+        List<Long> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<NotificationDelivery> batch = notificationDeliveryRepository.findClaimable(PENDING, now, shards, shard,
+                    PageRequest.of(0, batchSize));
+            for (NotificationDelivery delivery : batch) {
+                delivery.setAttempts(delivery.getAttempts() + 1);
+                delivery.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+            }
+            return batch.stream().map(NotificationDelivery::getId).toList();
+        });
+        return claimed != null ? claimed : List.of();
+    }
+
+    private void deliver(NotificationDelivery delivery) {
+        if (delivery.getChannel() == NotificationDelivery.DeliveryChannel.IN_APP) {
+            // In-app notifications are delivered by being stored
+            recordSent(delivery, null);
+            return;
+        }
+        try {
+            NotificationChannelProvider.ChannelMessage message = toChannelMessage(delivery);
+            if (!channelWorkers.supports(delivery.getChannel())) {
+                throw new IllegalStateException("No provider registered for channel " + delivery.getChannel());
+            }
+            // False only if already queued from an earlier claim, whose outcome will be recorded
+            channelWorkers.submit(delivery, message);
+        } catch (Exception e) {
+            recordFailure(delivery, truncate(e.getMessage()));
+        }
+    }
+
+    private NotificationChannelProvider.ChannelMessage toChannelMessage(NotificationDelivery delivery) {
+        Notification notification = delivery.getNotification();
+        User recipient = notification.getRecipient();
+        if (recipient == null) {
+            throw new IllegalStateException("Notification " + notification.getId() + " has no recipient");
+        }
+        String address = switch (delivery.getChannel()) {
+            case EMAIL -> recipient.getEmail();
+            case SMS, WHATSAPP -> recipient.getPhoneNumber();
+            default -> String.valueOf(recipient.getId());
+        };
+        if (address == null || address.isBlank()) {
+            throw new IllegalStateException("User " + recipient.getId() + " has no address for " + delivery.getChannel());
+        }
+        String body = delivery.getDeliveryMessage() != null ? delivery.getDeliveryMessage() : notification.getMessage();
+        return new NotificationChannelProvider.ChannelMessage(delivery.getId(), recipient.getId(), notification.getSchoolId(),
+                address, notification.getTitle(), body);
+    }
+
+    // Called from the channel workers with the answers to one provider request
+    private void recordOutcomes(List<NotificationChannelWorkers.Outcome> outcomes) {
+        for (NotificationChannelWorkers.Outcome outcome : outcomes) {
+            try {
+                if (outcome.result().accepted()) {
+                    recordSent(outcome.delivery(), outcome.result().providerMessageId());
+                } else {
+                    recordFailure(outcome.delivery(), truncate(outcome.result().error()));
+                }
+            } catch (Exception e) {
+                // The lease expires and the delivery is claimed again
+                log.error("Error recording outcome of notification delivery {}: {}", outcome.delivery().getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void recordSent(NotificationDelivery delivery, String externalId) {
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (notificationDeliveryRepository.markSent(delivery.getId(), NotificationDelivery.DeliveryStatus.SENT, PENDING,
+                    externalId, now) > 0) {
+                notificationDeliveryRepository.markNotificationSent(delivery.getNotification().getId(),
+                        Notification.NotificationStatus.SENT, Notification.NotificationStatus.PENDING, now);
+            }
+        });
+        if (delivery.getCreatedAt() != null) {
+            latencyTimers.get(delivery.getChannel()).record(Duration.between(delivery.getCreatedAt(), now));
+        }
+        countDelivery(delivery, "sent");
+    }
+
+    private void recordFailure(NotificationDelivery delivery, String error) {
+        LocalDateTime now = LocalDateTime.now();
+        if (delivery.getAttempts() >= maxAttempts) {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (notificationDeliveryRepository.markFailed(delivery.getId(), NotificationDelivery.DeliveryStatus.FAILED, PENDING,
+                        error, now) > 0) {
+                    notificationDeliveryRepository.markNotificationFailedIfAllFailed(delivery.getNotification().getId(),
+                            Notification.NotificationStatus.FAILED, Notification.NotificationStatus.PENDING,
+                            NotificationDelivery.DeliveryStatus.FAILED);
+                }
+            });
+            log.error("Notification delivery {} over {} failed permanently after {} attempts: {}", delivery.getId(),
+                    delivery.getChannel(), delivery.getAttempts(), error);
+            countDelivery(delivery, "failed");
+        } else {
+            // Exponential backoff from the base delay, capped
+            long delaySeconds = Math.min(backoffMaxSeconds, backoffBaseSeconds << Math.min(delivery.getAttempts() - 1, 20));
+            transactionTemplate.executeWithoutResult(status ->
+                    notificationDeliveryRepository.scheduleRetry(delivery.getId(), PENDING, error, now.plusSeconds(delaySeconds)));
+            log.warn("Notification delivery {} over {} failed, retrying in {}s: {}", delivery.getId(), delivery.getChannel(),
+                    delaySeconds, error);
+            countDelivery(delivery, "retried");
+        }
+    }
+
+    private void countDelivery(NotificationDelivery delivery, String result) {
+        Counter.builder("notifications.deliveries")
+                .tag("channel", delivery.getChannel().name())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
@@ -0,0 +1,64 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ranked full-text search over a user's active notifications. Results are ordered by rank, then by id, both
+ * descending, and paged with a (rank, id) cursor so each page costs the same however deep the client goes.
+ * Every query term matches words that start with it, and all terms must match.
+ */
+public interface NotificationSearchIndex {
+
+    // Longer queries are cut to this many terms
+    int MAX_TERMS = 8;
+
+    record Hit(Long notificationId, float rank) {
+    }
+
+    record Cursor(float rank, long notificationId) {
+
+        public static Cursor after(Hit hit) {
+            return new Cursor(hit.rank(), hit.notificationId());
+        }
+
+        public static Cursor decode(String value) {
+            int separator = value.lastIndexOf(':');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Invalid search cursor: " + value);
+            }
+            return new Cursor(Float.parseFloat(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+        }
+
+        public String encode() {
+            return rank + ":" + notificationId;
+        }
+
+        // True when a hit sorts after this cursor
+        public boolean precedes(Hit hit) {
+            return hit.rank() < rank || (hit.rank() == rank && hit.notificationId() < notificationId);
+        }
+    }
+
+    List<Hit> search(Long recipientId, String query, Notification.NotificationType type, Cursor after, int limit);
+
+    // Lower-cased runs of letters and digits, the same words PostgreSQL's 'simple' configuration produces
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty() && !terms.contains(token)) {
+                terms.add(token);
+                if (terms.size() == MAX_TERMS) {
+                    break;
+                }
+            }
+        }
+        return terms;
+    }
+}
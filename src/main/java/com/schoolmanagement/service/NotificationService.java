@@ -3,19 +3,28 @@ package com.schoolmanagement.service;
 import com.schoolmanagement.dto.ApiResponse;
 import com.schoolmanagement.dto.NotificationDto;
 import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.dto.NotificationSearchResultDto;
 import com.schoolmanagement.dto.NotificationDeliveryDto;
 import com.schoolmanagement.entity.*;
 import com.schoolmanagement.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,9 +33,32 @@ import java.util.stream.Collectors;
 @Transactional
 public class NotificationService {
     
+    private static final int RECIPIENT_CHUNK_SIZE = 1000;
+    private static final int JDBC_BATCH_SIZE = 500;
+    
+    private static final String INSERT_NOTIFICATION_SQL = "INSERT INTO notifications (title, message, type, priority, status, " +
+            "is_active, school_id, action_url, action_text, metadata, broadcast_id, recipient_id, sender_id, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, TRUE, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String INSERT_DELIVERY_SQL = "INSERT INTO notification_deliveries (channel, status, delivery_message, " +
+            "attempts, next_attempt_at, created_at, notification_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
     private final NotificationRepository notificationRepository;
+    private final NotificationDeliveryRepository notificationDeliveryRepository;
     private final NotificationTemplateRepository templateRepository;
+    private final NotificationTemplateEngine templateEngine;
+    private final UnreadNotificationCounter unreadCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationStreamHub streamHub;
+    private final NotificationSearchIndex searchIndex;
+    
+    @Value("${notifications.bulk-update.chunk-size:1000}")
+    private int bulkChunkSize;
+    
+    @Value("${notifications.stream.replay-limit:100}")
+    private int streamReplayLimit;
     private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
     
     // Create a single notification
     public ApiResponse<NotificationDto> createNotification(NotificationRequestDto request) {
@@ -61,11 +93,14 @@ public class NotificationService {
             
             Notification savedNotification = notificationRepository.save(notification);
             
-            // Send notification through configured channels
-            sendNotification(savedNotification, request.getDeliveryChannels());
+            // Queue delivery through configured channels
+            enqueueDeliveries(List.of(savedNotification), request.getDeliveryChannels());
+            unreadCounter.increment(recipient.getId());
+            NotificationDto notificationDto = convertToDto(savedNotification);
+            streamHub.publish(List.of(notificationDto));
             
             log.info("Successfully created notification with ID: {}", savedNotification.getId());
-            return ApiResponse.success("Notification created successfully", convertToDto(savedNotification));
+            return ApiResponse.success("Notification created successfully", notificationDto);
             
         } catch (Exception e) {
             log.error("Error creating notification: {}", e.getMessage());
@@ -73,52 +108,99 @@ public class NotificationService {
         }
     }
     
-    // Create bulk notifications
+    // Create bulk notifications: recipients are loaded in chunked IN queries and rows are written with JDBC batches;
+    // the dispatcher sends the queued deliveries after commit
     public ApiResponse<List<NotificationDto>> createBulkNotifications(NotificationRequestDto request) {
         try {
             log.info("Creating bulk notifications for {} recipients", request.getRecipientIds().size());
             
-            List<Notification> notifications = new ArrayList<>();
-            
-            for (Long recipientId : request.getRecipientIds()) {
-                User recipient = userRepository.findById(recipientId)
-                        .orElseThrow(() -> new RuntimeException("Recipient not found: " + recipientId));
-                
-                User sender = null;
-                if (request.getSenderId() != null) {
-                    sender = userRepository.findById(request.getSenderId())
-                            .orElse(null);
+            List<Long> recipientIds = request.getRecipientIds().stream().distinct().toList();
+            Map<Long, User> recipients = new HashMap<>(recipientIds.size() * 2);
+            for (int from = 0; from < recipientIds.size(); from += RECIPIENT_CHUNK_SIZE) {
+                List<Long> chunk = recipientIds.subList(from, Math.min(from + RECIPIENT_CHUNK_SIZE, recipientIds.size()));
+                for (User user : userRepository.findAllById(chunk)) {
+                    recipients.put(user.getId(), user);
+                }
+            }
+            for (Long recipientId : recipientIds) {
+                if (!recipients.containsKey(recipientId)) {
+                    throw new RuntimeException("Recipient not found: " + recipientId);
                 }
-                
-                Notification notification = Notification.builder()
+            }
+            
+            User sender = null;
+            if (request.getSenderId() != null) {
+                sender = userRepository.findById(request.getSenderId())
+                        .orElse(null);
+            }
+            
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp createdAt = Timestamp.valueOf(now);
+            String broadcastId = UUID.randomUUID().toString();
+            Long senderId = sender != null ? sender.getId() : null;
+            
+            jdbcTemplate.batchUpdate(INSERT_NOTIFICATION_SQL, recipientIds, JDBC_BATCH_SIZE, (ps, recipientId) -> {
+                ps.setString(1, request.getTitle());
+                ps.setString(2, request.getMessage());
+                ps.setString(3, request.getType().name());
+                ps.setString(4, request.getPriority().name());
+                ps.setString(5, Notification.NotificationStatus.PENDING.name());
+                ps.setLong(6, 1L); // Default school ID
+                ps.setString(7, request.getActionUrl());
+                ps.setString(8, request.getActionText());
+                ps.setString(9, request.getMetadata());
+                ps.setString(10, broadcastId);
+                ps.setLong(11, recipientId);
+                ps.setObject(12, senderId);
+                ps.setTimestamp(13, createdAt);
+                ps.setTimestamp(14, createdAt);
+            });
+            
+            List<Notification> notifications = new ArrayList<>(recipientIds.size());
+            for (Object[] row : notificationRepository.findIdsByBroadcastId(broadcastId)) {
+                notifications.add(Notification.builder()
+                        .id((Long) row[0])
                         .title(request.getTitle())
                         .message(request.getMessage())
                         .type(request.getType())
                         .priority(request.getPriority())
                         .status(Notification.NotificationStatus.PENDING)
-                        .readAt(null)
                         .isActive(true)
-                        .schoolId(1L) // Default school ID
+                        .schoolId(1L)
                         .actionUrl(request.getActionUrl())
                         .actionText(request.getActionText())
                         .metadata(request.getMetadata())
-                        .recipient(recipient)
+                        .broadcastId(broadcastId)
+                        .createdAt(now)
+                        .updatedAt(now)
+                        .recipient(recipients.get((Long) row[1]))
                         .sender(sender)
-                        .build();
-                
-                notifications.add(notification);
+                        .build());
             }
+            notifications.sort(Comparator.comparing(Notification::getId));
             
-            List<Notification> savedNotifications = notificationRepository.saveAll(notifications);
-            
-            // Send notifications through configured channels
-            for (Notification notification : savedNotifications) {
-                sendNotification(notification, request.getDeliveryChannels());
+            List<PendingDelivery> deliveries = new ArrayList<>();
+            for (Notification notification : notifications) {
+                for (NotificationDeliveryDto deliveryDto : resolveDeliveryChannels(notification.getRecipient(), request.getDeliveryChannels())) {
+                    deliveries.add(new PendingDelivery(notification.getId(), deliveryDto));
+                }
             }
-            
-            log.info("Successfully created {} bulk notifications", savedNotifications.size());
-            return ApiResponse.success("Bulk notifications created successfully", 
-                    savedNotifications.stream().map(this::convertToDto).toList());
+            jdbcTemplate.batchUpdate(INSERT_DELIVERY_SQL, deliveries, JDBC_BATCH_SIZE, (ps, delivery) -> {
+                ps.setString(1, delivery.channel().getChannel().name());
+                ps.setString(2, NotificationDelivery.DeliveryStatus.PENDING.name());
+                ps.setString(3, delivery.channel().getDeliveryMessage());
+                ps.setInt(4, 0);
+                ps.setTimestamp(5, createdAt);
+                ps.setTimestamp(6, createdAt);
+                ps.setLong(7, delivery.notificationId());
+            });
+            unreadCounter.incrementAll(recipientIds);
+            
+            List<NotificationDto> notificationDtos = notifications.stream().map(this::convertToDto).toList();
+            streamHub.publish(notificationDtos);
+            
+            log.info("Successfully created {} bulk notifications with {} queued deliveries", notifications.size(), deliveries.size());
+            return ApiResponse.success("Bulk notifications created successfully", notificationDtos);
             
         } catch (Exception e) {
             log.error("Error creating bulk notifications: {}", e.getMessage());
@@ -126,6 +208,41 @@ public class NotificationService {
         }
     }
     
+    // Queue notifications produced by batch jobs: stored as PENDING without per-recipient lookups or channel delivery
+    public int queueNotifications(List<NotificationRequestDto> requests, Long schoolId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Notification> notifications = new ArrayList<>(requests.size());
+        for (NotificationRequestDto request : requests) {
+            notifications.add(Notification.builder()
+                    .title(request.getTitle())
+                    .message(request.getMessage())
+                    .type(request.getType())
+                    .priority(request.getPriority())
+                    .status(Notification.NotificationStatus.PENDING)
+                    .scheduledAt(now)
+                    .isActive(true)
+                    .schoolId(schoolId)
+                    .actionUrl(request.getActionUrl())
+                    .actionText(request.getActionText())
+                    .metadata(request.getMetadata())
+                    .recipient(userRepository.getReferenceById(request.getRecipientId()))
+                    .build());
+        }
+        notificationRepository.saveAll(notifications);
+        // In-app only, so no recipient has to be loaded to pick channels
+        enqueueDeliveries(notifications, List.of(NotificationDeliveryDto.builder()
+                .channel(NotificationDelivery.DeliveryChannel.IN_APP)
+                .build()));
+        unreadCounter.incrementAll(requests.stream().map(NotificationRequestDto::getRecipientId).toList());
+        // Recipients are unloaded references; only those with an open stream are loaded to build the event
+        streamHub.publish(notifications.stream()
+                .filter(notification -> streamHub.hasSubscribers(notification.getRecipient().getId()))
+                .map(this::convertToDto)
+                .toList());
+        log.info("Queued {} notifications for school {}", notifications.size(), schoolId);
+        return notifications.size();
+    }
+
     // Create notification from template
     public ApiResponse<NotificationDto> createNotificationFromTemplate(String templateKey, Long recipientId, 
                                                                       Map<String, Object> variables, Long senderId) {
@@ -144,20 +261,18 @@ public class NotificationService {
                         .orElse(null);
             }
             
-            // Process template with variables
-            String processedTitle = processTemplate(template.getTitle(), variables);
-            String processedMessage = processTemplate(template.getMessage(), variables);
-            String processedActionUrl = processTemplate(template.getActionUrl(), variables);
+            // Render the compiled template with variables
+            NotificationTemplateEngine.RenderedTemplate rendered = templateEngine.render(template, variables);
             
             Notification notification = Notification.builder()
-                    .title(processedTitle)
-                    .message(processedMessage)
+                    .title(rendered.title())
+                    .message(rendered.message())
                     .type(template.getType())
                     .priority(template.getPriority())
                     .status(Notification.NotificationStatus.PENDING)
                     .readAt(null)
                     .isActive(true)
-                    .actionUrl(processedActionUrl)
+                    .actionUrl(rendered.actionUrl())
                     .actionText(template.getActionText())
                     .recipient(recipient)
                     .sender(sender)
@@ -165,11 +280,14 @@ public class NotificationService {
             
             Notification savedNotification = notificationRepository.save(notification);
             
-            // Send notification
-            sendNotification(savedNotification, null);
+            // Queue delivery through the default channels
+            enqueueDeliveries(List.of(savedNotification), null);
+            unreadCounter.increment(recipient.getId());
+            NotificationDto notificationDto = convertToDto(savedNotification);
+            streamHub.publish(List.of(notificationDto));
             
             log.info("Successfully created notification from template with ID: {}", savedNotification.getId());
-            return ApiResponse.success("Notification created from template successfully", convertToDto(savedNotification));
+            return ApiResponse.success("Notification created from template successfully", notificationDto);
             
         } catch (Exception e) {
             log.error("Error creating notification from template: {}", e.getMessage());
@@ -190,12 +308,17 @@ public class NotificationService {
             Pageable pageable = PageRequest.of(page, size);
             Page<Notification> notifications;
             
-            if (type != null && search != null && !search.isEmpty()) {
-                notifications = notificationRepository.findByRecipientAndTypeAndSearchTerm(user, type, search, pageable);
+            if (search != null && !search.isEmpty()) {
+                // Ranked search has no cheap total; the page reports one more row when more results follow
+                int offset = page * size;
+                List<NotificationSearchIndex.Hit> hits = searchIndex.search(user.getId(), search, type, null, offset + size + 1);
+                List<Long> pageIds = hits.subList(Math.min(offset, hits.size()), Math.min(offset + size, hits.size())).stream()
+                        .map(NotificationSearchIndex.Hit::notificationId)
+                        .toList();
+                long total = hits.size() > offset + size ? offset + size + 1 : hits.size();
+                notifications = new PageImpl<>(findInOrder(pageIds), pageable, total);
             } else if (type != null) {
                 notifications = notificationRepository.findByRecipientAndTypeAndIsActiveTrueOrderByCreatedAtDesc(user, type, pageable);
-            } else if (search != null && !search.isEmpty()) {
-                notifications = notificationRepository.findByRecipientAndSearchTerm(user, search, pageable);
             } else {
                 notifications = notificationRepository.findByRecipientAndIsActiveTrueOrderByCreatedAtDesc(user, pageable);
             }
@@ -209,16 +332,74 @@ public class NotificationService {
         }
     }
     
+    // Search a user's notifications, best matches first; pass the returned cursor to fetch the next page
+    @Transactional(readOnly = true)
+    public ApiResponse<NotificationSearchResultDto> searchNotifications(Long userId, String query, Notification.NotificationType type,
+                                                                        String cursor, int size) {
+        try {
+            log.info("Searching notifications for user: {}, query: {}", userId, query);
+            
+            NotificationSearchIndex.Cursor after = cursor != null && !cursor.isEmpty() ? NotificationSearchIndex.Cursor.decode(cursor) : null;
+            List<NotificationSearchIndex.Hit> hits = searchIndex.search(userId, query, type, after, size + 1);
+            boolean hasMore = hits.size() > size;
+            List<NotificationSearchIndex.Hit> pageHits = hasMore ? hits.subList(0, size) : hits;
+            
+            List<NotificationDto> results = findInOrder(pageHits.stream().map(NotificationSearchIndex.Hit::notificationId).toList())
+                    .stream()
+                    .map(this::convertToDto)
+                    .toList();
+            String nextCursor = hasMore ? NotificationSearchIndex.Cursor.after(pageHits.get(size - 1)).encode() : null;
+            return ApiResponse.success("Notifications retrieved successfully", NotificationSearchResultDto.builder()
+                    .notifications(results)
+                    .nextCursor(nextCursor)
+                    .build());
+            
+        } catch (Exception e) {
+            log.error("Error searching notifications: {}", e.getMessage());
+            return ApiResponse.error("Failed to search notifications: " + e.getMessage());
+        }
+    }
+    
+    // Loads notifications with their users in the order of the given ids
+    private List<Notification> findInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Notification> byId = notificationRepository.findWithUsersByIdIn(ids).stream()
+                .collect(Collectors.toMap(Notification::getId, notification -> notification));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+    
+    // Open an event stream of new notifications and unread count changes, replaying what a reconnecting client missed
+    @Transactional(readOnly = true)
+    public SseEmitter openStream(Long userId, Long lastEventId) {
+        log.info("Opening notification stream for user: {}, last event: {}", userId, lastEventId);
+        
+        // Subscribe before reading the missed rows so a notification committed in between is not lost;
+        // the hub drops whichever copy of an overlapping notification arrives second
+        SseEmitter emitter = streamHub.subscribe(userId);
+        try {
+            List<NotificationDto> missed = lastEventId == null ? List.of() : notificationRepository
+                    .findActiveForRecipientAfter(userId, lastEventId, PageRequest.of(0, streamReplayLimit))
+                    .stream()
+                    .map(this::convertToDto)
+                    .toList();
+            streamHub.replay(userId, emitter, missed);
+        } catch (RuntimeException e) {
+            emitter.completeWithError(e);
+            throw e;
+        }
+        return emitter;
+    }
+    
     // Get unread notifications count
     @Transactional(readOnly = true)
     public ApiResponse<Long> getUnreadCount(Long userId) {
         try {
             log.info("Fetching unread count for user: {}", userId);
             
-            User user = userRepository.findById(userId)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-            
-            Long count = notificationRepository.countByRecipientAndReadAtIsNullAndIsActiveTrue(user);
+            // Served from memory; the counter loads the user's count on first use
+            Long count = unreadCounter.get(userId);
             return ApiResponse.success("Unread count retrieved successfully", count);
             
         } catch (Exception e) {
@@ -240,10 +421,14 @@ public class NotificationService {
                 return ApiResponse.error("Unauthorized to mark this notification as read");
             }
             
+            boolean wasUnread = notification.getReadAt() == null && Boolean.TRUE.equals(notification.getIsActive());
             notification.setReadAt(LocalDateTime.now());
             notification.setReadAt(LocalDateTime.now());
             
             Notification updatedNotification = notificationRepository.save(notification);
+            if (wasUnread) {
+                unreadCounter.decrement(userId);
+            }
             
             log.info("Successfully marked notification as read: {}", notificationId);
             return ApiResponse.success("Notification marked as read", convertToDto(updatedNotification));
@@ -254,31 +439,77 @@ public class NotificationService {
         }
     }
     
-    // Mark all notifications as read for a user
-    public ApiResponse<String> markAllAsRead(Long userId) {
+    // Mark all notifications as read for a user; large backlogs are updated in chunks, each in its own transaction
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApiResponse<Integer> markAllAsRead(Long userId) {
         try {
             log.info("Marking all notifications as read for user: {}", userId);
             
-            User user = userRepository.findById(userId)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
+            int updated = 0;
+            long afterId = 0L;
+            List<Long> ids;
+            do {
+                ids = notificationRepository.findUnreadIdsAfter(userId, afterId, PageRequest.of(0, bulkChunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                List<Long> chunk = ids;
+                Integer chunkUpdated = transactionTemplate.execute(status -> {
+                    int count = notificationRepository.markReadByIds(chunk, LocalDateTime.now());
+                    unreadCounter.adjust(userId, -count);
+                    return count;
+                });
+                updated += chunkUpdated != null ? chunkUpdated : 0;
+                afterId = ids.get(ids.size() - 1);
+            } while (ids.size() == bulkChunkSize);
+            
+            log.info("Successfully marked {} notifications as read for user: {}", updated, userId);
+            return ApiResponse.success("Marked " + updated + " notifications as read", updated);
+            
+        } catch (Exception e) {
+            log.error("Error marking all notifications as read: {}", e.getMessage());
+            return ApiResponse.error("Failed to mark all notifications as read: " + e.getMessage());
+        }
+    }
+    
+    // Delete all of a user's notifications
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApiResponse<Integer> deleteAllNotifications(Long userId) {
+        try {
+            log.info("Deleting all notifications for user: {}", userId);
             
-            List<Notification> unreadNotifications = notificationRepository
-                    .findByRecipientAndReadAtIsNullAndIsActiveTrueOrderByCreatedAtDesc(user);
+            int deleted = deactivateInChunks((afterId, page) -> notificationRepository.findActiveRowsAfter(userId, afterId, page),
+                    notificationRepository::deactivateByIds);
             
-            for (Notification notification : unreadNotifications) {
-                notification.setReadAt(LocalDateTime.now());
-                notification.setReadAt(LocalDateTime.now());
-            }
+            log.info("Successfully deleted {} notifications for user: {}", deleted, userId);
+            return ApiResponse.success("Deleted " + deleted + " notifications", deleted);
+            
+        } catch (Exception e) {
+            log.error("Error deleting all notifications: {}", e.getMessage());
+            return ApiResponse.error("Failed to delete all notifications: " + e.getMessage());
+        }
+    }
+    
+    // Archive every active notification created more than the given number of days ago
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApiResponse<Integer> archiveNotificationsOlderThan(int days) {
+        try {
+            log.info("Archiving notifications older than {} days", days);
             
-            notificationRepository.saveAll(unreadNotifications);
+            if (days < 1) {
+                return ApiResponse.error("Days must be at least 1");
+            }
+            LocalDateTime before = LocalDateTime.now().minusDays(days);
+            int archived = deactivateInChunks(
+                    (afterId, page) -> notificationRepository.findActiveRowsCreatedBeforeAfter(before, afterId, page),
+                    notificationRepository::archiveByIds);
             
-            log.info("Successfully marked {} notifications as read for user: {}", 
-                    unreadNotifications.size(), userId);
-            return ApiResponse.success("All notifications marked as read");
+            log.info("Successfully archived {} notifications created before {}", archived, before);
+            return ApiResponse.success("Archived " + archived + " notifications", archived);
             
         } catch (Exception e) {
-            log.error("Error marking all notifications as read: {}", e.getMessage());
-            return ApiResponse.error("Failed to mark all notifications as read: " + e.getMessage());
+            log.error("Error archiving notifications: {}", e.getMessage());
+            return ApiResponse.error("Failed to archive notifications: " + e.getMessage());
         }
     }
     
@@ -295,8 +526,12 @@ public class NotificationService {
                 return ApiResponse.error("Unauthorized to delete this notification");
             }
             
+            boolean wasUnread = notification.getReadAt() == null && Boolean.TRUE.equals(notification.getIsActive());
             notification.setIsActive(false);
             notificationRepository.save(notification);
+            if (wasUnread) {
+                unreadCounter.decrement(userId);
+            }
             
             log.info("Successfully deleted notification: {}", notificationId);
             return ApiResponse.success("Notification deleted successfully");
@@ -307,52 +542,58 @@ public class NotificationService {
         }
     }
     
-    // Send notification through configured channels
-    private void sendNotification(Notification notification, List<NotificationDeliveryDto> deliveryChannels) {
-        try {
-            log.info("Sending notification: {} through channels", notification.getId());
-            
-            // Default delivery channels if none specified
-            if (deliveryChannels == null || deliveryChannels.isEmpty()) {
-                deliveryChannels = getDefaultDeliveryChannels(notification.getRecipient());
+    // Walks (id, recipient id, read at) rows in id order; each chunk is deactivated in its own transaction and
+    // the unread counts of its recipients drop by the unread rows it removed
+    private int deactivateInChunks(BiFunction<Long, Pageable, List<Object[]>> findRows,
+                                   BiFunction<Collection<Long>, LocalDateTime, Integer> deactivate) {
+        int total = 0;
+        long afterId = 0L;
+        List<Object[]> rows;
+        do {
+            rows = findRows.apply(afterId, PageRequest.of(0, bulkChunkSize));
+            if (rows.isEmpty()) {
+                break;
             }
-            
-            for (NotificationDeliveryDto deliveryDto : deliveryChannels) {
-                try {
-                    NotificationDelivery delivery = NotificationDelivery.builder()
-                            .channel(deliveryDto.getChannel())
-                            .status(NotificationDelivery.DeliveryStatus.PENDING)
-                            .deliveryMessage(deliveryDto.getDeliveryMessage())
-                            .notification(notification)
-                            .build();
-                    
-                    // Send through appropriate channel
-                    boolean sent = sendThroughChannel(notification, delivery, deliveryDto);
-                    
-                    if (sent) {
-                        delivery.setStatus(NotificationDelivery.DeliveryStatus.SENT);
-                        delivery.setSentAt(LocalDateTime.now());
-                    } else {
-                        delivery.setStatus(NotificationDelivery.DeliveryStatus.FAILED);
-                        delivery.setFailedAt(LocalDateTime.now());
-                    }
-                    
-                } catch (Exception e) {
-                    log.error("Error sending notification through channel {}: {}", 
-                            deliveryDto.getChannel(), e.getMessage());
+            List<Long> ids = new ArrayList<>(rows.size());
+            Map<Long, Long> unreadDeltas = new HashMap<>();
+            for (Object[] row : rows) {
+                ids.add((Long) row[0]);
+                if (row[2] == null) {
+                    unreadDeltas.merge((Long) row[1], -1L, Long::sum);
                 }
             }
-            
-            // Update notification status
-            notification.setStatus(Notification.NotificationStatus.SENT);
-            notification.setSentAt(LocalDateTime.now());
-            notificationRepository.save(notification);
-            
-        } catch (Exception e) {
-            log.error("Error sending notification: {}", e.getMessage());
-            notification.setStatus(Notification.NotificationStatus.FAILED);
-            notificationRepository.save(notification);
+            Integer count = transactionTemplate.execute(status -> {
+                int changed = deactivate.apply(ids, LocalDateTime.now());
+                unreadCounter.adjustAll(unreadDeltas);
+                return changed;
+            });
+            total += count != null ? count : 0;
+            afterId = ids.get(ids.size() - 1);
+        } while (rows.size() == bulkChunkSize);
+        return total;
+    }
+    
+    // Outbox: one PENDING delivery per channel, stored in the caller's transaction and sent later by NotificationDispatcher
+    private void enqueueDeliveries(List<Notification> notifications, List<NotificationDeliveryDto> deliveryChannels) {
+        LocalDateTime now = LocalDateTime.now();
+        List<NotificationDelivery> deliveries = new ArrayList<>();
+        for (Notification notification : notifications) {
+            for (NotificationDeliveryDto deliveryDto : resolveDeliveryChannels(notification.getRecipient(), deliveryChannels)) {
+                deliveries.add(NotificationDelivery.builder()
+                        .channel(deliveryDto.getChannel())
+                        .status(NotificationDelivery.DeliveryStatus.PENDING)
+                        .deliveryMessage(deliveryDto.getDeliveryMessage())
+                        .nextAttemptAt(now)
+                        .notification(notification)
+                        .build());
+            }
         }
+        notificationDeliveryRepository.saveAll(deliveries);
+        log.debug("Queued {} deliveries for {} notifications", deliveries.size(), notifications.size());
+    }
+    
+    private List<NotificationDeliveryDto> resolveDeliveryChannels(User recipient, List<NotificationDeliveryDto> deliveryChannels) {
+        return deliveryChannels == null || deliveryChannels.isEmpty() ? getDefaultDeliveryChannels(recipient) : deliveryChannels;
     }
     
     // Get default delivery channels for a user
@@ -381,74 +622,6 @@ public class NotificationService {
         return channels;
     }
     
-    // Send notification through specific channel
-    private boolean sendThroughChannel(Notification notification, NotificationDelivery delivery, 
-                                     NotificationDeliveryDto deliveryDto) {
-        try {
-            switch (delivery.getChannel()) {
-                case EMAIL:
-                    return sendEmailNotification(notification, delivery);
-                case SMS:
-                    return sendSmsNotification(notification, delivery);
-                case PUSH:
-                    return sendPushNotification(notification, delivery);
-                case IN_APP:
-                    return true; // In-app notifications are always "sent"
-                case WHATSAPP:
-                    return sendWhatsAppNotification(notification, delivery);
-                default:
-                    return false;
-            }
-        } catch (Exception e) {
-            log.error("Error sending notification through channel {}: {}", 
-                    delivery.getChannel(), e.getMessage());
-            return false;
-        }
-    }
-    
-    // Email notification (placeholder - would integrate with email service)
-    private boolean sendEmailNotification(Notification notification, NotificationDelivery delivery) {
-        log.info("Sending email notification to: {}", notification.getRecipient().getEmail());
-        // TODO: Integrate with email service
-        return true;
-    }
-    
-    // SMS notification (placeholder - would integrate with SMS service)
-    private boolean sendSmsNotification(Notification notification, NotificationDelivery delivery) {
-        log.info("Sending SMS notification to: {}", notification.getRecipient().getPhoneNumber());
-        // TODO: Integrate with SMS service
-        return true;
-    }
-    
-    // Push notification (placeholder - would integrate with push service)
-    private boolean sendPushNotification(Notification notification, NotificationDelivery delivery) {
-        log.info("Sending push notification to user: {}", notification.getRecipient().getId());
-        // TODO: Integrate with push notification service
-        return true;
-    }
-    
-    // WhatsApp notification (placeholder - would integrate with WhatsApp service)
-    private boolean sendWhatsAppNotification(Notification notification, NotificationDelivery delivery) {
-        log.info("Sending WhatsApp notification to: {}", notification.getRecipient().getPhoneNumber());
-        // TODO: Integrate with WhatsApp service
-        return true;
-    }
-    
-    // Process template with variables
-    private String processTemplate(String template, Map<String, Object> variables) {
-        if (template == null || variables == null) {
-            return template;
-        }
-        
-        String result = template;
-        for (Map.Entry<String, Object> entry : variables.entrySet()) {
-            String placeholder = "{{" + entry.getKey() + "}}";
-            result = result.replace(placeholder, String.valueOf(entry.getValue()));
-        }
-        
-        return result;
-    }
-    
     // Convert entity to DTO
     private NotificationDto convertToDto(Notification notification) {
         try {
@@ -492,4 +665,7 @@ public class NotificationService {
                     .build();
         }
     }
+    
+    private record PendingDelivery(Long notificationId, NotificationDeliveryDto channel) {
+    }
 }
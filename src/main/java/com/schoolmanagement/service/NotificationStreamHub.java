@@ -0,0 +1,332 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.NotificationDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-process fan-out of notification events to open Server-Sent Event streams. Streams are async servlet
+ * responses, so an idle connection holds no thread. Events are routed on a few sender threads, striped by
+ * user so each user's events stay in order, into a bounded queue per stream that a writer pool drains.
+ * A stream whose queue fills up, or whose write stalls past the send timeout, is dropped; its client
+ * reconnects and catches up through replay. Events: "notification" (id = notification id, so a reconnecting
+ * client's Last-Event-ID resumes from the table) and "unread-count", plus a periodic heartbeat comment.
+ */
+@Component
+@Slf4j
+public class NotificationStreamHub {
+
+    public static final String NOTIFICATION_EVENT = "notification";
+    public static final String UNREAD_COUNT_EVENT = "unread-count";
+
+    private final UnreadNotificationCounter unreadCounter;
+    private final Map<Long, Set<SseEmitter>> streams = new ConcurrentHashMap<>();
+    private final Map<SseEmitter, StreamState> states = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ExecutorService[] senders;
+    // Only these threads call SseEmitter.send, so a slow client never blocks a sender stripe
+    private final ExecutorService writers;
+
+    @Value("${notifications.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${notifications.stream.max-streams-per-user:5}")
+    private int maxStreamsPerUser;
+
+    @Value("${notifications.stream.max-queued-events:256}")
+    private int maxQueuedEvents;
+
+    @Value("${notifications.stream.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+
+    public NotificationStreamHub(UnreadNotificationCounter unreadCounter,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${notifications.stream.sender-threads:2}") int senderThreads,
+                                 @Value("${notifications.stream.writer-threads:8}") int writerThreads) {
+        this.unreadCounter = unreadCounter;
+        this.senders = new ExecutorService[Math.max(1, senderThreads)];
+        for (int i = 0; i < senders.length; i++) {
+            String name = "notification-stream-" + (i + 1);
+            senders[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        AtomicInteger writerCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(Math.max(1, writerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "notification-stream-writer-" + writerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        unreadCounter.addListener(this::publishUnreadCount);
+        Gauge.builder("notifications.stream.connections", connections, AtomicInteger::get)
+                .description("Open notification event streams")
+                .register(meterRegistry);
+    }
+
+    // Opens a stream for the user; live events flow from here on, so follow up with replay() once the missed rows are read
+    public SseEmitter subscribe(Long userId) {
+        SseEmitter emitter = newEmitter(timeoutMs);
+        List<SseEmitter> evicted = new ArrayList<>();
+        states.put(emitter, new StreamState(userId, emitter));
+        streams.compute(userId, (key, userStreams) -> {
+            Set<SseEmitter> current = userStreams != null ? userStreams : ConcurrentHashMap.newKeySet();
+            if (current.size() >= maxStreamsPerUser) {
+                // A user rarely needs more than a few tabs; drop an older stream rather than grow without bound
+                current.stream().findFirst().ifPresent(evicted::add);
+            }
+            current.add(emitter);
+            return current;
+        });
+        connections.incrementAndGet();
+        evicted.forEach(old -> drop(states.get(old), "too many streams"));
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> remove(userId, emitter));
+        return emitter;
+    }
+
+    // Sends what the client missed, skipping anything already pushed live since subscribe(), then the unread count
+    public void replay(Long userId, SseEmitter emitter, List<NotificationDto> missed) {
+        long unread = unreadCounter.get(userId);
+        senderFor(userId).execute(() -> {
+            StreamState state = states.get(emitter);
+            if (state == null) {
+                return;
+            }
+            for (NotificationDto notification : missed) {
+                if (state.ids.add(notification.getId()) && !enqueue(state, notificationEvent(notification))) {
+                    return;
+                }
+            }
+            state.replayed = true;
+            enqueue(state, SseEmitter.event().name(UNREAD_COUNT_EVENT).data(unread));
+        });
+    }
+
+    public boolean hasSubscribers(Long userId) {
+        return streams.containsKey(userId);
+    }
+
+    // Pushed only once the caller's transaction commits, so clients never see a rolled back notification
+    public void publish(Collection<NotificationDto> notifications) {
+        List<NotificationDto> subscribed = new ArrayList<>();
+        for (NotificationDto notification : notifications) {
+            if (notification.getRecipientId() != null && hasSubscribers(notification.getRecipientId())) {
+                subscribed.add(notification);
+            }
+        }
+        if (subscribed.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> subscribed.forEach(notification ->
+                broadcast(notification.getRecipientId(), notification.getId(), () -> notificationEvent(notification))));
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.stream.heartbeat-interval-ms:20000}")
+    public void heartbeat() {
+        dropStalledStreams();
+        for (Long userId : streams.keySet()) {
+            // Keeps the user's count cached while they listen instead of poll
+            unreadCounter.get(userId);
+            broadcast(userId, null, () -> SseEmitter.event().comment("heartbeat"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streams.values().forEach(userStreams -> userStreams.forEach(SseEmitter::complete));
+        for (ExecutorService sender : senders) {
+            sender.shutdownNow();
+        }
+        writers.shutdownNow();
+    }
+
+    // Overridable so tests can observe what a stream is sent
+    SseEmitter newEmitter(long timeout) {
+        return new SseEmitter(timeout);
+    }
+
+    // A write blocked on a client that stopped reading holds its writer thread until the container gives up on it
+    void dropStalledStreams() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        for (StreamState state : states.values()) {
+            long startedAt = state.sendStartedAt;
+            if (startedAt != 0 && now - startedAt > timeoutNanos) {
+                drop(state, "send timed out");
+            }
+        }
+    }
+
+    private void publishUnreadCount(Long userId, Long count) {
+        if (hasSubscribers(userId)) {
+            broadcast(userId, null, () -> SseEmitter.event().name(UNREAD_COUNT_EVENT).data(count));
+        }
+    }
+
+    // Event builders are single use, so each stream gets a freshly built event
+    private void broadcast(Long userId, Long notificationId, Supplier<SseEmitter.SseEventBuilder> event) {
+        senderFor(userId).execute(() -> {
+            Set<SseEmitter> userStreams = streams.get(userId);
+            if (userStreams != null) {
+                for (SseEmitter emitter : userStreams) {
+                    StreamState state = states.get(emitter);
+                    if (state != null && (notificationId == null || firstDelivery(state, notificationId))) {
+                        enqueue(state, event.get());
+                    }
+                }
+            }
+        });
+    }
+
+    // A notification committed around subscribe time can reach a new stream both live and in its replay
+    private boolean firstDelivery(StreamState state, Long notificationId) {
+        // Once the replay is out only its own ids need skipping, so live ids are no longer kept
+        return state.replayed ? !state.ids.contains(notificationId) : state.ids.add(notificationId);
+    }
+
+    // Queues an event for the stream's writer; a full queue means the client cannot keep up, so it is dropped
+    private boolean enqueue(StreamState state, SseEmitter.SseEventBuilder event) {
+        if (state.closed) {
+            return false;
+        }
+        if (state.queued.incrementAndGet() > maxQueuedEvents) {
+            state.queued.decrementAndGet();
+            drop(state, "send queue full");
+            return false;
+        }
+        state.pending.add(event);
+        scheduleDrain(state);
+        return true;
+    }
+
+    private void scheduleDrain(StreamState state) {
+        if (state.draining.compareAndSet(false, true)) {
+            try {
+                writers.execute(() -> drain(state));
+            } catch (RejectedExecutionException e) {
+                state.draining.set(false);
+            }
+        }
+    }
+
+    // At most one writer drains a stream at a time, so its events keep their order
+    private void drain(StreamState state) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while (!state.closed && (event = state.pending.poll()) != null) {
+                state.queued.decrementAndGet();
+                state.sendStartedAt = System.nanoTime();
+                try {
+                    state.emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away; the container reports it through onError/onCompletion as well
+                    log.debug("Dropping notification stream for user {}: {}", state.userId, e.getMessage());
+                    remove(state.userId, state.emitter);
+                    state.emitter.completeWithError(e);
+                    return;
+                } finally {
+                    state.sendStartedAt = 0;
+                }
+            }
+            if (state.closed) {
+                // Completed here rather than by whoever dropped it, since complete() waits for a send in progress
+                state.pending.clear();
+                state.emitter.complete();
+                return;
+            }
+            state.draining.set(false);
+        } while (!state.pending.isEmpty() && state.draining.compareAndSet(false, true));
+    }
+
+    private void drop(StreamState state, String reason) {
+        if (state == null || state.closed) {
+            return;
+        }
+        log.debug("Dropping notification stream for user {}: {}", state.userId, reason);
+        remove(state.userId, state.emitter);
+        scheduleDrain(state);
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        StreamState state = states.remove(emitter);
+        if (state != null) {
+            state.closed = true;
+        }
+        streams.computeIfPresent(userId, (key, userStreams) -> {
+            if (userStreams.remove(emitter)) {
+                connections.decrementAndGet();
+            }
+            return userStreams.isEmpty() ? null : userStreams;
+        });
+    }
+
+    private ExecutorService senderFor(Long userId) {
+        return senders[(int) Math.floorMod(userId, (long) senders.length)];
+    }
+
+    private static SseEmitter.SseEventBuilder notificationEvent(NotificationDto notification) {
+        return SseEmitter.event()
+                .id(String.valueOf(notification.getId()))
+                .name(NOTIFICATION_EVENT)
+                .data(notification);
+    }
+
+    private static final class StreamState {
+        private final Long userId;
+        private final SseEmitter emitter;
+        // Notification ids already queued; only touched on the user's sender thread
+        private final Set<Long> ids = new HashSet<>();
+        private final ConcurrentLinkedQueue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean replayed;
+        private volatile boolean closed;
+        private volatile long sendStartedAt;
+
+        private StreamState(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
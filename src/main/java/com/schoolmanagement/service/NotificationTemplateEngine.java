@@ -0,0 +1,114 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders notification templates. The title, message and action URL of a template are parsed once into
+ * literal and {{variable}} segments and cached by template key; a render is then a single pass appending
+ * into a per-thread buffer. A template whose updatedAt differs from the compiled copy is recompiled.
+ */
+@Component
+public class NotificationTemplateEngine {
+
+    public record RenderedTemplate(String title, String message, String actionUrl) {
+    }
+
+    // Buffers that grew past this are dropped rather than kept alive on the thread
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private final Map<String, CompiledTemplate> compiled = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    public RenderedTemplate render(NotificationTemplate template, Map<String, Object> variables) {
+        CompiledTemplate current = compiled.get(template.getTemplateKey());
+        if (current == null || !Objects.equals(current.version(), template.getUpdatedAt())) {
+            current = new CompiledTemplate(template.getUpdatedAt(), CompiledText.compile(template.getTitle()),
+                    CompiledText.compile(template.getMessage()), CompiledText.compile(template.getActionUrl()));
+            compiled.put(template.getTemplateKey(), current);
+        }
+        return new RenderedTemplate(render(current.title(), variables), render(current.message(), variables),
+                render(current.actionUrl(), variables));
+    }
+
+    private String render(CompiledText text, Map<String, Object> variables) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder buffer = buffers.get();
+        String rendered = text.render(variables, buffer);
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return rendered;
+    }
+
+    private record CompiledTemplate(LocalDateTime version, CompiledText title, CompiledText message, CompiledText actionUrl) {
+    }
+
+    /**
+     * A template string split into literals and variable names: literals[i] is followed by variables[i], and
+     * the last literal closes the text. Placeholders without a value are written back unchanged.
+     */
+    public static final class CompiledText {
+
+        private final String source;
+        private final String[] literals;
+        private final String[] variables;
+
+        private CompiledText(String source, String[] literals, String[] variables) {
+            this.source = source;
+            this.literals = literals;
+            this.variables = variables;
+        }
+
+        public static CompiledText compile(String source) {
+            if (source == null) {
+                return null;
+            }
+            List<String> literals = new ArrayList<>();
+            List<String> variables = new ArrayList<>();
+            int literalStart = 0;
+            int open = source.indexOf("{{");
+            while (open >= 0) {
+                int close = source.indexOf("}}", open + 2);
+                if (close < 0) {
+                    break;
+                }
+                // The placeholder is the innermost one, so "{{a{{b}}" reads as the literal "{{a" and {{b}}
+                open = source.lastIndexOf("{{", close - 2);
+                literals.add(source.substring(literalStart, open));
+                variables.add(source.substring(open + 2, close));
+                literalStart = close + 2;
+                open = source.indexOf("{{", literalStart);
+            }
+            literals.add(source.substring(literalStart));
+            return new CompiledText(source, literals.toArray(String[]::new), variables.toArray(String[]::new));
+        }
+
+        public String render(Map<String, Object> values, StringBuilder buffer) {
+            if (variables.length == 0 || values == null) {
+                return source;
+            }
+            buffer.setLength(0);
+            for (int i = 0; i < variables.length; i++) {
+                buffer.append(literals[i]);
+                String name = variables[i];
+                if (values.containsKey(name)) {
+                    buffer.append(values.get(name));
+                } else {
+                    buffer.append("{{").append(name).append("}}");
+                }
+            }
+            buffer.append(literals[variables.length]);
+            return buffer.toString();
+        }
+    }
+}
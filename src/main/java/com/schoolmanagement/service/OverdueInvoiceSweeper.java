@@ -0,0 +1,162 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves PENDING and PARTIAL invoices past their due date to OVERDUE with one UPDATE per school,
+ * then queues a reminder for every invoice that run changed. Overdue lookups elsewhere can then
+ * filter on status alone instead of comparing due dates across every invoice.
+ */
+@Service
+@Slf4j
+public class OverdueInvoiceSweeper {
+
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final NotificationService notificationService;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter invoicesMarked;
+    private final Counter remindersQueued;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${finance.overdue.reminder-batch-size:500}")
+    private int reminderBatchSize;
+
+    @Value("${finance.overdue.send-reminders:true}")
+    private boolean sendReminders;
+
+    public OverdueInvoiceSweeper(FeeInvoiceRepository feeInvoiceRepository,
+                                 NotificationService notificationService,
+                                 FinanceDashboardCache financeDashboardCache,
+                                 TransactionTemplate transactionTemplate,
+                                 MeterRegistry meterRegistry) {
+        this.feeInvoiceRepository = feeInvoiceRepository;
+        this.notificationService = notificationService;
+        this.financeDashboardCache = financeDashboardCache;
+        this.transactionTemplate = transactionTemplate;
+        this.invoicesMarked = Counter.builder("finance.overdue.invoices_marked")
+                .description("Invoices moved to OVERDUE by the sweeper")
+                .register(meterRegistry);
+        this.remindersQueued = Counter.builder("finance.overdue.reminders_queued")
+                .description("Overdue reminders queued by the sweeper")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${finance.overdue.sweep-interval-ms:3600000}", initialDelayString = "${finance.overdue.initial-delay-ms:60000}")
+    public void scheduledSweep() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("Error sweeping overdue invoices: {}", e.getMessage());
+        }
+    }
+
+    public ApiResponse<Map<Long, Integer>> runSweep() {
+        try {
+            Map<Long, Integer> changedBySchool = sweep();
+            return ApiResponse.success("Overdue sweep completed", changedBySchool);
+        } catch (Exception e) {
+            log.error("Error running overdue sweep: {}", e.getMessage());
+            return ApiResponse.error("Failed to run overdue sweep: " + e.getMessage());
+        }
+    }
+
+    // Returns the number of invoices moved to OVERDUE per school; a sweep already in progress makes this a no-op
+    public Map<Long, Integer> sweep() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Overdue sweep already running, skipping");
+            return Map.of();
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            Map<Long, Integer> changedBySchool = new LinkedHashMap<>();
+            for (Long schoolId : feeInvoiceRepository.findSchoolIdsWithOverdueCandidates(today)) {
+                int changed = sweepSchool(schoolId, today);
+                if (changed > 0) {
+                    changedBySchool.put(schoolId, changed);
+                }
+            }
+            int total = changedBySchool.values().stream().mapToInt(Integer::intValue).sum();
+            if (total > 0) {
+                log.info("Overdue sweep moved {} invoices to OVERDUE across {} schools", total, changedBySchool.size());
+            }
+            return changedBySchool;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int sweepSchool(Long schoolId, LocalDate today) {
+        // Truncated so the marker compares equal after the database rounds it
+        LocalDateTime sweptAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        Integer changed = transactionTemplate.execute(status -> feeInvoiceRepository.markOverdueForSchool(schoolId, today, sweptAt));
+        if (changed == null || changed == 0) {
+            return 0;
+        }
+        invoicesMarked.increment(changed);
+        financeDashboardCache.evictSchool(schoolId);
+        log.info("Marked {} invoices OVERDUE for school {}", changed, schoolId);
+
+        if (sendReminders) {
+            queueReminders(schoolId, sweptAt);
+        }
+        return changed;
+    }
+
+    private void queueReminders(Long schoolId, LocalDateTime sweptAt) {
+        long afterId = 0;
+        List<Object[]> page;
+        do {
+            page = feeInvoiceRepository.findSweptOverdueInvoices(schoolId, sweptAt, afterId, PageRequest.of(0, reminderBatchSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            List<NotificationRequestDto> reminders = new ArrayList<>(page.size());
+            for (Object[] row : page) {
+                reminders.add(buildReminder((Long) row[1], (String) row[2], (BigDecimal) row[3], (LocalDate) row[4]));
+                afterId = (Long) row[0];
+            }
+            try {
+                Integer queued = transactionTemplate.execute(status -> notificationService.queueNotifications(reminders, schoolId));
+                remindersQueued.increment(queued != null ? queued : 0);
+            } catch (Exception e) {
+                // Reminders are best effort; the status change is already committed
+                log.error("Failed to queue {} overdue reminders for school {}: {}", reminders.size(), schoolId, e.getMessage());
+            }
+        } while (page.size() == reminderBatchSize);
+    }
+
+    private NotificationRequestDto buildReminder(Long studentId, String invoiceNumber, BigDecimal balance, LocalDate dueDate) {
+        return NotificationRequestDto.builder()
+                .title("Fee Payment Overdue")
+                .message(String.format("Invoice %s was due on %s and has an outstanding balance of KES %s. " +
+                        "Please make a payment as soon as possible.", invoiceNumber, dueDate, balance))
+                .type(Notification.NotificationType.FEE_REMINDER)
+                .priority(Notification.NotificationPriority.HIGH)
+                .recipientId(studentId)
+                .actionUrl("/finance/invoices")
+                .actionText("View Invoice")
+                .build();
+    }
+}
@@ -0,0 +1,311 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.MpesaCallbackInbox;
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.StripeEventInbox;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.MpesaCallbackInboxRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.repository.StripeEventInboxRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Single place where an external payment result is applied to a Payment and its FeeInvoice.
+ * Every transition is conditional on the payment still being PENDING, so duplicate callbacks,
+ * replays and reconciliation racing a callback can never credit an invoice twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class PaymentSettlementService {
+
+    public static final String OUTCOME_COMPLETED = "COMPLETED";
+    public static final String OUTCOME_PAYMENT_FAILED = "PAYMENT_FAILED";
+    public static final String OUTCOME_DUPLICATE = "DUPLICATE";
+    // The provider reported a different amount or currency; the payment stays PENDING until someone settles it by hand
+    public static final String OUTCOME_REVIEW = "REVIEW";
+    public static final String STATUS_REVIEW = "REVIEW";
+
+    private final PaymentRepository paymentRepository;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final MpesaCallbackInboxRepository mpesaCallbackInboxRepository;
+    private final StripeEventInboxRepository stripeEventInboxRepository;
+    private final NotificationService notificationService;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final NamingSeriesAllocator namingSeriesAllocator;
+    private final EnrollmentLedgerService enrollmentLedgerService;
+    private final EntityManager entityManager;
+
+    @Value("${stripe.currency:kes}")
+    private String stripeCurrency;
+
+    // Applies one inbox row and marks it processed in the same transaction
+    public String settleMpesaCallback(Long inboxId) {
+        MpesaCallbackInbox callback = mpesaCallbackInboxRepository.findById(inboxId)
+                .orElseThrow(() -> new IllegalStateException("Callback not found: " + inboxId));
+
+        Optional<Payment> paymentOpt = paymentRepository.findByExternalReference(callback.getCheckoutRequestId());
+        if (paymentOpt.isEmpty()) {
+            // The STK push may not have committed its pending payment yet; the worker retries with backoff
+            throw new IllegalStateException("Payment not found for checkout request ID: " + callback.getCheckoutRequestId());
+        }
+        Payment payment = paymentOpt.get();
+
+        String outcome;
+        if (callback.getResultCode() != null && callback.getResultCode() == 0) {
+            if (callback.getAmount() != null && callback.getAmount().compareTo(payment.getAmount()) != 0) {
+                // Crediting the expected amount would clear more of the invoice than was actually paid
+                String reason = "M-Pesa amount " + callback.getAmount() + " differs from payment amount " + payment.getAmount();
+                log.warn("M-Pesa callback {} for payment {} parked for review: {}", callback.getCheckoutRequestId(),
+                        payment.getPaymentReference(), reason);
+                callback.setStatus(STATUS_REVIEW);
+                callback.setOutcome(OUTCOME_REVIEW);
+                callback.setProcessedAt(LocalDateTime.now());
+                callback.setLastError(reason);
+                mpesaCallbackInboxRepository.save(callback);
+                return OUTCOME_REVIEW;
+            }
+            if (completePayment(payment, callback.getMpesaReceiptNumber(), "M-Pesa Receipt: " + callback.getMpesaReceiptNumber())) {
+                outcome = OUTCOME_COMPLETED;
+            } else {
+                recordLateReceipt(payment, callback.getMpesaReceiptNumber());
+                outcome = OUTCOME_DUPLICATE;
+            }
+        } else {
+            outcome = failPayment(payment, "M-Pesa payment failed: " + callback.getResultDesc())
+                    ? OUTCOME_PAYMENT_FAILED : OUTCOME_DUPLICATE;
+        }
+
+        callback.setStatus("PROCESSED");
+        callback.setOutcome(outcome);
+        callback.setProcessedAt(LocalDateTime.now());
+        callback.setLastError(null);
+        mpesaCallbackInboxRepository.save(callback);
+
+        log.info("M-Pesa callback {} for payment {} processed: {}", callback.getCheckoutRequestId(),
+                payment.getPaymentReference(), outcome);
+        return outcome;
+    }
+
+    // Applies one Stripe inbox event and marks it processed in the same transaction
+    public String settleStripeEvent(Long inboxId) {
+        StripeEventInbox event = stripeEventInboxRepository.findById(inboxId)
+                .orElseThrow(() -> new IllegalStateException("Stripe event not found: " + inboxId));
+
+        Optional<Payment> paymentOpt = paymentRepository.findByExternalReference(event.getPaymentIntentId());
+        if (paymentOpt.isEmpty()) {
+            // The intent may have been created moments ago and not committed yet; the worker retries with backoff
+            throw new IllegalStateException("Payment not found for payment intent: " + event.getPaymentIntentId());
+        }
+        Payment payment = paymentOpt.get();
+
+        String outcome;
+        if (StripeEventInboxService.PAYMENT_INTENT_SUCCEEDED.equals(event.getEventType())) {
+            String mismatch = stripeMismatch(event, payment);
+            if (mismatch != null) {
+                // e.g. a partial capture: crediting the expected amount would clear more of the invoice than was received
+                log.warn("Stripe event {} for payment {} parked for review: {}", event.getEventId(), payment.getPaymentReference(),
+                        mismatch);
+                event.setStatus(STATUS_REVIEW);
+                event.setOutcome(OUTCOME_REVIEW);
+                event.setProcessedAt(LocalDateTime.now());
+                event.setLastError(mismatch);
+                stripeEventInboxRepository.save(event);
+                return OUTCOME_REVIEW;
+            }
+            String transactionId = event.getChargeId() != null ? event.getChargeId() : event.getPaymentIntentId();
+            outcome = completePayment(payment, transactionId, "Stripe charge: " + transactionId)
+                    ? OUTCOME_COMPLETED : OUTCOME_DUPLICATE;
+        } else {
+            outcome = failPayment(payment, "Stripe payment failed: " + event.getFailureMessage())
+                    ? OUTCOME_PAYMENT_FAILED : OUTCOME_DUPLICATE;
+        }
+
+        event.setStatus("PROCESSED");
+        event.setOutcome(outcome);
+        event.setProcessedAt(LocalDateTime.now());
+        event.setLastError(null);
+        stripeEventInboxRepository.save(event);
+
+        log.info("Stripe event {} for payment {} processed: {}", event.getEventId(), payment.getPaymentReference(), outcome);
+        return outcome;
+    }
+
+    private String stripeMismatch(StripeEventInbox event, Payment payment) {
+        if (event.getCurrency() != null && !event.getCurrency().equalsIgnoreCase(stripeCurrency)) {
+            return "Stripe currency " + event.getCurrency() + " differs from expected " + stripeCurrency;
+        }
+        if (event.getAmount() != null && event.getAmount().compareTo(payment.getAmount()) != 0) {
+            return "Stripe amount " + event.getAmount() + " differs from payment amount " + payment.getAmount();
+        }
+        return null;
+    }
+
+    // Applies a final STK push query result found by reconciliation; the query carries no receipt number
+    public String settleMpesaQueryResult(Long paymentId, int resultCode, String resultDesc) {
+        Payment payment = paymentRepository.findById(paymentId)
+                .orElseThrow(() -> new IllegalStateException("Payment not found: " + paymentId));
+
+        String outcome;
+        if (resultCode == 0) {
+            outcome = completePayment(payment, null, "Confirmed by STK Push status query")
+                    ? OUTCOME_COMPLETED : OUTCOME_DUPLICATE;
+        } else {
+            outcome = failPayment(payment, "M-Pesa payment failed: " + resultDesc) ? OUTCOME_PAYMENT_FAILED : OUTCOME_DUPLICATE;
+        }
+
+        log.info("M-Pesa payment {} reconciled from status query: {}", payment.getPaymentReference(), outcome);
+        return outcome;
+    }
+
+    /**
+     * Moves a PENDING payment to COMPLETED and credits its invoice.
+     * Returns false when the payment was already settled or the receipt was already used by another payment.
+     */
+    public boolean completePayment(Payment payment, String transactionId, String notes) {
+        if (transactionId != null && paymentRepository.existsByTransactionIdAndIdNot(transactionId, payment.getId())) {
+            log.warn("Transaction {} already recorded against another payment, ignoring for {}", transactionId,
+                    payment.getPaymentReference());
+            return false;
+        }
+
+        int updated = paymentRepository.markCompletedIfPending(payment.getId(), transactionId, notes, LocalDateTime.now());
+        if (updated == 0) {
+            return false;
+        }
+        entityManager.refresh(payment);
+
+        FeeInvoice invoice = creditInvoice(payment);
+        log.info("Payment completed successfully - Reference: {}, Transaction: {}, Amount: {}",
+                payment.getPaymentReference(), transactionId, payment.getAmount());
+
+        sendPaymentNotification(payment, invoice);
+        return true;
+    }
+
+    /**
+     * Records money that reached the paybill or bank account without a payment record, e.g. found in a statement,
+     * and credits the invoice. Returns false when the transaction ID is already recorded.
+     */
+    public boolean recordExternalPayment(Long invoiceId, BigDecimal amount, String paymentMethod, String transactionId,
+                                         LocalDateTime paidAt, String notes) {
+        if (paymentRepository.findByTransactionId(transactionId).isPresent()) {
+            return false;
+        }
+        FeeInvoice invoice = feeInvoiceRepository.findById(invoiceId)
+                .orElseThrow(() -> new IllegalStateException("Invoice not found: " + invoiceId));
+
+        Payment payment = new Payment();
+        payment.setPaymentReference(namingSeriesAllocator.next("M_PESA".equals(paymentMethod)
+                ? NamingSeriesAllocator.MPESA_PAYMENT_SERIES : NamingSeriesAllocator.PAYMENT_SERIES));
+        payment.setAmount(amount);
+        payment.setPaymentMethod(paymentMethod);
+        payment.setPaymentStatus("COMPLETED");
+        payment.setTransactionId(transactionId);
+        payment.setPaymentNotes(notes);
+        payment.setPaymentDate(paidAt);
+        payment.setInvoice(invoice);
+        payment.setEnrollment(invoice.getEnrollment());
+        payment.setIsActive(true);
+        paymentRepository.save(payment);
+
+        FeeInvoice credited = creditInvoice(payment);
+        log.info("External payment {} of {} recorded against invoice {}", transactionId, amount, invoice.getInvoiceNumber());
+
+        sendPaymentNotification(payment, credited);
+        return true;
+    }
+
+    // Moves a PENDING payment to FAILED; returns false when it was already settled
+    public boolean failPayment(Payment payment, String reason) {
+        int updated = paymentRepository.markFailedIfPending(payment.getId(), reason, LocalDateTime.now());
+        if (updated == 0) {
+            return false;
+        }
+        log.warn("Payment {} failed: {}", payment.getPaymentReference(), reason);
+        return true;
+    }
+
+    // A payment settled by reconciliation has no receipt yet; take it from the late callback
+    private void recordLateReceipt(Payment payment, String receiptNumber) {
+        if (receiptNumber != null && payment.getTransactionId() == null && "COMPLETED".equals(payment.getPaymentStatus())
+                && !paymentRepository.existsByTransactionIdAndIdNot(receiptNumber, payment.getId())) {
+            payment.setTransactionId(receiptNumber);
+            paymentRepository.save(payment);
+            log.info("Recorded late M-Pesa receipt {} for payment {}", receiptNumber, payment.getPaymentReference());
+        }
+    }
+
+    private FeeInvoice creditInvoice(Payment payment) {
+        Long invoiceId = payment.getInvoice().getId();
+        // Atomic increment instead of read-modify-write; no row lock is held beyond the UPDATE itself
+        if (feeInvoiceRepository.addToPaidAmount(invoiceId, payment.getAmount(), LocalDateTime.now()) == 0) {
+            throw new IllegalStateException("Invoice not found: " + invoiceId);
+        }
+        FeeInvoice invoice = feeInvoiceRepository.findById(invoiceId)
+                .orElseThrow(() -> new IllegalStateException("Invoice not found: " + invoiceId));
+        entityManager.refresh(invoice);
+        enrollmentLedgerService.recordPayment(payment);
+
+        evictDashboardCache(invoice, payment.getPaymentDate() != null ? payment.getPaymentDate().toLocalDate() : null);
+        return invoice;
+    }
+
+    private void evictDashboardCache(FeeInvoice invoice, LocalDate paymentDay) {
+        try {
+            financeDashboardCache.evictPayment(invoice.getEnrollment().getClassEntity().getSchool().getId(), paymentDay);
+        } catch (Exception e) {
+            log.warn("Could not resolve school for invoice {}, clearing dashboard cache: {}", invoice.getId(), e.getMessage());
+            financeDashboardCache.evictAll();
+        }
+    }
+
+    // Send payment notification
+    public void sendPaymentNotification(Payment payment, FeeInvoice invoice) {
+        try {
+            // Get the student from the enrollment
+            User student = invoice.getEnrollment().getStudent();
+
+            String paymentMessage = String.format(
+                "Payment of KES %s has been successfully processed for %s. " +
+                "Payment Method: %s, Transaction ID: %s. " +
+                "Your fee balance has been updated accordingly.",
+                payment.getAmount(),
+                invoice.getFeeStructure().getName(),
+                payment.getPaymentMethod(),
+                payment.getTransactionId() != null ? payment.getTransactionId() : "N/A"
+            );
+
+            NotificationRequestDto notificationRequest = NotificationRequestDto.builder()
+                    .title("Payment Processed Successfully")
+                    .message(paymentMessage)
+                    .type(Notification.NotificationType.PAYMENT)
+                    .priority(Notification.NotificationPriority.MEDIUM)
+                    .recipientId(student.getId())
+                    .actionUrl("/finance/payments")
+                    .actionText("View Payment Details")
+                    .build();
+
+            notificationService.createNotification(notificationRequest);
+            log.info("Payment notification sent to student: {}", student.getUsername());
+
+        } catch (Exception e) {
+            log.error("Error sending payment notification: {}", e.getMessage());
+        }
+    }
+}
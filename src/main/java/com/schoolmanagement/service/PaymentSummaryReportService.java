@@ -0,0 +1,205 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.PaymentSummaryReportDto;
+import com.schoolmanagement.repository.PaymentRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Payment collection summaries computed from database-side daily aggregates.
+ * A date range is split into calendar months that are queried in parallel. Closed months, and the closed
+ * days of the current month, are cached per school; only today is re-aggregated on every call, so
+ * month-to-date and yearly summaries cost one small query once warm.
+ */
+@Service
+@Slf4j
+public class PaymentSummaryReportService {
+
+    public static final String GRANULARITY_DAY = "DAY";
+    public static final String GRANULARITY_WEEK = "WEEK";
+    public static final String GRANULARITY_MONTH = "MONTH";
+
+    private static final String STATUS_REFUNDED = "REFUNDED";
+
+    private final PaymentRepository paymentRepository;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final ExecutorService executor;
+
+    public PaymentSummaryReportService(PaymentRepository paymentRepository,
+                                       FinanceDashboardCache financeDashboardCache,
+                                       @Value("${finance.reports.parallelism:4}") int parallelism) {
+        this.paymentRepository = paymentRepository;
+        this.financeDashboardCache = financeDashboardCache;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "payment-report-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Summary of payments dated from startDate to endDate inclusive; schoolId null reports every school
+    public PaymentSummaryReportDto summarize(Long schoolId, LocalDate startDate, LocalDate endDate, String granularity) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+        String normalizedGranularity = granularity != null ? granularity.toUpperCase(Locale.ROOT) : GRANULARITY_DAY;
+        Function<LocalDate, LocalDate> periodOf = switch (normalizedGranularity) {
+            case GRANULARITY_DAY -> Function.identity();
+            case GRANULARITY_WEEK -> day -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case GRANULARITY_MONTH -> day -> day.withDayOfMonth(1);
+            default -> throw new IllegalArgumentException("Granularity must be DAY, WEEK or MONTH");
+        };
+
+        List<CompletableFuture<List<DailyTotal>>> chunks = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        LocalDate end = endDate.plusDays(1);
+        for (LocalDate chunkStart = startDate; chunkStart.isBefore(end); ) {
+            LocalDate chunkEnd = min(chunkStart.withDayOfMonth(1).plusMonths(1), end);
+            chunks.addAll(loadChunk(schoolId, chunkStart, chunkEnd, today));
+            chunkStart = chunkEnd;
+        }
+
+        List<DailyTotal> totals = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<DailyTotal>> chunk : chunks) {
+                totals.addAll(chunk.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return buildReport(schoolId, startDate, endDate, normalizedGranularity, periodOf, totals);
+    }
+
+    // Closed days come from the rollup cache; days from today onwards are always aggregated live
+    private List<CompletableFuture<List<DailyTotal>>> loadChunk(Long schoolId, LocalDate from, LocalDate to, LocalDate today) {
+        List<CompletableFuture<List<DailyTotal>>> parts = new ArrayList<>(2);
+        LocalDate closedEnd = min(to, today);
+        if (from.isBefore(closedEnd)) {
+            parts.add(CompletableFuture.supplyAsync(() -> financeDashboardCache.getPaymentRollup(schoolId, from, closedEnd,
+                    () -> queryDailyTotals(schoolId, from, closedEnd)), executor));
+        }
+        LocalDate openStart = max(from, today);
+        if (openStart.isBefore(to)) {
+            parts.add(CompletableFuture.supplyAsync(() -> queryDailyTotals(schoolId, openStart, to), executor));
+        }
+        return parts;
+    }
+
+    private List<DailyTotal> queryDailyTotals(Long schoolId, LocalDate from, LocalDate to) {
+        return paymentRepository.getDailyPaymentTotals(schoolId, from.atStartOfDay(), to.atStartOfDay()).stream()
+                .map(row -> new DailyTotal(
+                        (Long) row[0],
+                        (LocalDate) row[1],
+                        (String) row[2],
+                        STATUS_REFUNDED.equals(row[3]),
+                        row[4] != null ? ((Number) row[4]).longValue() : 0L,
+                        row[5] != null ? (BigDecimal) row[5] : BigDecimal.ZERO))
+                .toList();
+    }
+
+    private PaymentSummaryReportDto buildReport(Long schoolId, LocalDate startDate, LocalDate endDate, String granularity,
+                                                Function<LocalDate, LocalDate> periodOf, List<DailyTotal> totals) {
+        Map<String, Accumulator> byMethod = new TreeMap<>();
+        Map<LocalDate, Accumulator> byPeriod = new TreeMap<>();
+        Map<Long, Accumulator> bySchool = new TreeMap<>();
+        Accumulator overall = new Accumulator();
+
+        for (DailyTotal total : totals) {
+            overall.add(total);
+            byMethod.computeIfAbsent(total.paymentMethod(), key -> new Accumulator()).add(total);
+            byPeriod.computeIfAbsent(periodOf.apply(total.day()), key -> new Accumulator()).add(total);
+            bySchool.computeIfAbsent(total.schoolId(), key -> new Accumulator()).add(total);
+        }
+
+        return PaymentSummaryReportDto.builder()
+                .schoolId(schoolId)
+                .startDate(startDate)
+                .endDate(endDate)
+                .granularity(granularity)
+                .paymentCount(overall.paymentCount)
+                .totalCollected(overall.collected)
+                .refundCount(overall.refundCount)
+                .totalRefunded(overall.refunded)
+                .netCollected(overall.collected.subtract(overall.refunded))
+                .byMethod(byMethod.entrySet().stream()
+                        .map(entry -> PaymentSummaryReportDto.MethodTotal.builder()
+                                .paymentMethod(entry.getKey())
+                                .paymentCount(entry.getValue().paymentCount)
+                                .totalCollected(entry.getValue().collected)
+                                .totalRefunded(entry.getValue().refunded)
+                                .build())
+                        .sorted(Comparator.comparing(PaymentSummaryReportDto.MethodTotal::getTotalCollected).reversed())
+                        .toList())
+                .byPeriod(byPeriod.entrySet().stream()
+                        .map(entry -> PaymentSummaryReportDto.PeriodTotal.builder()
+                                .periodStart(entry.getKey())
+                                .paymentCount(entry.getValue().paymentCount)
+                                .totalCollected(entry.getValue().collected)
+                                .totalRefunded(entry.getValue().refunded)
+                                .build())
+                        .toList())
+                .bySchool(bySchool.entrySet().stream()
+                        .map(entry -> PaymentSummaryReportDto.SchoolTotal.builder()
+                                .schoolId(entry.getKey())
+                                .paymentCount(entry.getValue().paymentCount)
+                                .totalCollected(entry.getValue().collected)
+                                .totalRefunded(entry.getValue().refunded)
+                                .build())
+                        .toList())
+                .build();
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    // Refund rows carry negative amounts; they are reported as positive refunded totals
+    public record DailyTotal(Long schoolId, LocalDate day, String paymentMethod, boolean refund, long count, BigDecimal amount) {
+    }
+
+    private static class Accumulator {
+        private long paymentCount;
+        private long refundCount;
+        private BigDecimal collected = BigDecimal.ZERO;
+        private BigDecimal refunded = BigDecimal.ZERO;
+
+        private void add(DailyTotal total) {
+            if (total.refund()) {
+                refundCount += total.count();
+                refunded = refunded.add(total.amount().abs());
+            } else {
+                paymentCount += total.count();
+                collected = collected.add(total.amount());
+            }
+        }
+    }
+}
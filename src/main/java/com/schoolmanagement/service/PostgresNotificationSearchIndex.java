@@ -0,0 +1,98 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Notification search backed by a generated tsvector column with a GIN index, so a search only touches
+ * matching rows instead of scanning the user's history with LIKE. Titles are weighted above messages and
+ * matches are ranked with ts_rank. Hibernate does not manage the column: production applies
+ * db/postgres/V024__notifications_search_vector.sql, other profiles may let startup add it (manage-schema).
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.search.engine", havingValue = "postgres")
+@Slf4j
+public class PostgresNotificationSearchIndex implements NotificationSearchIndex {
+
+    // Adding a stored generated column rewrites the table once; later startups find it in place
+    private static final String SEARCH_VECTOR_DDL = "ALTER TABLE notifications ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+            "GENERATED ALWAYS AS (setweight(to_tsvector('simple', coalesce(title, '')), 'A') || " +
+            "setweight(to_tsvector('simple', coalesce(message, '')), 'B')) STORED";
+
+    private static final String SEARCH_VECTOR_EXISTS = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = current_schema() AND table_name = 'notifications' AND column_name = 'search_vector'";
+
+    private static final String SEARCH_INDEX_DDL = "CREATE INDEX IF NOT EXISTS idx_notifications_search " +
+            "ON notifications USING GIN (search_vector)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Off in prod: the ALTER holds an ACCESS EXCLUSIVE lock while it rewrites the table
+    @Value("${notifications.search.manage-schema:true}")
+    private boolean manageSchema;
+
+    public PostgresNotificationSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Runs once Hibernate has created or validated the notifications table; search cannot work without the column
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        if (manageSchema) {
+            try {
+                jdbcTemplate.execute(SEARCH_VECTOR_DDL);
+                jdbcTemplate.execute(SEARCH_INDEX_DDL);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not prepare notification search column: " + e.getMessage(), e);
+            }
+        }
+        Integer columns = jdbcTemplate.queryForObject(SEARCH_VECTOR_EXISTS, Integer.class);
+        if (columns == null || columns == 0) {
+            throw new IllegalStateException("notifications.search_vector is missing; apply "
+                    + "db/postgres/V024__notifications_search_vector.sql or set notifications.search.engine=memory");
+        }
+        log.info("Notification search column and GIN index are in place");
+    }
+
+    @Override
+    public List<Hit> search(Long recipientId, String query, Notification.NotificationType type, Cursor after, int limit) {
+        List<String> terms = NotificationSearchIndex.terms(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        // Terms hold only letters and digits, so they are safe to combine into tsquery syntax
+        String tsQuery = terms.stream().map(term -> term + ":*").collect(Collectors.joining(" & "));
+
+        StringBuilder sql = new StringBuilder("SELECT id, rank FROM (SELECT n.id, ts_rank(n.search_vector, q.query) AS rank " +
+                "FROM notifications n, to_tsquery('simple', ?) AS q(query) " +
+                "WHERE n.recipient_id = ? AND n.is_active = TRUE AND n.search_vector @@ q.query");
+        List<Object> params = new ArrayList<>();
+        params.add(tsQuery);
+        params.add(recipientId);
+        if (type != null) {
+            sql.append(" AND n.type = ?");
+            params.add(type.name());
+        }
+        sql.append(") ranked");
+        if (after != null) {
+            sql.append(" WHERE rank < ? OR (rank = ? AND id < ?)");
+            params.add(after.rank());
+            params.add(after.rank());
+            params.add(after.notificationId());
+        }
+        sql.append(" ORDER BY rank DESC, id DESC LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new Hit(rs.getLong(1), rs.getFloat(2)), params.toArray());
+    }
+}
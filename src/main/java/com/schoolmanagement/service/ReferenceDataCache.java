@@ -0,0 +1,269 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.AcademicYear;
+import com.schoolmanagement.entity.ClassEntity;
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.Role;
+import com.schoolmanagement.entity.School;
+import com.schoolmanagement.entity.Subject;
+import com.schoolmanagement.entity.Term;
+import com.schoolmanagement.repository.AcademicYearRepository;
+import com.schoolmanagement.repository.ClassRepository;
+import com.schoolmanagement.repository.FeeStructureRepository;
+import com.schoolmanagement.repository.RoleRepository;
+import com.schoolmanagement.repository.SchoolRepository;
+import com.schoolmanagement.repository.SubjectRepository;
+import com.schoolmanagement.repository.TermRepository;
+import com.schoolmanagement.util.TtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of reference data that changes a few times a term: fee structures, schools,
+ * academic years, classes, terms, subjects and roles.
+ * Values are loaded in their own read-only transaction, so cached entities are always detached and loaded
+ * with the parents their DTOs need. They are shared between threads and must not be modified: load through
+ * the repository to change one, then call the matching evict method from the same transaction.
+ */
+@Component
+@Slf4j
+public class ReferenceDataCache {
+
+    private final FeeStructureRepository feeStructureRepository;
+    private final SchoolRepository schoolRepository;
+    private final AcademicYearRepository academicYearRepository;
+    private final ClassRepository classRepository;
+    private final TermRepository termRepository;
+    private final SubjectRepository subjectRepository;
+    private final RoleRepository roleRepository;
+    private final TransactionTemplate readTransaction;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${reference-data.cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${reference-data.cache.fee-structure-ttl-seconds:600}")
+    private long feeStructureTtlSeconds;
+
+    @Value("${reference-data.cache.school-ttl-seconds:3600}")
+    private long schoolTtlSeconds;
+
+    @Value("${reference-data.cache.academic-year-ttl-seconds:3600}")
+    private long academicYearTtlSeconds;
+
+    @Value("${reference-data.cache.class-ttl-seconds:1800}")
+    private long classTtlSeconds;
+
+    @Value("${reference-data.cache.term-ttl-seconds:3600}")
+    private long termTtlSeconds;
+
+    @Value("${reference-data.cache.subject-ttl-seconds:3600}")
+    private long subjectTtlSeconds;
+
+    @Value("${reference-data.cache.role-ttl-seconds:86400}")
+    private long roleTtlSeconds;
+
+    private EntityCache<Long, FeeStructure> feeStructures;
+    private EntityCache<Long, School> schools;
+    private EntityCache<Long, AcademicYear> academicYears;
+    private EntityCache<Long, ClassEntity> classes;
+    private EntityCache<Long, Term> terms;
+    private EntityCache<Long, Subject> subjects;
+    private EntityCache<Role.RoleName, Role> roles;
+
+    public ReferenceDataCache(FeeStructureRepository feeStructureRepository,
+                              SchoolRepository schoolRepository,
+                              AcademicYearRepository academicYearRepository,
+                              ClassRepository classRepository,
+                              TermRepository termRepository,
+                              SubjectRepository subjectRepository,
+                              RoleRepository roleRepository,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.feeStructureRepository = feeStructureRepository;
+        this.schoolRepository = schoolRepository;
+        this.academicYearRepository = academicYearRepository;
+        this.classRepository = classRepository;
+        this.termRepository = termRepository;
+        this.subjectRepository = subjectRepository;
+        this.roleRepository = roleRepository;
+        this.meterRegistry = meterRegistry;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void init() {
+        feeStructures = new EntityCache<>("fee_structure", feeStructureTtlSeconds, feeStructureRepository::findByIdWithParents);
+        schools = new EntityCache<>("school", schoolTtlSeconds, schoolRepository::findById);
+        academicYears = new EntityCache<>("academic_year", academicYearTtlSeconds, academicYearRepository::findByIdWithSchool);
+        classes = new EntityCache<>("class", classTtlSeconds, classRepository::findByIdWithParents);
+        terms = new EntityCache<>("term", termTtlSeconds, termRepository::findByIdWithParents);
+        subjects = new EntityCache<>("subject", subjectTtlSeconds, subjectRepository::findById);
+        roles = new EntityCache<>("role", roleTtlSeconds, roleRepository::findByName);
+    }
+
+    public Optional<FeeStructure> findFeeStructure(Long id) {
+        return feeStructures.get(id);
+    }
+
+    public Optional<School> findSchool(Long id) {
+        return schools.get(id);
+    }
+
+    public Optional<AcademicYear> findAcademicYear(Long id) {
+        return academicYears.get(id);
+    }
+
+    public Optional<ClassEntity> findClass(Long id) {
+        return classes.get(id);
+    }
+
+    public Optional<Term> findTerm(Long id) {
+        return terms.get(id);
+    }
+
+    public Optional<Subject> findSubject(Long id) {
+        return subjects.get(id);
+    }
+
+    public Optional<Role> findRole(Role.RoleName name) {
+        return roles.get(name);
+    }
+
+    public void evictFeeStructure(Long id) {
+        feeStructures.evict(id);
+    }
+
+    // Fee structures, academic years, classes and terms embed their school, so they go too
+    public void evictSchool(Long id) {
+        schools.evict(id);
+        academicYears.evictAll();
+        classes.evictAll();
+        terms.evictAll();
+        feeStructures.evictAll();
+    }
+
+    public void evictAcademicYear(Long id) {
+        academicYears.evict(id);
+        classes.evictAll();
+        terms.evictAll();
+        feeStructures.evictAll();
+    }
+
+    public void evictClass(Long id) {
+        classes.evict(id);
+        feeStructures.evictAll();
+    }
+
+    public void evictTerm(Long id) {
+        terms.evict(id);
+    }
+
+    public void evictSubject(Long id) {
+        subjects.evict(id);
+    }
+
+    public void evictRoles() {
+        roles.evictAll();
+    }
+
+    public void evictAll() {
+        feeStructures.evictAll();
+        schools.evictAll();
+        academicYears.evictAll();
+        classes.evictAll();
+        terms.evictAll();
+        subjects.evictAll();
+        roles.evictAll();
+    }
+
+    // Runs now and again after the caller's transaction commits, so a reader cannot re-cache the old row in between
+    private void afterCommit(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    private final class EntityCache<K, V> {
+
+        private final String name;
+        private final TtlCache<K, V> cache;
+        private final Function<K, Optional<V>> loader;
+        // Bumped on every eviction so a value loaded while the row changed is not stored
+        private final AtomicLong generation = new AtomicLong();
+
+        private EntityCache(String name, long ttlSeconds, Function<K, Optional<V>> loader) {
+            this.name = name;
+            this.cache = new TtlCache<>(Duration.ofSeconds(ttlSeconds), maxEntries);
+            this.loader = loader;
+            FunctionCounter.builder("cache.gets", cache, TtlCache::hitCount)
+                    .tag("cache", name)
+                    .tag("result", "hit")
+                    .description("Reference data cache lookups")
+                    .register(meterRegistry);
+            FunctionCounter.builder("cache.gets", cache, TtlCache::missCount)
+                    .tag("cache", name)
+                    .tag("result", "miss")
+                    .description("Reference data cache lookups")
+                    .register(meterRegistry);
+            Gauge.builder("cache.size", cache, TtlCache::size)
+                    .tag("cache", name)
+                    .description("Reference data cache entries")
+                    .register(meterRegistry);
+        }
+
+        private Optional<V> get(K key) {
+            if (key == null) {
+                return Optional.empty();
+            }
+            V cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            long loadedAt = generation.get();
+            Optional<V> loaded = readTransaction.execute(status -> loader.apply(key));
+            if (loaded != null && loaded.isPresent() && generation.get() == loadedAt) {
+                cache.put(key, loaded.get());
+            }
+            return loaded != null ? loaded : Optional.empty();
+        }
+
+        private void evict(K key) {
+            afterCommit(() -> {
+                generation.incrementAndGet();
+                cache.invalidate(key);
+            });
+            log.debug("Evicted {} {} from reference data cache", name, key);
+        }
+
+        private void evictAll() {
+            afterCommit(() -> {
+                generation.incrementAndGet();
+                cache.invalidateAll();
+            });
+        }
+    }
+}
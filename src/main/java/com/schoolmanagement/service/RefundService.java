@@ -0,0 +1,782 @@
+package com.schoolmanagement.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.dto.RefundBatchDto;
+import com.schoolmanagement.dto.RefundBatchRequestDto;
+import com.schoolmanagement.dto.RefundDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.Refund;
+import com.schoolmanagement.entity.RefundBatch;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.repository.RefundBatchRepository;
+import com.schoolmanagement.repository.RefundRepository;
+import com.schoolmanagement.repository.UserRepository;
+import com.schoolmanagement.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Refund engine. A refund is recorded PENDING against a payment, handed to its provider exactly once
+ * (M-Pesa B2C, Stripe, or a manual payout for cash and bank transfers), and reverses the invoice and
+ * ledger only when the provider confirms it, in one transaction guarded by a conditional status change.
+ * Refund batches cover every paid invoice of a fee structure, e.g. a cancelled trip, in keyset chunks that
+ * each commit with a checkpoint; payouts run on a bounded, rate-limited worker pool. A batch refund also
+ * writes the refunded charge off the invoice, so a cancelled charge is not owed, swept OVERDUE or reminded again.
+ */
+@Service
+@Slf4j
+public class RefundService {
+
+    public static final String METHOD_ORIGINAL = "ORIGINAL_PAYMENT_METHOD";
+
+    private static final String STATUS_PENDING = "PENDING";
+    private static final String STATUS_FAILED = "FAILED";
+    private static final String BATCH_RUNNING = "RUNNING";
+    private static final String BATCH_DISPATCHED = "DISPATCHED";
+    private static final String BATCH_COMPLETED = "COMPLETED";
+    private static final String BATCH_FAILED = "FAILED";
+    private static final Set<String> REFUND_METHODS = Set.of(METHOD_ORIGINAL, "BANK_TRANSFER", "CASH");
+    private static final Map<String, Object> ACCEPTED = Map.of("ResultCode", 0, "ResultDesc", "Accepted");
+
+    private final RefundRepository refundRepository;
+    private final RefundBatchRepository refundBatchRepository;
+    private final PaymentRepository paymentRepository;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final UserRepository userRepository;
+    private final EnrollmentLedgerService enrollmentLedgerService;
+    private final NamingSeriesAllocator namingSeriesAllocator;
+    private final NotificationService notificationService;
+    private final FinanceDashboardCache financeDashboardCache;
+    private final ReferenceDataCache referenceDataCache;
+    private final MpesaService mpesaService;
+    private final StripeService stripeService;
+    private final TransactionTemplate transactionTemplate;
+    private final TokenBucket providerRateLimiter;
+    private final ExecutorService workers;
+    private final ExecutorService batchExecutor;
+    // Refund IDs waiting in the worker queue, so the stale sweep does not queue them twice
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Counter processedCounter;
+    private final Counter failedCounter;
+
+    @Value("${finance.refunds.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${finance.refunds.stale-after-seconds:300}")
+    private long staleAfterSeconds;
+
+    @Value("${finance.refunds.resubmit-after-seconds:300}")
+    private long resubmitAfterSeconds;
+
+    @Value("${stripe.currency:kes}")
+    private String stripeCurrency;
+
+    public RefundService(RefundRepository refundRepository,
+                         RefundBatchRepository refundBatchRepository,
+                         PaymentRepository paymentRepository,
+                         FeeInvoiceRepository feeInvoiceRepository,
+                         UserRepository userRepository,
+                         EnrollmentLedgerService enrollmentLedgerService,
+                         NamingSeriesAllocator namingSeriesAllocator,
+                         NotificationService notificationService,
+                         FinanceDashboardCache financeDashboardCache,
+                         ReferenceDataCache referenceDataCache,
+                         MpesaService mpesaService,
+                         StripeService stripeService,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${finance.refunds.rate-per-second:5}") double ratePerSecond,
+                         @Value("${finance.refunds.concurrency:4}") int concurrency) {
+        this.refundRepository = refundRepository;
+        this.refundBatchRepository = refundBatchRepository;
+        this.paymentRepository = paymentRepository;
+        this.feeInvoiceRepository = feeInvoiceRepository;
+        this.userRepository = userRepository;
+        this.enrollmentLedgerService = enrollmentLedgerService;
+        this.namingSeriesAllocator = namingSeriesAllocator;
+        this.notificationService = notificationService;
+        this.financeDashboardCache = financeDashboardCache;
+        this.referenceDataCache = referenceDataCache;
+        this.mpesaService = mpesaService;
+        this.stripeService = stripeService;
+        this.transactionTemplate = transactionTemplate;
+        this.providerRateLimiter = new TokenBucket(ratePerSecond, Math.max(1, (int) ratePerSecond));
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "refund-payout-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Batches run one at a time so a school-wide refund cannot starve the connection pool
+        this.batchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refund-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.processedCounter = Counter.builder("finance.refunds")
+                .tag("outcome", "processed")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("finance.refunds")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+    }
+
+    public ApiResponse<RefundDto> requestRefund(Long paymentId, BigDecimal amount, String reason, String refundMethod, User currentUser) {
+        try {
+            log.info("Requesting refund of {} for payment {}", amount, paymentId);
+            String method = normalizeMethod(refundMethod);
+            if (amount == null || amount.signum() <= 0) {
+                return ApiResponse.error("Refund amount must be positive");
+            }
+
+            Refund refund = transactionTemplate.execute(status -> {
+                List<Payment> locked = paymentRepository.findAllByIdForUpdate(List.of(paymentId));
+                if (locked.isEmpty()) {
+                    throw new IllegalArgumentException("Payment not found with ID: " + paymentId);
+                }
+                Payment payment = locked.get(0);
+                if (!"COMPLETED".equals(payment.getPaymentStatus()) || payment.getAmount().signum() <= 0) {
+                    throw new IllegalArgumentException("Only completed payments can be refunded");
+                }
+                BigDecimal refundable = payment.getAmount().subtract(committedAmounts(List.of(paymentId)).getOrDefault(paymentId, BigDecimal.ZERO));
+                if (amount.compareTo(refundable) > 0) {
+                    throw new IllegalArgumentException("Refund amount exceeds the refundable balance of " + refundable);
+                }
+                return refundRepository.save(newRefund(namingSeriesAllocator.next(NamingSeriesAllocator.REFUND_SERIES), payment, amount,
+                        method, reason, payment.getEnrollment().getStudent().getPhoneNumber(), currentUser, null));
+            });
+
+            dispatch(List.of(refund.getId()));
+            return ApiResponse.success("Refund submitted for processing", convertToDto(refund));
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error requesting refund for payment {}: {}", paymentId, e.getMessage());
+            return ApiResponse.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("Error requesting refund for payment {}: {}", paymentId, e.getMessage());
+            return ApiResponse.error("Failed to process refund: " + e.getMessage());
+        }
+    }
+
+    public ApiResponse<List<RefundDto>> getPaymentRefunds(Long paymentId) {
+        try {
+            List<RefundDto> refunds = refundRepository.findActiveRefundsByPayment(paymentId).stream()
+                    .map(this::convertToDto)
+                    .toList();
+            return ApiResponse.success("Refunds retrieved successfully", refunds);
+        } catch (Exception e) {
+            log.error("Error fetching refunds for payment {}: {}", paymentId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve refunds: " + e.getMessage());
+        }
+    }
+
+    public ApiResponse<RefundBatchDto> startBatch(RefundBatchRequestDto request, User currentUser) {
+        try {
+            log.info("Starting refund batch for school: {}, fee structure: {}, class: {}", request.getSchoolId(),
+                    request.getFeeStructureId(), request.getClassId());
+            String method = normalizeMethod(request.getRefundMethod());
+
+            Optional<FeeStructure> feeStructure = referenceDataCache.findFeeStructure(request.getFeeStructureId());
+            if (feeStructure.isEmpty()) {
+                return ApiResponse.error("Fee structure not found");
+            }
+            if (!request.getSchoolId().equals(feeStructure.get().getSchool().getId())) {
+                return ApiResponse.error("Fee structure does not belong to this school");
+            }
+
+            String batchKey = request.getBatchKey() != null && !request.getBatchKey().isBlank()
+                    ? request.getBatchKey().trim()
+                    : "school-" + request.getSchoolId() + "-fs-" + request.getFeeStructureId()
+                        + "-class-" + (request.getClassId() != null ? request.getClassId() : "all");
+
+            RefundBatch batch = refundBatchRepository.findByBatchKey(batchKey).orElse(null);
+            boolean created = false;
+            if (batch == null) {
+                batch = createBatch(batchKey, request, method, currentUser);
+                created = batch != null;
+                if (batch == null) {
+                    // Another request created the same batch concurrently
+                    batch = refundBatchRepository.findByBatchKey(batchKey).orElseThrow();
+                }
+            }
+            if (!created && (!batch.getSchoolId().equals(request.getSchoolId())
+                    || !batch.getFeeStructureId().equals(request.getFeeStructureId())
+                    || !Objects.equals(batch.getClassId(), request.getClassId()))) {
+                return ApiResponse.error("Batch key '" + batchKey + "' was already used for a different refund batch");
+            }
+
+            Long batchId = batch.getId();
+            if (!created) {
+                if (BATCH_DISPATCHED.equals(batch.getStatus()) || BATCH_COMPLETED.equals(batch.getStatus())) {
+                    return ApiResponse.success("Refund batch already dispatched", convertToDto(batch));
+                }
+                // A newly created batch is already RUNNING; an existing one is resumed only if nobody is running it
+                LocalDateTime now = LocalDateTime.now();
+                Integer claimed = transactionTemplate.execute(status ->
+                        refundBatchRepository.claimBatch(batchId, now, now.minusSeconds(staleAfterSeconds)));
+                if (claimed == null || claimed == 0) {
+                    return ApiResponse.success("Refund batch already in progress", convertToDto(batch));
+                }
+            }
+
+            // A resumed batch keeps the parameters it was created with
+            BatchPlan plan = new BatchPlan(batchId, batch.getSchoolId(), batch.getFeeStructureId(), batch.getClassId(),
+                    batch.getAmountPerInvoice(), batch.getRefundMethod(), batch.getRefundReason(), batch.getCreatedBy().getId());
+            long resumeAfter = batch.getLastInvoiceId();
+            batchExecutor.execute(() -> execute(plan, resumeAfter));
+
+            return ApiResponse.success(resumeAfter > 0 ? "Refund batch resumed" : "Refund batch started",
+                    convertToDto(refundBatchRepository.findById(batchId).orElse(batch)));
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error starting refund batch: {}", e.getMessage());
+            return ApiResponse.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("Error starting refund batch: {}", e.getMessage());
+            return ApiResponse.error("Failed to start refund batch: " + e.getMessage());
+        }
+    }
+
+    public ApiResponse<RefundBatchDto> getBatch(Long batchId) {
+        try {
+            Optional<RefundBatch> batch = refundBatchRepository.findById(batchId);
+            if (batch.isEmpty()) {
+                return ApiResponse.error("Refund batch not found");
+            }
+            return ApiResponse.success("Refund batch retrieved successfully", convertToDto(batch.get()));
+        } catch (Exception e) {
+            log.error("Error fetching refund batch {}: {}", batchId, e.getMessage());
+            return ApiResponse.error("Failed to retrieve refund batch: " + e.getMessage());
+        }
+    }
+
+    // Daraja B2C result callback; conditional updates make redelivered results a no-op
+    public Map<String, Object> handleB2cResult(String payload) throws Exception {
+        JsonNode result = objectMapper.readTree(payload).path("Result");
+        Optional<Refund> refund = findB2cRefund(result);
+        if (refund.isEmpty()) {
+            log.warn("B2C result for unknown refund ignored: {}", result.path("OriginatorConversationID").asText(null));
+            return ACCEPTED;
+        }
+
+        Long refundId = refund.get().getId();
+        if (result.path("ResultCode").asInt(-1) == 0) {
+            boolean applied = completeRefund(refundId, result.path("TransactionID").asText(null));
+            if (!applied && STATUS_FAILED.equals(refund.get().getRefundStatus())) {
+                log.error("Refund {} was paid out by M-Pesa after being marked failed; reconcile it manually",
+                        refund.get().getRefundReference());
+            }
+        } else {
+            failRefund(refundId, "M-Pesa B2C failed: " + result.path("ResultDesc").asText(""));
+        }
+        return ACCEPTED;
+    }
+
+    // The request expired in Daraja's queue; it may still be paid, so the refund stays SUBMITTED for manual follow-up
+    public Map<String, Object> handleB2cTimeout(String payload) throws Exception {
+        JsonNode result = objectMapper.readTree(payload).path("Result");
+        findB2cRefund(result).ifPresent(refund -> {
+            log.warn("M-Pesa B2C request for refund {} timed out", refund.getRefundReference());
+            transactionTemplate.executeWithoutResult(status -> refundRepository.setFailureReason(refund.getId(),
+                    "M-Pesa B2C queue timeout; confirm with Safaricom before retrying", LocalDateTime.now()));
+        });
+        return ACCEPTED;
+    }
+
+    @Scheduled(fixedDelayString = "${finance.refunds.resubmit-interval-ms:60000}")
+    public void resubmitStalePending() {
+        try {
+            List<Long> stale = refundRepository.findStalePendingIds(LocalDateTime.now().minusSeconds(resubmitAfterSeconds),
+                    PageRequest.of(0, chunkSize));
+            List<Long> toDispatch = stale.stream().filter(id -> !queued.contains(id)).toList();
+            if (!toDispatch.isEmpty()) {
+                log.info("Resubmitting {} pending refunds", toDispatch.size());
+                dispatch(toDispatch);
+            }
+        } catch (Exception e) {
+            log.error("Error resubmitting pending refunds: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Moves an open refund to PROCESSED and reverses it: a negative REFUNDED payment, a ledger debit and an
+     * atomic decrement of the invoice's paid amount, all in one transaction. Returns false when it was already final.
+     */
+    public boolean completeRefund(Long refundId, String transactionId) {
+        Boolean applied = transactionTemplate.execute(status -> applyRefund(refundId, transactionId));
+        return Boolean.TRUE.equals(applied);
+    }
+
+    // Moves an open refund to FAILED; the invoice was never touched, so there is nothing to reverse
+    public void failRefund(Long refundId, String reason) {
+        String message = reason != null && reason.length() > 500 ? reason.substring(0, 500) : reason;
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (refundRepository.markFailedIfOpen(refundId, message, now) == 0) {
+                return;
+            }
+            refundRepository.findById(refundId).map(Refund::getRefundBatch).ifPresent(batch -> {
+                refundBatchRepository.recordOutcome(batch.getId(), 0, 1, BigDecimal.ZERO, now);
+                refundBatchRepository.completeIfSettled(batch.getId(), now);
+            });
+            failedCounter.increment();
+            log.warn("Refund {} failed: {}", refundId, message);
+        });
+    }
+
+    void execute(BatchPlan plan, long resumeAfter) {
+        long started = System.currentTimeMillis();
+        long lastInvoiceId = resumeAfter;
+        long created = 0;
+        try {
+            while (true) {
+                long after = lastInvoiceId;
+                ChunkResult chunk = transactionTemplate.execute(status -> processChunk(plan, after));
+                if (chunk == null || chunk.invoices() == 0) {
+                    break;
+                }
+                lastInvoiceId = chunk.lastInvoiceId();
+                created += chunk.refundIds().size();
+                // Only committed refunds are handed to providers
+                dispatch(chunk.refundIds());
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                refundBatchRepository.updateStatus(plan.batchId(), BATCH_DISPATCHED, null, now);
+                refundBatchRepository.completeIfSettled(plan.batchId(), now);
+            });
+            log.info("Refund batch {} dispatched {} refunds in {} ms", plan.batchId(), created, System.currentTimeMillis() - started);
+
+        } catch (Exception e) {
+            log.error("Refund batch {} failed after invoice {}: {}", plan.batchId(), lastInvoiceId, e.getMessage());
+            String message = e.getMessage() != null && e.getMessage().length() > 500 ? e.getMessage().substring(0, 500) : e.getMessage();
+            try {
+                transactionTemplate.executeWithoutResult(status -> refundBatchRepository.updateStatus(
+                        plan.batchId(), BATCH_FAILED, message, LocalDateTime.now()));
+            } catch (Exception statusError) {
+                log.error("Could not mark refund batch {} as failed: {}", plan.batchId(), statusError.getMessage());
+            }
+        }
+    }
+
+    private ChunkResult processChunk(BatchPlan plan, long afterInvoiceId) {
+        List<Object[]> invoices = feeInvoiceRepository.findPaidInvoicesForRefundAfter(plan.feeStructureId(), plan.schoolId(),
+                plan.classId(), afterInvoiceId, PageRequest.of(0, chunkSize));
+        if (invoices.isEmpty()) {
+            return new ChunkResult(0, afterInvoiceId, List.of());
+        }
+
+        List<Long> invoiceIds = invoices.stream().map(row -> (Long) row[0]).toList();
+        Map<Long, List<Object[]>> paymentsByInvoice = new HashMap<>();
+        for (Object[] row : paymentRepository.findRefundablePaymentRows(invoiceIds)) {
+            paymentsByInvoice.computeIfAbsent((Long) row[1], key -> new ArrayList<>()).add(row);
+        }
+        List<Long> paymentIds = paymentsByInvoice.values().stream().flatMap(List::stream).map(row -> (Long) row[0]).toList();
+        Map<Long, Payment> locked = paymentIds.isEmpty() ? Map.of() : paymentRepository.findAllByIdForUpdate(paymentIds).stream()
+                .collect(Collectors.toMap(Payment::getId, Function.identity()));
+        Map<Long, BigDecimal> committed = committedAmounts(paymentIds);
+
+        // Each invoice's target is taken from its newest payments first, never beyond what a payment has left
+        List<PlannedRefund> planned = new ArrayList<>();
+        for (Object[] invoice : invoices) {
+            BigDecimal paid = (BigDecimal) invoice[1];
+            BigDecimal remaining = plan.amountPerInvoice() != null ? plan.amountPerInvoice().min(paid) : paid;
+            for (Object[] payment : paymentsByInvoice.getOrDefault((Long) invoice[0], List.of())) {
+                if (remaining.signum() <= 0) {
+                    break;
+                }
+                Long paymentId = (Long) payment[0];
+                BigDecimal refundable = ((BigDecimal) payment[2]).subtract(committed.getOrDefault(paymentId, BigDecimal.ZERO));
+                if (refundable.signum() <= 0 || !locked.containsKey(paymentId)) {
+                    continue;
+                }
+                BigDecimal portion = remaining.min(refundable);
+                planned.add(new PlannedRefund(locked.get(paymentId), portion, (String) payment[4]));
+                remaining = remaining.subtract(portion);
+            }
+        }
+
+        List<Long> refundIds = new ArrayList<>(planned.size());
+        BigDecimal requested = BigDecimal.ZERO;
+        if (!planned.isEmpty()) {
+            // One series reservation per chunk rather than one per refund
+            Iterator<String> references = namingSeriesAllocator.nextBatch(NamingSeriesAllocator.REFUND_SERIES, planned.size()).iterator();
+            User createdBy = userRepository.getReferenceById(plan.createdById());
+            RefundBatch batch = refundBatchRepository.getReferenceById(plan.batchId());
+            List<Refund> refunds = new ArrayList<>(planned.size());
+            for (PlannedRefund refund : planned) {
+                refunds.add(newRefund(references.next(), refund.payment(), refund.amount(), plan.refundMethod(), plan.refundReason(),
+                        refund.phoneNumber(), createdBy, batch));
+                requested = requested.add(refund.amount());
+            }
+            for (Refund saved : refundRepository.saveAll(refunds)) {
+                refundIds.add(saved.getId());
+            }
+        }
+
+        long lastInvoiceId = invoiceIds.get(invoiceIds.size() - 1);
+        refundBatchRepository.recordCheckpoint(plan.batchId(), lastInvoiceId, invoices.size(), refundIds.size(), requested, LocalDateTime.now());
+        return new ChunkResult(invoices.size(), lastInvoiceId, refundIds);
+    }
+
+    private void dispatch(List<Long> refundIds) {
+        for (Long refundId : refundIds) {
+            if (!queued.add(refundId)) {
+                continue;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        submit(refundId);
+                    } finally {
+                        queued.remove(refundId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the stale sweep picks the refund up again on restart
+                queued.remove(refundId);
+                log.warn("Refund {} not dispatched: {}", refundId, e.getMessage());
+            }
+        }
+    }
+
+    // Hands one refund to its provider; the PENDING to SUBMITTED claim guarantees a single provider call
+    private void submit(Long refundId) {
+        boolean b2cRequested = false;
+        boolean b2cAccepted = false;
+        try {
+            Refund refund = refundRepository.findByIdWithPayment(refundId).orElse(null);
+            if (refund == null || !STATUS_PENDING.equals(refund.getRefundStatus())) {
+                return;
+            }
+            Payment payment = refund.getPayment();
+            String provider = METHOD_ORIGINAL.equals(refund.getRefundMethod()) ? payment.getPaymentMethod() : refund.getRefundMethod();
+            boolean external = "M_PESA".equals(provider) || "STRIPE".equals(provider);
+            if (external) {
+                providerRateLimiter.acquire();
+            }
+            Integer claimed = transactionTemplate.execute(status -> refundRepository.markSubmittedIfPending(refundId, LocalDateTime.now()));
+            if (claimed == null || claimed == 0) {
+                return;
+            }
+
+            switch (provider) {
+                case "M_PESA" -> {
+                    BigDecimal amount = refund.getRefundAmount().stripTrailingZeros();
+                    if (amount.scale() > 0) {
+                        throw new IllegalArgumentException("M-Pesa refunds must be in whole shillings");
+                    }
+                    b2cRequested = true;
+                    String conversationId = mpesaService.initiateB2CPayment(refund.getPhoneNumber(), amount.longValueExact(),
+                            "Refund " + refund.getRefundReference(), refund.getRefundReference());
+                    b2cAccepted = true;
+                    transactionTemplate.executeWithoutResult(status ->
+                            refundRepository.setProviderReference(refundId, conversationId, LocalDateTime.now()));
+                    // The outcome arrives on the B2C result URL
+                }
+                case "STRIPE" -> {
+                    if (payment.getExternalReference() == null) {
+                        throw new IllegalArgumentException("Stripe payment has no payment intent");
+                    }
+                    StripeService.StripeRefund stripeRefund = stripeService.createRefund(payment.getExternalReference(),
+                            StripeService.toMinorUnits(refund.getRefundAmount(), stripeCurrency), refund.getRefundReference());
+                    if ("failed".equals(stripeRefund.status()) || "canceled".equals(stripeRefund.status())) {
+                        failRefund(refundId, "Stripe refund " + stripeRefund.id() + " " + stripeRefund.status());
+                    } else {
+                        completeRefund(refundId, stripeRefund.id());
+                    }
+                }
+                // Cash, bank transfer and card refunds are paid out by the bursar; recording them completes them
+                default -> completeRefund(refundId, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (b2cAccepted || (b2cRequested && mayHaveReachedProvider(e))) {
+                // Daraja may have accepted the payout; failing the refund would invite a second one
+                log.error("Refund {} B2C request outcome unknown, leaving it SUBMITTED: {}", refundId, e.getMessage());
+                String reason = "M-Pesa B2C outcome unknown (" + e.getMessage() + "); confirm with Safaricom before retrying";
+                transactionTemplate.executeWithoutResult(status -> refundRepository.setFailureReason(refundId,
+                        reason.length() > 500 ? reason.substring(0, 500) : reason, LocalDateTime.now()));
+                return;
+            }
+            log.warn("Refund {} could not be submitted: {}", refundId, e.getMessage());
+            failRefund(refundId, e.getMessage());
+        }
+    }
+
+    // Timeouts, connection resets and 5xx answers leave it open whether the request was acted on
+    private static boolean mayHaveReachedProvider(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean applyRefund(Long refundId, String transactionId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (refundRepository.markProcessedIfOpen(refundId, transactionId, now) == 0) {
+            return false;
+        }
+        Refund refund = refundRepository.findByIdWithPayment(refundId)
+                .orElseThrow(() -> new IllegalStateException("Refund not found: " + refundId));
+        Payment original = refund.getPayment();
+        FeeInvoice invoice = original.getInvoice();
+
+        Payment refundPayment = new Payment();
+        refundPayment.setPaymentReference(refund.getRefundReference());
+        refundPayment.setAmount(refund.getRefundAmount().negate()); // Negative amount for refund
+        refundPayment.setPaymentMethod(original.getPaymentMethod());
+        refundPayment.setPaymentStatus("REFUNDED");
+        refundPayment.setTransactionId(transactionId);
+        refundPayment.setPaymentNotes("Refund: " + refund.getRefundReason());
+        refundPayment.setPaymentDate(now);
+        refundPayment.setInvoice(invoice);
+        refundPayment.setEnrollment(original.getEnrollment());
+        refundPayment.setProcessedBy(refund.getProcessedBy());
+        refundPayment.setIsActive(true);
+        paymentRepository.save(refundPayment);
+        refund.setRefundPaymentId(refundPayment.getId());
+
+        enrollmentLedgerService.recordRefund(refundPayment);
+        if (refund.getRefundBatch() != null) {
+            // Batches refund a charge that was called off, so the charge is written off rather than owed again
+            cancelRefundedCharge(refund, original, now);
+        } else {
+            // Atomic decrement; the invoice status is recomputed by the same UPDATE
+            feeInvoiceRepository.addToPaidAmount(invoice.getId(), refund.getRefundAmount().negate(), now);
+        }
+
+        if (refund.getRefundBatch() != null) {
+            Long batchId = refund.getRefundBatch().getId();
+            refundBatchRepository.recordOutcome(batchId, 1, 0, refund.getRefundAmount(), now);
+            refundBatchRepository.completeIfSettled(batchId, now);
+        }
+
+        evictDashboardCache(invoice, now.toLocalDate());
+        processedCounter.increment();
+        log.info("Refund {} of {} processed against invoice {}", refund.getRefundReference(), refund.getRefundAmount(),
+                invoice.getInvoiceNumber());
+        sendRefundNotification(refund, invoice);
+        return true;
+    }
+
+    // Lowers the invoice total with the refund and posts a matching ledger credit, so the reversal nets to zero
+    private void cancelRefundedCharge(Refund refund, Payment original, LocalDateTime now) {
+        Long invoiceId = original.getInvoice().getId();
+        BigDecimal writtenOff = refund.getRefundAmount();
+        // The UPDATE holds the invoice row until commit, so the amounts read next are this transaction's
+        feeInvoiceRepository.writeOffRefundedCharge(invoiceId, writtenOff, now);
+        BigDecimal balance = feeInvoiceRepository.findBalanceAmount(invoiceId).orElse(BigDecimal.ZERO);
+        if (feeInvoiceRepository.cancelUnpaidBalance(invoiceId, now) > 0) {
+            writtenOff = writtenOff.add(balance);
+        }
+        enrollmentLedgerService.recordAdjustment(original.getEnrollment().getId(), invoiceId, writtenOff.negate(),
+                refund.getRefundReference(), "Charge cancelled: " + refund.getRefundReason());
+    }
+
+    private Optional<Refund> findB2cRefund(JsonNode result) {
+        String originatorConversationId = result.path("OriginatorConversationID").asText(null);
+        Optional<Refund> refund = originatorConversationId != null
+                ? refundRepository.findByRefundReference(originatorConversationId) : Optional.empty();
+        String conversationId = result.path("ConversationID").asText(null);
+        if (refund.isEmpty() && conversationId != null) {
+            refund = refundRepository.findByProviderReference(conversationId);
+        }
+        return refund;
+    }
+
+    private Map<Long, BigDecimal> committedAmounts(List<Long> paymentIds) {
+        Map<Long, BigDecimal> committed = new HashMap<>();
+        if (paymentIds.isEmpty()) {
+            return committed;
+        }
+        for (Object[] row : refundRepository.sumCommittedAmountsByPayment(paymentIds)) {
+            committed.put((Long) row[0], (BigDecimal) row[1]);
+        }
+        return committed;
+    }
+
+    private RefundBatch createBatch(String batchKey, RefundBatchRequestDto request, String method, User currentUser) {
+        RefundBatch batch = RefundBatch.builder()
+                .batchKey(batchKey)
+                .schoolId(request.getSchoolId())
+                .feeStructureId(request.getFeeStructureId())
+                .classId(request.getClassId())
+                .amountPerInvoice(request.getAmountPerInvoice())
+                .refundMethod(method)
+                .refundReason(request.getRefundReason())
+                .status(BATCH_RUNNING)
+                .createdBy(currentUser)
+                .updatedAt(LocalDateTime.now())
+                .build();
+        try {
+            return refundBatchRepository.saveAndFlush(batch);
+        } catch (DataIntegrityViolationException e) {
+            return null;
+        }
+    }
+
+    private Refund newRefund(String reference, Payment payment, BigDecimal amount, String method, String reason, String phoneNumber,
+                             User processedBy, RefundBatch batch) {
+        Refund refund = new Refund();
+        refund.setRefundReference(reference);
+        refund.setRefundAmount(amount);
+        refund.setRefundStatus(STATUS_PENDING);
+        refund.setRefundMethod(method);
+        refund.setRefundReason(reason);
+        refund.setPhoneNumber(phoneNumber);
+        refund.setRefundDate(LocalDateTime.now());
+        refund.setPayment(payment);
+        refund.setProcessedBy(processedBy);
+        refund.setRefundBatch(batch);
+        refund.setIsActive(true);
+        return refund;
+    }
+
+    private String normalizeMethod(String refundMethod) {
+        String method = refundMethod == null || refundMethod.isBlank() ? METHOD_ORIGINAL : refundMethod.trim().toUpperCase();
+        if (!REFUND_METHODS.contains(method)) {
+            throw new IllegalArgumentException("Unsupported refund method: " + refundMethod);
+        }
+        return method;
+    }
+
+    private void evictDashboardCache(FeeInvoice invoice, LocalDate refundDay) {
+        try {
+            financeDashboardCache.evictPayment(invoice.getEnrollment().getClassEntity().getSchool().getId(), refundDay);
+        } catch (Exception e) {
+            log.warn("Could not resolve school for invoice {}, clearing dashboard cache: {}", invoice.getId(), e.getMessage());
+            financeDashboardCache.evictAll();
+        }
+    }
+
+    private void sendRefundNotification(Refund refund, FeeInvoice invoice) {
+        try {
+            NotificationRequestDto notification = NotificationRequestDto.builder()
+                    .title("Refund Processed")
+                    .message(String.format("A refund of KES %s for invoice %s has been processed. Reason: %s",
+                            refund.getRefundAmount(), invoice.getInvoiceNumber(), refund.getRefundReason()))
+                    .type(Notification.NotificationType.PAYMENT)
+                    .priority(Notification.NotificationPriority.MEDIUM)
+                    .recipientId(invoice.getEnrollment().getStudent().getId())
+                    .actionUrl("/finance/payments")
+                    .actionText("View Payment Details")
+                    .build();
+            notificationService.createNotification(notification);
+        } catch (Exception e) {
+            log.error("Error sending refund notification: {}", e.getMessage());
+        }
+    }
+
+    private RefundDto convertToDto(Refund refund) {
+        return RefundDto.builder()
+                .id(refund.getId())
+                .refundReference(refund.getRefundReference())
+                .refundAmount(refund.getRefundAmount())
+                .refundStatus(refund.getRefundStatus())
+                .refundMethod(refund.getRefundMethod())
+                .transactionId(refund.getTransactionId())
+                .providerReference(refund.getProviderReference())
+                .refundReason(refund.getRefundReason())
+                .failureReason(refund.getFailureReason())
+                .paymentId(refund.getPayment().getId())
+                .refundPaymentId(refund.getRefundPaymentId())
+                .refundBatchId(refund.getRefundBatch() != null ? refund.getRefundBatch().getId() : null)
+                .refundDate(refund.getRefundDate())
+                .processedAt(refund.getProcessedAt())
+                .build();
+    }
+
+    private RefundBatchDto convertToDto(RefundBatch batch) {
+        long settled = batch.getRefundsProcessed() + batch.getRefundsFailed();
+        int percentComplete;
+        if (BATCH_COMPLETED.equals(batch.getStatus())) {
+            percentComplete = 100;
+        } else if (batch.getRefundsCreated() == 0) {
+            percentComplete = 0;
+        } else {
+            // Payouts still being created keep the figure below 100
+            percentComplete = (int) Math.min(99, settled * 100 / batch.getRefundsCreated());
+        }
+        return RefundBatchDto.builder()
+                .id(batch.getId())
+                .batchKey(batch.getBatchKey())
+                .schoolId(batch.getSchoolId())
+                .feeStructureId(batch.getFeeStructureId())
+                .classId(batch.getClassId())
+                .amountPerInvoice(batch.getAmountPerInvoice())
+                .refundMethod(batch.getRefundMethod())
+                .refundReason(batch.getRefundReason())
+                .status(batch.getStatus())
+                .lastInvoiceId(batch.getLastInvoiceId())
+                .invoicesScanned(batch.getInvoicesScanned())
+                .refundsCreated(batch.getRefundsCreated())
+                .refundsProcessed(batch.getRefundsProcessed())
+                .refundsFailed(batch.getRefundsFailed())
+                .refundsInFlight(batch.getRefundsCreated() - settled)
+                .percentComplete(percentComplete)
+                .amountRequested(batch.getAmountRequested())
+                .amountRefunded(batch.getAmountRefunded())
+                .errorMessage(batch.getErrorMessage())
+                .createdAt(batch.getCreatedAt())
+                .updatedAt(batch.getUpdatedAt())
+                .completedAt(batch.getCompletedAt())
+                .build();
+    }
+
+    record BatchPlan(Long batchId, Long schoolId, Long feeStructureId, Long classId, BigDecimal amountPerInvoice,
+                     String refundMethod, String refundReason, Long createdById) {
+    }
+
+    private record PlannedRefund(Payment payment, BigDecimal amount, String phoneNumber) {
+    }
+
+    private record ChunkResult(int invoices, long lastInvoiceId, List<Long> refundIds) {
+    }
+}
@@ -21,6 +21,7 @@ import java.util.stream.Collectors;
 public class SchoolService {
     
     private final SchoolRepository schoolRepository;
+    private final ReferenceDataCache referenceDataCache;
     
     public ApiResponse<SchoolDto> createSchool(SchoolDto schoolDto) {
         try {
@@ -112,6 +113,7 @@ public class SchoolService {
             school.setIsActive(schoolDto.getIsActive());
             
             School updatedSchool = schoolRepository.save(school);
+            referenceDataCache.evictSchool(id);
             log.info("School updated successfully: {}", updatedSchool.getId());
             
             return ApiResponse.success("School updated successfully", convertToDto(updatedSchool));
@@ -133,6 +135,7 @@ public class SchoolService {
             
             school.get().setIsActive(false);
             schoolRepository.save(school.get());
+            referenceDataCache.evictSchool(id);
             log.info("School deleted successfully: {}", id);
             
             return ApiResponse.success("School deleted successfully", null);
@@ -0,0 +1,450 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.StatementImportResultDto;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.util.CsvLineParser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Reconciles a paybill or bank statement export against recorded payments.
+ * The CSV is read line by line, so statements of any size run in constant memory apart from the lookup
+ * indexes (the school's recorded receipts, invoice numbers and pending payments) that are loaded once per import.
+ * Matched rows are settled through {@link PaymentSettlementService} in batched transactions;
+ * rows that match nothing are written to a per-import report file.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StatementImportService {
+
+    public static final String SOURCE_MPESA = "MPESA";
+    public static final String SOURCE_BANK = "BANK";
+
+    private static final int MAX_HEADER_SEARCH_LINES = 50;
+    private static final int MAX_UNMATCHED_SAMPLE = 100;
+
+    // Header aliases, lower-cased; M-Pesa org portal exports first, then common bank layouts
+    private static final List<String> RECEIPT_COLUMNS = List.of("receipt no.", "receipt no", "receipt", "transaction id",
+            "transaction reference", "reference", "bank reference");
+    private static final List<String> AMOUNT_COLUMNS = List.of("paid in", "credit", "credit amount", "amount");
+    private static final List<String> ACCOUNT_COLUMNS = List.of("a/c no.", "a/c no", "account no", "account number",
+            "account", "bill reference", "narration", "details");
+    private static final List<String> DATE_COLUMNS = List.of("completion time", "transaction date", "value date", "date");
+    private static final List<String> STATUS_COLUMNS = List.of("transaction status", "status");
+    private static final List<DateTimeFormatter> DATE_TIME_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+
+    private final PaymentRepository paymentRepository;
+    private final FeeInvoiceRepository feeInvoiceRepository;
+    private final PaymentSettlementService paymentSettlementService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${finance.statement-import.batch-size:200}")
+    private int batchSize;
+
+    @Value("${finance.statement-import.report-dir:${java.io.tmpdir}/statement-imports}")
+    private String reportDir;
+
+    public ApiResponse<StatementImportResultDto> importStatement(Long schoolId, String source, InputStream statement) {
+        String normalizedSource = source != null ? source.toUpperCase(Locale.ROOT) : SOURCE_MPESA;
+        if (!SOURCE_MPESA.equals(normalizedSource) && !SOURCE_BANK.equals(normalizedSource)) {
+            return ApiResponse.error("Source must be MPESA or BANK");
+        }
+
+        String importId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(Paths.get(reportDir));
+            Path reportPath = reportPath(importId);
+            ImportRun run = new ImportRun(importId, schoolId, normalizedSource, buildIndexes(schoolId));
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(statement, StandardCharsets.UTF_8));
+                 BufferedWriter report = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+                run.report = report;
+                report.write("line,receipt,account,amount,reason");
+                report.newLine();
+                run.process(reader);
+            }
+
+            StatementImportResultDto result = run.toDto();
+            result.setUnmatchedReportUrl("/api/finance/statements/imports/" + importId + "/unmatched");
+            log.info("Statement import {} for school {}: {} rows, {} settled, {} recorded, {} already recorded, {} unmatched, {} failed",
+                    importId, schoolId, result.getTotalRows(), result.getSettledPendingPayments(), result.getRecordedPayments(),
+                    result.getAlreadyRecorded(), result.getUnmatched(), result.getFailed());
+            return ApiResponse.success("Statement imported successfully", result);
+        } catch (Exception e) {
+            log.error("Error importing statement for school {}: {}", schoolId, e.getMessage());
+            return ApiResponse.error("Failed to import statement: " + e.getMessage());
+        }
+    }
+
+    // Report of unmatched and failed rows for a finished import, if it still exists
+    public Optional<Path> getUnmatchedReport(String importId) {
+        try {
+            UUID.fromString(importId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        Path path = reportPath(importId);
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    private Path reportPath(String importId) {
+        return Paths.get(reportDir, "statement-import-" + importId + "-unmatched.csv");
+    }
+
+    // Hash indexes built once per import so matching a row never hits the database
+    private Indexes buildIndexes(Long schoolId) {
+        Indexes indexes = new Indexes();
+        // Scoped to the school; a receipt recorded under another school is still caught by the settlement's own check
+        for (Object[] row : paymentRepository.findReceiptKeysBySchool(schoolId)) {
+            if (row[0] != null) {
+                indexes.recordedReceipts.add(normalizeKey((String) row[0]));
+            }
+            // A settled payment's own reference (e.g. the bank reference a bursar typed in) is money already credited;
+            // pending references stay out so the row can complete that payment
+            if (row[1] != null && !"PENDING".equals(row[2])) {
+                indexes.recordedReceipts.add(normalizeKey((String) row[1]));
+            }
+        }
+        for (Object[] row : feeInvoiceRepository.findInvoiceNumberKeysBySchool(schoolId)) {
+            indexes.invoiceIdByNumber.put(normalizeKey((String) row[0]), (Long) row[1]);
+        }
+        List<Object[]> pendingPayments = paymentRepository.findPendingPaymentKeysBySchool(schoolId);
+        for (Object[] row : pendingPayments) {
+            PendingPayment pending = new PendingPayment((Long) row[0], (Long) row[1], (BigDecimal) row[2]);
+            indexes.pendingByInvoice.computeIfAbsent(pending.invoiceId(), id -> new ArrayDeque<>()).add(pending);
+            if (row[3] != null) {
+                indexes.pendingByReference.put(normalizeKey((String) row[3]), pending);
+            }
+        }
+        log.info("Statement import indexes for school {}: {} receipts, {} invoices, {} pending payments", schoolId,
+                indexes.recordedReceipts.size(), indexes.invoiceIdByNumber.size(), pendingPayments.size());
+        return indexes;
+    }
+
+    private static String normalizeKey(String value) {
+        return value == null ? "" : value.replaceAll("\\s+", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static int findColumn(List<String> header, List<String> aliases) {
+        for (String alias : aliases) {
+            int index = header.indexOf(alias);
+            if (index >= 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : "";
+    }
+
+    private static BigDecimal parseAmount(String value) {
+        String cleaned = value.replaceAll("(?i)kes|ksh|[,\\s]", "");
+        if (cleaned.isEmpty()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(cleaned);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseDate(String value) {
+        for (DateTimeFormatter format : DATE_TIME_FORMATS) {
+            try {
+                return LocalDateTime.parse(value, format);
+            } catch (DateTimeParseException ignored) {
+                // try the next layout
+            }
+        }
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value, format).atStartOfDay();
+            } catch (DateTimeParseException ignored) {
+                // try the next layout
+            }
+        }
+        return null;
+    }
+
+    private static String csvValue(Object value) {
+        String text = value == null ? "" : value.toString();
+        // Statement text is caller-supplied; a leading quote stops spreadsheets running it as a formula
+        if (value instanceof String && !text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        return text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")
+                ? "\"" + text.replace("\"", "\"\"") + "\"" : text;
+    }
+
+    private static class Indexes {
+        private final Set<String> recordedReceipts = new HashSet<>();
+        private final Map<String, Long> invoiceIdByNumber = new HashMap<>();
+        private final Map<String, PendingPayment> pendingByReference = new HashMap<>();
+        private final Map<Long, Deque<PendingPayment>> pendingByInvoice = new HashMap<>();
+        private final Set<Long> claimedPayments = new HashSet<>();
+    }
+
+    private record PendingPayment(Long paymentId, Long invoiceId, BigDecimal amount) {
+    }
+
+    private record StatementRow(long lineNumber, String receipt, String account, BigDecimal amount, LocalDateTime paidAt) {
+    }
+
+    // A matched row: either settles an existing PENDING payment or records a new one against an invoice
+    private record Match(StatementRow row, Long pendingPaymentId, Long invoiceId) {
+    }
+
+    private class ImportRun {
+        private final String importId;
+        private final Long schoolId;
+        private final String source;
+        private final Indexes indexes;
+        private final List<Match> batch = new ArrayList<>();
+        private final List<StatementImportResultDto.UnmatchedRow> unmatchedSample = new ArrayList<>();
+        private BufferedWriter report;
+        private long totalRows;
+        private long skippedRows;
+        private long settledPending;
+        private long recorded;
+        private long alreadyRecorded;
+        private long unmatched;
+        private long failed;
+        private BigDecimal settledAmount = BigDecimal.ZERO;
+
+        private ImportRun(String importId, Long schoolId, String source, Indexes indexes) {
+            this.importId = importId;
+            this.schoolId = schoolId;
+            this.source = source;
+            this.indexes = indexes;
+        }
+
+        private void process(BufferedReader reader) throws IOException {
+            // Statement exports often start with a few title lines before the column header
+            List<String> header = null;
+            String line;
+            long lineNumber = 0;
+            while (header == null && (line = reader.readLine()) != null) {
+                lineNumber++;
+                List<String> candidate = CsvLineParser.parse(line.replace("\uFEFF", "")).stream()
+                        .map(value -> value.toLowerCase(Locale.ROOT))
+                        .toList();
+                if (findColumn(candidate, RECEIPT_COLUMNS) >= 0 && findColumn(candidate, AMOUNT_COLUMNS) >= 0) {
+                    header = candidate;
+                } else if (lineNumber >= MAX_HEADER_SEARCH_LINES) {
+                    throw new IllegalArgumentException("No header with receipt and amount columns in the first "
+                            + MAX_HEADER_SEARCH_LINES + " lines");
+                }
+            }
+            if (header == null) {
+                throw new IllegalArgumentException("Statement is empty");
+            }
+
+            int receiptColumn = findColumn(header, RECEIPT_COLUMNS);
+            int amountColumn = findColumn(header, AMOUNT_COLUMNS);
+            int accountColumn = findColumn(header, ACCOUNT_COLUMNS);
+            int dateColumn = findColumn(header, DATE_COLUMNS);
+            int statusColumn = findColumn(header, STATUS_COLUMNS);
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                totalRows++;
+                List<String> fields = CsvLineParser.parse(line);
+                String status = field(fields, statusColumn);
+                BigDecimal amount = parseAmount(field(fields, amountColumn));
+                if ((!status.isEmpty() && !"completed".equalsIgnoreCase(status))
+                        || amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                    skippedRows++;
+                    continue;
+                }
+                String dateValue = field(fields, dateColumn);
+                LocalDateTime paidAt = dateValue.isEmpty() ? LocalDateTime.now() : parseDate(dateValue);
+                StatementRow row = new StatementRow(lineNumber, field(fields, receiptColumn), field(fields, accountColumn),
+                        amount, paidAt);
+                if (paidAt == null) {
+                    // Never settle with a made-up payment date
+                    reportUnmatched(row, "Unparseable date: " + dateValue);
+                    continue;
+                }
+                match(row);
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            }
+            flush();
+        }
+
+        private void match(StatementRow row) throws IOException {
+            String receipt = normalizeKey(row.receipt());
+            if (receipt.isEmpty()) {
+                reportUnmatched(row, "Missing receipt number");
+                return;
+            }
+            // Receipts seen earlier in this file are added to the index too, so duplicates inside one statement are ignored
+            if (!indexes.recordedReceipts.add(receipt)) {
+                alreadyRecorded++;
+                return;
+            }
+
+            PendingPayment byReference = indexes.pendingByReference.get(receipt);
+            if (byReference != null && byReference.amount().compareTo(row.amount()) == 0
+                    && indexes.claimedPayments.add(byReference.paymentId())) {
+                batch.add(new Match(row, byReference.paymentId(), byReference.invoiceId()));
+                return;
+            }
+
+            Long invoiceId = indexes.invoiceIdByNumber.get(normalizeKey(row.account()));
+            if (invoiceId == null) {
+                reportUnmatched(row, "No invoice matches account reference");
+                return;
+            }
+
+            // Prefer completing a pending payment of the same amount over recording a second payment
+            Deque<PendingPayment> pendingForInvoice = indexes.pendingByInvoice.get(invoiceId);
+            if (pendingForInvoice != null) {
+                for (PendingPayment pending : pendingForInvoice) {
+                    if (pending.amount().compareTo(row.amount()) == 0 && indexes.claimedPayments.add(pending.paymentId())) {
+                        pendingForInvoice.remove(pending);
+                        batch.add(new Match(row, pending.paymentId(), invoiceId));
+                        return;
+                    }
+                }
+            }
+            batch.add(new Match(row, null, invoiceId));
+        }
+
+        private void flush() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                List<Boolean> outcomes = transactionTemplate.execute(status -> batch.stream().map(this::apply).toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    count(batch.get(i), outcomes.get(i));
+                }
+            } catch (Exception batchError) {
+                // One bad row rolled the batch back; retry row by row so only that row is reported
+                log.warn("Statement import {} batch failed, retrying rows individually: {}", importId, batchError.getMessage());
+                for (Match match : batch) {
+                    try {
+                        count(match, transactionTemplate.execute(status -> apply(match)));
+                    } catch (Exception e) {
+                        failed++;
+                        writeReport(match.row(), "Settlement failed: " + e.getMessage());
+                    }
+                }
+            }
+            batch.clear();
+        }
+
+        private boolean apply(Match match) {
+            StatementRow row = match.row();
+            String notes = "Matched from " + source + " statement import " + importId;
+            if (match.pendingPaymentId() != null) {
+                Payment payment = paymentRepository.findById(match.pendingPaymentId())
+                        .orElseThrow(() -> new IllegalStateException("Payment not found: " + match.pendingPaymentId()));
+                // Settled in the meantime: never fall back to a second payment for the same money
+                return paymentSettlementService.completePayment(payment, row.receipt(), notes);
+            }
+            String paymentMethod = SOURCE_MPESA.equals(source) ? "M_PESA" : "BANK_TRANSFER";
+            return paymentSettlementService.recordExternalPayment(match.invoiceId(), row.amount(), paymentMethod,
+                    row.receipt(), row.paidAt(), notes);
+        }
+
+        private void count(Match match, boolean applied) {
+            if (!applied) {
+                alreadyRecorded++;
+                return;
+            }
+            if (match.pendingPaymentId() != null) {
+                settledPending++;
+            } else {
+                recorded++;
+            }
+            settledAmount = settledAmount.add(match.row().amount());
+        }
+
+        private void reportUnmatched(StatementRow row, String reason) throws IOException {
+            unmatched++;
+            writeReport(row, reason);
+        }
+
+        private void writeReport(StatementRow row, String reason) throws IOException {
+            report.write(String.join(",", csvValue(row.lineNumber()), csvValue(row.receipt()), csvValue(row.account()),
+                    csvValue(row.amount()), csvValue(reason)));
+            report.newLine();
+            if (unmatchedSample.size() < MAX_UNMATCHED_SAMPLE) {
+                unmatchedSample.add(StatementImportResultDto.UnmatchedRow.builder()
+                        .lineNumber(row.lineNumber())
+                        .receipt(row.receipt())
+                        .account(row.account())
+                        .amount(row.amount())
+                        .reason(reason)
+                        .build());
+            }
+        }
+
+        private StatementImportResultDto toDto() {
+            return StatementImportResultDto.builder()
+                    .importId(importId)
+                    .schoolId(schoolId)
+                    .source(source)
+                    .totalRows(totalRows)
+                    .skippedRows(skippedRows)
+                    .settledPendingPayments(settledPending)
+                    .recordedPayments(recorded)
+                    .alreadyRecorded(alreadyRecorded)
+                    .unmatched(unmatched)
+                    .failed(failed)
+                    .settledAmount(settledAmount)
+                    .unmatchedSample(unmatchedSample)
+                    .build();
+        }
+    }
+}
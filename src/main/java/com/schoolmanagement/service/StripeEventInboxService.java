@@ -0,0 +1,243 @@
+package com.schoolmanagement.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schoolmanagement.entity.StripeEventInbox;
+import com.schoolmanagement.repository.StripeEventInboxRepository;
+import com.schoolmanagement.util.StripeSignatureVerifier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Durable inbox for Stripe webhook events. The webhook verifies the signature, stores the few fields
+ * settlement needs keyed by event ID and acknowledges; a scheduled worker claims stored events in batches
+ * and settles them through {@link PaymentSettlementService}, the same way M-Pesa callbacks are handled.
+ */
+@Service
+@Slf4j
+public class StripeEventInboxService {
+
+    public static final String RECEIVED_STORED = "stored";
+    public static final String RECEIVED_DUPLICATE = "duplicate";
+    public static final String RECEIVED_IGNORED = "ignored";
+
+    public static final String PAYMENT_INTENT_SUCCEEDED = "payment_intent.succeeded";
+    public static final String PAYMENT_INTENT_FAILED = "payment_intent.payment_failed";
+
+    private static final Set<String> HANDLED_TYPES = Set.of(PAYMENT_INTENT_SUCCEEDED, PAYMENT_INTENT_FAILED);
+
+    private final StripeEventInboxRepository stripeEventInboxRepository;
+    private final PaymentSettlementService paymentSettlementService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Counter eventsStored;
+    private final Counter eventsDuplicate;
+    private final Counter eventsRejected;
+
+    private StripeSignatureVerifier signatureVerifier;
+
+    @Value("${stripe.webhook-secret:#{null}}")
+    private String webhookSecret;
+
+    @Value("${stripe.webhook-tolerance-seconds:300}")
+    private long toleranceSeconds;
+
+    @Value("${finance.stripe-events.batch-size:100}")
+    private int batchSize;
+
+    @Value("${finance.stripe-events.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${finance.stripe-events.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${finance.stripe-events.retention-days:30}")
+    private long retentionDays;
+
+    public StripeEventInboxService(StripeEventInboxRepository stripeEventInboxRepository,
+                                   PaymentSettlementService paymentSettlementService,
+                                   TransactionTemplate transactionTemplate,
+                                   MeterRegistry meterRegistry) {
+        this.stripeEventInboxRepository = stripeEventInboxRepository;
+        this.paymentSettlementService = paymentSettlementService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventsStored = meterRegistry.counter("stripe.webhook.events", "result", RECEIVED_STORED);
+        this.eventsDuplicate = meterRegistry.counter("stripe.webhook.events", "result", RECEIVED_DUPLICATE);
+        this.eventsRejected = meterRegistry.counter("stripe.webhook.events", "result", "rejected");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (webhookSecret != null && !webhookSecret.isBlank()) {
+            signatureVerifier = new StripeSignatureVerifier(webhookSecret, toleranceSeconds);
+        } else {
+            log.warn("Stripe webhook secret not configured; Stripe webhooks will be rejected");
+        }
+    }
+
+    /**
+     * Verifies and stores one webhook delivery; no payment logic runs on the request thread.
+     * Returns stored, duplicate or ignored. Throws IllegalArgumentException for a bad signature or body,
+     * which the controller answers with 400; any other failure should be answered with 5xx so Stripe retries.
+     */
+    public String receive(String payload, String signatureHeader) {
+        if (signatureVerifier == null) {
+            throw new IllegalStateException("Stripe webhook secret not configured");
+        }
+        if (!signatureVerifier.verify(payload, signatureHeader, Instant.now().getEpochSecond())) {
+            eventsRejected.increment();
+            throw new IllegalArgumentException("Invalid Stripe signature");
+        }
+
+        StripeEventInbox event = parse(payload);
+        if (event == null) {
+            return RECEIVED_IGNORED;
+        }
+
+        if (stripeEventInboxRepository.existsByEventId(event.getEventId())) {
+            eventsDuplicate.increment();
+            log.debug("Duplicate Stripe event ignored: {}", event.getEventId());
+            return RECEIVED_DUPLICATE;
+        }
+
+        try {
+            stripeEventInboxRepository.save(event);
+        } catch (DataIntegrityViolationException e) {
+            eventsDuplicate.increment();
+            log.debug("Duplicate Stripe event ignored: {}", event.getEventId());
+            return RECEIVED_DUPLICATE;
+        }
+
+        eventsStored.increment();
+        log.debug("Stripe event stored - {} {} for {}", event.getEventType(), event.getEventId(), event.getPaymentIntentId());
+        return RECEIVED_STORED;
+    }
+
+    @Scheduled(fixedDelayString = "${finance.stripe-events.poll-interval-ms:1000}")
+    public void processPendingEvents() {
+        try {
+            List<Long> claimed;
+            do {
+                claimed = claimBatch();
+                for (Long eventId : claimed) {
+                    processEvent(eventId);
+                }
+            } while (claimed.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Error processing Stripe event inbox: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${finance.stripe-events.purge-interval-ms:3600000}")
+    public void purgeProcessedEvents() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+            Integer deleted = transactionTemplate.execute(status -> stripeEventInboxRepository.deleteProcessedBefore(cutoff));
+            if (deleted != null && deleted > 0) {
+                log.info("Purged {} processed Stripe events older than {} days", deleted, retentionDays);
+            }
+        } catch (Exception e) {
+            log.error("Error purging Stripe event inbox: {}", e.getMessage());
+        }
+    }
+
+    // Marks a batch as PROCESSING with a lease; rows locked by another worker are skipped
+    private List<Long> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<StripeEventInbox> batch = stripeEventInboxRepository.findClaimable(now, PageRequest.of(0, batchSize));
+            for (StripeEventInbox event : batch) {
+                event.setStatus("PROCESSING");
+                event.setAttempts(event.getAttempts() + 1);
+                event.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+            }
+            return batch.stream().map(StripeEventInbox::getId).toList();
+        });
+    }
+
+    private void processEvent(Long eventId) {
+        try {
+            paymentSettlementService.settleStripeEvent(eventId);
+        } catch (Exception e) {
+            log.warn("Stripe event {} could not be settled: {}", eventId, e.getMessage());
+            recordFailure(eventId, e.getMessage());
+        }
+    }
+
+    private void recordFailure(Long eventId, String error) {
+        transactionTemplate.executeWithoutResult(status -> stripeEventInboxRepository.findById(eventId).ifPresent(event -> {
+            String message = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+            event.setLastError(message);
+            if (event.getAttempts() >= maxAttempts) {
+                event.setStatus("FAILED");
+                log.error("Stripe event {} failed permanently after {} attempts: {}", event.getEventId(),
+                        event.getAttempts(), message);
+            } else {
+                // Exponential backoff capped at ten minutes
+                long delaySeconds = Math.min(600, 1L << Math.min(event.getAttempts(), 10));
+                event.setStatus("RECEIVED");
+                event.setNextAttemptAt(LocalDateTime.now().plusSeconds(delaySeconds));
+            }
+        }));
+    }
+
+    // Returns null for event types settlement does not act on; those are acknowledged without being stored
+    private StripeEventInbox parse(String payload) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(payload);
+        } catch (Exception e) {
+            eventsRejected.increment();
+            throw new IllegalArgumentException("Unparseable Stripe event: " + e.getMessage());
+        }
+        String eventId = root.path("id").asText(null);
+        String eventType = root.path("type").asText(null);
+        if (eventId == null || eventType == null) {
+            eventsRejected.increment();
+            throw new IllegalArgumentException("Stripe event missing id or type");
+        }
+        if (!HANDLED_TYPES.contains(eventType)) {
+            log.debug("Stripe event {} of type {} ignored", eventId, eventType);
+            return null;
+        }
+
+        JsonNode intent = root.path("data").path("object");
+        StripeEventInbox event = StripeEventInbox.builder()
+                .eventId(eventId)
+                .eventType(eventType)
+                .paymentIntentId(intent.path("id").asText(null))
+                .chargeId(intent.path("latest_charge").asText(null))
+                .currency(intent.path("currency").asText(null))
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+
+        JsonNode amount = PAYMENT_INTENT_SUCCEEDED.equals(eventType) ? intent.path("amount_received") : intent.path("amount");
+        if (amount.canConvertToLong() && event.getCurrency() != null) {
+            event.setAmount(StripeService.fromMinorUnits(amount.asLong(), event.getCurrency()));
+        }
+        String failureMessage = intent.path("last_payment_error").path("message").asText(null);
+        if (failureMessage != null && failureMessage.length() > 500) {
+            failureMessage = failureMessage.substring(0, 500);
+        }
+        event.setFailureMessage(failureMessage);
+
+        if (event.getPaymentIntentId() == null) {
+            log.warn("Stripe event {} has no payment intent, storing as invalid", eventId);
+            event.setStatus("INVALID");
+        }
+        return event;
+    }
+}
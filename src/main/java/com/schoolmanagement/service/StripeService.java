@@ -9,11 +9,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -31,48 +35,75 @@ public class StripeService {
     @Value("${stripe.publishable-key:#{null}}")
     private String publishableKey;
 
-    @Value("${stripe.webhook-secret:#{null}}")
-    private String webhookSecret;
+    @Value("${stripe.base-url:}")
+    private String baseUrl;
 
     @Value("${stripe.environment:sandbox}")
     private String environment;
 
+    // Zero-decimal currencies are sent to Stripe in whole units; everything else in cents
+    private static final Set<String> ZERO_DECIMAL_CURRENCIES = Set.of(
+            "bif", "clp", "djf", "gnf", "jpy", "kmf", "krw", "mga", "pyg", "rwf", "ugx", "vnd", "vuv", "xaf", "xof", "xpf");
+
+    public record PaymentIntent(String id, String clientSecret, String status) {
+    }
+
+    public record StripeRefund(String id, String status) {
+    }
+
     public String createPaymentIntent(String amount, String currency, String description, String customerEmail) {
+        long amountMinorUnits = toMinorUnits(new BigDecimal(amount), currency);
+        return createPaymentIntent(amountMinorUnits, currency, description, customerEmail,
+                Map.of("payment_reference", UUID.randomUUID().toString()), null).id();
+    }
+
+    /**
+     * Creates a payment intent for an amount in the currency's smallest unit.
+     * Stripe's API is form encoded; metadata is sent as metadata[key]. A repeated idempotency key
+     * returns the original intent instead of creating a second one.
+     */
+    public PaymentIntent createPaymentIntent(long amountMinorUnits, String currency, String description, String customerEmail,
+                                             Map<String, String> metadata, String idempotencyKey) {
         try {
             if (secretKey == null || secretKey.trim().isEmpty()) {
                 log.error("Stripe secret key not configured. Please set stripe.secret-key");
-                return null;
+                throw new IllegalStateException("Stripe secret key not configured");
             }
-            
-            log.info("Creating Stripe payment intent for amount: {}, currency: {}", amount, currency);
+
+            log.info("Creating Stripe payment intent for amount: {}, currency: {}", amountMinorUnits, currency);
 
             String url = getApiUrl() + "/v1/payment_intents";
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + secretKey);
+            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+            headers.setBearerAuth(secretKey);
+            if (idempotencyKey != null) {
+                headers.set("Idempotency-Key", idempotencyKey);
+            }
 
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("amount", amount);
-            requestBody.put("currency", currency);
-            requestBody.put("description", description);
-            requestBody.put("customer_email", customerEmail);
-            requestBody.put("metadata", Map.of(
-                "payment_reference", UUID.randomUUID().toString(),
-                "source", "school_management_system"
-            ));
+            MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+            form.add("amount", String.valueOf(amountMinorUnits));
+            form.add("currency", currency.toLowerCase());
+            form.add("automatic_payment_methods[enabled]", "true");
+            if (description != null) {
+                form.add("description", description);
+            }
+            if (customerEmail != null) {
+                form.add("receipt_email", customerEmail);
+            }
+            form.add("metadata[source]", "school_management_system");
+            metadata.forEach((key, value) -> form.add("metadata[" + key + "]", value));
 
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(form, headers);
             ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
 
-            if (response.getStatusCode() == HttpStatus.OK) {
-                Map<String, Object> responseBody = response.getBody();
-                if (responseBody != null && responseBody.containsKey("id")) {
-                    log.info("Payment intent created successfully: {}", responseBody.get("id"));
-                    return (String) responseBody.get("id");
-                }
+            Map<String, Object> responseBody = response.getBody();
+            if (response.getStatusCode().is2xxSuccessful() && responseBody != null && responseBody.containsKey("id")) {
+                log.info("Payment intent created successfully: {}", responseBody.get("id"));
+                return new PaymentIntent((String) responseBody.get("id"), (String) responseBody.get("client_secret"),
+                        (String) responseBody.get("status"));
             }
 
-            log.error("Failed to create payment intent: {}", response.getBody());
+            log.error("Failed to create payment intent: {}", responseBody);
             throw new RuntimeException("Failed to create payment intent");
 
         } catch (Exception e) {
@@ -81,6 +112,47 @@ public class StripeService {
         }
     }
 
+    // Refunds part or all of a payment intent; returns the refund, whose status is succeeded, pending or failed
+    public StripeRefund createRefund(String paymentIntentId, long amountMinorUnits, String idempotencyKey) {
+        try {
+            if (secretKey == null || secretKey.trim().isEmpty()) {
+                throw new IllegalStateException("Stripe secret key not configured");
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+            headers.setBearerAuth(secretKey);
+            headers.set("Idempotency-Key", idempotencyKey);
+
+            MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+            form.add("payment_intent", paymentIntentId);
+            form.add("amount", String.valueOf(amountMinorUnits));
+            form.add("metadata[refund_reference]", idempotencyKey);
+
+            ResponseEntity<Map> response = restTemplate.postForEntity(getApiUrl() + "/v1/refunds", new HttpEntity<>(form, headers), Map.class);
+            Map<String, Object> responseBody = response.getBody();
+            if (response.getStatusCode().is2xxSuccessful() && responseBody != null && responseBody.containsKey("id")) {
+                log.info("Stripe refund {} created for {}: {}", responseBody.get("id"), paymentIntentId, responseBody.get("status"));
+                return new StripeRefund((String) responseBody.get("id"), (String) responseBody.get("status"));
+            }
+            throw new RuntimeException("Unexpected refund response: " + responseBody);
+
+        } catch (Exception e) {
+            log.error("Error creating Stripe refund for {}: {}", paymentIntentId, e.getMessage());
+            throw new RuntimeException("Failed to create Stripe refund: " + e.getMessage());
+        }
+    }
+
+    public static long toMinorUnits(BigDecimal amount, String currency) {
+        int scale = ZERO_DECIMAL_CURRENCIES.contains(currency.toLowerCase()) ? 0 : 2;
+        return amount.setScale(scale, RoundingMode.HALF_UP).movePointRight(scale).longValueExact();
+    }
+
+    public static BigDecimal fromMinorUnits(long amount, String currency) {
+        int scale = ZERO_DECIMAL_CURRENCIES.contains(currency.toLowerCase()) ? 0 : 2;
+        return BigDecimal.valueOf(amount, scale).setScale(2);
+    }
+
     public String confirmPaymentIntent(String paymentIntentId) {
         try {
             log.info("Confirming Stripe payment intent: {}", paymentIntentId);
@@ -152,30 +224,6 @@ public class StripeService {
         }
     }
 
-    public void processWebhook(String payload, String signature) {
-        try {
-            log.info("Processing Stripe webhook with signature: {}", signature);
-
-            // Verify webhook signature
-            if (!verifyWebhookSignature(payload, signature)) {
-                log.error("Invalid webhook signature");
-                throw new RuntimeException("Invalid webhook signature");
-            }
-
-            // Parse webhook payload
-            // This would typically use Stripe's webhook parsing library
-            // For now, we'll log the payload
-            log.info("Webhook payload: {}", payload);
-
-            // Process webhook events
-            // This would handle events like payment_intent.succeeded, payment_intent.payment_failed, etc.
-
-        } catch (Exception e) {
-            log.error("Error processing Stripe webhook: {}", e.getMessage());
-            throw new RuntimeException("Failed to process webhook: " + e.getMessage());
-        }
-    }
-
     public String createCheckoutSession(String amount, String currency, String description, String successUrl, String cancelUrl) {
         try {
             log.info("Creating Stripe checkout session for amount: {}", amount);
@@ -225,21 +273,11 @@ public class StripeService {
         }
     }
 
-    private boolean verifyWebhookSignature(String payload, String signature) {
-        if (webhookSecret == null || webhookSecret.trim().isEmpty()) {
-            log.error("Stripe webhook secret not configured. Please set stripe.webhook-secret");
-            return false;
-        }
-        
-        // This would typically use Stripe's webhook signature verification
-        // For now, we'll return true for demonstration
-        return true;
-    }
-
     private String getApiUrl() {
-        return "sandbox".equals(environment) 
-            ? "https://api.stripe.com"
-            : "https://api.stripe.com";
+        if (baseUrl != null && !baseUrl.isBlank()) {
+            return baseUrl;
+        }
+        return "https://api.stripe.com";
     }
 }
 
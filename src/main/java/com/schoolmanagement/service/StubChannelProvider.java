@@ -0,0 +1,71 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationDelivery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a real channel provider. Each request sleeps for a fixed latency and rejects a
+ * configurable share of messages, so delivery throughput, batching and retries can be load tested offline.
+ */
+public class StubChannelProvider implements NotificationChannelProvider {
+
+    private final String name;
+    private final NotificationDelivery.DeliveryChannel channel;
+    private final int maxBatchSize;
+    private final double requestsPerSecond;
+    private final long latencyMs;
+    private final double failureRate;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public StubChannelProvider(String name, NotificationDelivery.DeliveryChannel channel, int maxBatchSize,
+                               double requestsPerSecond, long latencyMs, double failureRate) {
+        this.name = name;
+        this.channel = channel;
+        this.maxBatchSize = maxBatchSize;
+        this.requestsPerSecond = requestsPerSecond;
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public NotificationDelivery.DeliveryChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public double requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    @Override
+    public List<SendResult> send(List<ChannelMessage> messages) throws InterruptedException {
+        if (latencyMs > 0) {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+        }
+        List<SendResult> results = new ArrayList<>(messages.size());
+        for (ChannelMessage message : messages) {
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                results.add(SendResult.rejected("{\"status\":\"rejected\"}", "Stub " + channel + " provider rejected the message"));
+            } else {
+                String messageId = name + "-" + sequence.incrementAndGet();
+                results.add(SendResult.accepted(messageId, "{\"status\":\"accepted\",\"id\":\"" + messageId + "\"}"));
+            }
+        }
+        return results;
+    }
+}
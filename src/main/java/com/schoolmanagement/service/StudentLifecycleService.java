@@ -35,7 +35,7 @@ public class StudentLifecycleService {
     private final StudentFeeRepository studentFeeRepository;
     private final UserRepository userRepository;
     private final ClassRepository classRepository;
-    private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final AcademicYearRepository academicYearRepository;
     private final TermRepository termRepository;
     private final FeeStructureRepository feeStructureRepository;
@@ -78,7 +78,7 @@ public class StudentLifecycleService {
             // Enroll in subjects if specified
             if (request.getSubjectIds() != null && !request.getSubjectIds().isEmpty()) {
                 for (Long subjectId : request.getSubjectIds()) {
-                    Subject subject = subjectRepository.findById(subjectId)
+                    Subject subject = referenceDataCache.findSubject(subjectId)
                             .orElseThrow(() -> new RuntimeException("Subject not found"));
                     
                     StudentSubject studentSubject = StudentSubject.builder()
@@ -117,7 +117,7 @@ public class StudentLifecycleService {
 
             Subject subject = null;
             if (request.getSubjectId() != null) {
-                subject = subjectRepository.findById(request.getSubjectId())
+                subject = referenceDataCache.findSubject(request.getSubjectId())
                         .orElseThrow(() -> new RuntimeException("Subject not found"));
             }
 
@@ -161,7 +161,7 @@ public class StudentLifecycleService {
                     .orElseThrow(() -> new RuntimeException("Student not found"));
             Exam exam = examRepository.findById(request.getExamId())
                     .orElseThrow(() -> new RuntimeException("Exam not found"));
-            Subject subject = subjectRepository.findById(request.getSubjectId())
+            Subject subject = referenceDataCache.findSubject(request.getSubjectId())
                     .orElseThrow(() -> new RuntimeException("Subject not found"));
             ClassEntity classEntity = classRepository.findById(request.getClassId())
                     .orElseThrow(() -> new RuntimeException("Class not found"));
@@ -17,6 +17,7 @@ import java.util.List;
 public class SubjectDataService implements CommandLineRunner {
 
     private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
 
     @Override
     @Transactional
@@ -89,8 +90,8 @@ public class SubjectDataService implements CommandLineRunner {
             createCBCSubject("PHE_HEALTH", "Health Education", "Physical and Health Education", "Health", "Health Education for CBC")
         );
 
-        subjectRepository.saveAll(eightFourFourSubjects);
-        subjectRepository.saveAll(cbcSubjects);
+        subjectRepository.saveAll(eightFourFourSubjects).forEach(subject -> referenceDataCache.evictSubject(subject.getId()));
+        subjectRepository.saveAll(cbcSubjects).forEach(subject -> referenceDataCache.evictSubject(subject.getId()));
     }
 
     private Subject createSubject(String code, String name, Subject.CurriculumType curriculumType, 
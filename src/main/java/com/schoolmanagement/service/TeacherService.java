@@ -37,7 +37,7 @@ public class TeacherService {
     private final AssignmentSubmissionRepository assignmentSubmissionRepository;
     private final LessonPlanRepository lessonPlanRepository;
     private final UserRepository userRepository;
-    private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final ClassRepository classRepository;
     private final AcademicYearRepository academicYearRepository;
     private final TermRepository termRepository;
@@ -73,7 +73,7 @@ public class TeacherService {
 
             // Get related entities
             Subject subject = request.getSubjectId() != null ? 
-                    subjectRepository.findById(request.getSubjectId()).orElse(null) : null;
+                    referenceDataCache.findSubject(request.getSubjectId()).orElse(null) : null;
             ClassEntity classEntity = request.getClassId() != null ? 
                     classRepository.findById(request.getClassId()).orElse(null) : null;
             AcademicYear academicYear = request.getAcademicYearId() != null ? 
@@ -122,7 +122,7 @@ public class TeacherService {
             log.info("Creating assignment: {} by teacher: {}", request.getTitle(), teacher.getUsername());
 
             // Validate entities
-            Subject subject = subjectRepository.findById(request.getSubjectId())
+            Subject subject = referenceDataCache.findSubject(request.getSubjectId())
                     .orElseThrow(() -> new RuntimeException("Subject not found"));
             ClassEntity classEntity = classRepository.findById(request.getClassId())
                     .orElseThrow(() -> new RuntimeException("Class not found"));
@@ -274,7 +274,7 @@ public class TeacherService {
             log.info("Creating lesson plan: {} by teacher: {}", request.getTitle(), teacher.getUsername());
 
             // Validate entities
-            Subject subject = subjectRepository.findById(request.getSubjectId())
+            Subject subject = referenceDataCache.findSubject(request.getSubjectId())
                     .orElseThrow(() -> new RuntimeException("Subject not found"));
             ClassEntity classEntity = classRepository.findById(request.getClassId())
                     .orElseThrow(() -> new RuntimeException("Class not found"));
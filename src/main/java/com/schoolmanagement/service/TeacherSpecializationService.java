@@ -6,7 +6,6 @@ import com.schoolmanagement.entity.TeacherSpecialization;
 import com.schoolmanagement.exception.ResourceNotFoundException;
 import com.schoolmanagement.exception.ValidationException;
 import com.schoolmanagement.repository.TeacherRepository;
-import com.schoolmanagement.repository.SubjectRepository;
 import com.schoolmanagement.repository.TeacherSpecializationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -23,7 +22,7 @@ public class TeacherSpecializationService {
 
     private final TeacherSpecializationRepository teacherSpecializationRepository;
     private final TeacherRepository teacherRepository;
-    private final SubjectRepository subjectRepository;
+    private final ReferenceDataCache referenceDataCache;
 
     private static final int MAX_PRIMARY_SPECIALIZATIONS = 2;
     private static final int MAX_SECONDARY_SPECIALIZATIONS = 2;
@@ -33,7 +32,7 @@ public class TeacherSpecializationService {
         Teacher teacher = teacherRepository.findById(teacherId)
                 .orElseThrow(() -> new ResourceNotFoundException("Teacher not found with id: " + teacherId));
         
-        Subject subject = subjectRepository.findById(subjectId)
+        Subject subject = referenceDataCache.findSubject(subjectId)
                 .orElseThrow(() -> new ResourceNotFoundException("Subject not found with id: " + subjectId));
 
         // Check if teacher already has this subject specialization
@@ -145,7 +144,7 @@ public class TeacherSpecializationService {
         Teacher teacher = teacherRepository.findById(teacherId)
                 .orElseThrow(() -> new ResourceNotFoundException("Teacher not found with id: " + teacherId));
         
-        Subject subject = subjectRepository.findById(subjectId)
+        Subject subject = referenceDataCache.findSubject(subjectId)
                 .orElseThrow(() -> new ResourceNotFoundException("Subject not found with id: " + subjectId));
 
         return teacherSpecializationRepository.findByTeacherAndSubject(teacher, subject)
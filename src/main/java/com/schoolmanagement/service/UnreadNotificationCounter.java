@@ -0,0 +1,164 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.repository.NotificationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory unread notification count per user, so the badge every client polls is served without a query.
+ * A count is loaded on first read and then kept current by NotificationService after each write commits.
+ * A periodic reconciliation recounts cached users against the table to correct drift (e.g. writes racing a
+ * first load, or changes from another node) and drops users that stopped polling.
+ */
+@Component
+@Slf4j
+public class UnreadNotificationCounter {
+
+    private static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    private final NotificationRepository notificationRepository;
+    // ConcurrentHashMap locks per bin, so updates for different users do not contend
+    private final Map<Long, Entry> counts = new ConcurrentHashMap<>();
+    // Told (user id, new count) whenever a cached count changes, e.g. to push badge updates to open streams
+    private final List<BiConsumer<Long, Long>> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${notifications.unread.idle-eviction-ms:900000}")
+    private long idleEvictionMs;
+
+    public UnreadNotificationCounter(NotificationRepository notificationRepository, MeterRegistry meterRegistry) {
+        this.notificationRepository = notificationRepository;
+        Gauge.builder("notifications.unread.cached.users", counts, Map::size)
+                .description("Users whose unread notification count is held in memory")
+                .register(meterRegistry);
+    }
+
+    public long get(Long userId) {
+        Entry entry = counts.get(userId);
+        if (entry == null) {
+            Entry loaded = new Entry(notificationRepository.countUnreadByRecipientId(userId));
+            entry = counts.putIfAbsent(userId, loaded);
+            if (entry == null) {
+                entry = loaded;
+            }
+        }
+        entry.lastReadAt = System.currentTimeMillis();
+        return Math.max(0, entry.count.get());
+    }
+
+    public void addListener(BiConsumer<Long, Long> listener) {
+        listeners.add(listener);
+    }
+
+    public void increment(Long userId) {
+        adjust(userId, 1);
+    }
+
+    public void decrement(Long userId) {
+        adjust(userId, -1);
+    }
+
+    // One increment per occurrence, so a recipient listed twice counts twice
+    public void incrementAll(Collection<Long> userIds) {
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Long userId : userIds) {
+            deltas.merge(userId, 1L, Long::sum);
+        }
+        adjustAll(deltas);
+    }
+
+    public void adjustAll(Map<Long, Long> deltas) {
+        afterCommit(() -> deltas.forEach(this::apply));
+    }
+
+    // Applied only once the caller's transaction commits; users not cached are loaded fresh on their next read
+    public void adjust(Long userId, long delta) {
+        afterCommit(() -> apply(userId, delta));
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        try {
+            long idleBefore = System.currentTimeMillis() - idleEvictionMs;
+            counts.entrySet().removeIf(entry -> entry.getValue().lastReadAt < idleBefore);
+
+            List<Long> userIds = new ArrayList<>(counts.keySet());
+            int corrected = 0;
+            for (int from = 0; from < userIds.size(); from += RECONCILE_CHUNK_SIZE) {
+                List<Long> chunk = userIds.subList(from, Math.min(from + RECONCILE_CHUNK_SIZE, userIds.size()));
+                Map<Long, Long> actual = new HashMap<>();
+                for (Object[] row : notificationRepository.countUnreadByRecipientIds(chunk)) {
+                    actual.put((Long) row[0], (Long) row[1]);
+                }
+                for (Long userId : chunk) {
+                    Entry entry = counts.get(userId);
+                    long count = actual.getOrDefault(userId, 0L);
+                    if (entry != null && entry.count.getAndSet(count) != count) {
+                        corrected++;
+                        notifyListeners(userId, count);
+                    }
+                }
+            }
+            if (corrected > 0) {
+                log.info("Reconciled unread notification counts: {} of {} cached users corrected", corrected, userIds.size());
+            }
+        } catch (Exception e) {
+            log.error("Error reconciling unread notification counts: {}", e.getMessage());
+        }
+    }
+
+    private void apply(Long userId, long delta) {
+        Entry entry = counts.get(userId);
+        if (entry != null) {
+            notifyListeners(userId, entry.count.addAndGet(delta));
+        }
+    }
+
+    private void notifyListeners(Long userId, long count) {
+        for (BiConsumer<Long, Long> listener : listeners) {
+            try {
+                listener.accept(userId, Math.max(0, count));
+            } catch (Exception e) {
+                log.warn("Unread count listener failed for user {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Entry {
+
+        private final AtomicLong count;
+        private volatile long lastReadAt = System.currentTimeMillis();
+
+        private Entry(long count) {
+            this.count = new AtomicLong(count);
+        }
+    }
+}
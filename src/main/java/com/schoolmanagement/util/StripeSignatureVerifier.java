@@ -0,0 +1,91 @@
+package com.schoolmanagement.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Verifies and produces Stripe webhook signatures. The Stripe-Signature header has the form
+ * {@code t=<unix seconds>,v1=<hex HMAC-SHA256 of "t.payload">}, possibly with several v1 entries
+ * while a secret is being rolled. Thread-safe; each thread keeps its own initialised Mac.
+ */
+public class StripeSignatureVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final long toleranceSeconds;
+    private final ThreadLocal<Mac> mac;
+
+    public StripeSignatureVerifier(String secret, long toleranceSeconds) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("Webhook secret must not be blank");
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        // Fail fast on an unusable key instead of on the first webhook
+        newMac(key);
+        this.toleranceSeconds = toleranceSeconds;
+        this.mac = ThreadLocal.withInitial(() -> newMac(key));
+    }
+
+    // True when one of the v1 signatures matches and the timestamp is within the tolerance of now
+    public boolean verify(String payload, String signatureHeader, long nowEpochSeconds) {
+        if (payload == null || signatureHeader == null) {
+            return false;
+        }
+        long timestamp = -1;
+        for (String part : signatureHeader.split(",")) {
+            String item = part.trim();
+            if (item.startsWith("t=")) {
+                try {
+                    timestamp = Long.parseLong(item.substring(2));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        if (timestamp < 0 || (toleranceSeconds > 0 && Math.abs(nowEpochSeconds - timestamp) > toleranceSeconds)) {
+            return false;
+        }
+
+        byte[] expected = hmac(timestamp, payload);
+        for (String part : signatureHeader.split(",")) {
+            String item = part.trim();
+            if (item.startsWith("v1=")) {
+                byte[] candidate;
+                try {
+                    candidate = HexFormat.of().parseHex(item.substring(3));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (MessageDigest.isEqual(expected, candidate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Builds a Stripe-Signature header value for the payload, as Stripe would send it
+    public String sign(String payload, long timestampEpochSeconds) {
+        return "t=" + timestampEpochSeconds + ",v1=" + HexFormat.of().formatHex(hmac(timestampEpochSeconds, payload));
+    }
+
+    private byte[] hmac(long timestamp, String payload) {
+        Mac instance = mac.get();
+        instance.update((timestamp + ".").getBytes(StandardCharsets.UTF_8));
+        return instance.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.schoolmanagement.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe token bucket rate limiter. Permits accrue at a fixed rate up to {@code burst}
+ * stored permits; callers that find the bucket empty reserve the next free slot and sleep
+ * outside the lock until it arrives, so waiting threads are served in reservation order.
+ */
+public class TokenBucket {
+
+    private final double intervalNanos;
+    private final double maxStoredPermits;
+    private final LongSupplier nanoClock;
+
+    private double storedPermits;
+    private long nextFreeNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.maxStoredPermits = burst;
+        this.nanoClock = nanoClock;
+        this.storedPermits = burst;
+        this.nextFreeNanos = nanoClock.getAsLong();
+    }
+
+    // Blocks until a permit is available
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            waitNanos = reserve(nanoClock.getAsLong());
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Takes a permit only if one is available right now
+    public boolean tryAcquire() {
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            resync(now);
+            if (nextFreeNanos > now || storedPermits < 1) {
+                return false;
+            }
+            storedPermits -= 1;
+            return true;
+        }
+    }
+
+    public synchronized double availablePermits() {
+        resync(nanoClock.getAsLong());
+        return storedPermits;
+    }
+
+    // Returns how long the caller must wait for its permit
+    private long reserve(long now) {
+        resync(now);
+        long waitNanos = Math.max(0, nextFreeNanos - now);
+        double fromStore = Math.min(1, storedPermits);
+        double fresh = 1 - fromStore;
+        storedPermits -= fromStore;
+        nextFreeNanos += (long) (fresh * intervalNanos);
+        return waitNanos;
+    }
+
+    private void resync(long now) {
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(maxStoredPermits, storedPermits + (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- Keyset invoice paging orders by (issue_date DESC, id DESC). Databases on ddl-auto validate do not get the
+-- entity's index automatically.
+CREATE INDEX IF NOT EXISTS idx_fee_invoices_issue_date_id ON fee_invoices (issue_date, id);
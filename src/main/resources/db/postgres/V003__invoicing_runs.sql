@@ -0,0 +1,26 @@
+-- Bulk term invoicing (BulkInvoicingService). Databases on ddl-auto validate do not get the entity's
+-- tables and columns automatically.
+CREATE TABLE IF NOT EXISTS invoicing_runs (
+    id                    bigserial PRIMARY KEY,
+    run_key               varchar(200) NOT NULL,
+    fee_structure_ids     varchar(500) NOT NULL,
+    class_id              bigint,
+    due_date              date         NOT NULL,
+    status                varchar(20)  NOT NULL,
+    last_enrollment_id    bigint       NOT NULL,
+    enrollments_processed bigint       NOT NULL,
+    invoices_created      bigint       NOT NULL,
+    invoices_skipped      bigint       NOT NULL,
+    error_message         varchar(500),
+    completed_at          timestamp(6),
+    created_at            timestamp(6) NOT NULL,
+    updated_at            timestamp(6) NOT NULL,
+    school_id             bigint       NOT NULL REFERENCES schools (id),
+    term_id               bigint       NOT NULL REFERENCES terms (id),
+    CONSTRAINT uk_invoicing_runs_run_key UNIQUE (run_key)
+);
+
+-- Ad-hoc invoices keep a null term; term invoices are unique per enrollment and fee structure
+ALTER TABLE fee_invoices ADD COLUMN IF NOT EXISTS term_id bigint REFERENCES terms (id);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_fee_invoices_enrollment_structure_term
+    ON fee_invoices (student_enrollment_id, fee_structure_id, term_id);
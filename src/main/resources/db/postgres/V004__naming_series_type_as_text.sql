@@ -0,0 +1,5 @@
+-- Naming series types are stored as plain text (NamingSeries.SeriesTypeConverter).
+-- Tables created while series_type was an enum column carry a CHECK constraint listing only the
+-- original types, which rejects the INVOICE, PAYMENT and ENROLLMENT series. ddl-auto update never
+-- alters that constraint, so drop it once on existing databases.
+ALTER TABLE naming_series DROP CONSTRAINT IF EXISTS naming_series_series_type_check;
@@ -0,0 +1,23 @@
+-- Durable inbox for M-Pesa STK callbacks (MpesaCallbackInboxService). Databases on ddl-auto validate do not
+-- get the entity's table automatically.
+CREATE TABLE IF NOT EXISTS mpesa_callback_inbox (
+    id                   bigserial PRIMARY KEY,
+    checkout_request_id  varchar(100),
+    merchant_request_id  varchar(100),
+    result_code          integer,
+    result_desc          varchar(500),
+    mpesa_receipt_number varchar(50),
+    amount               numeric(10, 2),
+    phone_number         varchar(20),
+    payload              text         NOT NULL,
+    status               varchar(20)  NOT NULL,
+    outcome              varchar(20),
+    attempts             integer      NOT NULL,
+    next_attempt_at      timestamp(6) NOT NULL,
+    last_error           varchar(500),
+    processed_at         timestamp(6),
+    received_at          timestamp(6) NOT NULL,
+    CONSTRAINT uk_mpesa_callback_inbox_checkout_request_id UNIQUE (checkout_request_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_mpesa_callback_inbox_status_next_attempt ON mpesa_callback_inbox (status, next_attempt_at);
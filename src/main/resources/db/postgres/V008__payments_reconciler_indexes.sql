@@ -0,0 +1,4 @@
+-- The M-Pesa reconciler looks up stale PENDING payments by status, method and date, and callbacks find their
+-- payment by external reference. Databases on ddl-auto validate do not get the entity's indexes automatically.
+CREATE INDEX IF NOT EXISTS idx_payments_status_method_date ON payments (payment_status, payment_method, payment_date);
+CREATE INDEX IF NOT EXISTS idx_payments_external_reference ON payments (external_reference);
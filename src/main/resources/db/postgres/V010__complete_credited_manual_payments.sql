@@ -0,0 +1,9 @@
+-- Payments recorded by hand (FinanceService.processPayment) credit their invoice immediately but used to be
+-- saved as PENDING. Statement imports and M-Pesa reconciliation settle PENDING payments, which would credit
+-- those invoices a second time. Mark the already-credited rows COMPLETED. STK push payments (MPESA- series)
+-- and Stripe intents are genuinely pending until their provider confirms, so they are left alone.
+UPDATE payments
+SET payment_status = 'COMPLETED', updated_at = NOW()
+WHERE payment_status = 'PENDING'
+  AND payment_reference LIKE 'PAY-%'
+  AND payment_method <> 'STRIPE';
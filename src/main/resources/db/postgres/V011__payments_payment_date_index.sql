@@ -0,0 +1,3 @@
+-- The payment summary report aggregates payments by day over a payment_date range. Databases on ddl-auto
+-- validate do not get the entity's index automatically.
+CREATE INDEX IF NOT EXISTS idx_payments_payment_date ON payments (payment_date);
@@ -0,0 +1,10 @@
+-- The overdue sweeper (OverdueInvoiceSweeper) stamps overdue_at on the invoices it moves to OVERDUE.
+-- Databases on ddl-auto validate do not get the entity's column or indexes automatically.
+ALTER TABLE fee_invoices ADD COLUMN IF NOT EXISTS overdue_at timestamp(6);
+
+-- The sweep selects PENDING and PARTIAL invoices past their due date
+CREATE INDEX IF NOT EXISTS idx_fee_invoices_status_due_date ON fee_invoices (status, due_date);
+
+-- Overdue reminders page through the invoices moved to OVERDUE by one sweep (overdue_at = sweep time),
+-- keyset-paged by id.
+CREATE INDEX IF NOT EXISTS idx_fee_invoices_overdue_at_id ON fee_invoices (overdue_at, id);
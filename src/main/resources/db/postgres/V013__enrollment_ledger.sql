@@ -0,0 +1,29 @@
+-- Per-enrollment ledger and its materialized running balance (EnrollmentLedgerService). Databases on
+-- ddl-auto validate do not get the entities' tables automatically.
+CREATE TABLE IF NOT EXISTS enrollment_ledger_entries (
+    id                    bigserial PRIMARY KEY,
+    student_enrollment_id bigint         NOT NULL,
+    entry_type            varchar(20)    NOT NULL,
+    debit_amount          numeric(12, 2) NOT NULL,
+    credit_amount         numeric(12, 2) NOT NULL,
+    balance_after         numeric(12, 2) NOT NULL,
+    invoice_id            bigint,
+    payment_id            bigint,
+    reference             varchar(100),
+    description           varchar(255),
+    entry_date            timestamp(6)   NOT NULL,
+    created_at            timestamp(6)   NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_enrollment_ledger_entries_enrollment_id
+    ON enrollment_ledger_entries (student_enrollment_id, id);
+
+CREATE TABLE IF NOT EXISTS enrollment_balances (
+    student_enrollment_id bigint PRIMARY KEY,
+    balance               numeric(12, 2) NOT NULL,
+    total_debits          numeric(12, 2) NOT NULL,
+    total_credits         numeric(12, 2) NOT NULL,
+    entry_count           bigint         NOT NULL,
+    last_entry_at         timestamp(6),
+    updated_at            timestamp(6)   NOT NULL
+);
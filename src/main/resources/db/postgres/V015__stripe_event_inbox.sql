@@ -0,0 +1,22 @@
+-- Durable inbox for Stripe webhook events (StripeEventInboxService). Databases on ddl-auto validate do not
+-- get the entity's table automatically.
+CREATE TABLE IF NOT EXISTS stripe_event_inbox (
+    id                bigserial PRIMARY KEY,
+    event_id          varchar(100) NOT NULL,
+    event_type        varchar(60)  NOT NULL,
+    payment_intent_id varchar(100),
+    charge_id         varchar(100),
+    amount            numeric(10, 2),
+    currency          varchar(3),
+    failure_message   varchar(500),
+    status            varchar(20)  NOT NULL,
+    outcome           varchar(20),
+    attempts          integer      NOT NULL,
+    next_attempt_at   timestamp(6) NOT NULL,
+    last_error        varchar(500),
+    processed_at      timestamp(6),
+    received_at       timestamp(6) NOT NULL,
+    CONSTRAINT uk_stripe_event_inbox_event_id UNIQUE (event_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stripe_event_inbox_status_next_attempt ON stripe_event_inbox (status, next_attempt_at);
@@ -0,0 +1,40 @@
+-- Refund engine (RefundService): bulk refund batches and the provider columns on refunds. Databases on
+-- ddl-auto validate do not get the entities' tables and columns automatically.
+CREATE TABLE IF NOT EXISTS refund_batches (
+    id                 bigserial PRIMARY KEY,
+    batch_key          varchar(200)   NOT NULL,
+    school_id          bigint         NOT NULL,
+    fee_structure_id   bigint         NOT NULL,
+    class_id           bigint,
+    amount_per_invoice numeric(10, 2),
+    refund_method      varchar(30)    NOT NULL,
+    refund_reason      varchar(500)   NOT NULL,
+    status             varchar(20)    NOT NULL,
+    last_invoice_id    bigint         NOT NULL,
+    invoices_scanned   bigint         NOT NULL,
+    refunds_created    bigint         NOT NULL,
+    refunds_processed  bigint         NOT NULL,
+    refunds_failed     bigint         NOT NULL,
+    amount_requested   numeric(14, 2) NOT NULL,
+    amount_refunded    numeric(14, 2) NOT NULL,
+    error_message      varchar(500),
+    completed_at       timestamp(6),
+    created_at         timestamp(6)   NOT NULL,
+    updated_at         timestamp(6)   NOT NULL,
+    created_by_id      bigint         NOT NULL REFERENCES users (id),
+    CONSTRAINT uk_refund_batches_batch_key UNIQUE (batch_key)
+);
+
+ALTER TABLE refunds ALTER COLUMN refund_method TYPE varchar(30);
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS provider_reference varchar(100);
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS phone_number varchar(20);
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS failure_reason varchar(500);
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS refund_payment_id bigint;
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS processed_at timestamp(6);
+ALTER TABLE refunds ADD COLUMN IF NOT EXISTS refund_batch_id bigint REFERENCES refund_batches (id);
+
+-- The refund reference doubles as the provider idempotency key
+CREATE UNIQUE INDEX IF NOT EXISTS uk_refunds_refund_reference ON refunds (refund_reference);
+CREATE INDEX IF NOT EXISTS idx_refunds_payment ON refunds (payment_id);
+CREATE INDEX IF NOT EXISTS idx_refunds_batch ON refunds (refund_batch_id, id);
+CREATE INDEX IF NOT EXISTS idx_refunds_status_created ON refunds (refund_status, created_at);
@@ -0,0 +1,8 @@
+-- Outbox columns for the sharded notification dispatcher (NotificationDispatcher). Databases on ddl-auto
+-- validate do not get the entity's columns automatically.
+ALTER TABLE notification_deliveries ADD COLUMN IF NOT EXISTS attempts integer NOT NULL DEFAULT 0;
+ALTER TABLE notification_deliveries ADD COLUMN IF NOT EXISTS next_attempt_at timestamp(6);
+
+CREATE INDEX IF NOT EXISTS idx_notification_deliveries_status_next_attempt
+    ON notification_deliveries (status, next_attempt_at);
+CREATE INDEX IF NOT EXISTS idx_notification_deliveries_notification ON notification_deliveries (notification_id);
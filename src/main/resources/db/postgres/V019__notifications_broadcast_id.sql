@@ -0,0 +1,5 @@
+-- Bulk sends tag every notification they create with one broadcast id. Databases on ddl-auto validate do
+-- not get the entity's column automatically.
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS broadcast_id varchar(36);
+
+CREATE INDEX IF NOT EXISTS idx_notifications_broadcast ON notifications (broadcast_id);
@@ -0,0 +1,3 @@
+-- The unread counter loads and reconciles counts per recipient. Databases on ddl-auto validate do not get the
+-- entity's index automatically.
+CREATE INDEX IF NOT EXISTS idx_notifications_recipient_unread ON notifications (recipient_id, is_active, read_at);
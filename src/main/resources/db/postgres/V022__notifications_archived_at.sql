@@ -0,0 +1,3 @@
+-- Retention archiving stamps archived_at on the rows it deactivates. Databases on ddl-auto validate do not
+-- get the entity's column automatically.
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS archived_at timestamp(6);
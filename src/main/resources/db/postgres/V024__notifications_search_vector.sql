@@ -0,0 +1,9 @@
+-- Notification search (notifications.search.engine=postgres) reads a generated tsvector column through a GIN index.
+-- Adding a stored generated column rewrites notifications under an ACCESS EXCLUSIVE lock, so run this in a
+-- maintenance window; prod no longer adds it on startup (notifications.search.manage-schema=false).
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+                         setweight(to_tsvector('simple', coalesce(message, '')), 'B')) STORED;
+
+-- Run outside a transaction block; CONCURRENTLY keeps notifications writable while the index builds
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_notifications_search ON notifications USING GIN (search_vector);
@@ -0,0 +1,220 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.BulkInvoiceRequestDto;
+import com.schoolmanagement.dto.InvoicingRunDto;
+import com.schoolmanagement.entity.AcademicYear;
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.InvoicingRun;
+import com.schoolmanagement.entity.School;
+import com.schoolmanagement.entity.Term;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.InvoicingRunRepository;
+import com.schoolmanagement.repository.StudentEnrollmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkInvoicingServiceTest {
+
+    private static final BigDecimal TUITION = new BigDecimal("15000.00");
+
+    @Mock
+    private InvoicingRunRepository invoicingRunRepository;
+
+    @Mock
+    private StudentEnrollmentRepository studentEnrollmentRepository;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private FinanceDashboardCache financeDashboardCache;
+
+    @Mock
+    private NamingSeriesAllocator namingSeriesAllocator;
+
+    @Mock
+    private EnrollmentLedgerService enrollmentLedgerService;
+
+    @Mock
+    private ReferenceDataCache referenceDataCache;
+
+    @Mock
+    private FeeStructureResolutionIndex feeStructureResolutionIndex;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BulkInvoicingService bulkInvoicingService;
+
+    private final BulkInvoicingService.InvoicingPlan plan = new BulkInvoicingService.InvoicingPlan(9L, 1L, 2L, 3L, null,
+            LocalDate.of(2024, 5, 31), List.of(new BulkInvoicingService.StructureSpec(4L, TUITION)));
+
+    @BeforeEach
+    void setUp() {
+        bulkInvoicingService = new BulkInvoicingService(invoicingRunRepository, studentEnrollmentRepository, feeInvoiceRepository,
+                financeDashboardCache, namingSeriesAllocator, enrollmentLedgerService, referenceDataCache,
+                feeStructureResolutionIndex, jdbcTemplate, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(bulkInvoicingService, "chunkSize", 1000);
+        ReflectionTestUtils.setField(bulkInvoicingService, "staleAfterSeconds", 300L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkInvoicingService.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExecute_FreshRunInvoicesEveryEnrollmentAndCompletes() {
+        when(studentEnrollmentRepository.findActiveEnrollmentKeysAfter(eq(1L), isNull(), eq(0L), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{11L, 7L}, new Object[]{12L, 7L}));
+        when(feeInvoiceRepository.findInvoicedPairsForTerm(3L, List.of(11L, 12L))).thenReturn(List.of());
+        when(feeStructureResolutionIndex.resolve(1L, 2L, 7L, 3L)).thenReturn(fees());
+        when(namingSeriesAllocator.nextBatch(NamingSeriesAllocator.INVOICE_SERIES, 2)).thenReturn(List.of("INV-000001", "INV-000002"));
+        when(feeInvoiceRepository.findInvoiceKeysForTerm(3L, List.of(11L, 12L))).thenReturn(List.<Object[]>of(
+                new Object[]{101L, 11L, 4L, "INV-000001", TUITION}, new Object[]{102L, 12L, 4L, "INV-000002", TUITION}));
+
+        bulkInvoicingService.execute(plan, 0L);
+
+        ArgumentCaptor<Collection<Object>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), inserted.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, inserted.getValue().size());
+        ArgumentCaptor<List<EnrollmentLedgerService.InvoicePosting>> postings = ArgumentCaptor.forClass(List.class);
+        verify(enrollmentLedgerService).recordInvoices(postings.capture());
+        assertEquals(List.of(101L, 102L), postings.getValue().stream().map(EnrollmentLedgerService.InvoicePosting::invoiceId).toList());
+        verify(invoicingRunRepository).recordCheckpoint(eq(9L), eq(12L), eq(2L), eq(2L), eq(0L), any());
+        verify(invoicingRunRepository).finishRun(eq(9L), eq("COMPLETED"), isNull(), any(), any());
+        verify(financeDashboardCache).evictSchool(1L);
+    }
+
+    @Test
+    void testExecute_RerunSkipsAlreadyInvoicedEnrollments() {
+        when(studentEnrollmentRepository.findActiveEnrollmentKeysAfter(eq(1L), isNull(), eq(0L), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{11L, 7L}, new Object[]{12L, 7L}));
+        when(feeInvoiceRepository.findInvoicedPairsForTerm(3L, List.of(11L, 12L)))
+                .thenReturn(List.<Object[]>of(new Object[]{11L, 4L}, new Object[]{12L, 4L}));
+        when(feeStructureResolutionIndex.resolve(1L, 2L, 7L, 3L)).thenReturn(fees());
+
+        bulkInvoicingService.execute(plan, 0L);
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        verify(namingSeriesAllocator, never()).nextBatch(anyString(), anyInt());
+        verify(enrollmentLedgerService, never()).recordInvoices(any());
+        verify(invoicingRunRepository).recordCheckpoint(eq(9L), eq(12L), eq(2L), eq(0L), eq(2L), any());
+        verify(invoicingRunRepository).finishRun(eq(9L), eq("COMPLETED"), isNull(), any(), any());
+    }
+
+    @Test
+    void testStartRun_StaleRunningClaimResumesFromCheckpoint() {
+        stubRequestLookups();
+        // A worker died mid-run after invoicing every enrollment up to id 12
+        InvoicingRun run = existingRun("RUNNING", 12L);
+        when(invoicingRunRepository.findByRunKey("term-2-run")).thenReturn(Optional.of(run));
+        when(invoicingRunRepository.claimRun(eq(9L), any(), any())).thenReturn(1);
+
+        ApiResponse<InvoicingRunDto> response = bulkInvoicingService.startRun(request());
+
+        assertTrue(response.isSuccess());
+        assertEquals("Bulk invoicing run resumed", response.getMessage());
+        verify(studentEnrollmentRepository, timeout(2000)).findActiveEnrollmentKeysAfter(eq(1L), isNull(), eq(12L), any());
+        verify(invoicingRunRepository, timeout(2000)).finishRun(eq(9L), eq("COMPLETED"), isNull(), any(), any());
+        verify(studentEnrollmentRepository, never()).findActiveEnrollmentKeysAfter(any(), any(), eq(0L), any());
+    }
+
+    @Test
+    void testStartRun_ConcurrentClaimIsRejected() {
+        stubRequestLookups();
+        InvoicingRun run = existingRun("RUNNING", 12L);
+        when(invoicingRunRepository.findByRunKey("term-2-run")).thenReturn(Optional.of(run));
+        // Another worker is still heartbeating the run
+        when(invoicingRunRepository.claimRun(eq(9L), any(), any())).thenReturn(0);
+
+        ApiResponse<InvoicingRunDto> response = bulkInvoicingService.startRun(request());
+
+        assertTrue(response.isSuccess());
+        assertEquals("Bulk invoicing run already in progress", response.getMessage());
+        verify(studentEnrollmentRepository, never()).findActiveEnrollmentKeysAfter(any(), any(), any(), any());
+    }
+
+    private void stubRequestLookups() {
+        School school = new School();
+        school.setId(1L);
+        AcademicYear year = new AcademicYear();
+        year.setId(2L);
+        Term term = new Term();
+        term.setId(3L);
+        term.setAcademicYear(year);
+        FeeStructure tuition = new FeeStructure();
+        tuition.setId(4L);
+        tuition.setAmount(TUITION);
+        tuition.setSchool(school);
+        tuition.setAcademicYear(year);
+        when(referenceDataCache.findSchool(1L)).thenReturn(Optional.of(school));
+        when(referenceDataCache.findTerm(3L)).thenReturn(Optional.of(term));
+        when(referenceDataCache.findFeeStructure(4L)).thenReturn(Optional.of(tuition));
+        when(feeStructureResolutionIndex.resolve(1L, 2L, null, 3L)).thenReturn(fees());
+    }
+
+    private InvoicingRun existingRun(String status, Long lastEnrollmentId) {
+        School school = new School();
+        school.setId(1L);
+        Term term = new Term();
+        term.setId(3L);
+        return InvoicingRun.builder()
+                .id(9L)
+                .runKey("term-2-run")
+                .school(school)
+                .term(term)
+                .feeStructureIds("4")
+                .dueDate(LocalDate.of(2024, 5, 31))
+                .status(status)
+                .lastEnrollmentId(lastEnrollmentId)
+                .build();
+    }
+
+    private BulkInvoiceRequestDto request() {
+        BulkInvoiceRequestDto request = new BulkInvoiceRequestDto();
+        request.setSchoolId(1L);
+        request.setTermId(3L);
+        request.setFeeStructureIds(List.of(4L));
+        request.setRunKey("term-2-run");
+        return request;
+    }
+
+    private static FeeStructureResolutionIndex.ResolvedFees fees() {
+        return new FeeStructureResolutionIndex.ResolvedFees(List.of(), Set.of(4L), TUITION);
+    }
+}
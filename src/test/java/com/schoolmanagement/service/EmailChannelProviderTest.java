@@ -0,0 +1,49 @@
+package com.schoolmanagement.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailChannelProviderTest {
+
+    @Mock
+    private SimpleEmailService simpleEmailService;
+
+    @Test
+    void testSend_AcceptedAndFailedMessagesAreReportedPerMessage() {
+        EmailChannelProvider provider = new EmailChannelProvider(simpleEmailService, 5);
+        when(simpleEmailService.sendSimpleEmail("parent@example.com", "Fees due", "Term 2 fees are due")).thenReturn(true);
+        when(simpleEmailService.sendSimpleEmail("bounce@example.com", "Fees due", "Term 2 fees are due")).thenReturn(false);
+
+        List<NotificationChannelProvider.SendResult> results = provider.send(List.of(
+                message(1L, "parent@example.com"), message(2L, "bounce@example.com")));
+
+        assertTrue(results.get(0).accepted());
+        assertEquals("smtp-1", results.get(0).providerMessageId());
+        assertFalse(results.get(1).accepted());
+    }
+
+    @Test
+    void testSend_MissingAddressIsRejectedWithoutSmtpCall() {
+        EmailChannelProvider provider = new EmailChannelProvider(simpleEmailService, 5);
+
+        List<NotificationChannelProvider.SendResult> results = provider.send(List.of(message(3L, null)));
+
+        assertFalse(results.get(0).accepted());
+        verify(simpleEmailService, never()).sendSimpleEmail(any(), any(), any());
+    }
+
+    private NotificationChannelProvider.ChannelMessage message(Long deliveryId, String address) {
+        return new NotificationChannelProvider.ChannelMessage(deliveryId, 5L, 1L, address, "Fees due", "Term 2 fees are due");
+    }
+}
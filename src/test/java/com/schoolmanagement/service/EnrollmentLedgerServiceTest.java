@@ -0,0 +1,172 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.EnrollmentLedgerEntry;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.StudentEnrollment;
+import com.schoolmanagement.repository.EnrollmentBalanceRepository;
+import com.schoolmanagement.repository.EnrollmentLedgerEntryRepository;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.StudentEnrollmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EnrollmentLedgerServiceTest {
+
+    @Mock
+    private EnrollmentBalanceRepository enrollmentBalanceRepository;
+
+    @Mock
+    private EnrollmentLedgerEntryRepository enrollmentLedgerEntryRepository;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private StudentEnrollmentRepository studentEnrollmentRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EnrollmentLedgerService ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        ledgerService = new EnrollmentLedgerService(enrollmentBalanceRepository, enrollmentLedgerEntryRepository,
+                feeInvoiceRepository, studentEnrollmentRepository, jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void testRecordPayment_CreditsBalanceAndStoresRunningBalance() {
+        when(enrollmentBalanceRepository.applyEntry(eq(7L), eq(BigDecimal.ZERO), eq(new BigDecimal("300.00")), any())).thenReturn(1);
+        when(enrollmentBalanceRepository.findBalance(7L)).thenReturn(new BigDecimal("700.00"));
+
+        ledgerService.recordPayment(payment(7L, 11L, 21L, new BigDecimal("300.00")));
+
+        ArgumentCaptor<EnrollmentLedgerEntry> entry = ArgumentCaptor.forClass(EnrollmentLedgerEntry.class);
+        verify(enrollmentLedgerEntryRepository).save(entry.capture());
+        assertEquals(EnrollmentLedgerService.ENTRY_PAYMENT, entry.getValue().getEntryType());
+        assertEquals(new BigDecimal("300.00"), entry.getValue().getCreditAmount());
+        assertEquals(new BigDecimal("700.00"), entry.getValue().getBalanceAfter());
+        assertEquals(21L, entry.getValue().getPaymentId());
+        verify(enrollmentBalanceRepository, never()).findExistingEnrollmentIds(anyCollection());
+    }
+
+    @Test
+    void testRecordInvoice_OpensLedgerFromCommittedInvoicesWhenBalanceIsMissing() {
+        when(enrollmentBalanceRepository.applyEntry(eq(7L), eq(new BigDecimal("500.00")), eq(BigDecimal.ZERO), any()))
+                .thenReturn(0)
+                .thenReturn(1);
+        when(enrollmentBalanceRepository.findExistingEnrollmentIds(anyCollection())).thenReturn(List.of());
+        List<Object[]> seedRows = new ArrayList<>();
+        seedRows.add(new Object[]{7L, 3L, "INV-000003", LocalDate.of(2026, 1, 5), new BigDecimal("1000.00"), new BigDecimal("400.00")});
+        when(feeInvoiceRepository.findLedgerSeedRows(anyCollection())).thenReturn(seedRows);
+        when(enrollmentBalanceRepository.findBalance(7L)).thenReturn(new BigDecimal("1100.00"));
+
+        ledgerService.recordInvoice(invoice(7L, 12L, new BigDecimal("500.00")));
+
+        verify(enrollmentBalanceRepository, times(2)).applyEntry(eq(7L), any(), any(), any());
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO enrollment_balances"), anyCollection(), anyInt(), any());
+        // One opening debit for the invoice and one credit for what was already paid on it
+        ArgumentCaptor<Collection<?>> openingEntries = collectionCaptor();
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO enrollment_ledger_entries"), openingEntries.capture(), anyInt(), any());
+        assertEquals(2, openingEntries.getValue().size());
+
+        ArgumentCaptor<EnrollmentLedgerEntry> entry = ArgumentCaptor.forClass(EnrollmentLedgerEntry.class);
+        verify(enrollmentLedgerEntryRepository).save(entry.capture());
+        assertEquals(new BigDecimal("1100.00"), entry.getValue().getBalanceAfter());
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void testRecordInvoices_ComputesRunningBalancePerEntry() throws Exception {
+        when(enrollmentBalanceRepository.findExistingEnrollmentIds(anyCollection())).thenReturn(List.of(7L, 8L));
+        List<Object[]> balances = new ArrayList<>();
+        balances.add(new Object[]{7L, new BigDecimal("350.00")});
+        balances.add(new Object[]{8L, new BigDecimal("100.00")});
+        when(enrollmentBalanceRepository.findBalances(anyCollection())).thenReturn(balances);
+
+        ledgerService.recordInvoices(List.of(
+                new EnrollmentLedgerService.InvoicePosting(7L, 1L, "INV-1", new BigDecimal("100.00")),
+                new EnrollmentLedgerService.InvoicePosting(8L, 2L, "INV-2", new BigDecimal("100.00")),
+                new EnrollmentLedgerService.InvoicePosting(7L, 3L, "INV-3", new BigDecimal("200.00"))));
+
+        ArgumentCaptor<Collection<?>> rows = collectionCaptor();
+        ArgumentCaptor<ParameterizedPreparedStatementSetter> setter = ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO enrollment_ledger_entries"), rows.capture(), anyInt(), setter.capture());
+
+        // Enrollment 7 owed 50 before the batch; its entries end at the stored balance of 350
+        List<BigDecimal> balanceAfter = new ArrayList<>();
+        for (Object row : rows.getValue()) {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            setter.getValue().setValues(ps, row);
+            ArgumentCaptor<BigDecimal> value = ArgumentCaptor.forClass(BigDecimal.class);
+            verify(ps).setBigDecimal(eq(5), value.capture());
+            balanceAfter.add(value.getValue());
+        }
+        assertEquals(List.of(new BigDecimal("150.00"), new BigDecimal("350.00"), new BigDecimal("100.00")), balanceAfter);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE enrollment_balances"), anyCollection(), anyInt(), any());
+        verify(transactionManager, never()).getTransaction(any());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<Collection<?>> collectionCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(Collection.class);
+    }
+
+    private static StudentEnrollment enrollment(Long id) {
+        StudentEnrollment enrollment = new StudentEnrollment();
+        enrollment.setId(id);
+        return enrollment;
+    }
+
+    private static FeeInvoice invoice(Long enrollmentId, Long invoiceId, BigDecimal amount) {
+        FeeInvoice invoice = new FeeInvoice();
+        invoice.setId(invoiceId);
+        invoice.setInvoiceNumber("INV-" + invoiceId);
+        invoice.setTotalAmount(amount);
+        invoice.setEnrollment(enrollment(enrollmentId));
+        return invoice;
+    }
+
+    private static Payment payment(Long enrollmentId, Long invoiceId, Long paymentId, BigDecimal amount) {
+        Payment payment = new Payment();
+        payment.setId(paymentId);
+        payment.setPaymentReference("PAY-" + paymentId);
+        payment.setPaymentMethod("CASH");
+        payment.setAmount(amount);
+        payment.setInvoice(invoice(enrollmentId, invoiceId, amount));
+        payment.setEnrollment(enrollment(enrollmentId));
+        return payment;
+    }
+}
@@ -0,0 +1,110 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.KenyaFeeStructure;
+import com.schoolmanagement.repository.FeeStructureRepository;
+import com.schoolmanagement.repository.KenyaFeeStructureRepository;
+import com.schoolmanagement.repository.TermRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FeeStructureResolutionIndexTest {
+
+    @Mock
+    private FeeStructureRepository feeStructureRepository;
+
+    @Mock
+    private KenyaFeeStructureRepository kenyaFeeStructureRepository;
+
+    @Mock
+    private TermRepository termRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FeeStructureResolutionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FeeStructureResolutionIndex(feeStructureRepository, kenyaFeeStructureRepository, termRepository,
+                transactionManager, new SimpleMeterRegistry());
+        when(feeStructureRepository.findActiveResolutionRows()).thenReturn(List.of(
+                // School-wide tuition for the whole year
+                feeStructure(1L, null, "TUITION", "15000.00", LocalDate.of(2026, 1, 1), LocalDate.of(2026, 12, 31)),
+                // Class 7 trip in the second term only
+                feeStructure(2L, 7L, "EXCURSION", "2500.00", LocalDate.of(2026, 5, 1), LocalDate.of(2026, 8, 31)),
+                // Class 8 lab fee
+                feeStructure(3L, 8L, "LABORATORY", "1200.00", LocalDate.of(2026, 1, 1), LocalDate.of(2026, 12, 31))));
+        when(kenyaFeeStructureRepository.findActiveResolutionRows()).thenReturn(List.of(
+                kenyaFee(20L, 7L, KenyaFeeStructure.PaymentFrequency.TERMLY, "800.00"),
+                kenyaFee(21L, 7L, KenyaFeeStructure.PaymentFrequency.ANNUAL, "3000.00")));
+        when(termRepository.findTermWindows()).thenReturn(List.of(
+                new Object[]{100L, 10L, LocalDate.of(2026, 1, 5), LocalDate.of(2026, 4, 3), 1},
+                new Object[]{101L, 10L, LocalDate.of(2026, 5, 4), LocalDate.of(2026, 8, 7), 2},
+                new Object[]{200L, 11L, LocalDate.of(2027, 1, 4), LocalDate.of(2027, 4, 2), 1}));
+    }
+
+    @Test
+    void testResolve_FirstTermAppliesSchoolWideClassAndAnnualFees() {
+        FeeStructureResolutionIndex.ResolvedFees fees = index.resolve(1L, 10L, 7L, 100L);
+
+        assertEquals(Set.of(1L), fees.feeStructureIds());
+        assertEquals(List.of(20L, 21L), fees.components(FeeStructureResolutionIndex.Source.KENYA_FEE_STRUCTURE).stream()
+                .map(FeeStructureResolutionIndex.FeeComponent::id).toList());
+        assertEquals(new BigDecimal("18800.00"), fees.totalAmount());
+    }
+
+    @Test
+    void testResolve_SecondTermUsesEffectiveDatesAndSkipsAnnualFees() {
+        FeeStructureResolutionIndex.ResolvedFees fees = index.resolve(1L, 10L, 7L, 101L);
+
+        assertEquals(Set.of(1L, 2L), fees.feeStructureIds());
+        assertEquals(List.of(20L), fees.components(FeeStructureResolutionIndex.Source.KENYA_FEE_STRUCTURE).stream()
+                .map(FeeStructureResolutionIndex.FeeComponent::id).toList());
+    }
+
+    @Test
+    void testResolve_WithoutClassCoversEveryClassAndTermOfAnotherYearResolvesNothing() {
+        assertEquals(Set.of(1L, 2L, 3L), index.resolve(1L, 10L, null, null).feeStructureIds());
+        assertTrue(index.resolve(1L, 10L, 7L, 200L).components().isEmpty());
+        assertTrue(index.resolve(2L, 10L, 7L, 100L).components().isEmpty());
+    }
+
+    @Test
+    void testResolve_BuildsOnceAndRebuildsAfterInvalidate() {
+        index.resolve(1L, 10L, 7L, 100L);
+        index.resolve(1L, 10L, 8L, 100L);
+        verify(feeStructureRepository, times(1)).findActiveResolutionRows();
+
+        index.invalidate();
+        index.resolve(1L, 10L, 7L, 100L);
+        verify(feeStructureRepository, times(2)).findActiveResolutionRows();
+    }
+
+    private Object[] feeStructure(Long id, Long classId, String feeType, String amount, LocalDate from, LocalDate to) {
+        return new Object[]{id, 1L, 10L, classId, feeType + " fee", feeType, new BigDecimal(amount), true, "TERMLY",
+                LocalDateTime.of(from, LocalTime.MIDNIGHT), LocalDateTime.of(to, LocalTime.MIDNIGHT)};
+    }
+
+    private Object[] kenyaFee(Long id, Long classId, KenyaFeeStructure.PaymentFrequency frequency, String amount) {
+        return new Object[]{id, 1L, 10L, classId, "Kenya fee " + id, "CODE" + id, KenyaFeeStructure.FeeType.MEALS,
+                new BigDecimal(amount), true, frequency};
+    }
+}
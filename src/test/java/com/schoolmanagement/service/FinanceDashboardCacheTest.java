@@ -0,0 +1,101 @@
+package com.schoolmanagement.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FinanceDashboardCacheTest {
+
+    private static final LocalDate FROM = LocalDate.of(2024, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2024, 2, 1);
+
+    private FinanceDashboardCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        cache = new FinanceDashboardCache(30, 100, 86400, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testGetPaymentRollup_CachesClosedPeriod() {
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testEvictPayment_RollupLoadedBeforeCommitIsEvictedAgainAfterCommit() {
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evictPayment(1L, FROM.plusDays(10));
+        // Another request reads the old totals while the refund's transaction is still open
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+        assertEquals(2, loads.get());
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void testEvictPayment_OtherSchoolsKeepTheirRollups() {
+        cache.getPaymentRollup(2L, FROM, TO, this::load);
+
+        cache.evictPayment(1L, FROM.plusDays(10));
+        cache.getPaymentRollup(2L, FROM, TO, this::load);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testEvictPayment_OnlyRollupsContainingThePaymentDayAreEvicted() {
+        LocalDate march = TO.plusMonths(1);
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+        cache.getPaymentRollup(1L, TO, march, this::load);
+        cache.getPaymentRollup(null, TO, march, this::load);
+
+        // A backdated statement payment lands in February
+        cache.evictPayment(1L, TO.plusDays(3));
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+        assertEquals(3, loads.get());
+
+        cache.getPaymentRollup(1L, TO, march, this::load);
+        cache.getPaymentRollup(null, TO, march, this::load);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void testEvictSchool_InvoiceChangesKeepPaymentRollups() {
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+
+        cache.evictSchool(1L);
+        cache.getPaymentRollup(1L, FROM, TO, this::load);
+
+        assertEquals(1, loads.get());
+    }
+
+    private List<PaymentSummaryReportService.DailyTotal> load() {
+        loads.incrementAndGet();
+        return List.of();
+    }
+}
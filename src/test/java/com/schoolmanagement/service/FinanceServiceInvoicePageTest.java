@@ -0,0 +1,190 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.InvoicePageDto;
+import com.schoolmanagement.entity.AcademicYear;
+import com.schoolmanagement.entity.ClassEntity;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.StudentEnrollment;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Keyset paging and streaming export of invoices; kept apart from FinanceServiceTest, whose setup stubs a single invoice lookup
+@ExtendWith(MockitoExtension.class)
+class FinanceServiceInvoicePageTest {
+
+    private static final LocalDate TERM_START = LocalDate.of(2024, 1, 8);
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @InjectMocks
+    private FinanceService financeService;
+
+    @Test
+    void testInvoiceCursor_RoundTrips() {
+        FinanceService.InvoiceCursor cursor = new FinanceService.InvoiceCursor(TERM_START, 42L);
+
+        String encoded = cursor.encode();
+
+        assertFalse(encoded.contains("="));
+        assertEquals(cursor, FinanceService.InvoiceCursor.decode(encoded));
+    }
+
+    @Test
+    void testInvoiceCursor_MalformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> FinanceService.InvoiceCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> FinanceService.InvoiceCursor.decode(encode("2024-01-08")));
+        assertThrows(IllegalArgumentException.class, () -> FinanceService.InvoiceCursor.decode(encode("2024-13-40|42")));
+        assertThrows(IllegalArgumentException.class, () -> FinanceService.InvoiceCursor.decode(encode("2024-01-08|abc")));
+    }
+
+    @Test
+    void testGetInvoicePage_MalformedCursorReturnsError() {
+        ApiResponse<InvoicePageDto> response = financeService.getInvoicePage(1L, null, encode("garbage"), 20);
+
+        assertFalse(response.isSuccess());
+        assertEquals("Invalid cursor", response.getMessage());
+        verify(feeInvoiceRepository, never()).findInvoicePageAfter(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetInvoicePage_WalksEveryInvoiceOnceWhenIssueDatesRepeat() {
+        // Bulk invoicing issues a whole term on one day, so most rows share an issue date
+        List<FeeInvoice> table = new ArrayList<>();
+        table.add(invoice(1L, TERM_START.minusDays(7)));
+        for (long id = 2; id <= 6; id++) {
+            table.add(invoice(id, TERM_START));
+        }
+        table.add(invoice(7L, TERM_START.plusDays(3)));
+        stubKeysetQueries(table);
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ApiResponse<InvoicePageDto> response = financeService.getInvoicePage(1L, "PENDING", cursor, 2);
+            assertTrue(response.isSuccess());
+            InvoicePageDto page = response.getData();
+            page.getItems().forEach(item -> seen.add(item.getId()));
+            assertEquals(page.isHasMore(), page.getNextCursor() != null);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(List.of(7L, 6L, 5L, 4L, 3L, 2L, 1L), seen);
+        assertEquals(4, pages);
+    }
+
+    @Test
+    void testExportInvoices_CsvWritesHeaderAndQuotesFields() throws IOException {
+        FeeInvoice invoice = invoice(5L, TERM_START);
+        invoice.getFeeStructure().setName("Tuition, Term 1");
+        when(feeInvoiceRepository.streamActiveInvoices(1L, null)).thenReturn(Stream.of(invoice, invoice(4L, TERM_START)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = financeService.exportInvoices(1L, " ", "csv", out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, rows);
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("id,invoiceNumber,issueDate"));
+        assertTrue(lines[1].startsWith("5,INV-000005,2024-01-08,"));
+        assertTrue(lines[1].endsWith(",\"Tuition, Term 1\""));
+    }
+
+    @Test
+    void testExportInvoices_NdjsonWritesOneObjectPerLine() throws IOException {
+        when(feeInvoiceRepository.streamActiveInvoices(1L, "PAID")).thenReturn(Stream.of(invoice(5L, TERM_START)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = financeService.exportInvoices(1L, "PAID", "ndjson", out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1, rows);
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].endsWith("}"));
+        assertTrue(lines[0].contains("\"issueDate\":\"2024-01-08\""));
+    }
+
+    // Answers with the repository queries' ordering and keyset condition over the given rows
+    private void stubKeysetQueries(List<FeeInvoice> table) {
+        Comparator<FeeInvoice> newestFirst = Comparator.comparing(FeeInvoice::getIssueDate).thenComparing(FeeInvoice::getId).reversed();
+        when(feeInvoiceRepository.findInvoicePage(eq(1L), eq("PENDING"), any(Pageable.class))).thenAnswer(invocation -> {
+            Pageable limit = invocation.getArgument(2);
+            return table.stream().sorted(newestFirst).limit(limit.getPageSize()).toList();
+        });
+        when(feeInvoiceRepository.findInvoicePageAfter(eq(1L), eq("PENDING"), any(), any(), any(Pageable.class))).thenAnswer(invocation -> {
+            LocalDate cursorIssueDate = invocation.getArgument(2);
+            Long cursorId = invocation.getArgument(3);
+            Pageable limit = invocation.getArgument(4);
+            return table.stream()
+                    .filter(fi -> fi.getIssueDate().isBefore(cursorIssueDate)
+                            || (fi.getIssueDate().equals(cursorIssueDate) && fi.getId() < cursorId))
+                    .sorted(newestFirst)
+                    .limit(limit.getPageSize())
+                    .toList();
+        });
+    }
+
+    private static FeeInvoice invoice(Long id, LocalDate issueDate) {
+        User student = new User();
+        student.setFirstName("Amina");
+        student.setLastName("Otieno");
+        AcademicYear year = new AcademicYear();
+        year.setName("2024");
+        ClassEntity classEntity = new ClassEntity();
+        classEntity.setName("Grade 4");
+        classEntity.setAcademicYear(year);
+        StudentEnrollment enrollment = new StudentEnrollment();
+        enrollment.setId(100L + id);
+        enrollment.setStudent(student);
+        enrollment.setClassEntity(classEntity);
+        FeeStructure feeStructure = new FeeStructure();
+        feeStructure.setId(4L);
+        feeStructure.setName("Tuition");
+
+        FeeInvoice invoice = new FeeInvoice();
+        invoice.setId(id);
+        invoice.setInvoiceNumber(String.format("INV-%06d", id));
+        invoice.setIssueDate(issueDate);
+        invoice.setDueDate(issueDate.plusDays(30));
+        invoice.setTotalAmount(new BigDecimal("15000.00"));
+        invoice.setPaidAmount(BigDecimal.ZERO);
+        invoice.setBalanceAmount(new BigDecimal("15000.00"));
+        invoice.setStatus("PENDING");
+        invoice.setIsActive(true);
+        invoice.setEnrollment(enrollment);
+        invoice.setFeeStructure(feeStructure);
+        return invoice;
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
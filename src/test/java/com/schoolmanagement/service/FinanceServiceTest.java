@@ -0,0 +1,117 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.PaymentDto;
+import com.schoolmanagement.dto.PaymentRequestDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.StudentEnrollment;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FinanceServiceTest {
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private NamingSeriesAllocator namingSeriesAllocator;
+
+    @Mock
+    private PaymentSettlementService paymentSettlementService;
+
+    @Mock
+    private EnrollmentLedgerService enrollmentLedgerService;
+
+    @Mock
+    private FinanceDashboardCache financeDashboardCache;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private FinanceService financeService;
+
+    private FeeInvoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        User student = new User();
+        student.setFirstName("Amina");
+        student.setLastName("Otieno");
+        StudentEnrollment enrollment = new StudentEnrollment();
+        enrollment.setStudent(student);
+        invoice = new FeeInvoice();
+        invoice.setId(10L);
+        invoice.setInvoiceNumber("INV-000010");
+        invoice.setBalanceAmount(new BigDecimal("1000.00"));
+        invoice.setEnrollment(enrollment);
+        when(feeInvoiceRepository.findById(10L)).thenReturn(Optional.of(invoice));
+    }
+
+    @Test
+    void testProcessPayment_SavesManualPaymentAsCompleted() {
+        when(namingSeriesAllocator.next(NamingSeriesAllocator.PAYMENT_SERIES)).thenReturn("PAY-000001");
+        when(feeInvoiceRepository.addToPaidAmountWithinBalance(eq(10L), eq(new BigDecimal("600.00")), any())).thenReturn(1);
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ApiResponse<PaymentDto> response = financeService.processPayment(request("600.00"), new User());
+
+        assertTrue(response.isSuccess());
+        // Settled here, so the statement importer and reconciler leave it alone
+        assertEquals("COMPLETED", response.getData().getPaymentStatus());
+        verify(enrollmentLedgerService).recordPayment(any(Payment.class));
+    }
+
+    @Test
+    void testProcessPayment_RejectsAmountAboveBalance() {
+        ApiResponse<PaymentDto> response = financeService.processPayment(request("1500.00"), new User());
+
+        assertFalse(response.isSuccess());
+        verify(feeInvoiceRepository, never()).addToPaidAmountWithinBalance(any(), any(), any());
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    void testProcessPayment_ConcurrentPaymentPastBalanceIsRejected() {
+        when(namingSeriesAllocator.next(NamingSeriesAllocator.PAYMENT_SERIES)).thenReturn("PAY-000002");
+        // Another payment cleared the balance between the read and the conditional UPDATE
+        when(feeInvoiceRepository.addToPaidAmountWithinBalance(eq(10L), eq(new BigDecimal("800.00")), any())).thenReturn(0);
+
+        ApiResponse<PaymentDto> response = financeService.processPayment(request("800.00"), new User());
+
+        assertFalse(response.isSuccess());
+        verify(paymentRepository, never()).save(any());
+        verify(enrollmentLedgerService, never()).recordPayment(any());
+    }
+
+    private PaymentRequestDto request(String amount) {
+        PaymentRequestDto request = new PaymentRequestDto();
+        request.setInvoiceId(10L);
+        request.setAmount(new BigDecimal(amount));
+        request.setPaymentMethod("CASH");
+        return request;
+    }
+}
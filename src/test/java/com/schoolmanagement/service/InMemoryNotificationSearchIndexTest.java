@@ -0,0 +1,87 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.repository.NotificationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryNotificationSearchIndexTest {
+
+    private static final LocalDateTime UPDATED = LocalDateTime.of(2026, 3, 1, 8, 0);
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    private InMemoryNotificationSearchIndex index;
+    private List<Object[]> rows;
+
+    @BeforeEach
+    void setUp() {
+        index = new InMemoryNotificationSearchIndex(notificationRepository);
+        rows = new ArrayList<>();
+        rows.add(new Object[]{1L, "Fee reminder", "Term two fees are due", Notification.NotificationType.FEE_REMINDER});
+        rows.add(new Object[]{2L, "Exam timetable", "Fees must be cleared before exams", Notification.NotificationType.EXAM});
+        rows.add(new Object[]{3L, "Sports day", "Parents are welcome", Notification.NotificationType.GENERAL});
+        rows.add(new Object[]{4L, "Fees statement", "Your fee statement for term two", Notification.NotificationType.FEE_REMINDER});
+        signature(4L, UPDATED);
+        lenient().when(notificationRepository.findSearchRowsByRecipientId(7L)).thenAnswer(invocation -> rows);
+    }
+
+    @Test
+    void testSearch_RanksTitleMatchesAboveMessageMatchesWithPrefixTerms() {
+        List<NotificationSearchIndex.Hit> hits = index.search(7L, "Fee", null, null, 10);
+
+        // "fee" also matches "fees": ids 4 and 1 have it in title and message (tie, newest first), id 2 in the message only
+        assertEquals(List.of(4L, 1L, 2L), hits.stream().map(NotificationSearchIndex.Hit::notificationId).toList());
+        assertTrue(index.search(7L, "fee two exam", null, null, 10).isEmpty());
+        assertEquals(List.of(4L, 1L), index.search(7L, "fee term", null, null, 10).stream()
+                .map(NotificationSearchIndex.Hit::notificationId).toList());
+    }
+
+    @Test
+    void testSearch_FiltersByTypeAndPagesWithCursor() {
+        assertEquals(List.of(2L), index.search(7L, "fee", Notification.NotificationType.EXAM, null, 10).stream()
+                .map(NotificationSearchIndex.Hit::notificationId).toList());
+
+        List<NotificationSearchIndex.Hit> first = index.search(7L, "fee", null, null, 2);
+        NotificationSearchIndex.Cursor cursor = NotificationSearchIndex.Cursor.decode(
+                NotificationSearchIndex.Cursor.after(first.get(1)).encode());
+        List<NotificationSearchIndex.Hit> second = index.search(7L, "fee", null, cursor, 2);
+
+        assertEquals(List.of(4L, 1L), first.stream().map(NotificationSearchIndex.Hit::notificationId).toList());
+        assertEquals(List.of(2L), second.stream().map(NotificationSearchIndex.Hit::notificationId).toList());
+    }
+
+    @Test
+    void testSearch_RebuildsOnlyWhenNotificationsChange() {
+        index.search(7L, "fee", null, null, 10);
+        index.search(7L, "sports", null, null, 10);
+        verify(notificationRepository, times(1)).findSearchRowsByRecipientId(7L);
+
+        rows.add(new Object[]{5L, "Fee waiver approved", null, Notification.NotificationType.PAYMENT});
+        signature(5L, UPDATED.plusMinutes(5));
+
+        assertEquals(5L, index.search(7L, "waiver", null, null, 10).get(0).notificationId());
+        verify(notificationRepository, times(2)).findSearchRowsByRecipientId(7L);
+    }
+
+    private void signature(long count, LocalDateTime lastUpdated) {
+        List<Object[]> signature = new ArrayList<>();
+        signature.add(new Object[]{count, lastUpdated});
+        when(notificationRepository.findSearchSignature(7L)).thenReturn(signature);
+    }
+}
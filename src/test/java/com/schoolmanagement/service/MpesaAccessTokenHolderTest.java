@@ -0,0 +1,143 @@
+package com.schoolmanagement.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpesaAccessTokenHolderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T08:00:00Z"));
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private MpesaAccessTokenHolder holder;
+
+    @BeforeEach
+    void setUp() {
+        holder = new MpesaAccessTokenHolder(this::issueToken, Runnable::run, clock, Duration.ofMinutes(5), meterRegistry);
+    }
+
+    @Test
+    void testGetToken_CachesUntilExpiry() {
+        assertEquals("token-1", holder.getToken());
+        clock.advance(Duration.ofMinutes(30));
+        assertEquals("token-1", holder.getToken());
+
+        assertEquals(1, fetches.get());
+        assertEquals(1.0, meterRegistry.counter("mpesa.access_token.hits").count());
+        assertEquals(1.0, meterRegistry.counter("mpesa.access_token.refreshes").count());
+    }
+
+    @Test
+    void testGetToken_RefreshesInsideRefreshAheadWindow() {
+        holder.getToken();
+        clock.advance(Duration.ofMinutes(56));
+
+        // The cached token is still valid, so it is served while the refresh replaces it
+        assertEquals("token-1", holder.getToken());
+        assertEquals("token-2", holder.getToken());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void testGetToken_FetchesAgainAfterInvalidate() {
+        holder.getToken();
+        holder.invalidate();
+
+        assertEquals("token-2", holder.getToken());
+    }
+
+    @Test
+    void testGetToken_CountsFailures() {
+        MpesaAccessTokenHolder failing = new MpesaAccessTokenHolder(() -> {
+            throw new IllegalStateException("token endpoint down");
+        }, Runnable::run, clock, Duration.ofMinutes(5), meterRegistry);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, failing::getToken);
+        assertEquals("token endpoint down", error.getMessage());
+        assertEquals(1.0, meterRegistry.counter("mpesa.access_token.failures").count());
+    }
+
+    @Test
+    void testGetToken_ConcurrentCallersShareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger slowFetches = new AtomicInteger();
+        ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            MpesaAccessTokenHolder slow = new MpesaAccessTokenHolder(() -> {
+                slowFetches.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new MpesaAccessTokenHolder.AccessToken("shared", clock.instant().plus(Duration.ofHours(1)));
+            }, refreshExecutor, clock, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(slow::getToken));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("shared", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, slowFetches.get());
+        } finally {
+            callers.shutdownNow();
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    private MpesaAccessTokenHolder.AccessToken issueToken() {
+        int number = fetches.incrementAndGet();
+        return new MpesaAccessTokenHolder.AccessToken("token-" + number, clock.instant().plus(Duration.ofHours(1)));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.BulkStkPushRequestDto;
+import com.schoolmanagement.dto.MpesaStkPushResponse;
+import com.schoolmanagement.dto.PaymentRequestDto;
+import com.schoolmanagement.dto.StkPushCampaignDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.StudentEnrollment;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MpesaBulkStkPushServiceTest {
+
+    @Mock
+    private FinanceService financeService;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    private MpesaBulkStkPushService bulkService;
+
+    @AfterEach
+    void tearDown() {
+        bulkService.shutdown();
+    }
+
+    @Test
+    void testStartCampaign_PushesArePacedByTheRateLimit() throws InterruptedException {
+        // 20 per second with a burst of 20: the last 10 of 30 pushes wait about half a second
+        bulkService = newService(20, 16, 60);
+        stubInvoices(30);
+        ConcurrentLinkedQueue<Long> pushedAt = new ConcurrentLinkedQueue<>();
+        when(financeService.initiateMpesaStkPush(any(), any())).thenAnswer(invocation -> {
+            pushedAt.add(System.nanoTime());
+            return ApiResponse.success(new MpesaStkPushResponse());
+        });
+
+        StkPushCampaignDto campaign = bulkService.startCampaign(request(30), new User()).getData();
+        StkPushCampaignDto completed = awaitCompleted(campaign.getCampaignId());
+
+        assertEquals(30, completed.getSucceeded().intValue());
+        List<Long> times = new ArrayList<>(pushedAt);
+        long spanMillis = TimeUnit.NANOSECONDS.toMillis(times.stream().mapToLong(Long::longValue).max().orElseThrow()
+                - times.stream().mapToLong(Long::longValue).min().orElseThrow());
+        assertTrue(spanMillis >= 400, "30 pushes at 20/s finished in " + spanMillis + "ms");
+    }
+
+    @Test
+    void testStartCampaign_InFlightPushesNeverExceedConcurrency() throws InterruptedException {
+        bulkService = newService(1000, 2, 60);
+        stubInvoices(6);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(financeService.initiateMpesaStkPush(any(), any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                // Daraja is slow to answer
+                release.await(5, TimeUnit.SECONDS);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return ApiResponse.success(new MpesaStkPushResponse());
+        });
+
+        StkPushCampaignDto campaign = bulkService.startCampaign(request(6), new User()).getData();
+        awaitTrue(() -> inFlight.get() == 2);
+        Thread.sleep(200);
+
+        assertEquals(2, inFlight.get());
+        assertEquals(2, bulkService.getCampaign(campaign.getCampaignId()).getData().getSubmitted().intValue());
+        release.countDown();
+        StkPushCampaignDto completed = awaitCompleted(campaign.getCampaignId());
+        assertEquals(6, completed.getSucceeded().intValue());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void testStartCampaign_UnpushableItemsFailUpFront() throws InterruptedException {
+        bulkService = newService(1000, 2, 60);
+        FeeInvoice withoutPhone = invoice(2L);
+        withoutPhone.getEnrollment().getStudent().setPhoneNumber(null);
+        when(feeInvoiceRepository.findActiveInvoicesWithStudentByIdIn(anySet())).thenReturn(List.of(withoutPhone));
+        BulkStkPushRequestDto request = new BulkStkPushRequestDto();
+        request.setItems(List.of(new BulkStkPushRequestDto.Item(1L, null, null), new BulkStkPushRequestDto.Item(2L, null, null)));
+
+        StkPushCampaignDto completed = awaitCompleted(bulkService.startCampaign(request, new User()).getData().getCampaignId());
+
+        assertEquals(2, completed.getFailed().intValue());
+        assertEquals(1, completed.getFailureReasons().get("Invoice not found").intValue());
+        assertEquals(1, completed.getFailureReasons().get("No phone number").intValue());
+        verify(financeService, never()).initiateMpesaStkPush(any(), any());
+    }
+
+    @Test
+    void testPurgeFinishedCampaigns_DropsOnlyCampaignsFinishedBeforeRetention() throws InterruptedException {
+        bulkService = newService(1000, 1, 60);
+        stubInvoices(2);
+        CountDownLatch release = new CountDownLatch(1);
+        when(financeService.initiateMpesaStkPush(any(), any())).thenAnswer(invocation -> {
+            if (invocation.<PaymentRequestDto>getArgument(0).getInvoiceId() == 2L) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return ApiResponse.success(new MpesaStkPushResponse());
+        });
+        String finished = bulkService.startCampaign(request(1), new User()).getData().getCampaignId();
+        awaitCompleted(finished);
+        BulkStkPushRequestDto slow = new BulkStkPushRequestDto();
+        slow.setItems(List.of(new BulkStkPushRequestDto.Item(2L, null, null)));
+        String running = bulkService.startCampaign(slow, new User()).getData().getCampaignId();
+
+        bulkService.purgeFinishedCampaigns();
+        assertTrue(bulkService.getCampaign(finished).isSuccess());
+
+        // With no retention left, finished campaigns go but one still running stays
+        ReflectionTestUtils.setField(bulkService, "retentionMinutes", -1L);
+        bulkService.purgeFinishedCampaigns();
+
+        assertFalse(bulkService.getCampaign(finished).isSuccess());
+        assertTrue(bulkService.getCampaign(running).isSuccess());
+        release.countDown();
+    }
+
+    private MpesaBulkStkPushService newService(double ratePerSecond, int concurrency, long retentionMinutes) {
+        MpesaBulkStkPushService service = new MpesaBulkStkPushService(financeService, feeInvoiceRepository,
+                new SimpleMeterRegistry(), ratePerSecond, concurrency);
+        ReflectionTestUtils.setField(service, "retentionMinutes", retentionMinutes);
+        return service;
+    }
+
+    private void stubInvoices(int count) {
+        when(feeInvoiceRepository.findActiveInvoicesWithStudentByIdIn(anySet())).thenReturn(
+                LongStream.rangeClosed(1, count).mapToObj(MpesaBulkStkPushServiceTest::invoice).toList());
+    }
+
+    private static BulkStkPushRequestDto request(int count) {
+        BulkStkPushRequestDto request = new BulkStkPushRequestDto();
+        request.setCampaignName("Term 2 reminders");
+        request.setItems(LongStream.rangeClosed(1, count)
+                .mapToObj(id -> new BulkStkPushRequestDto.Item(id, null, null))
+                .toList());
+        return request;
+    }
+
+    private static FeeInvoice invoice(long id) {
+        User student = new User();
+        student.setPhoneNumber("2547000000" + String.format("%02d", id));
+        StudentEnrollment enrollment = new StudentEnrollment();
+        enrollment.setStudent(student);
+        FeeInvoice invoice = new FeeInvoice();
+        invoice.setId(id);
+        invoice.setInvoiceNumber(String.format("INV-%06d", id));
+        invoice.setBalanceAmount(new BigDecimal("5000.00"));
+        invoice.setEnrollment(enrollment);
+        return invoice;
+    }
+
+    private StkPushCampaignDto awaitCompleted(String campaignId) throws InterruptedException {
+        awaitTrue(() -> "COMPLETED".equals(bulkService.getCampaign(campaignId).getData().getStatus()));
+        return bulkService.getCampaign(campaignId).getData();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
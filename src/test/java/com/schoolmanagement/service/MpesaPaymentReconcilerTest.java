@@ -0,0 +1,143 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.repository.PaymentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MpesaPaymentReconcilerTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private MpesaService mpesaService;
+
+    @Mock
+    private PaymentSettlementService paymentSettlementService;
+
+    private MeterRegistry meterRegistry;
+
+    private MpesaPaymentReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reconciler = new MpesaPaymentReconciler(paymentRepository, mpesaService, paymentSettlementService, meterRegistry, 1000, 2);
+        ReflectionTestUtils.setField(reconciler, "pendingAfterMinutes", 5L);
+        ReflectionTestUtils.setField(reconciler, "pageSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void testReconcile_SettlesFinalResultsAndLeavesProcessingPaymentsPending() throws InterruptedException {
+        stubBacklog(3L);
+        when(paymentRepository.findStalePendingMpesaPayments(any(), eq(0L), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, "ws_CO_1"}, new Object[]{2L, "ws_CO_2"}));
+        when(paymentRepository.findStalePendingMpesaPayments(any(), eq(2L), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(new Object[]{3L, "ws_CO_3"}));
+        when(mpesaService.queryStkPushResult("ws_CO_1"))
+                .thenReturn(new MpesaService.StkPushQueryResult(false, 0, "The service request is processed successfully."));
+        when(mpesaService.queryStkPushResult("ws_CO_2"))
+                .thenReturn(new MpesaService.StkPushQueryResult(false, 1032, "Request cancelled by user"));
+        // Daraja still answers "being processed" until the customer acts on the prompt
+        when(mpesaService.queryStkPushResult("ws_CO_3"))
+                .thenReturn(new MpesaService.StkPushQueryResult(true, null, "The transaction is being processed"));
+        when(paymentSettlementService.settleMpesaQueryResult(1L, 0, "The service request is processed successfully."))
+                .thenReturn(PaymentSettlementService.OUTCOME_COMPLETED);
+        when(paymentSettlementService.settleMpesaQueryResult(2L, 1032, "Request cancelled by user"))
+                .thenReturn(PaymentSettlementService.OUTCOME_PAYMENT_FAILED);
+
+        assertEquals(3, reconciler.reconcile());
+
+        verify(paymentSettlementService, never()).settleMpesaQueryResult(eq(3L), anyInt(), any());
+        assertEquals(1.0, outcomeCount(PaymentSettlementService.OUTCOME_COMPLETED));
+        assertEquals(1.0, outcomeCount(PaymentSettlementService.OUTCOME_PAYMENT_FAILED));
+        assertEquals(1.0, outcomeCount("STILL_PENDING"));
+    }
+
+    @Test
+    void testReconcile_QueryErrorLeavesPaymentForTheNextSweep() throws InterruptedException {
+        stubBacklog(1L);
+        when(paymentRepository.findStalePendingMpesaPayments(any(), eq(0L), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, "ws_CO_1"}));
+        when(mpesaService.queryStkPushResult("ws_CO_1")).thenThrow(new IllegalStateException("Unexpected STK Push query response"));
+
+        assertEquals(1, reconciler.reconcile());
+
+        verify(paymentSettlementService, never()).settleMpesaQueryResult(anyLong(), anyInt(), any());
+        assertEquals(1.0, outcomeCount("QUERY_ERROR"));
+    }
+
+    @Test
+    void testReconcile_PaymentWithParkedCallbackIsNotQueried() throws InterruptedException {
+        // Two payments are stale, but payment 2 has a callback parked for REVIEW, so the page query leaves it out
+        stubBacklog(2L);
+        when(paymentRepository.findStalePendingMpesaPayments(any(), eq(0L), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, "ws_CO_1"}));
+        when(mpesaService.queryStkPushResult("ws_CO_1"))
+                .thenReturn(new MpesaService.StkPushQueryResult(true, null, "The transaction is being processed"));
+
+        assertEquals(1, reconciler.reconcile());
+
+        verify(mpesaService, never()).queryStkPushResult("ws_CO_2");
+        verify(paymentSettlementService, never()).settleMpesaQueryResult(eq(2L), anyInt(), any());
+    }
+
+    @Test
+    void testFindStalePendingMpesaPayments_SkipsPaymentsWithParkedOrInFlightCallbacks() throws NoSuchMethodException {
+        String query = PaymentRepository.class
+                .getMethod("findStalePendingMpesaPayments", LocalDateTime.class, Long.class, Pageable.class)
+                .getAnnotation(Query.class).value();
+
+        assertTrue(query.contains("NOT EXISTS"));
+        assertTrue(query.contains("'REVIEW'"));
+        assertTrue(query.contains("'RECEIVED'"));
+        assertTrue(query.contains("'PROCESSING'"));
+    }
+
+    @Test
+    void testReconcile_NoBacklogSkipsTheSweep() throws InterruptedException {
+        stubBacklog(0L);
+
+        assertEquals(0, reconciler.reconcile());
+
+        verify(paymentRepository, never()).findStalePendingMpesaPayments(any(), any(), any());
+        verify(mpesaService, never()).queryStkPushResult(anyString());
+    }
+
+    private void stubBacklog(long count) {
+        when(paymentRepository.getStalePendingMpesaStats(any()))
+                .thenReturn(List.<Object[]>of(new Object[]{count, count > 0 ? LocalDateTime.now().minusMinutes(30) : null}));
+    }
+
+    private double outcomeCount(String outcome) {
+        return meterRegistry.counter("mpesa.reconciler.payments", "outcome", outcome).count();
+    }
+}
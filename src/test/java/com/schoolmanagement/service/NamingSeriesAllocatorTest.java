@@ -0,0 +1,158 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NamingSeries;
+import com.schoolmanagement.repository.NamingSeriesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NamingSeriesAllocatorTest {
+
+    @Mock
+    private NamingSeriesRepository namingSeriesRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private NamingSeries invoiceSeries;
+
+    @BeforeEach
+    void setUp() {
+        invoiceSeries = NamingSeries.builder()
+                .name("INV")
+                .prefix("INV")
+                .separator("-")
+                .padding(6)
+                .currentNumber(1)
+                .build();
+        lenient().when(namingSeriesRepository.findByNameForUpdate("INV")).thenReturn(Optional.of(invoiceSeries));
+        lenient().when(namingSeriesRepository.save(any(NamingSeries.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testNext_ReservesOneBlockForManyIds() {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 10);
+
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(String.format("INV-%06d", i), allocator.next("INV"));
+        }
+        assertEquals(11, invoiceSeries.getCurrentNumber());
+        verify(namingSeriesRepository, times(1)).findByNameForUpdate("INV");
+
+        assertEquals("INV-000011", allocator.next("INV"));
+        verify(namingSeriesRepository, times(2)).findByNameForUpdate("INV");
+    }
+
+    @Test
+    void testNextBatch_ContinuesAfterReservedBlock() {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 5);
+
+        assertEquals("INV-000001", allocator.next("INV"));
+        List<String> batch = allocator.nextBatch("INV", 3);
+
+        assertEquals(List.of("INV-000006", "INV-000007", "INV-000008"), batch);
+        assertEquals(9, invoiceSeries.getCurrentNumber());
+    }
+
+    @Test
+    void testNext_ConcurrentCallersNeverShareIds() throws Exception {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 7);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        ids.add(allocator.next("INV"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(2000, ids.size());
+    }
+
+    @Test
+    void testNext_NextBlockIsReservedInTheBackgroundWhenRunningLow() {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 5, 2);
+        Thread caller = Thread.currentThread();
+        List<Thread> reservingThreads = new ArrayList<>();
+        when(namingSeriesRepository.findByNameForUpdate("INV")).thenAnswer(invocation -> {
+            reservingThreads.add(Thread.currentThread());
+            return Optional.of(invoiceSeries);
+        });
+        try {
+            for (int i = 1; i <= 3; i++) {
+                assertEquals(String.format("INV-%06d", i), allocator.next("INV"));
+            }
+            // Two numbers left: the next block is reserved off the caller's thread
+            verify(namingSeriesRepository, timeout(TimeUnit.SECONDS.toMillis(5)).times(2)).findByNameForUpdate("INV");
+
+            for (int i = 4; i <= 6; i++) {
+                assertEquals(String.format("INV-%06d", i), allocator.next("INV"));
+            }
+            assertSame(caller, reservingThreads.get(0));
+            assertNotSame(caller, reservingThreads.get(1));
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    @Test
+    void testNext_FailedBackgroundReservationFallsBackToInline() {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 3, 1);
+        Thread caller = Thread.currentThread();
+        when(namingSeriesRepository.findByNameForUpdate("INV")).thenAnswer(invocation -> {
+            if (Thread.currentThread() != caller) {
+                throw new IllegalStateException("Connection is not available");
+            }
+            return Optional.of(invoiceSeries);
+        });
+        try {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                ids.add(allocator.next("INV"));
+            }
+
+            assertEquals(List.of("INV-000001", "INV-000002", "INV-000003", "INV-000004"), ids);
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    @Test
+    void testNext_UnknownSeriesFails() {
+        NamingSeriesAllocator allocator = new NamingSeriesAllocator(namingSeriesRepository, transactionManager, 5);
+        when(namingSeriesRepository.findByNameForUpdate("NOPE")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalStateException.class, () -> allocator.next("NOPE"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationDelivery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationChannelWorkersTest {
+
+    @Mock
+    private ObjectProvider<NotificationChannelProvider> providers;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private NotificationChannelWorkers workers;
+
+    @AfterEach
+    void tearDown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    void testSubmit_QueuedMessagesGoOutInOneProviderRequest() throws Exception {
+        RecordingProvider provider = new RecordingProvider(NotificationDelivery.DeliveryChannel.SMS, false);
+        workers = workers(provider);
+        CountDownLatch answered = new CountDownLatch(3);
+        List<NotificationChannelWorkers.Outcome> outcomes = new CopyOnWriteArrayList<>();
+        workers.onOutcomes(batch -> {
+            outcomes.addAll(batch);
+            batch.forEach(outcome -> answered.countDown());
+        });
+
+        for (long id = 1; id <= 3; id++) {
+            assertTrue(workers.submit(delivery(id, NotificationDelivery.DeliveryChannel.SMS), message(id)));
+        }
+        // Already queued
+        assertFalse(workers.submit(delivery(1L, NotificationDelivery.DeliveryChannel.SMS), message(1L)));
+
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3), provider.batchSizes);
+        assertTrue(outcomes.stream().allMatch(outcome -> outcome.result().accepted()));
+        verify(jdbcTemplate, timeout(1000)).batchUpdate(startsWith("INSERT INTO sms_logs"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void testSubmit_ProviderErrorFailsEveryMessageInTheBatch() throws Exception {
+        RecordingProvider provider = new RecordingProvider(NotificationDelivery.DeliveryChannel.EMAIL, true);
+        workers = workers(provider);
+        CountDownLatch answered = new CountDownLatch(2);
+        List<NotificationChannelWorkers.Outcome> outcomes = new CopyOnWriteArrayList<>();
+        workers.onOutcomes(batch -> {
+            outcomes.addAll(batch);
+            batch.forEach(outcome -> answered.countDown());
+        });
+
+        workers.submit(delivery(1L, NotificationDelivery.DeliveryChannel.EMAIL), message(1L));
+        workers.submit(delivery(2L, NotificationDelivery.DeliveryChannel.EMAIL), message(2L));
+
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        assertTrue(outcomes.stream().noneMatch(outcome -> outcome.result().accepted()));
+        assertTrue(outcomes.get(0).result().error().contains("gateway down"));
+        verify(jdbcTemplate, timeout(1000)).batchUpdate(startsWith("INSERT INTO email_logs"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT INTO sms_logs"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSubmit_LongProviderErrorIsCutToTheLogColumnLength() throws Exception {
+        RecordingProvider provider = new RecordingProvider(NotificationDelivery.DeliveryChannel.SMS, true);
+        provider.failureMessage = "x".repeat(2000);
+        workers = workers(provider);
+        CountDownLatch answered = new CountDownLatch(1);
+        List<NotificationChannelWorkers.Outcome> outcomes = new CopyOnWriteArrayList<>();
+        workers.onOutcomes(batch -> {
+            outcomes.addAll(batch);
+            batch.forEach(outcome -> answered.countDown());
+        });
+
+        workers.submit(delivery(1L, NotificationDelivery.DeliveryChannel.SMS), message(1L));
+
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        // The delivery row keeps more of the error than the varchar(255) log column can
+        assertEquals(1000, outcomes.get(0).result().error().length());
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<Integer>> setter = ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate, timeout(1000)).batchUpdate(startsWith("INSERT INTO sms_logs"), anyCollection(), anyInt(), setter.capture());
+        PreparedStatement statement = mock(PreparedStatement.class);
+        setter.getValue().setValues(statement, 0);
+        verify(statement).setString(eq(6), argThat(error -> error.length() == 255));
+    }
+
+    @Test
+    void testConstructor_RejectsTwoProvidersForOneChannel() {
+        when(providers.orderedStream()).thenReturn(Stream.of(
+                new RecordingProvider(NotificationDelivery.DeliveryChannel.SMS, false),
+                new RecordingProvider(NotificationDelivery.DeliveryChannel.SMS, false)));
+
+        assertThrows(IllegalStateException.class,
+                () -> new NotificationChannelWorkers(providers, jdbcTemplate, new SimpleMeterRegistry(), 0, 1, 1, 1, 1));
+    }
+
+    private NotificationChannelWorkers workers(NotificationChannelProvider provider) {
+        when(providers.orderedStream()).thenReturn(Stream.of(provider));
+        // A long linger so every submitted message lands in the first batch
+        return new NotificationChannelWorkers(providers, jdbcTemplate, new SimpleMeterRegistry(), 200, 1, 1, 1, 1);
+    }
+
+    private NotificationDelivery delivery(Long id, NotificationDelivery.DeliveryChannel channel) {
+        return NotificationDelivery.builder()
+                .id(id)
+                .channel(channel)
+                .status(NotificationDelivery.DeliveryStatus.PENDING)
+                .build();
+    }
+
+    private NotificationChannelProvider.ChannelMessage message(Long deliveryId) {
+        return new NotificationChannelProvider.ChannelMessage(deliveryId, 5L, 1L, "+254700000001", "Fees due", "Term 2 fees are due");
+    }
+
+    private static class RecordingProvider implements NotificationChannelProvider {
+
+        private final NotificationDelivery.DeliveryChannel channel;
+        private final boolean failing;
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private String failureMessage = "gateway down";
+
+        private RecordingProvider(NotificationDelivery.DeliveryChannel channel, boolean failing) {
+            this.channel = channel;
+            this.failing = failing;
+        }
+
+        @Override
+        public String name() {
+            return "recording-" + channel.name().toLowerCase();
+        }
+
+        @Override
+        public NotificationDelivery.DeliveryChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 500;
+        }
+
+        @Override
+        public double requestsPerSecond() {
+            return 100;
+        }
+
+        @Override
+        public List<SendResult> send(List<ChannelMessage> messages) {
+            batchSizes.add(messages.size());
+            if (failing) {
+                throw new IllegalStateException(failureMessage);
+            }
+            List<SendResult> results = new ArrayList<>();
+            for (ChannelMessage message : messages) {
+                results.add(SendResult.accepted("msg-" + message.deliveryId(), "{}"));
+            }
+            return results;
+        }
+    }
+}
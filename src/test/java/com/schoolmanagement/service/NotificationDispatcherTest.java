@@ -0,0 +1,162 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.NotificationDelivery;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.NotificationDeliveryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTest {
+
+    @Mock
+    private NotificationDeliveryRepository notificationDeliveryRepository;
+
+    @Mock
+    private NotificationChannelWorkers channelWorkers;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dispatcher = new NotificationDispatcher(notificationDeliveryRepository, channelWorkers,
+                new TransactionTemplate(transactionManager),
+                meterRegistry, 1);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 100);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "leaseSeconds", 60L);
+        ReflectionTestUtils.setField(dispatcher, "maxQueued", 5000);
+        ReflectionTestUtils.setField(dispatcher, "backoffBaseSeconds", 5L);
+        ReflectionTestUtils.setField(dispatcher, "backoffMaxSeconds", 1800L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDispatchPending_SendsAndMarksNotificationSent() {
+        NotificationDelivery delivery = delivery(NotificationDelivery.DeliveryChannel.IN_APP, new User(), 0);
+        claim(delivery);
+        when(notificationDeliveryRepository.markSent(eq(1L), eq(NotificationDelivery.DeliveryStatus.SENT),
+                eq(NotificationDelivery.DeliveryStatus.PENDING), any(), any())).thenReturn(1);
+
+        dispatcher.dispatchPending();
+
+        verify(notificationDeliveryRepository).markNotificationSent(eq(9L), eq(Notification.NotificationStatus.SENT),
+                eq(Notification.NotificationStatus.PENDING), any());
+        assertEquals(1, meterRegistry.get("notifications.delivery.latency").tag("channel", "IN_APP").timer().count());
+    }
+
+    @Test
+    void testDispatchPending_FailedSendIsRetriedWithBackoff() {
+        // No recipient loaded, so the email can't be addressed
+        NotificationDelivery delivery = delivery(NotificationDelivery.DeliveryChannel.EMAIL, null, 1);
+        claim(delivery);
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.dispatchPending();
+
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(notificationDeliveryRepository).scheduleRetry(eq(1L), eq(NotificationDelivery.DeliveryStatus.PENDING), any(),
+                nextAttempt.capture());
+        // Second attempt: 5s base doubled once
+        long delaySeconds = Duration.between(before, nextAttempt.getValue()).toSeconds();
+        assertTrue(delaySeconds >= 9 && delaySeconds <= 10, "unexpected backoff " + delaySeconds);
+        verify(notificationDeliveryRepository, never()).markFailed(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testDispatchPending_GivesUpAfterMaxAttempts() {
+        NotificationDelivery delivery = delivery(NotificationDelivery.DeliveryChannel.SMS, null, 2);
+        claim(delivery);
+        when(notificationDeliveryRepository.markFailed(eq(1L), eq(NotificationDelivery.DeliveryStatus.FAILED),
+                eq(NotificationDelivery.DeliveryStatus.PENDING), any(), any())).thenReturn(1);
+
+        dispatcher.dispatchPending();
+
+        verify(notificationDeliveryRepository).markNotificationFailedIfAllFailed(9L, Notification.NotificationStatus.FAILED,
+                Notification.NotificationStatus.PENDING, NotificationDelivery.DeliveryStatus.FAILED);
+        verify(notificationDeliveryRepository, never()).scheduleRetry(any(), any(), any(), any());
+    }
+
+    @Test
+    void testDispatchPending_ProviderOutcomeIsRecordedOnDelivery() {
+        User recipient = new User();
+        recipient.setId(5L);
+        recipient.setPhoneNumber("+254700000001");
+        NotificationDelivery delivery = delivery(NotificationDelivery.DeliveryChannel.SMS, recipient, 0);
+        claim(delivery);
+        when(channelWorkers.supports(NotificationDelivery.DeliveryChannel.SMS)).thenReturn(true);
+        when(notificationDeliveryRepository.markSent(eq(1L), eq(NotificationDelivery.DeliveryStatus.SENT),
+                eq(NotificationDelivery.DeliveryStatus.PENDING), eq("sms-1"), any())).thenReturn(1);
+
+        dispatcher.dispatchPending();
+
+        ArgumentCaptor<NotificationChannelProvider.ChannelMessage> message =
+                ArgumentCaptor.forClass(NotificationChannelProvider.ChannelMessage.class);
+        verify(channelWorkers).submit(eq(delivery), message.capture());
+        assertEquals("+254700000001", message.getValue().address());
+        verify(notificationDeliveryRepository, never()).markNotificationSent(any(), any(), any(), any());
+
+        // The workers answer later, from their own thread
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<List<NotificationChannelWorkers.Outcome>>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(channelWorkers).onOutcomes(listener.capture());
+        listener.getValue().accept(List.of(new NotificationChannelWorkers.Outcome(delivery,
+                NotificationChannelProvider.SendResult.accepted("sms-1", "{}"))));
+
+        verify(notificationDeliveryRepository).markNotificationSent(eq(9L), eq(Notification.NotificationStatus.SENT),
+                eq(Notification.NotificationStatus.PENDING), any());
+    }
+
+    private void claim(NotificationDelivery delivery) {
+        when(notificationDeliveryRepository.findClaimable(eq(NotificationDelivery.DeliveryStatus.PENDING), any(), eq(1), anyInt(), any()))
+                .thenReturn(List.of(delivery));
+        when(notificationDeliveryRepository.findByIdInWithRecipient(List.of(1L))).thenReturn(List.of(delivery));
+    }
+
+    private NotificationDelivery delivery(NotificationDelivery.DeliveryChannel channel, User recipient, int previousAttempts) {
+        Notification notification = Notification.builder()
+                .id(9L)
+                .recipient(recipient)
+                .build();
+        return NotificationDelivery.builder()
+                .id(1L)
+                .channel(channel)
+                .status(NotificationDelivery.DeliveryStatus.PENDING)
+                .attempts(previousAttempts)
+                .createdAt(LocalDateTime.now().minusSeconds(2))
+                .notification(notification)
+                .build();
+    }
+}
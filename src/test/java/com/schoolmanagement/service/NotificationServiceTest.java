@@ -0,0 +1,169 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.NotificationDto;
+import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.entity.Notification;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.NotificationDeliveryRepository;
+import com.schoolmanagement.repository.NotificationRepository;
+import com.schoolmanagement.repository.NotificationTemplateRepository;
+import com.schoolmanagement.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationServiceTest {
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    @Mock
+    private NotificationDeliveryRepository notificationDeliveryRepository;
+
+    @Mock
+    private NotificationTemplateRepository templateRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private NotificationTemplateEngine templateEngine;
+
+    @Mock
+    private UnreadNotificationCounter unreadCounter;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private NotificationStreamHub streamHub;
+
+    @InjectMocks
+    private NotificationService notificationService;
+
+    @Test
+    void testCreateBulkNotifications_LoadsRecipientsInChunksAndBatchInserts() {
+        List<Long> recipientIds = LongStream.rangeClosed(1, 2500).boxed().toList();
+        when(userRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(this::user).toList();
+        });
+        when(notificationRepository.findIdsByBroadcastId(anyString())).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            recipientIds.forEach(id -> rows.add(new Object[]{id + 10_000, id}));
+            return rows;
+        });
+
+        ApiResponse<List<NotificationDto>> response = notificationService.createBulkNotifications(request(recipientIds));
+
+        assertTrue(response.isSuccess());
+        assertEquals(2500, response.getData().size());
+        assertEquals(10_001L, response.getData().get(0).getId());
+        assertEquals(1L, response.getData().get(0).getRecipientId());
+        verify(userRepository, times(3)).findAllById(anyList());
+        verify(userRepository, never()).findById(any());
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO notifications"), anyList(), anyInt(), any());
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO notification_deliveries"), anyList(), anyInt(), any());
+        verify(notificationRepository, never()).saveAll(any());
+        verify(unreadCounter).incrementAll(recipientIds);
+        verify(streamHub).publish(response.getData());
+    }
+
+    @Test
+    void testCreateBulkNotifications_FailsWhenRecipientIsMissing() {
+        when(userRepository.findAllById(anyList())).thenReturn(List.of(user(1L)));
+
+        ApiResponse<List<NotificationDto>> response = notificationService.createBulkNotifications(request(List.of(1L, 2L)));
+
+        assertFalse(response.isSuccess());
+        assertTrue(response.getMessage().contains("Recipient not found: 2"));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList(), anyInt(), any());
+    }
+
+    @Test
+    void testMarkAllAsRead_UpdatesInChunksAndReturnsCount() {
+        ReflectionTestUtils.setField(notificationService, "bulkChunkSize", 2);
+        runTransactionsInline();
+        when(notificationRepository.findUnreadIdsAfter(eq(7L), eq(0L), any())).thenReturn(List.of(1L, 2L));
+        when(notificationRepository.findUnreadIdsAfter(eq(7L), eq(2L), any())).thenReturn(List.of(5L));
+        when(notificationRepository.markReadByIds(eq(List.of(1L, 2L)), any())).thenReturn(2);
+        when(notificationRepository.markReadByIds(eq(List.of(5L)), any())).thenReturn(1);
+
+        ApiResponse<Integer> response = notificationService.markAllAsRead(7L);
+
+        assertTrue(response.isSuccess());
+        assertEquals(3, response.getData());
+        verify(unreadCounter).adjust(7L, -2);
+        verify(unreadCounter).adjust(7L, -1);
+        verify(notificationRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testDeleteAllNotifications_LowersUnreadCountByUnreadRowsOnly() {
+        ReflectionTestUtils.setField(notificationService, "bulkChunkSize", 10);
+        runTransactionsInline();
+        when(notificationRepository.findActiveRowsAfter(eq(7L), eq(0L), any())).thenReturn(List.of(
+                new Object[]{1L, 7L, null},
+                new Object[]{2L, 7L, LocalDateTime.now()},
+                new Object[]{3L, 7L, null}));
+        when(notificationRepository.deactivateByIds(eq(List.of(1L, 2L, 3L)), any())).thenReturn(3);
+
+        ApiResponse<Integer> response = notificationService.deleteAllNotifications(7L);
+
+        assertEquals(3, response.getData());
+        verify(unreadCounter).adjustAll(Map.of(7L, -2L));
+    }
+
+    private void runTransactionsInline() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    private NotificationRequestDto request(List<Long> recipientIds) {
+        NotificationRequestDto request = new NotificationRequestDto();
+        request.setTitle("School closed");
+        request.setMessage("School is closed on Friday");
+        request.setType(Notification.NotificationType.GENERAL);
+        request.setPriority(Notification.NotificationPriority.HIGH);
+        request.setRecipientIds(recipientIds);
+        return request;
+    }
+
+    private User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setFirstName("Parent");
+        user.setLastName(String.valueOf(id));
+        return user;
+    }
+}
@@ -0,0 +1,178 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.NotificationDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationStreamHubTest {
+
+    @Mock
+    private UnreadNotificationCounter unreadCounter;
+
+    private NotificationStreamHub hub;
+    // Sends to a slow stream block until released, standing in for a client that stopped reading
+    private final CountDownLatch slowClient = new CountDownLatch(1);
+    private final CountDownLatch slowSendStarted = new CountDownLatch(1);
+    private volatile boolean nextStreamSlow;
+
+    @BeforeEach
+    void setUp() {
+        // One sender stripe, so every user shares it
+        hub = new NotificationStreamHub(unreadCounter, new SimpleMeterRegistry(), 1, 2) {
+            @Override
+            SseEmitter newEmitter(long timeout) {
+                return new RecordingEmitter(nextStreamSlow);
+            }
+        };
+        ReflectionTestUtils.setField(hub, "timeoutMs", 60000L);
+        ReflectionTestUtils.setField(hub, "maxStreamsPerUser", 5);
+        ReflectionTestUtils.setField(hub, "maxQueuedEvents", 4);
+        ReflectionTestUtils.setField(hub, "sendTimeoutMs", 300L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowClient.countDown();
+        hub.shutdown();
+    }
+
+    @Test
+    void testReplay_NotificationsSentLiveAndReplayedAreDeliveredOnce() throws InterruptedException {
+        when(unreadCounter.get(2L)).thenReturn(3L);
+        RecordingEmitter emitter = (RecordingEmitter) hub.subscribe(2L);
+
+        // 5 commits right after subscribe and is pushed live before the replay query's rows are sent
+        hub.publish(List.of(notification(5L, 2L)));
+        hub.replay(2L, emitter, List.of(notification(4L, 2L), notification(5L, 2L)));
+        // 4 was read by the replay and its live push arrives late
+        hub.publish(List.of(notification(4L, 2L)));
+        hub.publish(List.of(notification(6L, 2L)));
+
+        awaitTrue(() -> emitter.events.size() >= 4);
+        Thread.sleep(100);
+        assertEquals(List.of("notification:5", "notification:4", "unread-count", "notification:6"), emitter.events);
+    }
+
+    @Test
+    void testPublish_SlowClientIsDroppedWithoutDelayingOtherUsers() throws InterruptedException {
+        RecordingEmitter slow = subscribeSlow(1L);
+        RecordingEmitter fast = (RecordingEmitter) hub.subscribe(2L);
+
+        hub.publish(List.of(notification(1L, 1L)));
+        assertTrue(slowSendStarted.await(5, TimeUnit.SECONDS));
+        for (long id = 2; id <= 6; id++) {
+            hub.publish(List.of(notification(id, 1L)));
+        }
+        hub.publish(List.of(notification(7L, 2L)));
+
+        awaitTrue(() -> fast.events.contains("notification:7"));
+        // Its fifth queued event overflowed the queue of four
+        awaitTrue(() -> !hub.hasSubscribers(1L));
+        assertFalse(slow.completed);
+        slowClient.countDown();
+        awaitTrue(() -> slow.completed);
+        assertTrue(hub.hasSubscribers(2L));
+    }
+
+    @Test
+    void testDropStalledStreams_StreamStuckInSendIsDropped() throws InterruptedException {
+        RecordingEmitter slow = subscribeSlow(1L);
+        hub.publish(List.of(notification(1L, 1L)));
+        assertTrue(slowSendStarted.await(5, TimeUnit.SECONDS));
+
+        hub.dropStalledStreams();
+        assertTrue(hub.hasSubscribers(1L));
+        Thread.sleep(400);
+        hub.dropStalledStreams();
+
+        assertFalse(hub.hasSubscribers(1L));
+        slowClient.countDown();
+        awaitTrue(() -> slow.completed);
+    }
+
+    private RecordingEmitter subscribeSlow(Long userId) {
+        nextStreamSlow = true;
+        try {
+            return (RecordingEmitter) hub.subscribe(userId);
+        } finally {
+            nextStreamSlow = false;
+        }
+    }
+
+    private static NotificationDto notification(Long id, Long recipientId) {
+        return NotificationDto.builder().id(id).recipientId(recipientId).title("Fee reminder").build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private final class RecordingEmitter extends SseEmitter {
+
+        private static final Pattern EVENT = Pattern.compile("(?:id:(\\d+)\\n)?event:([\\w-]+)");
+
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final boolean slow;
+        private volatile boolean completed;
+
+        private RecordingEmitter(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            String text = builder.build().stream()
+                    .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .filter(String.class::isInstance)
+                    .map(String.class::cast)
+                    .collect(Collectors.joining());
+            Matcher matcher = EVENT.matcher(text);
+            if (!matcher.find()) {
+                return;
+            }
+            String event = matcher.group(1) != null ? matcher.group(2) + ":" + matcher.group(1) : matcher.group(2);
+            if (slow) {
+                slowSendStarted.countDown();
+                try {
+                    slowClient.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.NotificationTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationTemplateEngineTest {
+
+    private final NotificationTemplateEngine engine = new NotificationTemplateEngine();
+
+    @Test
+    void testRender_SubstitutesVariablesAndKeepsUnknownPlaceholders() {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("name", "Amina");
+        variables.put("balance", 1500);
+        variables.put("empty", null);
+
+        NotificationTemplateEngine.RenderedTemplate rendered = engine.render(
+                template("Hello {{name}}", "Balance {{balance}} due {{dueDate}} {{empty}} {{a{{name}}", null), variables);
+
+        assertEquals("Hello Amina", rendered.title());
+        assertEquals("Balance 1500 due {{dueDate}} null {{aAmina", rendered.message());
+        assertNull(rendered.actionUrl());
+    }
+
+    @Test
+    void testRender_WithoutVariablesReturnsTemplateText() {
+        NotificationTemplateEngine.RenderedTemplate rendered = engine.render(template("Hi {{name}}", "No placeholders", "/x"), null);
+
+        assertEquals("Hi {{name}}", rendered.title());
+        assertEquals("No placeholders", rendered.message());
+    }
+
+    @Test
+    void testRender_RecompilesWhenTemplateIsUpdated() {
+        NotificationTemplate template = template("Hi {{name}}", "Old", null);
+        assertEquals("Old", engine.render(template, Map.of("name", "Otieno")).message());
+
+        template.setMessage("New {{name}}");
+        // Same version: the compiled copy is still used
+        assertEquals("Old", engine.render(template, Map.of("name", "Otieno")).message());
+
+        template.setUpdatedAt(template.getUpdatedAt().plusMinutes(1));
+        assertEquals("New Otieno", engine.render(template, Map.of("name", "Otieno")).message());
+    }
+
+    private NotificationTemplate template(String title, String message, String actionUrl) {
+        NotificationTemplate template = new NotificationTemplate();
+        template.setTemplateKey("KEY");
+        template.setTitle(title);
+        template.setMessage(message);
+        template.setActionUrl(actionUrl);
+        template.setUpdatedAt(LocalDateTime.of(2026, 1, 1, 0, 0));
+        return template;
+    }
+}
@@ -0,0 +1,168 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.NotificationRequestDto;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OverdueInvoiceSweeperTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private FinanceDashboardCache financeDashboardCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OverdueInvoiceSweeper sweeper;
+
+    // Stands in for fee_invoices of school 1; the answers below apply the repository queries' conditions
+    private final List<InvoiceRow> invoices = new ArrayList<>();
+    private final List<NotificationRequestDto> queued = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        sweeper = new OverdueInvoiceSweeper(feeInvoiceRepository, notificationService, financeDashboardCache,
+                new TransactionTemplate(transactionManager), new SimpleMeterRegistry());
+        // Smaller than the number of flipped invoices, so reminders are paged
+        ReflectionTestUtils.setField(sweeper, "reminderBatchSize", 2);
+        ReflectionTestUtils.setField(sweeper, "sendReminders", true);
+    }
+
+    @Test
+    void testSweep_MovesPastDueInvoicesToOverdueAndQueuesOneReminderEach() {
+        LocalDateTime earlierSweep = LocalDateTime.now().minusDays(3);
+        invoices.add(new InvoiceRow(1L, 101L, "PENDING", TODAY.minusDays(5), null));
+        invoices.add(new InvoiceRow(2L, 102L, "PARTIAL", TODAY.minusDays(1), null));
+        invoices.add(new InvoiceRow(3L, 103L, "OVERDUE", TODAY.minusDays(10), earlierSweep));
+        invoices.add(new InvoiceRow(4L, 104L, "PAID", TODAY.minusDays(10), null));
+        invoices.add(new InvoiceRow(5L, 105L, "PENDING", TODAY.plusDays(3), null));
+        invoices.add(new InvoiceRow(6L, 106L, "PENDING", TODAY.minusDays(2), null));
+        stubRepository();
+
+        Map<Long, Integer> changed = sweeper.sweep();
+
+        assertEquals(Map.of(1L, 3), changed);
+        assertEquals("OVERDUE", invoices.get(0).status);
+        assertEquals("OVERDUE", invoices.get(1).status);
+        assertEquals("OVERDUE", invoices.get(5).status);
+        // An invoice already OVERDUE keeps the marker of the sweep that flipped it and is not reminded again
+        assertEquals(earlierSweep, invoices.get(2).overdueAt);
+        assertEquals("PAID", invoices.get(3).status);
+        assertEquals("PENDING", invoices.get(4).status);
+        assertEquals(Set.of(101L, 102L, 106L), queued.stream().map(NotificationRequestDto::getRecipientId)
+                .collect(Collectors.toSet()));
+        assertEquals(3, queued.size());
+        verify(financeDashboardCache).evictSchool(1L);
+    }
+
+    @Test
+    void testSweep_NothingPastDueQueuesNoReminders() {
+        // Candidates are found, but a concurrent payment settled them before the UPDATE ran
+        when(feeInvoiceRepository.findSchoolIdsWithOverdueCandidates(TODAY)).thenReturn(List.of(1L));
+        when(feeInvoiceRepository.markOverdueForSchool(eq(1L), eq(TODAY), any())).thenReturn(0);
+
+        assertTrue(sweeper.sweep().isEmpty());
+
+        verify(notificationService, never()).queueNotifications(anyList(), any());
+        verify(financeDashboardCache, never()).evictSchool(any());
+    }
+
+    @Test
+    void testSweep_OverlappingSweepIsSkipped() {
+        List<Map<Long, Integer>> nested = new ArrayList<>();
+        when(feeInvoiceRepository.findSchoolIdsWithOverdueCandidates(TODAY)).thenAnswer(invocation -> {
+            // A manual run arrives while the scheduled sweep is still going
+            nested.add(sweeper.sweep());
+            return List.of();
+        });
+
+        sweeper.sweep();
+
+        assertEquals(List.of(Map.of()), nested);
+        verify(feeInvoiceRepository, never()).markOverdueForSchool(any(), any(), any());
+    }
+
+    private void stubRepository() {
+        when(feeInvoiceRepository.findSchoolIdsWithOverdueCandidates(TODAY)).thenReturn(List.of(1L));
+        when(feeInvoiceRepository.markOverdueForSchool(eq(1L), eq(TODAY), any())).thenAnswer(invocation -> {
+            LocalDateTime sweptAt = invocation.getArgument(2);
+            int changed = 0;
+            for (InvoiceRow invoice : invoices) {
+                if (("PENDING".equals(invoice.status) || "PARTIAL".equals(invoice.status)) && invoice.dueDate.isBefore(TODAY)) {
+                    invoice.status = "OVERDUE";
+                    invoice.overdueAt = sweptAt;
+                    changed++;
+                }
+            }
+            return changed;
+        });
+        when(feeInvoiceRepository.findSweptOverdueInvoices(eq(1L), any(), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime sweptAt = invocation.getArgument(1);
+            long afterId = invocation.getArgument(2);
+            Pageable page = invocation.getArgument(3);
+            List<Object[]> rows = new ArrayList<>();
+            for (InvoiceRow invoice : invoices) {
+                if (sweptAt.equals(invoice.overdueAt) && invoice.id > afterId && rows.size() < page.getPageSize()) {
+                    rows.add(new Object[]{invoice.id, invoice.studentId, "INV-" + invoice.id, new BigDecimal("1000.00"), invoice.dueDate});
+                }
+            }
+            return rows;
+        });
+        when(notificationService.queueNotifications(anyList(), eq(1L))).thenAnswer(invocation -> {
+            List<NotificationRequestDto> reminders = invocation.getArgument(0);
+            queued.addAll(reminders);
+            return reminders.size();
+        });
+    }
+
+    private static final class InvoiceRow {
+
+        private final Long id;
+        private final Long studentId;
+        private final LocalDate dueDate;
+        private String status;
+        private LocalDateTime overdueAt;
+
+        private InvoiceRow(Long id, Long studentId, String status, LocalDate dueDate, LocalDateTime overdueAt) {
+            this.id = id;
+            this.studentId = studentId;
+            this.status = status;
+            this.dueDate = dueDate;
+            this.overdueAt = overdueAt;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.MpesaCallbackInbox;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.StripeEventInbox;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.MpesaCallbackInboxRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.repository.StripeEventInboxRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentSettlementServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private MpesaCallbackInboxRepository mpesaCallbackInboxRepository;
+
+    @Mock
+    private StripeEventInboxRepository stripeEventInboxRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private FinanceDashboardCache financeDashboardCache;
+
+    @Mock
+    private NamingSeriesAllocator namingSeriesAllocator;
+
+    @Mock
+    private EnrollmentLedgerService enrollmentLedgerService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private PaymentSettlementService paymentSettlementService;
+
+    private Payment payment;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(paymentSettlementService, "stripeCurrency", "kes");
+        FeeInvoice invoice = new FeeInvoice();
+        invoice.setId(10L);
+        payment = new Payment();
+        payment.setId(7L);
+        payment.setPaymentReference("MPESA-000007");
+        payment.setAmount(new BigDecimal("5000.00"));
+        payment.setPaymentStatus("PENDING");
+        payment.setInvoice(invoice);
+    }
+
+    @Test
+    void testSettleMpesaCallback_UnderpaymentIsParkedNotCredited() {
+        MpesaCallbackInbox callback = MpesaCallbackInbox.builder()
+                .id(1L)
+                .checkoutRequestId("ws_CO_1")
+                .resultCode(0)
+                .mpesaReceiptNumber("QGH7ABC123")
+                .amount(new BigDecimal("500.00"))
+                .build();
+        when(mpesaCallbackInboxRepository.findById(1L)).thenReturn(Optional.of(callback));
+        when(paymentRepository.findByExternalReference("ws_CO_1")).thenReturn(Optional.of(payment));
+
+        String outcome = paymentSettlementService.settleMpesaCallback(1L);
+
+        assertEquals(PaymentSettlementService.OUTCOME_REVIEW, outcome);
+        assertEquals(PaymentSettlementService.STATUS_REVIEW, callback.getStatus());
+        verify(paymentRepository, never()).markCompletedIfPending(any(), any(), any(), any());
+        verify(feeInvoiceRepository, never()).addToPaidAmount(any(), any(), any());
+    }
+
+    @Test
+    void testCompletePayment_AlreadySettledIsNotCreditedAgain() {
+        when(paymentRepository.existsByTransactionIdAndIdNot("QGH7ABC123", 7L)).thenReturn(false);
+        // The reconciler or statement import settled it first
+        when(paymentRepository.markCompletedIfPending(eq(7L), eq("QGH7ABC123"), any(), any())).thenReturn(0);
+
+        assertFalse(paymentSettlementService.completePayment(payment, "QGH7ABC123", "M-Pesa Receipt: QGH7ABC123"));
+
+        verify(feeInvoiceRepository, never()).addToPaidAmount(any(), any(), any());
+        verify(enrollmentLedgerService, never()).recordPayment(any());
+    }
+
+    @Test
+    void testSettleMpesaCallback_DuplicateCallbackIsProcessedWithoutCredit() {
+        MpesaCallbackInbox callback = MpesaCallbackInbox.builder()
+                .id(3L)
+                .checkoutRequestId("ws_CO_1")
+                .resultCode(0)
+                .mpesaReceiptNumber("QGH7ABC123")
+                .amount(new BigDecimal("5000.00"))
+                .build();
+        payment.setPaymentStatus("COMPLETED");
+        payment.setTransactionId("QGH7ABC123");
+        when(mpesaCallbackInboxRepository.findById(3L)).thenReturn(Optional.of(callback));
+        when(paymentRepository.findByExternalReference("ws_CO_1")).thenReturn(Optional.of(payment));
+        when(paymentRepository.existsByTransactionIdAndIdNot("QGH7ABC123", 7L)).thenReturn(false);
+        when(paymentRepository.markCompletedIfPending(eq(7L), eq("QGH7ABC123"), any(), any())).thenReturn(0);
+
+        String outcome = paymentSettlementService.settleMpesaCallback(3L);
+
+        assertEquals(PaymentSettlementService.OUTCOME_DUPLICATE, outcome);
+        assertEquals("PROCESSED", callback.getStatus());
+        verify(feeInvoiceRepository, never()).addToPaidAmount(any(), any(), any());
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    void testSettleStripeEvent_CurrencyMismatchIsParkedNotCredited() {
+        StripeEventInbox event = StripeEventInbox.builder()
+                .id(2L)
+                .eventId("evt_1")
+                .eventType(StripeEventInboxService.PAYMENT_INTENT_SUCCEEDED)
+                .paymentIntentId("pi_1")
+                .amount(new BigDecimal("5000.00"))
+                .currency("usd")
+                .build();
+        when(stripeEventInboxRepository.findById(2L)).thenReturn(Optional.of(event));
+        when(paymentRepository.findByExternalReference("pi_1")).thenReturn(Optional.of(payment));
+
+        String outcome = paymentSettlementService.settleStripeEvent(2L);
+
+        assertEquals(PaymentSettlementService.OUTCOME_REVIEW, outcome);
+        assertEquals(PaymentSettlementService.STATUS_REVIEW, event.getStatus());
+        verify(paymentRepository, never()).markCompletedIfPending(any(), any(), any(), any());
+        verify(feeInvoiceRepository, never()).addToPaidAmount(any(), any(), any());
+    }
+}
@@ -0,0 +1,153 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.PaymentSummaryReportDto;
+import com.schoolmanagement.repository.PaymentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentSummaryReportServiceTest {
+
+    // 2024-01-01 is a Monday, so week periods start on the 1st and the 8th
+    private static final LocalDate JANUARY = LocalDate.of(2024, 1, 1);
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    private PaymentSummaryReportService reportService;
+
+    @BeforeEach
+    void setUp() {
+        reportService = new PaymentSummaryReportService(paymentRepository, new FinanceDashboardCache(30, 100, 86400, 100), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reportService.shutdown();
+    }
+
+    @Test
+    void testSummarize_RangeIsQueriedOneCalendarMonthAtATime() {
+        when(paymentRepository.getDailyPaymentTotals(eq(1L), any(), any())).thenReturn(List.of());
+
+        reportService.summarize(1L, LocalDate.of(2024, 1, 15), LocalDate.of(2024, 3, 10), "DAY");
+
+        verify(paymentRepository).getDailyPaymentTotals(1L, at(2024, 1, 15), at(2024, 2, 1));
+        verify(paymentRepository).getDailyPaymentTotals(1L, at(2024, 2, 1), at(2024, 3, 1));
+        verify(paymentRepository).getDailyPaymentTotals(1L, at(2024, 3, 1), at(2024, 3, 11));
+        verify(paymentRepository, times(3)).getDailyPaymentTotals(eq(1L), any(), any());
+    }
+
+    @Test
+    void testSummarize_ClosedDaysAreCachedAndTodayIsAlwaysQueried() {
+        LocalDate today = LocalDate.now();
+        when(paymentRepository.getDailyPaymentTotals(eq(1L), any(), any())).thenReturn(List.of());
+
+        reportService.summarize(1L, today.minusDays(40), today, "DAY");
+        ArgumentCaptor<LocalDateTime> starts = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> ends = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(paymentRepository, atLeastOnce()).getDailyPaymentTotals(eq(1L), starts.capture(), ends.capture());
+        int firstCallQueries = starts.getAllValues().size();
+        // Closed chunks end at today; only the open chunk covers it
+        for (int i = 0; i < firstCallQueries; i++) {
+            boolean open = starts.getAllValues().get(i).equals(today.atStartOfDay());
+            assertTrue(open || !ends.getAllValues().get(i).isAfter(today.atStartOfDay()));
+        }
+
+        reportService.summarize(1L, today.minusDays(40), today, "DAY");
+
+        verify(paymentRepository, times(2)).getDailyPaymentTotals(1L, today.atStartOfDay(), today.plusDays(1).atStartOfDay());
+        verify(paymentRepository, times(firstCallQueries + 1)).getDailyPaymentTotals(eq(1L), any(), any());
+    }
+
+    @Test
+    void testSummarize_RefundedRowsAreReportedAsPositiveRefunds() {
+        stubJanuaryTotals();
+
+        PaymentSummaryReportDto report = reportService.summarize(1L, JANUARY, LocalDate.of(2024, 1, 31), "DAY");
+
+        assertEquals(4L, report.getPaymentCount());
+        assertEquals(new BigDecimal("4500.00"), report.getTotalCollected());
+        assertEquals(1L, report.getRefundCount());
+        assertEquals(new BigDecimal("400.00"), report.getTotalRefunded());
+        assertEquals(new BigDecimal("4100.00"), report.getNetCollected());
+        assertEquals(List.of("M_PESA", "CASH"), report.getByMethod().stream().map(PaymentSummaryReportDto.MethodTotal::getPaymentMethod).toList());
+        assertEquals(new BigDecimal("400.00"), report.getByMethod().get(0).getTotalRefunded());
+    }
+
+    @Test
+    void testSummarize_DayGranularityKeepsEachDay() {
+        stubJanuaryTotals();
+
+        PaymentSummaryReportDto report = reportService.summarize(1L, JANUARY, LocalDate.of(2024, 1, 31), "day");
+
+        assertEquals("DAY", report.getGranularity());
+        assertEquals(List.of(JANUARY.plusDays(1), JANUARY.plusDays(2), JANUARY.plusDays(8)), periodStarts(report));
+        assertEquals(new BigDecimal("3000.00"), report.getByPeriod().get(0).getTotalCollected());
+    }
+
+    @Test
+    void testSummarize_WeekGranularityRollsUpToMondays() {
+        stubJanuaryTotals();
+
+        PaymentSummaryReportDto report = reportService.summarize(1L, JANUARY, LocalDate.of(2024, 1, 31), "WEEK");
+
+        assertEquals(List.of(JANUARY, JANUARY.plusDays(7)), periodStarts(report));
+        assertEquals(3L, report.getByPeriod().get(0).getPaymentCount());
+        assertEquals(new BigDecimal("3500.00"), report.getByPeriod().get(0).getTotalCollected());
+        assertEquals(new BigDecimal("1000.00"), report.getByPeriod().get(1).getTotalCollected());
+        assertEquals(new BigDecimal("400.00"), report.getByPeriod().get(1).getTotalRefunded());
+    }
+
+    @Test
+    void testSummarize_MonthGranularityRollsUpToTheFirstOfTheMonth() {
+        stubJanuaryTotals();
+
+        PaymentSummaryReportDto report = reportService.summarize(1L, JANUARY, LocalDate.of(2024, 1, 31), "MONTH");
+
+        assertEquals(List.of(JANUARY), periodStarts(report));
+        assertEquals(4L, report.getByPeriod().get(0).getPaymentCount());
+        assertEquals(new BigDecimal("4500.00"), report.getByPeriod().get(0).getTotalCollected());
+        assertEquals(new BigDecimal("400.00"), report.getByPeriod().get(0).getTotalRefunded());
+    }
+
+    @Test
+    void testSummarize_InvalidRequestsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> reportService.summarize(1L, JANUARY, JANUARY.minusDays(1), "DAY"));
+        assertThrows(IllegalArgumentException.class, () -> reportService.summarize(1L, JANUARY, JANUARY, "YEAR"));
+    }
+
+    private void stubJanuaryTotals() {
+        when(paymentRepository.getDailyPaymentTotals(1L, at(2024, 1, 1), at(2024, 2, 1))).thenReturn(List.<Object[]>of(
+                new Object[]{1L, JANUARY.plusDays(1), "M_PESA", "COMPLETED", 2L, new BigDecimal("3000.00")},
+                new Object[]{1L, JANUARY.plusDays(2), "CASH", "COMPLETED", 1L, new BigDecimal("500.00")},
+                new Object[]{1L, JANUARY.plusDays(8), "M_PESA", "COMPLETED", 1L, new BigDecimal("1000.00")},
+                new Object[]{1L, JANUARY.plusDays(8), "M_PESA", "REFUNDED", 1L, new BigDecimal("-400.00")}));
+    }
+
+    private static List<LocalDate> periodStarts(PaymentSummaryReportDto report) {
+        return report.getByPeriod().stream().map(PaymentSummaryReportDto.PeriodTotal::getPeriodStart).toList();
+    }
+
+    private static LocalDateTime at(int year, int month, int day) {
+        return LocalDate.of(year, month, day).atStartOfDay();
+    }
+}
@@ -0,0 +1,143 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.entity.FeeStructure;
+import com.schoolmanagement.entity.Subject;
+import com.schoolmanagement.repository.AcademicYearRepository;
+import com.schoolmanagement.repository.ClassRepository;
+import com.schoolmanagement.repository.FeeStructureRepository;
+import com.schoolmanagement.repository.RoleRepository;
+import com.schoolmanagement.repository.SchoolRepository;
+import com.schoolmanagement.repository.SubjectRepository;
+import com.schoolmanagement.repository.TermRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReferenceDataCacheTest {
+
+    @Mock
+    private FeeStructureRepository feeStructureRepository;
+
+    @Mock
+    private SchoolRepository schoolRepository;
+
+    @Mock
+    private AcademicYearRepository academicYearRepository;
+
+    @Mock
+    private ClassRepository classRepository;
+
+    @Mock
+    private TermRepository termRepository;
+
+    @Mock
+    private SubjectRepository subjectRepository;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ReferenceDataCache(feeStructureRepository, schoolRepository, academicYearRepository, classRepository,
+                termRepository, subjectRepository, roleRepository, transactionManager, meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        for (String ttl : new String[]{"feeStructureTtlSeconds", "schoolTtlSeconds", "academicYearTtlSeconds", "classTtlSeconds",
+                "termTtlSeconds", "subjectTtlSeconds", "roleTtlSeconds"}) {
+            ReflectionTestUtils.setField(cache, ttl, 60L);
+        }
+        cache.init();
+    }
+
+    @Test
+    void testFindFeeStructure_LoadsOnceThenServesFromCache() {
+        FeeStructure feeStructure = feeStructure(5L);
+        when(feeStructureRepository.findByIdWithParents(5L)).thenReturn(Optional.of(feeStructure));
+
+        assertSame(feeStructure, cache.findFeeStructure(5L).orElseThrow());
+        assertSame(feeStructure, cache.findFeeStructure(5L).orElseThrow());
+
+        verify(feeStructureRepository, times(1)).findByIdWithParents(5L);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "fee_structure").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "fee_structure").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testEvictFeeStructure_ReloadsOnNextLookup() {
+        when(feeStructureRepository.findByIdWithParents(5L)).thenReturn(Optional.of(feeStructure(5L)));
+
+        cache.findFeeStructure(5L);
+        cache.evictFeeStructure(5L);
+        cache.findFeeStructure(5L);
+
+        verify(feeStructureRepository, times(2)).findByIdWithParents(5L);
+    }
+
+    @Test
+    void testFindFeeStructure_DoesNotCacheValueLoadedDuringEviction() {
+        // The row changes while it is being loaded: the stale copy is returned once but not kept
+        when(feeStructureRepository.findByIdWithParents(5L)).thenAnswer(invocation -> {
+            cache.evictFeeStructure(5L);
+            return Optional.of(feeStructure(5L));
+        });
+
+        cache.findFeeStructure(5L);
+        cache.findFeeStructure(5L);
+
+        verify(feeStructureRepository, times(2)).findByIdWithParents(5L);
+    }
+
+    @Test
+    void testFindFeeStructure_MissingRowIsNotCached() {
+        when(feeStructureRepository.findByIdWithParents(9L)).thenReturn(Optional.empty());
+
+        assertTrue(cache.findFeeStructure(9L).isEmpty());
+        assertTrue(cache.findFeeStructure(9L).isEmpty());
+        assertTrue(cache.findFeeStructure(null).isEmpty());
+
+        verify(feeStructureRepository, times(2)).findByIdWithParents(9L);
+    }
+
+    @Test
+    void testEvictSubject_ReloadsOnlyThatSubject() {
+        Subject math = Subject.builder().id(1L).code("MATH").name("Mathematics").build();
+        Subject chem = Subject.builder().id(2L).code("CHEM").name("Chemistry").build();
+        when(subjectRepository.findById(1L)).thenReturn(Optional.of(math));
+        when(subjectRepository.findById(2L)).thenReturn(Optional.of(chem));
+
+        assertSame(math, cache.findSubject(1L).orElseThrow());
+        cache.findSubject(2L);
+        cache.evictSubject(1L);
+        cache.findSubject(1L);
+        cache.findSubject(2L);
+
+        verify(subjectRepository, times(2)).findById(1L);
+        verify(subjectRepository, times(1)).findById(2L);
+    }
+
+    private static FeeStructure feeStructure(Long id) {
+        FeeStructure feeStructure = new FeeStructure();
+        feeStructure.setId(id);
+        feeStructure.setName("Tuition");
+        return feeStructure;
+    }
+}
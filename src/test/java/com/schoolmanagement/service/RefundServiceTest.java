@@ -0,0 +1,224 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.RefundDto;
+import com.schoolmanagement.entity.FeeInvoice;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.entity.Refund;
+import com.schoolmanagement.entity.RefundBatch;
+import com.schoolmanagement.entity.StudentEnrollment;
+import com.schoolmanagement.entity.User;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import com.schoolmanagement.repository.RefundBatchRepository;
+import com.schoolmanagement.repository.RefundRepository;
+import com.schoolmanagement.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RefundServiceTest {
+
+    @Mock
+    private RefundRepository refundRepository;
+
+    @Mock
+    private RefundBatchRepository refundBatchRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private EnrollmentLedgerService enrollmentLedgerService;
+
+    @Mock
+    private NamingSeriesAllocator namingSeriesAllocator;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private FinanceDashboardCache financeDashboardCache;
+
+    @Mock
+    private ReferenceDataCache referenceDataCache;
+
+    @Mock
+    private MpesaService mpesaService;
+
+    @Mock
+    private StripeService stripeService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private RefundService refundService;
+
+    @BeforeEach
+    void setUp() {
+        refundService = new RefundService(refundRepository, refundBatchRepository, paymentRepository, feeInvoiceRepository,
+                userRepository, enrollmentLedgerService, namingSeriesAllocator, notificationService, financeDashboardCache,
+                referenceDataCache, mpesaService, stripeService, new TransactionTemplate(transactionManager),
+                new SimpleMeterRegistry(), 5, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refundService.shutdown();
+    }
+
+    @Test
+    void testCompleteRefund_ReversesInvoiceAndLedger() {
+        Refund refund = refund(5L, payment(11L, 21L, new BigDecimal("1000.00")), new BigDecimal("400.00"));
+        when(refundRepository.markProcessedIfOpen(eq(5L), eq("TXN1"), any())).thenReturn(1);
+        when(refundRepository.findByIdWithPayment(5L)).thenReturn(Optional.of(refund));
+
+        assertTrue(refundService.completeRefund(5L, "TXN1"));
+
+        ArgumentCaptor<Payment> reversal = ArgumentCaptor.forClass(Payment.class);
+        verify(paymentRepository).save(reversal.capture());
+        assertEquals(new BigDecimal("-400.00"), reversal.getValue().getAmount());
+        assertEquals("REFUNDED", reversal.getValue().getPaymentStatus());
+        assertEquals("RFD-00001", reversal.getValue().getPaymentReference());
+        verify(enrollmentLedgerService).recordRefund(reversal.getValue());
+        verify(feeInvoiceRepository).addToPaidAmount(eq(21L), eq(new BigDecimal("-400.00")), any());
+    }
+
+    @Test
+    void testCompleteRefund_BatchRefundWritesOffTheCharge() {
+        // Trip invoice of 1000 with 600 paid; the trip is cancelled and the batch refunds the 600
+        Payment payment = payment(11L, 21L, new BigDecimal("600.00"));
+        payment.getEnrollment().setId(31L);
+        Refund refund = refund(5L, payment, new BigDecimal("600.00"));
+        refund.setRefundBatch(RefundBatch.builder().id(3L).build());
+        when(refundRepository.markProcessedIfOpen(eq(5L), eq("TXN1"), any())).thenReturn(1);
+        when(refundRepository.findByIdWithPayment(5L)).thenReturn(Optional.of(refund));
+        when(feeInvoiceRepository.findBalanceAmount(21L)).thenReturn(Optional.of(new BigDecimal("400.00")));
+        when(feeInvoiceRepository.cancelUnpaidBalance(eq(21L), any())).thenReturn(1);
+
+        assertTrue(refundService.completeRefund(5L, "TXN1"));
+
+        verify(feeInvoiceRepository).writeOffRefundedCharge(eq(21L), eq(new BigDecimal("600.00")), any());
+        verify(feeInvoiceRepository, never()).addToPaidAmount(anyLong(), any(), any());
+        // The refund debit of 600 is offset by the cancelled charge, unpaid 400 included
+        verify(enrollmentLedgerService).recordRefund(any(Payment.class));
+        verify(enrollmentLedgerService).recordAdjustment(eq(31L), eq(21L), eq(new BigDecimal("-1000.00")), eq("RFD-00001"),
+                contains("Charge cancelled"));
+        verify(refundBatchRepository).recordOutcome(eq(3L), eq(1), eq(0), eq(new BigDecimal("600.00")), any());
+    }
+
+    @Test
+    void testCompleteRefund_AlreadyFinalIsNoOp() {
+        when(refundRepository.markProcessedIfOpen(eq(5L), any(), any())).thenReturn(0);
+
+        assertFalse(refundService.completeRefund(5L, "TXN1"));
+
+        verify(paymentRepository, never()).save(any());
+        verify(feeInvoiceRepository, never()).addToPaidAmount(anyLong(), any(), any());
+        verify(enrollmentLedgerService, never()).recordRefund(any());
+    }
+
+    @Test
+    void testRequestRefund_RejectsAmountAboveRefundableBalance() {
+        Payment payment = payment(11L, 21L, new BigDecimal("1000.00"));
+        when(paymentRepository.findAllByIdForUpdate(List.of(11L))).thenReturn(List.of(payment));
+        when(refundRepository.sumCommittedAmountsByPayment(List.of(11L)))
+                .thenReturn(List.<Object[]>of(new Object[]{11L, new BigDecimal("700.00")}));
+
+        ApiResponse<RefundDto> response = refundService.requestRefund(11L, new BigDecimal("400.00"), "Trip cancelled",
+                null, new User());
+
+        assertFalse(response.isSuccess());
+        assertTrue(response.getMessage().contains("300.00"));
+        verify(refundRepository, never()).save(any());
+    }
+
+    @Test
+    void testRequestRefund_RejectsUnsupportedMethod() {
+        ApiResponse<RefundDto> response = refundService.requestRefund(11L, new BigDecimal("100.00"), "Trip cancelled",
+                "CHEQUE", new User());
+
+        assertFalse(response.isSuccess());
+        verify(paymentRepository, never()).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void testResubmitStalePending_B2cTimeoutLeavesRefundSubmitted() {
+        ReflectionTestUtils.setField(refundService, "chunkSize", 500);
+        Payment payment = payment(11L, 21L, new BigDecimal("1000.00"));
+        payment.setPaymentMethod("M_PESA");
+        Refund refund = refund(5L, payment, new BigDecimal("400.00"));
+        refund.setRefundStatus("PENDING");
+        refund.setPhoneNumber("254700000001");
+        when(refundRepository.findStalePendingIds(any(), any())).thenReturn(List.of(5L));
+        when(refundRepository.findByIdWithPayment(5L)).thenReturn(Optional.of(refund));
+        when(refundRepository.markSubmittedIfPending(eq(5L), any())).thenReturn(1);
+        // Daraja may have taken the payout before the read timed out
+        when(mpesaService.initiateB2CPayment(anyString(), anyLong(), anyString(), anyString()))
+                .thenThrow(new RuntimeException("Failed to initiate M-Pesa B2C payment: Read timed out",
+                        new ResourceAccessException("Read timed out")));
+
+        refundService.resubmitStalePending();
+
+        verify(refundRepository, timeout(2000)).setFailureReason(eq(5L), contains("outcome unknown"), any());
+        verify(refundRepository, never()).markFailedIfOpen(anyLong(), any(), any());
+    }
+
+    private Payment payment(Long paymentId, Long invoiceId, BigDecimal amount) {
+        FeeInvoice invoice = new FeeInvoice();
+        invoice.setId(invoiceId);
+        invoice.setInvoiceNumber("INV-" + invoiceId);
+        invoice.setEnrollment(new StudentEnrollment());
+        Payment payment = new Payment();
+        payment.setId(paymentId);
+        payment.setAmount(amount);
+        payment.setPaymentMethod("CASH");
+        payment.setPaymentStatus("COMPLETED");
+        payment.setInvoice(invoice);
+        payment.setEnrollment(invoice.getEnrollment());
+        return payment;
+    }
+
+    private Refund refund(Long refundId, Payment payment, BigDecimal amount) {
+        Refund refund = new Refund();
+        refund.setId(refundId);
+        refund.setRefundReference("RFD-00001");
+        refund.setRefundAmount(amount);
+        refund.setRefundStatus("PROCESSED");
+        refund.setRefundMethod(RefundService.METHOD_ORIGINAL);
+        refund.setRefundReason("Trip cancelled");
+        refund.setPayment(payment);
+        return refund;
+    }
+}
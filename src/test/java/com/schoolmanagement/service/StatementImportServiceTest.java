@@ -0,0 +1,134 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.dto.ApiResponse;
+import com.schoolmanagement.dto.StatementImportResultDto;
+import com.schoolmanagement.entity.Payment;
+import com.schoolmanagement.repository.FeeInvoiceRepository;
+import com.schoolmanagement.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatementImportServiceTest {
+
+    private static final String HEADER = "Receipt No.,Completion Time,Details,Transaction Status,Paid In,A/C No.\n";
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private FeeInvoiceRepository feeInvoiceRepository;
+
+    @Mock
+    private PaymentSettlementService paymentSettlementService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path reportDir;
+
+    private StatementImportService statementImportService;
+
+    @BeforeEach
+    void setUp() {
+        statementImportService = new StatementImportService(paymentRepository, feeInvoiceRepository, paymentSettlementService,
+                new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(statementImportService, "batchSize", 200);
+        ReflectionTestUtils.setField(statementImportService, "reportDir", reportDir.toString());
+        when(feeInvoiceRepository.findInvoiceNumberKeysBySchool(1L))
+                .thenReturn(List.<Object[]>of(new Object[]{"INV-000001", 10L}));
+    }
+
+    @Test
+    void testImportStatement_ManualPaymentIsNotCreditedAgain() {
+        // A bursar recorded the bank transfer by hand, with the bank reference, before the statement arrived
+        when(paymentRepository.findReceiptKeysBySchool(1L))
+                .thenReturn(List.<Object[]>of(new Object[]{null, "FT24123ABC", "COMPLETED"}));
+        when(paymentRepository.findPendingPaymentKeysBySchool(1L)).thenReturn(List.of());
+
+        ApiResponse<StatementImportResultDto> response = statementImportService.importStatement(1L, "BANK",
+                csv("FT24123ABC,2024-05-02 10:15:00,Transfer,Completed,5000.00,INV-000001\n"));
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.getData().getAlreadyRecorded());
+        assertEquals(0, response.getData().getRecordedPayments());
+        verify(paymentSettlementService, never()).recordExternalPayment(any(), any(), any(), any(), any(), any());
+        verify(paymentSettlementService, never()).completePayment(any(), any(), any());
+    }
+
+    @Test
+    void testImportStatement_SettlesPendingStkPaymentByAmount() {
+        when(paymentRepository.findReceiptKeysBySchool(1L))
+                .thenReturn(List.<Object[]>of(new Object[]{null, "ws_CO_123", "PENDING"}));
+        when(paymentRepository.findPendingPaymentKeysBySchool(1L))
+                .thenReturn(List.<Object[]>of(new Object[]{7L, 10L, new BigDecimal("5000.00"), "ws_CO_123"}));
+        Payment pending = new Payment();
+        pending.setId(7L);
+        when(paymentRepository.findById(7L)).thenReturn(Optional.of(pending));
+        when(paymentSettlementService.completePayment(eq(pending), eq("QGH7ABC123"), anyString())).thenReturn(true);
+
+        ApiResponse<StatementImportResultDto> response = statementImportService.importStatement(1L, "MPESA",
+                csv("QGH7ABC123,2024-05-02 10:15:00,Pay Bill,Completed,5000.00,INV-000001\n"));
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.getData().getSettledPendingPayments());
+        verify(paymentSettlementService, never()).recordExternalPayment(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testImportStatement_UnparseableDateIsReportedNotSettled() {
+        when(paymentRepository.findReceiptKeysBySchool(1L)).thenReturn(List.of());
+        when(paymentRepository.findPendingPaymentKeysBySchool(1L)).thenReturn(List.of());
+
+        ApiResponse<StatementImportResultDto> response = statementImportService.importStatement(1L, "MPESA",
+                csv("QGH7ABC124,yesterday,Pay Bill,Completed,5000.00,INV-000001\n"));
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.getData().getUnmatched());
+        assertTrue(response.getData().getUnmatchedSample().get(0).getReason().startsWith("Unparseable date"));
+        verify(paymentSettlementService, never()).recordExternalPayment(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testImportStatement_UnmatchedReportNeutralizesFormulas() throws Exception {
+        when(paymentRepository.findReceiptKeysBySchool(1L)).thenReturn(List.of());
+        when(paymentRepository.findPendingPaymentKeysBySchool(1L)).thenReturn(List.of());
+
+        ApiResponse<StatementImportResultDto> response = statementImportService.importStatement(1L, "MPESA",
+                csv("@SUM(1+1),2024-05-02 10:15:00,Pay Bill,Completed,5000.00,\"=HYPERLINK(\"\"http://x\"\",\"\"a\"\")\"\n"));
+
+        Path report = statementImportService.getUnmatchedReport(response.getData().getImportId()).orElseThrow();
+        List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("2,'@SUM(1+1),\"'=HYPERLINK(\"\"http://x\"\",\"\"a\"\")\",5000.00,No invoice matches account reference", lines.get(1));
+    }
+
+    private static InputStream csv(String rows) {
+        return new ByteArrayInputStream((HEADER + rows).getBytes(StandardCharsets.UTF_8));
+    }
+}
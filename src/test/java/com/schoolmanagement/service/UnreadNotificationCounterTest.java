@@ -0,0 +1,75 @@
+package com.schoolmanagement.service;
+
+import com.schoolmanagement.repository.NotificationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UnreadNotificationCounterTest {
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    private UnreadNotificationCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        counter = new UnreadNotificationCounter(notificationRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(counter, "idleEvictionMs", 60_000L);
+    }
+
+    @Test
+    void testGet_LoadsOnceThenServesUpdatesFromMemory() {
+        when(notificationRepository.countUnreadByRecipientId(7L)).thenReturn(3L);
+
+        assertEquals(3, counter.get(7L));
+        counter.increment(7L);
+        counter.incrementAll(List.of(7L, 7L, 8L));
+        counter.decrement(7L);
+
+        assertEquals(5, counter.get(7L));
+        verify(notificationRepository, times(1)).countUnreadByRecipientId(7L);
+    }
+
+    @Test
+    void testGet_NeverReportsNegativeCount() {
+        when(notificationRepository.countUnreadByRecipientId(7L)).thenReturn(1L);
+        counter.get(7L);
+
+        counter.adjust(7L, -4);
+
+        assertEquals(0, counter.get(7L));
+    }
+
+    @Test
+    void testReconcile_CorrectsDriftAndEvictsIdleUsers() {
+        when(notificationRepository.countUnreadByRecipientId(7L)).thenReturn(2L);
+        when(notificationRepository.countUnreadByRecipientId(8L)).thenReturn(4L);
+        counter.get(7L);
+        counter.get(8L);
+        when(notificationRepository.countUnreadByRecipientIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{7L, 6L}));
+
+        counter.reconcile();
+        assertEquals(6, counter.get(7L));
+        assertEquals(0, counter.get(8L));
+
+        ReflectionTestUtils.setField(counter, "idleEvictionMs", -1L);
+        counter.reconcile();
+        counter.get(7L);
+        verify(notificationRepository, times(2)).countUnreadByRecipientId(7L);
+    }
+}
@@ -0,0 +1,33 @@
+package com.schoolmanagement.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvLineParserTest {
+
+    @Test
+    void testParse_PlainFields() {
+        assertEquals(List.of("QK12ABC", "2025-01-10 10:15:00", "1500.00"), CsvLineParser.parse("QK12ABC,2025-01-10 10:15:00,1500.00"));
+    }
+
+    @Test
+    void testParse_QuotedFieldsWithCommasAndQuotes() {
+        List<String> fields = CsvLineParser.parse("\"1,500.00\",\"Pay Bill from 2547****123 - \"\"JANE\"\"\",INV-000042");
+
+        assertEquals(List.of("1,500.00", "Pay Bill from 2547****123 - \"JANE\"", "INV-000042"), fields);
+    }
+
+    @Test
+    void testParse_EmptyFieldsAreKept() {
+        assertEquals(List.of("QK12ABC", "", "", "INV-1"), CsvLineParser.parse("QK12ABC,,,INV-1"));
+        assertEquals(List.of(""), CsvLineParser.parse(""));
+    }
+
+    @Test
+    void testParse_TrimsWhitespace() {
+        assertEquals(List.of("Receipt No.", "Paid In"), CsvLineParser.parse(" Receipt No. ,  Paid In "));
+    }
+}
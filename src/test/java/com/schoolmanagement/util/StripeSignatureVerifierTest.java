@@ -0,0 +1,45 @@
+package com.schoolmanagement.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripeSignatureVerifierTest {
+
+    private static final String PAYLOAD = "{\"id\":\"evt_1\",\"type\":\"payment_intent.succeeded\"}";
+    private static final long NOW = 1_760_000_000L;
+
+    private final StripeSignatureVerifier verifier = new StripeSignatureVerifier("whsec_test", 300);
+
+    @Test
+    void testVerify_AcceptsOwnSignature() {
+        assertTrue(verifier.verify(PAYLOAD, verifier.sign(PAYLOAD, NOW), NOW + 10));
+    }
+
+    @Test
+    void testVerify_RejectsTamperedPayloadAndOtherSecret() {
+        String header = verifier.sign(PAYLOAD, NOW);
+
+        assertFalse(verifier.verify(PAYLOAD.replace("evt_1", "evt_2"), header, NOW));
+        assertFalse(new StripeSignatureVerifier("whsec_other", 300).verify(PAYLOAD, header, NOW));
+    }
+
+    @Test
+    void testVerify_RejectsTimestampOutsideTolerance() {
+        String header = verifier.sign(PAYLOAD, NOW);
+
+        assertFalse(verifier.verify(PAYLOAD, header, NOW + 301));
+        assertFalse(verifier.verify(PAYLOAD, header, NOW - 301));
+    }
+
+    @Test
+    void testVerify_AcceptsAnyMatchingV1DuringSecretRoll() {
+        String oldSignature = new StripeSignatureVerifier("whsec_old", 300).sign(PAYLOAD, NOW).split(",")[1];
+        String header = verifier.sign(PAYLOAD, NOW) + "," + oldSignature + ",v0=ignored";
+
+        assertTrue(verifier.verify(PAYLOAD, header, NOW));
+        assertFalse(verifier.verify(PAYLOAD, "t=" + NOW + ",v1=zz", NOW));
+        assertFalse(verifier.verify(PAYLOAD, "v1=abc", NOW));
+        assertFalse(verifier.verify(PAYLOAD, null, NOW));
+    }
+}
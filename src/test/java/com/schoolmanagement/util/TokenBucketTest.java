@@ -0,0 +1,64 @@
+package com.schoolmanagement.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    void testTryAcquire_AllowsBurstThenLimits() {
+        TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void testTryAcquire_RefillsAtConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void testAvailablePermits_NeverExceedsBurst() {
+        TokenBucket bucket = new TokenBucket(100, 5, now::get);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertEquals(5.0, bucket.availablePermits(), 0.0001);
+    }
+
+    @Test
+    void testAcquire_ThrottlesToRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50, 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            bucket.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The stored permit and the first fresh one are immediate, the remaining four are spaced 20 ms apart
+        assertTrue(elapsedMillis >= 75, "Expected at least 75 ms but was " + elapsedMillis);
+    }
+
+    @Test
+    void testConstructor_RejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}